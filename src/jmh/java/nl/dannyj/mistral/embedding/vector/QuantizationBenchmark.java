@@ -0,0 +1,127 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.vector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the search latency of the quantized encodings against an exact float search on random normalized vectors.
+ * Run it with {@code gradle jmh}, JMH options such as {@code -p encoding=int8} can be passed with {@code -PjmhArgs="..."}.
+ * The recall of the encodings is checked by the unit tests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "--add-modules", "jdk.incubator.vector"})
+public class QuantizationBenchmark {
+
+    private static final int K = 10;
+    private static final int OVERSAMPLING = 4;
+    private static final int QUERY_COUNT = 100;
+
+    @Param({"100000"})
+    private int size;
+
+    @Param({"1024"})
+    private int dimension;
+
+    @Param({"float32", "float16", "int8", "binary"})
+    private String encoding;
+
+    private float[][] corpus;
+    private float[][] queries;
+    private QuantizedVectors vectors;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        corpus = randomVectors(random, size, dimension);
+        queries = randomVectors(random, QUERY_COUNT, dimension);
+
+        switch (encoding) {
+            case "float32" -> vectors = null;
+            case "float16" -> vectors = Float16Vectors.encode(corpus);
+            case "int8" -> vectors = Int8Vectors.encode(corpus);
+            case "binary" -> vectors = BinaryVectors.encode(corpus);
+            default -> throw new IllegalArgumentException("Unknown encoding: " + encoding);
+        }
+    }
+
+    @Benchmark
+    public List<SearchResult> search() {
+        float[] query = nextQuery();
+
+        if (vectors == null) {
+            return VectorMath.topK(query, corpus, K, SimilarityMetric.DOT_PRODUCT);
+        }
+
+        return vectors.topK(query, K);
+    }
+
+    @Benchmark
+    public List<SearchResult> rescoredSearch() {
+        float[] query = nextQuery();
+
+        if (vectors == null) {
+            return VectorMath.topK(query, corpus, K, SimilarityMetric.DOT_PRODUCT);
+        }
+
+        return Rescorer.search(vectors, query, K, OVERSAMPLING, row -> corpus[row], SimilarityMetric.DOT_PRODUCT);
+    }
+
+    private float[] nextQuery() {
+        float[] query = queries[next];
+        next = (next + 1) % queries.length;
+        return query;
+    }
+
+    private static float[][] randomVectors(Random random, int count, int dimension) {
+        float[][] vectors = new float[count][dimension];
+
+        for (float[] vector : vectors) {
+            double norm = 0;
+
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = (float) random.nextGaussian();
+                norm += vector[i] * vector[i];
+            }
+
+            for (int i = 0; i < dimension; i++) {
+                vector[i] /= (float) Math.sqrt(norm);
+            }
+        }
+
+        return vectors;
+    }
+}
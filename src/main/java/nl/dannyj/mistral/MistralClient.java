@@ -20,11 +20,19 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.ConstraintViolationException;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
+import nl.dannyj.mistral.cache.ResponseCache;
+import nl.dannyj.mistral.cache.SemanticCache;
 import nl.dannyj.mistral.exceptions.UnexpectedResponseException;
+import nl.dannyj.mistral.interceptors.AdaptiveConcurrencyInterceptor;
+import nl.dannyj.mistral.interceptors.CircuitBreakerInterceptor;
 import nl.dannyj.mistral.interceptors.MistralHeaderInterceptor;
+import nl.dannyj.mistral.interceptors.RetryInterceptor;
+import nl.dannyj.mistral.interceptors.RetryPolicy;
+import nl.dannyj.mistral.ratelimit.RateLimiter;
 import nl.dannyj.mistral.models.completion.ChatCompletionRequest;
 import nl.dannyj.mistral.models.completion.ChatCompletionResponse;
 import nl.dannyj.mistral.models.embedding.EmbeddingRequest;
@@ -32,25 +40,46 @@ import nl.dannyj.mistral.models.embedding.EmbeddingResponse;
 import nl.dannyj.mistral.models.model.ListModelsResponse;
 import nl.dannyj.mistral.models.ocr.OCRRequest;
 import nl.dannyj.mistral.models.ocr.OCRResponse;
+import nl.dannyj.mistral.net.CancellableFuture;
 import nl.dannyj.mistral.net.ChatCompletionChunkCallback;
+import nl.dannyj.mistral.net.MistralExecutors;
+import nl.dannyj.mistral.net.RequestOptions;
 import nl.dannyj.mistral.services.HttpService;
 import nl.dannyj.mistral.services.MistralService;
+import nl.dannyj.mistral.services.RequestHedger;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 
+import java.time.Duration;
 import java.util.Objects;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
  * The MistralClient is the main class that interacts with all components of this library.
  * It initializes all the necessary components and provides methods to interact with the Mistral AI API.
+ * Close the client when it is no longer used, to shut down the threads of the executors and the HTTP client it created.
  */
 @Setter
 @Getter
-public class MistralClient {
+public class MistralClient implements AutoCloseable {
 
     private static final String API_KEY_ENV_VAR = "MISTRAL_API_KEY";
 
+    private static final int DEFAULT_READ_TIMEOUT_SECONDS = 120;
+    private static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 10;
+    private static final int DEFAULT_WRITE_TIMEOUT_SECONDS = 10;
+
+    /**
+     * All requests go to the same host, so the per-host limit defaults to the global limit instead of OkHttp's default of 5.
+     */
+    private static final int DEFAULT_MAX_REQUESTS = 64;
+    private static final int DEFAULT_MAX_REQUESTS_PER_HOST = DEFAULT_MAX_REQUESTS;
+    private static final int DEFAULT_MAX_IDLE_CONNECTIONS = 16;
+    private static final Duration DEFAULT_KEEP_ALIVE_DURATION = Duration.ofMinutes(5);
+
     private String apiKey;
 
     private OkHttpClient httpClient;
@@ -59,6 +88,22 @@ public class MistralClient {
 
     private MistralService mistralService;
 
+    private Executor executor;
+
+    /**
+     * The executor that this client created and shuts down when it is closed, null if the executor was passed in.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private ExecutorService ownedExecutor;
+
+    /**
+     * The HTTP client that this client created and shuts down when it is closed, null if the HTTP client was passed in.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private OkHttpClient ownedHttpClient;
+
     /**
      * Constructor that initializes the MistralClient with a provided API key.
      *
@@ -66,7 +111,7 @@ public class MistralClient {
      */
     public MistralClient(@NonNull String apiKey) {
         this.apiKey = apiKey;
-        this.httpClient = buildHttpClient(120, 10, 10);
+        this.httpClient = buildHttpClient(DEFAULT_READ_TIMEOUT_SECONDS, DEFAULT_CONNECT_TIMEOUT_SECONDS, DEFAULT_WRITE_TIMEOUT_SECONDS);
         this.objectMapper = buildObjectMapper();
         this.mistralService = buildMistralService();
     }
@@ -76,7 +121,7 @@ public class MistralClient {
      */
     public MistralClient() {
         this.apiKey = Objects.requireNonNull(System.getenv(API_KEY_ENV_VAR), "API key not found in environment variable " + API_KEY_ENV_VAR);
-        this.httpClient = buildHttpClient(120, 10, 10);
+        this.httpClient = buildHttpClient(DEFAULT_READ_TIMEOUT_SECONDS, DEFAULT_CONNECT_TIMEOUT_SECONDS, DEFAULT_WRITE_TIMEOUT_SECONDS);
         this.objectMapper = buildObjectMapper();
         this.mistralService = buildMistralService();
     }
@@ -116,7 +161,44 @@ public class MistralClient {
      */
     public MistralClient(@NonNull String apiKey, @NonNull ObjectMapper objectMapper) {
         this.apiKey = apiKey;
-        this.httpClient = buildHttpClient(120, 10, 10);
+        this.httpClient = buildHttpClient(DEFAULT_READ_TIMEOUT_SECONDS, DEFAULT_CONNECT_TIMEOUT_SECONDS, DEFAULT_WRITE_TIMEOUT_SECONDS);
+        this.objectMapper = objectMapper;
+        this.mistralService = buildMistralService();
+    }
+
+    /**
+     * Constructor that initializes the MistralClient with a provided API key and executor.
+     * Responses of asynchronous and streaming requests (including {@link ChatCompletionChunkCallback} calls) are handled on the executor instead of the OkHttp dispatcher threads.
+     * Use {@link MistralExecutors#newVirtualThreadPerTaskExecutor()} on Java 21 or newer to handle every response on its own virtual thread.
+     * The OkHttp dispatcher counts a request as finished once its response is handed to the executor, so its request limits do not bound
+     * the responses and streams that are still being read on the executor.
+     *
+     * @param apiKey   The API key to be used for the Mistral AI API
+     * @param executor The executor on which responses of asynchronous and streaming requests are handled
+     */
+    public MistralClient(@NonNull String apiKey, @NonNull Executor executor) {
+        this.apiKey = apiKey;
+        this.executor = executor;
+        this.httpClient = buildHttpClient(DEFAULT_READ_TIMEOUT_SECONDS, DEFAULT_CONNECT_TIMEOUT_SECONDS, DEFAULT_WRITE_TIMEOUT_SECONDS);
+        this.objectMapper = buildObjectMapper();
+        this.mistralService = buildMistralService();
+    }
+
+    /**
+     * Constructor that initializes the MistralClient with a provided API key, HTTP client, object mapper and executor.
+     * Responses of asynchronous and streaming requests (including {@link ChatCompletionChunkCallback} calls) are handled on the executor instead of the OkHttp dispatcher threads.
+     * The OkHttp dispatcher counts a request as finished once its response is handed to the executor, so its request limits do not bound
+     * the responses and streams that are still being read on the executor.
+     *
+     * @param apiKey       The API key to be used for the Mistral AI API
+     * @param httpClient   The OkHttpClient to be used for making requests to the Mistral AI API
+     * @param objectMapper The Jackson ObjectMapper to be used for serializing and deserializing JSON
+     * @param executor     The executor on which responses of asynchronous and streaming requests are handled
+     */
+    public MistralClient(@NonNull String apiKey, @NonNull OkHttpClient httpClient, @NonNull ObjectMapper objectMapper, @NonNull Executor executor) {
+        this.apiKey = apiKey;
+        this.executor = executor;
+        this.httpClient = httpClient;
         this.objectMapper = objectMapper;
         this.mistralService = buildMistralService();
     }
@@ -166,6 +248,53 @@ public class MistralClient {
         this.mistralService = buildMistralService();
     }
 
+    /**
+     * Constructor that initializes the MistralClient from a {@link Builder}.
+     *
+     * @param builder The builder containing the client configuration
+     */
+    private MistralClient(Builder builder) {
+        this.apiKey = builder.apiKey != null ? builder.apiKey : Objects.requireNonNull(System.getenv(API_KEY_ENV_VAR), "API key not found in environment variable " + API_KEY_ENV_VAR);
+        this.ownedExecutor = builder.virtualThreads ? MistralExecutors.newVirtualThreadPerTaskExecutor() : null;
+        this.executor = this.ownedExecutor != null ? this.ownedExecutor : builder.executor;
+        this.httpClient = builder.httpClient != null ? builder.httpClient : buildHttpClient(builder.readTimeoutSeconds, builder.connectTimeoutSeconds, builder.writeTimeoutSeconds,
+                builder.maxRequests, builder.maxRequestsPerHost, builder.maxIdleConnections, builder.keepAliveDuration, builder.circuitBreaker,
+                builder.retryPolicy, builder.adaptiveConcurrency);
+        this.objectMapper = builder.objectMapper != null ? builder.objectMapper : buildObjectMapper();
+        this.mistralService = buildMistralService(builder.requestHedger);
+        this.mistralService.setResponseCache(builder.responseCache);
+        this.mistralService.setSemanticCache(builder.semanticCache);
+        this.mistralService.setRequestCoalescing(builder.requestCoalescing);
+        this.mistralService.setRateLimiter(builder.rateLimiter);
+    }
+
+    /**
+     * Creates a new builder to configure and build a MistralClient.
+     *
+     * @return A new MistralClient builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Shuts down the executors that this client created: the virtual thread executor of {@link Builder#virtualThreads()}
+     * and the dispatcher and connection pool of the HTTP client, unless a custom HTTP client was passed in.
+     * Requests that are already running complete, new asynchronous and streaming requests fail.
+     * Executors and HTTP clients that were passed in are not shut down, they are managed by the caller.
+     */
+    @Override
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+
+        if (ownedHttpClient != null) {
+            ownedHttpClient.dispatcher().executorService().shutdown();
+            ownedHttpClient.connectionPool().evictAll();
+        }
+    }
+
     /**
      * Use the Mistral AI API to create a chat completion (an assistant reply to the conversation).
      * This is a blocking method.
@@ -180,20 +309,52 @@ public class MistralClient {
         return mistralService.createChatCompletion(request);
     }
 
+    /**
+     * Use the Mistral AI API to create a chat completion (an assistant reply to the conversation), with options like a deadline for the call.
+     * This is a blocking method.
+     *
+     * @param request The request to create a chat completion. See {@link ChatCompletionRequest}.
+     * @param options The options of the call. See {@link RequestOptions}.
+     * @return The response from the Mistral AI API containing the generated message. See {@link ChatCompletionResponse}.
+     * @throws ConstraintViolationException if the request does not pass validation
+     * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
+     * @throws IllegalArgumentException     if the first message role is not 'user' or 'system'
+     */
+    public ChatCompletionResponse createChatCompletion(@NonNull ChatCompletionRequest request, @NonNull RequestOptions options) {
+        return mistralService.createChatCompletion(request, options);
+    }
+
     /**
      * Use the Mistral AI API to create a chat completion (an assistant reply to the conversation).
      * This is a non-blocking/asynchronous method.
      *
      * @param request The request to create a chat completion. See {@link ChatCompletionRequest}.
-     * @return A CompletableFuture that will complete with generated message from the Mistral AI API. See {@link ChatCompletionResponse}.
+     * @return A CancellableFuture that will complete with generated message from the Mistral AI API. See {@link ChatCompletionResponse}.
+     * Cancelling it cancels the HTTP calls of the request.
      * @throws ConstraintViolationException if the request does not pass validation
      * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
      * @throws IllegalArgumentException     if the first message role is not 'user' or 'system'
      */
-    public CompletableFuture<ChatCompletionResponse> createChatCompletionAsync(@NonNull ChatCompletionRequest request) {
+    public CancellableFuture<ChatCompletionResponse> createChatCompletionAsync(@NonNull ChatCompletionRequest request) {
         return mistralService.createChatCompletionAsync(request);
     }
 
+    /**
+     * Use the Mistral AI API to create a chat completion (an assistant reply to the conversation), with options like a deadline for the call.
+     * This is a non-blocking/asynchronous method.
+     *
+     * @param request The request to create a chat completion. See {@link ChatCompletionRequest}.
+     * @param options The options of the call. See {@link RequestOptions}.
+     * @return A CancellableFuture that will complete with generated message from the Mistral AI API. See {@link ChatCompletionResponse}.
+     * Cancelling it cancels the HTTP calls of the request.
+     * @throws ConstraintViolationException if the request does not pass validation
+     * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
+     * @throws IllegalArgumentException     if the first message role is not 'user' or 'system'
+     */
+    public CancellableFuture<ChatCompletionResponse> createChatCompletionAsync(@NonNull ChatCompletionRequest request, @NonNull RequestOptions options) {
+        return mistralService.createChatCompletionAsync(request, options);
+    }
+
     /**
      * This method is used to create an embedding using the Mistral AI API.
      * The embeddings for the input strings. See the <a href="https://docs.mistral.ai/capabilities/embeddings/">mistral documentation</a> for more details on embeddings.
@@ -208,20 +369,50 @@ public class MistralClient {
         return mistralService.createEmbedding(request);
     }
 
+    /**
+     * This method is used to create an embedding using the Mistral AI API, with options like a deadline for the call.
+     * This is a blocking method.
+     *
+     * @param request The request to create an embedding. See {@link EmbeddingRequest}.
+     * @param options The options of the call. See {@link RequestOptions}.
+     * @return The response from the Mistral AI API containing the generated embedding. See {@link EmbeddingResponse}.
+     * @throws ConstraintViolationException if the request does not pass validation
+     * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
+     */
+    public EmbeddingResponse createEmbedding(@NonNull EmbeddingRequest request, @NonNull RequestOptions options) {
+        return mistralService.createEmbedding(request, options);
+    }
+
     /**
      * This method is used to create an embedding using the Mistral AI API.
      * The embeddings for the input strings. See the <a href="https://docs.mistral.ai/capabilities/embeddings/">mistral documentation</a> for more details on embeddings.
      * This is a non-blocking/asynchronous method.
      *
      * @param request The request to create an embedding. See {@link EmbeddingRequest}.
-     * @return A CompletableFuture that will complete with the generated embedding from the Mistral AI API. See {@link EmbeddingResponse}.
+     * @return A CancellableFuture that will complete with the generated embedding from the Mistral AI API. See {@link EmbeddingResponse}.
+     * Cancelling it cancels the HTTP calls of the request.
      * @throws ConstraintViolationException if the request does not pass validation
      * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
      */
-    public CompletableFuture<EmbeddingResponse> createEmbeddingAsync(@NonNull EmbeddingRequest request) {
+    public CancellableFuture<EmbeddingResponse> createEmbeddingAsync(@NonNull EmbeddingRequest request) {
         return mistralService.createEmbeddingAsync(request);
     }
 
+    /**
+     * This method is used to create an embedding using the Mistral AI API, with options like a deadline for the call.
+     * This is a non-blocking/asynchronous method.
+     *
+     * @param request The request to create an embedding. See {@link EmbeddingRequest}.
+     * @param options The options of the call. See {@link RequestOptions}.
+     * @return A CancellableFuture that will complete with the generated embedding from the Mistral AI API. See {@link EmbeddingResponse}.
+     * Cancelling it cancels the HTTP calls of the request.
+     * @throws ConstraintViolationException if the request does not pass validation
+     * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
+     */
+    public CancellableFuture<EmbeddingResponse> createEmbeddingAsync(@NonNull EmbeddingRequest request, @NonNull RequestOptions options) {
+        return mistralService.createEmbeddingAsync(request, options);
+    }
+
     /**
      * Lists all models available according to the Mistral AI API.
      * This is a blocking method.
@@ -233,17 +424,43 @@ public class MistralClient {
         return mistralService.listModels();
     }
 
+    /**
+     * Lists all models available according to the Mistral AI API, with options like a deadline for the call.
+     * This is a blocking method.
+     *
+     * @param options The options of the call. See {@link RequestOptions}.
+     * @return The response from the Mistral AI API containing the list of models. See {@link ListModelsResponse}.
+     * @throws UnexpectedResponseException if an unexpected response is received from the Mistral AI API
+     */
+    public ListModelsResponse listModels(@NonNull RequestOptions options) {
+        return mistralService.listModels(options);
+    }
+
     /**
      * Lists all models available according to the Mistral AI API.
      * This is a non-blocking/asynchronous method.
      *
-     * @return A CompletableFuture that will complete with the list of models from the Mistral AI API. See {@link ListModelsResponse}.
+     * @return A CancellableFuture that will complete with the list of models from the Mistral AI API. See {@link ListModelsResponse}.
+     * Cancelling it cancels the HTTP call of the request.
      * @throws UnexpectedResponseException if an unexpected response is received from the Mistral AI API
      */
-    public CompletableFuture<ListModelsResponse> listModelsAsync() {
+    public CancellableFuture<ListModelsResponse> listModelsAsync() {
         return mistralService.listModelsAsync();
     }
 
+    /**
+     * Lists all models available according to the Mistral AI API, with options like a deadline for the call.
+     * This is a non-blocking/asynchronous method.
+     *
+     * @param options The options of the call. See {@link RequestOptions}.
+     * @return A CancellableFuture that will complete with the list of models from the Mistral AI API. See {@link ListModelsResponse}.
+     * Cancelling it cancels the HTTP call of the request.
+     * @throws UnexpectedResponseException if an unexpected response is received from the Mistral AI API
+     */
+    public CancellableFuture<ListModelsResponse> listModelsAsync(@NonNull RequestOptions options) {
+        return mistralService.listModelsAsync(options);
+    }
+
     /**
      * Use the Mistral AI API to perform OCR on a document.
      * This is a blocking method.
@@ -257,21 +474,77 @@ public class MistralClient {
         return mistralService.performOcr(request);
     }
 
+    /**
+     * Use the Mistral AI API to perform OCR on a document, with options like a deadline for the call.
+     * This is a blocking method.
+     *
+     * @param request The request to perform OCR. See {@link OCRRequest}.
+     * @param options The options of the call. See {@link RequestOptions}.
+     * @return The response from the Mistral AI API containing the OCR results. See {@link OCRResponse}.
+     * @throws ConstraintViolationException if the request does not pass validation
+     * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
+     */
+    public OCRResponse performOcr(@NonNull OCRRequest request, @NonNull RequestOptions options) {
+        return mistralService.performOcr(request, options);
+    }
+
     /**
      * Use the Mistral AI API to perform OCR on a document.
      * This is a non-blocking/asynchronous method.
      *
      * @param request The request to perform OCR. See {@link OCRRequest}.
-     * @return A CompletableFuture that will complete with the OCR results from the Mistral AI API. See {@link OCRResponse}.
+     * @return A CancellableFuture that will complete with the OCR results from the Mistral AI API. See {@link OCRResponse}.
+     * Cancelling it cancels the HTTP calls of the request.
      * @throws ConstraintViolationException if the request does not pass validation
      * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
      */
-    public CompletableFuture<OCRResponse> performOcrAsync(@NonNull OCRRequest request) {
+    public CancellableFuture<OCRResponse> performOcrAsync(@NonNull OCRRequest request) {
         return mistralService.performOcrAsync(request);
     }
 
-    public void createChatCompletionStream(@NonNull ChatCompletionRequest request, @NonNull ChatCompletionChunkCallback callback) {
-        mistralService.createChatCompletionStream(request, callback);
+    /**
+     * Use the Mistral AI API to perform OCR on a document, with options like a deadline for the call.
+     * This is a non-blocking/asynchronous method.
+     *
+     * @param request The request to perform OCR. See {@link OCRRequest}.
+     * @param options The options of the call. See {@link RequestOptions}.
+     * @return A CancellableFuture that will complete with the OCR results from the Mistral AI API. See {@link OCRResponse}.
+     * Cancelling it cancels the HTTP calls of the request.
+     * @throws ConstraintViolationException if the request does not pass validation
+     * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
+     */
+    public CancellableFuture<OCRResponse> performOcrAsync(@NonNull OCRRequest request, @NonNull RequestOptions options) {
+        return mistralService.performOcrAsync(request, options);
+    }
+
+    /**
+     * Use the Mistral AI API to create a streaming chat completion. The chunks of the response are passed to the callback as they are received.
+     * This is a non-blocking/asynchronous method.
+     *
+     * @param request  The request to create a chat completion, with the stream parameter set to true. See {@link ChatCompletionRequest}.
+     * @param callback The callback that receives the chunks of the response. See {@link ChatCompletionChunkCallback}.
+     * @return A CancellableFuture that completes when the stream completes or fails. Cancelling it stops the stream.
+     * @throws ConstraintViolationException if the request does not pass validation
+     * @throws IllegalArgumentException     if the stream parameter is not set to true
+     */
+    public CancellableFuture<Void> createChatCompletionStream(@NonNull ChatCompletionRequest request, @NonNull ChatCompletionChunkCallback callback) {
+        return mistralService.createChatCompletionStream(request, callback);
+    }
+
+    /**
+     * Use the Mistral AI API to create a streaming chat completion, with options like a deadline for the call.
+     * The chunks of the response are passed to the callback as they are received. The deadline applies to the whole stream.
+     * This is a non-blocking/asynchronous method.
+     *
+     * @param request  The request to create a chat completion, with the stream parameter set to true. See {@link ChatCompletionRequest}.
+     * @param callback The callback that receives the chunks of the response. See {@link ChatCompletionChunkCallback}.
+     * @param options  The options of the call. See {@link RequestOptions}.
+     * @return A CancellableFuture that completes when the stream completes or fails. Cancelling it stops the stream.
+     * @throws ConstraintViolationException if the request does not pass validation
+     * @throws IllegalArgumentException     if the stream parameter is not set to true
+     */
+    public CancellableFuture<Void> createChatCompletionStream(@NonNull ChatCompletionRequest request, @NonNull ChatCompletionChunkCallback callback, @NonNull RequestOptions options) {
+        return mistralService.createChatCompletionStream(request, callback, options);
     }
 
     /**
@@ -280,23 +553,71 @@ public class MistralClient {
      * @return A new instance of MistralService
      */
     private MistralService buildMistralService() {
-        return new MistralService(new HttpService(this.httpClient), this.objectMapper);
+        return buildMistralService(null);
     }
 
     /**
-     * Builds the HTTP client.
+     * Builds the MistralService with the given request hedger.
+     *
+     * @param requestHedger The hedger for slow requests, or null to disable hedging
+     * @return A new instance of MistralService
+     */
+    private MistralService buildMistralService(RequestHedger requestHedger) {
+        HttpService httpService = this.executor == null ? new HttpService(this.httpClient) : new HttpService(this.httpClient, this.executor);
+        httpService.setRequestHedger(requestHedger);
+
+        return new MistralService(httpService, this.objectMapper);
+    }
+
+    /**
+     * Builds the HTTP client with the default concurrency limits.
      *
      * @return A new instance of OkHttpClient
      */
     private OkHttpClient buildHttpClient(int readTimeoutSeconds, int connectTimeoutSeconds, int writeTimeoutSeconds) {
+        return buildHttpClient(readTimeoutSeconds, connectTimeoutSeconds, writeTimeoutSeconds,
+                DEFAULT_MAX_REQUESTS, DEFAULT_MAX_REQUESTS_PER_HOST, DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE_DURATION, null, null, null);
+    }
+
+    /**
+     * Builds the HTTP client. The optional interceptors are applied in order: the circuit breaker rejects requests to failing endpoints,
+     * failed requests are retried according to the retry policy, and every attempt is limited by the adaptive concurrency limiter.
+     * The HTTP client is owned by this client, so it is shut down by {@link #close()}.
+     *
+     * @return A new instance of OkHttpClient
+     */
+    private OkHttpClient buildHttpClient(int readTimeoutSeconds, int connectTimeoutSeconds, int writeTimeoutSeconds,
+                                         int maxRequests, int maxRequestsPerHost, int maxIdleConnections, Duration keepAliveDuration,
+                                         CircuitBreakerInterceptor circuitBreaker, RetryPolicy retryPolicy,
+                                         AdaptiveConcurrencyInterceptor adaptiveConcurrency) {
         MistralHeaderInterceptor mistralInterceptor = new MistralHeaderInterceptor(this.getApiKey());
 
-        return new OkHttpClient.Builder()
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
                 .readTimeout(readTimeoutSeconds, TimeUnit.SECONDS)
                 .connectTimeout(connectTimeoutSeconds, TimeUnit.SECONDS)
                 .writeTimeout(writeTimeoutSeconds, TimeUnit.SECONDS)
-                .addInterceptor(mistralInterceptor)
-                .build();
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveDuration.toMillis(), TimeUnit.MILLISECONDS))
+                .addInterceptor(mistralInterceptor);
+
+        if (circuitBreaker != null) {
+            builder.addInterceptor(circuitBreaker);
+        }
+
+        if (retryPolicy != null) {
+            builder.addInterceptor(new RetryInterceptor(retryPolicy));
+        }
+
+        if (adaptiveConcurrency != null) {
+            builder.addInterceptor(adaptiveConcurrency);
+        }
+
+        this.ownedHttpClient = builder.build();
+        return this.ownedHttpClient;
     }
 
     /**
@@ -311,4 +632,331 @@ public class MistralClient {
         mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         return mapper;
     }
+
+    /**
+     * Builder for the MistralClient.
+     * Allows configuring the timeouts and concurrency limits of the HTTP client without having to build an OkHttpClient by hand.
+     * Options that are not set fall back to the same defaults as the MistralClient constructors.
+     */
+    public static class Builder {
+
+        private String apiKey;
+        private OkHttpClient httpClient;
+        private ObjectMapper objectMapper;
+        private Executor executor;
+        private boolean virtualThreads;
+        private int readTimeoutSeconds = DEFAULT_READ_TIMEOUT_SECONDS;
+        private int connectTimeoutSeconds = DEFAULT_CONNECT_TIMEOUT_SECONDS;
+        private int writeTimeoutSeconds = DEFAULT_WRITE_TIMEOUT_SECONDS;
+        private int maxRequests = DEFAULT_MAX_REQUESTS;
+        private int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+        private int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+        private Duration keepAliveDuration = DEFAULT_KEEP_ALIVE_DURATION;
+        private ResponseCache responseCache;
+        private SemanticCache semanticCache;
+        private boolean requestCoalescing;
+        private RetryPolicy retryPolicy;
+        private RateLimiter rateLimiter;
+        private AdaptiveConcurrencyInterceptor adaptiveConcurrency;
+        private CircuitBreakerInterceptor circuitBreaker;
+        private RequestHedger requestHedger;
+        private boolean httpClientOptionsSet = false;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the API key to be used for the Mistral AI API.
+         * If not set, the API key is read from the environment variable "MISTRAL_API_KEY".
+         *
+         * @param apiKey The API key
+         * @return This builder instance
+         */
+        public Builder apiKey(@NonNull String apiKey) {
+            this.apiKey = apiKey;
+            return this;
+        }
+
+        /**
+         * Sets a custom OkHttpClient. The client is used as-is, so it has to add the Mistral headers itself (see {@link MistralHeaderInterceptor}).
+         * Can't be combined with the timeout, concurrency and retry options of this builder.
+         *
+         * @param httpClient The OkHttpClient to be used for making requests to the Mistral AI API
+         * @return This builder instance
+         */
+        public Builder httpClient(@NonNull OkHttpClient httpClient) {
+            this.httpClient = httpClient;
+            return this;
+        }
+
+        /**
+         * Sets a custom Jackson ObjectMapper.
+         *
+         * @param objectMapper The ObjectMapper to be used for serializing and deserializing JSON
+         * @return This builder instance
+         */
+        public Builder objectMapper(@NonNull ObjectMapper objectMapper) {
+            this.objectMapper = objectMapper;
+            return this;
+        }
+
+        /**
+         * Sets the executor on which responses of asynchronous and streaming requests are handled.
+         * If not set, responses are handled on the OkHttp dispatcher threads. The executor is not shut down when the client is closed.
+         * <p>
+         * The OkHttp dispatcher counts a request as finished once its response is handed to the executor, so {@link #maxRequests(int)} and
+         * {@link #maxRequestsPerHost(int)} no longer bound the response bodies and streams that are still being read. Use a bounded executor
+         * to limit those.
+         *
+         * @param executor The executor on which responses of asynchronous and streaming requests are handled
+         * @return This builder instance
+         */
+        public Builder executor(@NonNull Executor executor) {
+            this.executor = executor;
+            this.virtualThreads = false;
+            return this;
+        }
+
+        /**
+         * Handles every response of asynchronous and streaming requests on its own virtual thread.
+         * The client creates the executor and shuts it down when it is closed.
+         * Like with {@link #executor(Executor)}, {@link #maxRequests(int)} then no longer bounds the streams that are still being read.
+         *
+         * @return This builder instance
+         * @throws UnsupportedOperationException if the current Java runtime does not support virtual threads (Java 21 or newer is required)
+         */
+        public Builder virtualThreads() {
+            if (!MistralExecutors.isVirtualThreadSupported()) {
+                throw new UnsupportedOperationException("Virtual threads require Java 21 or newer, current runtime is Java " + Runtime.version().feature());
+            }
+
+            this.executor = null;
+            this.virtualThreads = true;
+            return this;
+        }
+
+        /**
+         * Sets the read timeout. Defaults to 120 seconds.
+         *
+         * @param readTimeoutSeconds The read timeout in seconds
+         * @return This builder instance
+         */
+        public Builder readTimeoutSeconds(int readTimeoutSeconds) {
+            this.readTimeoutSeconds = readTimeoutSeconds;
+            this.httpClientOptionsSet = true;
+            return this;
+        }
+
+        /**
+         * Sets the connect timeout. Defaults to 10 seconds.
+         *
+         * @param connectTimeoutSeconds The connect timeout in seconds
+         * @return This builder instance
+         */
+        public Builder connectTimeoutSeconds(int connectTimeoutSeconds) {
+            this.connectTimeoutSeconds = connectTimeoutSeconds;
+            this.httpClientOptionsSet = true;
+            return this;
+        }
+
+        /**
+         * Sets the write timeout. Defaults to 10 seconds.
+         *
+         * @param writeTimeoutSeconds The write timeout in seconds
+         * @return This builder instance
+         */
+        public Builder writeTimeoutSeconds(int writeTimeoutSeconds) {
+            this.writeTimeoutSeconds = writeTimeoutSeconds;
+            this.httpClientOptionsSet = true;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of asynchronous and streaming requests that are executed concurrently.
+         * Requests above this limit are queued by OkHttp until a running request finishes. Defaults to 64.
+         * With an executor (see {@link #executor(Executor)}), a request finishes once its response headers are handed to the executor,
+         * so the limit does not bound the response bodies and streams that are still being read.
+         *
+         * @param maxRequests The maximum number of concurrent requests, has to be at least 1
+         * @return This builder instance
+         */
+        public Builder maxRequests(int maxRequests) {
+            if (maxRequests < 1) {
+                throw new IllegalArgumentException("maxRequests must be at least 1");
+            }
+
+            this.maxRequests = maxRequests;
+            this.httpClientOptionsSet = true;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of asynchronous and streaming requests that are executed concurrently for a single host.
+         * All requests go to the Mistral AI API host, so this effectively caps the concurrency as well. Defaults to 64.
+         *
+         * @param maxRequestsPerHost The maximum number of concurrent requests per host, has to be at least 1
+         * @return This builder instance
+         */
+        public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+            if (maxRequestsPerHost < 1) {
+                throw new IllegalArgumentException("maxRequestsPerHost must be at least 1");
+            }
+
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            this.httpClientOptionsSet = true;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of idle connections kept in the connection pool. Defaults to 16.
+         *
+         * @param maxIdleConnections The maximum number of idle connections, has to be zero or positive
+         * @return This builder instance
+         */
+        public Builder maxIdleConnections(int maxIdleConnections) {
+            if (maxIdleConnections < 0) {
+                throw new IllegalArgumentException("maxIdleConnections must be zero or positive");
+            }
+
+            this.maxIdleConnections = maxIdleConnections;
+            this.httpClientOptionsSet = true;
+            return this;
+        }
+
+        /**
+         * Sets how long idle connections are kept alive in the connection pool. Defaults to 5 minutes.
+         *
+         * @param keepAliveDuration The keep-alive duration of idle connections, has to be positive
+         * @return This builder instance
+         */
+        public Builder keepAliveDuration(@NonNull Duration keepAliveDuration) {
+            if (keepAliveDuration.isNegative() || keepAliveDuration.isZero()) {
+                throw new IllegalArgumentException("keepAliveDuration must be positive");
+            }
+
+            this.keepAliveDuration = keepAliveDuration;
+            this.httpClientOptionsSet = true;
+            return this;
+        }
+
+        /**
+         * Enables caching of chat completion responses. Only deterministic requests, with a temperature of 0 or a fixed random seed, are cached.
+         * Use {@link ResponseCache#inMemory(int, Duration)} or {@link ResponseCache#onDisk(java.nio.file.Path, long, Duration)} to create a cache.
+         *
+         * @param responseCache The response cache
+         * @return This builder instance
+         */
+        public Builder responseCache(@NonNull ResponseCache responseCache) {
+            this.responseCache = responseCache;
+            return this;
+        }
+
+        /**
+         * Enables answering chat completion requests with the response to an earlier request with a similar last user message.
+         * Every request that is not answered by the response cache costs an additional embedding request.
+         *
+         * @param semanticCache The semantic cache
+         * @return This builder instance
+         */
+        public Builder semanticCache(@NonNull SemanticCache semanticCache) {
+            this.semanticCache = semanticCache;
+            return this;
+        }
+
+        /**
+         * Enables sharing one HTTP call among identical chat completion and embedding requests that are made while one of them is in flight.
+         * All callers receive the same response object, so a request with a temperature above 0 returns the same completion to every caller.
+         * Disabled by default.
+         *
+         * @param requestCoalescing True to share the HTTP call of identical concurrent requests
+         * @return This builder instance
+         */
+        public Builder requestCoalescing(boolean requestCoalescing) {
+            this.requestCoalescing = requestCoalescing;
+            return this;
+        }
+
+        /**
+         * Retries failed requests with exponential backoff according to the retry policy, see {@link RetryPolicy}.
+         * Applies to blocking, asynchronous and streaming requests. Requests are not retried by default.
+         * To retry requests of a custom http client, add a {@link RetryInterceptor} to it instead.
+         *
+         * @param retryPolicy The retry policy, for example {@link RetryPolicy#defaults()}
+         * @return This builder instance
+         */
+        public Builder retryPolicy(@NonNull RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            this.httpClientOptionsSet = true;
+            return this;
+        }
+
+        /**
+         * Shapes the requests to the Mistral AI API to a requests per second and tokens per minute budget, see {@link RateLimiter}.
+         * Requests answered from a cache or shared with an identical request don't count against the budget.
+         *
+         * @param rateLimiter The rate limiter
+         * @return This builder instance
+         */
+        public Builder rateLimiter(@NonNull RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * Limits the number of concurrent requests to a limit that adapts to the latency and error rate of the Mistral AI API,
+         * see {@link AdaptiveConcurrencyInterceptor}. The limit stays below the maximum number of concurrent requests of the client.
+         * To limit the requests of a custom http client, add the interceptor to it instead.
+         *
+         * @param adaptiveConcurrency The adaptive concurrency limiter, which exposes the current limit
+         * @return This builder instance
+         */
+        public Builder adaptiveConcurrency(@NonNull AdaptiveConcurrencyInterceptor adaptiveConcurrency) {
+            this.adaptiveConcurrency = adaptiveConcurrency;
+            this.httpClientOptionsSet = true;
+            return this;
+        }
+
+        /**
+         * Rejects requests to an endpoint that is failing or slow, instead of waiting for timeouts, see {@link CircuitBreakerInterceptor}.
+         * Rejected requests fail with a {@link nl.dannyj.mistral.exceptions.MistralAPIException} caused by a
+         * {@link nl.dannyj.mistral.exceptions.CircuitBreakerOpenException}. A retried request counts as one call.
+         * To protect the requests of a custom http client, add the interceptor to it instead.
+         *
+         * @param circuitBreaker The circuit breaker, which exposes the state of every endpoint
+         * @return This builder instance
+         */
+        public Builder circuitBreaker(@NonNull CircuitBreakerInterceptor circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            this.httpClientOptionsSet = true;
+            return this;
+        }
+
+        /**
+         * Sends a second, identical request when a request takes longer than most recent requests to the same endpoint,
+         * and uses whichever response arrives first, see {@link RequestHedger}. Applies to blocking and asynchronous requests,
+         * not to streaming requests. Disabled by default, as every hedged request is billed.
+         *
+         * @param requestHedger The request hedger, which exposes the number of hedged requests
+         * @return This builder instance
+         */
+        public Builder hedging(@NonNull RequestHedger requestHedger) {
+            this.requestHedger = requestHedger;
+            return this;
+        }
+
+        /**
+         * Builds the MistralClient.
+         *
+         * @return A new MistralClient
+         * @throws IllegalStateException if a custom http client is combined with timeout, concurrency or retry options
+         * @throws NullPointerException  if no API key is set and the "MISTRAL_API_KEY" environment variable is not set
+         */
+        public MistralClient build() {
+            if (httpClient != null && httpClientOptionsSet) {
+                throw new IllegalStateException("Timeout, concurrency and retry options can't be combined with a custom http client, configure them on the OkHttpClient instead");
+            }
+
+            return new MistralClient(this);
+        }
+    }
 }
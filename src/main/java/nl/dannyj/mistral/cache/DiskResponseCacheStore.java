@@ -0,0 +1,230 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.cache;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * A {@link ResponseCacheStore} that stores every entry in its own file in a directory, so cached responses survive restarts.
+ * The total size of the files is bounded; when it is exceeded, the least recently used entries are deleted.
+ * Every file starts with the expiry time of the entry (milliseconds since the epoch, 8 bytes), followed by the value.
+ * Files are written to a temporary file first and then moved into place, so a crash never leaves a partial entry.
+ */
+public class DiskResponseCacheStore implements ResponseCacheStore {
+
+    private static final String SUFFIX = ".entry";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Pattern KEY_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> sizes = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    /**
+     * Constructor that initializes a DiskResponseCacheStore. Entries stored in the directory by a previous run are reused.
+     *
+     * @param directory The directory to store the entries in, created if it does not exist
+     * @param maxBytes  The maximum total size of the entries in bytes, has to be at least 1
+     * @throws UncheckedIOException if the directory can't be created or read
+     */
+    public DiskResponseCacheStore(@NonNull Path directory, long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be at least 1");
+        }
+
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        try {
+            Files.createDirectories(directory);
+            loadEntries();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the response cache directory " + directory, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UncheckedIOException if the entry can't be read
+     */
+    @Override
+    public synchronized byte[] get(@NonNull String key) {
+        // get instead of containsKey, so the lookup counts as an access for the LRU order
+        if (sizes.get(key) == null) {
+            return null;
+        }
+
+        Path file = entryFile(key);
+
+        try {
+            byte[] content = Files.readAllBytes(file);
+
+            if (content.length < Long.BYTES || ByteBuffer.wrap(content).getLong() <= System.currentTimeMillis()) {
+                delete(key);
+                return null;
+            }
+
+            byte[] value = new byte[content.length - Long.BYTES];
+            System.arraycopy(content, Long.BYTES, value, 0, value.length);
+            return value;
+        } catch (IOException e) {
+            forget(key);
+            throw new UncheckedIOException("Failed to read the response cache entry " + file, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UncheckedIOException if the entry can't be written
+     */
+    @Override
+    public synchronized void put(@NonNull String key, @NonNull byte[] value, @NonNull Duration ttl) {
+        Path file = entryFile(key);
+        Path tempFile = directory.resolve(key + TEMP_SUFFIX);
+        long size = (long) Long.BYTES + value.length;
+
+        if (size > maxBytes) {
+            return;
+        }
+
+        ByteBuffer content = ByteBuffer.allocate((int) size);
+        content.putLong(System.currentTimeMillis() + ttl.toMillis()).put(value);
+
+        try {
+            Files.write(tempFile, content.array());
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the response cache entry " + file, e);
+        }
+
+        forget(key);
+        sizes.put(key, size);
+        totalBytes += size;
+        evict();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UncheckedIOException if the entry can't be deleted
+     */
+    @Override
+    public synchronized void remove(@NonNull String key) {
+        if (sizes.containsKey(key)) {
+            delete(key);
+        }
+    }
+
+    /**
+     * Returns the total size of the stored entries in bytes.
+     *
+     * @return the size of the entries in bytes
+     */
+    public synchronized long sizeInBytes() {
+        return totalBytes;
+    }
+
+    private void loadEntries() throws IOException {
+        List<Path> files = new ArrayList<>();
+
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).forEach(files::add);
+        }
+
+        Map<Path, FileTime> modified = new HashMap<>();
+        for (Path file : files) {
+            modified.put(file, Files.getLastModifiedTime(file));
+        }
+
+        // The least recently written entries are evicted first
+        files.sort(Comparator.comparing(modified::get));
+
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long size = Files.size(file);
+
+            sizes.put(name.substring(0, name.length() - SUFFIX.length()), size);
+            totalBytes += size;
+        }
+
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = sizes.entrySet().iterator();
+
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+
+            try {
+                Files.deleteIfExists(entryFile(eldest.getKey()));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to delete the response cache entry " + eldest.getKey(), e);
+            }
+
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private void delete(String key) {
+        try {
+            Files.deleteIfExists(entryFile(key));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete the response cache entry " + key, e);
+        } finally {
+            forget(key);
+        }
+    }
+
+    private void forget(String key) {
+        Long size = sizes.remove(key);
+
+        if (size != null) {
+            totalBytes -= size;
+        }
+    }
+
+    private Path entryFile(String key) {
+        if (!KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid response cache key: " + key);
+        }
+
+        return directory.resolve(key + SUFFIX);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.cache;
+
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link ResponseCacheStore} that keeps a bounded number of entries in memory.
+ * When the store is full, the least recently used entry is evicted. Expired entries are removed when they are accessed.
+ */
+public class InMemoryResponseCacheStore implements ResponseCacheStore {
+
+    private final int maxEntries;
+    private final LinkedHashMap<String, Entry> entries;
+
+    /**
+     * Constructor that initializes an empty InMemoryResponseCacheStore.
+     *
+     * @param maxEntries The maximum number of entries, has to be at least 1
+     */
+    public InMemoryResponseCacheStore(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > InMemoryResponseCacheStore.this.maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public synchronized byte[] get(@NonNull String key) {
+        Entry entry = entries.get(key);
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.expiresAtMillis <= System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+
+        return entry.value;
+    }
+
+    @Override
+    public synchronized void put(@NonNull String key, @NonNull byte[] value, @NonNull Duration ttl) {
+        entries.put(key, new Entry(value, System.currentTimeMillis() + ttl.toMillis()));
+    }
+
+    @Override
+    public synchronized void remove(@NonNull String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Returns the number of stored entries, including expired entries that were not accessed yet.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+
+        private final byte[] value;
+        private final long expiresAtMillis;
+
+        private Entry(byte[] value, long expiresAtMillis) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.cache;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import lombok.NonNull;
+import nl.dannyj.mistral.exceptions.InvalidJsonException;
+import nl.dannyj.mistral.models.completion.ChatCompletionRequest;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Calculates a canonical hash of requests to the Mistral AI API.
+ * Requests are serialized with alphabetically sorted properties and map entries, so equal requests always have the same hash,
+ * independent of the declaration order of fields or the iteration order of maps. The hash is the SHA-256 of the endpoint and the serialized request.
+ */
+public class RequestHasher {
+
+    private final ObjectMapper canonicalMapper;
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor that initializes a RequestHasher.
+     *
+     * @param objectMapper The ObjectMapper used to serialize requests. It is copied, so the original is not modified.
+     */
+    @SuppressWarnings("deprecation")
+    public RequestHasher(@NonNull ObjectMapper objectMapper) {
+        this.canonicalMapper = objectMapper.copy()
+                .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+                .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+                .configure(SerializationFeature.INDENT_OUTPUT, false);
+    }
+
+    /**
+     * Calculates the canonical hash of a request.
+     *
+     * @param endpoint The endpoint the request is sent to
+     * @param request  The request
+     * @return The lowercase hexadecimal SHA-256 hash
+     * @throws InvalidJsonException if the request can't be serialized
+     */
+    public String hash(@NonNull String endpoint, @NonNull Object request) {
+        Buffer buffer = new Buffer();
+        buffer.writeUtf8(endpoint).writeByte(0);
+
+        try {
+            writers.computeIfAbsent(request.getClass(), type -> canonicalMapper.writerFor(type).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET))
+                    .writeValue(buffer.outputStream(), request);
+        } catch (IOException e) {
+            throw new InvalidJsonException("Failed to convert request to JSON", e);
+        }
+
+        return buffer.sha256().hex();
+    }
+
+    /**
+     * Calculates the canonical hash of a chat completion request without its last message.
+     * Requests that only differ in their last message have the same hash, which is used to scope a {@link SemanticCache}.
+     *
+     * @param endpoint The endpoint the request is sent to
+     * @param request  The chat completion request
+     * @return The lowercase hexadecimal SHA-256 hash
+     * @throws InvalidJsonException if the request can't be serialized
+     */
+    public String hashWithoutLastMessage(@NonNull String endpoint, @NonNull ChatCompletionRequest request) {
+        JsonNode tree;
+
+        try {
+            tree = canonicalMapper.valueToTree(request);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidJsonException("Failed to convert request to JSON", e);
+        }
+
+        if (tree.get("messages") instanceof ArrayNode messages && !messages.isEmpty()) {
+            messages.remove(messages.size() - 1);
+        }
+
+        return hash(endpoint, tree);
+    }
+}
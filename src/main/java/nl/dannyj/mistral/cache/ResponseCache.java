@@ -0,0 +1,203 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import nl.dannyj.mistral.models.completion.ChatCompletionRequest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An opt-in cache of chat completion responses, configured with {@code MistralClient.builder().responseCache(...)}.
+ * Only deterministic requests are cached: requests with a temperature of 0 or a fixed random seed.
+ * Responses are keyed by the canonical hash of the request (see {@link RequestHasher}) and stored as JSON in a {@link ResponseCacheStore}.
+ * <p>
+ * A failing store never fails a request: errors while reading an entry are treated as a miss and errors while writing are ignored.
+ * They are counted in the {@link Stats}.
+ */
+public class ResponseCache {
+
+    private final ResponseCacheStore store;
+
+    /**
+     * How long a cached response is returned.
+     *
+     * @return the time to live of cached responses
+     */
+    @Getter
+    private final Duration ttl;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * Constructor that initializes a ResponseCache with a custom store.
+     *
+     * @param store The store for the cached responses
+     * @param ttl   How long a cached response is returned, has to be positive
+     */
+    public ResponseCache(@NonNull ResponseCacheStore store, @NonNull Duration ttl) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+
+        this.store = store;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Creates a ResponseCache that keeps responses in memory.
+     *
+     * @param maxEntries The maximum number of cached responses, has to be at least 1
+     * @param ttl        How long a cached response is returned, has to be positive
+     * @return A new ResponseCache
+     */
+    public static ResponseCache inMemory(int maxEntries, @NonNull Duration ttl) {
+        return new ResponseCache(new InMemoryResponseCacheStore(maxEntries), ttl);
+    }
+
+    /**
+     * Creates a ResponseCache that stores responses in a directory.
+     *
+     * @param directory The directory to store the responses in, created if it does not exist
+     * @param maxBytes  The maximum total size of the cached responses in bytes, has to be at least 1
+     * @param ttl       How long a cached response is returned, has to be positive
+     * @return A new ResponseCache
+     * @throws java.io.UncheckedIOException if the directory can't be created or read
+     */
+    public static ResponseCache onDisk(@NonNull Path directory, long maxBytes, @NonNull Duration ttl) {
+        return new ResponseCache(new DiskResponseCacheStore(directory, maxBytes), ttl);
+    }
+
+    /**
+     * Checks whether the response to a request can be cached, which is the case when the request is deterministic:
+     * it has a temperature of 0 or a fixed random seed and is not streamed.
+     *
+     * @param request The chat completion request
+     * @return true if the response can be cached
+     */
+    public boolean isCacheable(@NonNull ChatCompletionRequest request) {
+        if (Boolean.TRUE.equals(request.getStream())) {
+            return false;
+        }
+
+        return (request.getTemperature() != null && request.getTemperature() == 0) || request.getRandomSeed() != null;
+    }
+
+    /**
+     * Looks up a serialized response.
+     *
+     * @param key The canonical hash of the request
+     * @return The serialized response, or null on a miss
+     */
+    public byte[] get(@NonNull String key) {
+        byte[] value;
+
+        try {
+            value = store.get(key);
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+            value = null;
+        }
+
+        (value != null ? hits : misses).incrementAndGet();
+        return value;
+    }
+
+    /**
+     * Stores a serialized response.
+     *
+     * @param key   The canonical hash of the request
+     * @param value The serialized response
+     */
+    public void put(@NonNull String key, @NonNull byte[] value) {
+        try {
+            store.put(key, value, ttl);
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes a cached response, for example because it could not be deserialized.
+     *
+     * @param key The canonical hash of the request
+     */
+    public void remove(@NonNull String key) {
+        try {
+            store.remove(key);
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this cache.
+     *
+     * @return the cache statistics
+     */
+    public Stats getStats() {
+        return new Stats(hits.get(), misses.get(), errors.get());
+    }
+
+    /**
+     * Statistics of a ResponseCache.
+     */
+    @Getter
+    @AllArgsConstructor
+    @ToString
+    public static class Stats {
+
+        /**
+         * The number of requests answered from the cache.
+         *
+         * @return the number of hits
+         */
+        private final long hits;
+
+        /**
+         * The number of cacheable requests that were sent to the Mistral AI API.
+         *
+         * @return the number of misses
+         */
+        private final long misses;
+
+        /**
+         * The number of failed store operations.
+         *
+         * @return the number of errors
+         */
+        private final long errors;
+
+        /**
+         * The fraction of cacheable requests answered from the cache.
+         *
+         * @return the hit rate between 0.0 and 1.0, or 0.0 if nothing was looked up yet
+         */
+        public double getHitRate() {
+            long lookups = hits + misses;
+
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+    }
+}
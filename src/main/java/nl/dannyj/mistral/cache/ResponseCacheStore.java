@@ -0,0 +1,50 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.cache;
+
+import java.time.Duration;
+
+/**
+ * Storage of a {@link ResponseCache}. Entries are serialized responses, keyed by the canonical hash of the request.
+ * Implementations must be thread-safe and are responsible for expiring entries and bounding their size.
+ */
+public interface ResponseCacheStore {
+
+    /**
+     * Returns the entry for a key.
+     *
+     * @param key The key of the entry, a lowercase hexadecimal hash
+     * @return The stored value, or null if the key is not stored or the entry has expired
+     */
+    byte[] get(String key);
+
+    /**
+     * Stores an entry, replacing an existing entry with the same key.
+     *
+     * @param key   The key of the entry, a lowercase hexadecimal hash
+     * @param value The value to store
+     * @param ttl   How long the entry may be returned by {@link #get(String)}
+     */
+    void put(String key, byte[] value, Duration ttl);
+
+    /**
+     * Removes an entry. Does nothing if the key is not stored.
+     *
+     * @param key The key of the entry
+     */
+    void remove(String key);
+}
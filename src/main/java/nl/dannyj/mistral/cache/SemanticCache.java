@@ -0,0 +1,315 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import nl.dannyj.mistral.embedding.vector.VectorMath;
+import nl.dannyj.mistral.models.completion.ChatCompletionRequest;
+import nl.dannyj.mistral.models.completion.ChatCompletionResponse;
+import nl.dannyj.mistral.models.completion.content.ContentChunk;
+import nl.dannyj.mistral.models.completion.content.TextChunk;
+import nl.dannyj.mistral.models.completion.message.ChatMessage;
+import nl.dannyj.mistral.models.completion.message.MessageRole;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An opt-in cache that answers chat completion requests with the response to a similar earlier request, configured with
+ * {@code MistralClient.builder().semanticCache(...)}.
+ * <p>
+ * The last message of a request, which has to be a text-only user message, is embedded with {@code createEmbedding}.
+ * When an earlier request had a prompt with a cosine similarity of at least the threshold, its response is returned.
+ * Only requests that are identical apart from their last message are compared, so the model, the parameters and the
+ * earlier messages of the conversation have to match exactly (see {@link RequestHasher#hashWithoutLastMessage}).
+ * <p>
+ * Cached responses are kept in memory and shared between callers, so they should not be modified. The cache is thread-safe.
+ * Lookups scan all cached prompts, which takes a few milliseconds for 10,000 entries.
+ */
+public class SemanticCache {
+
+    /**
+     * The model used to embed prompts.
+     *
+     * @return the ID of the embedding model
+     */
+    @Getter
+    private final String embeddingModel;
+
+    /**
+     * The minimum cosine similarity between two prompts to return a cached response.
+     *
+     * @return the similarity threshold
+     */
+    @Getter
+    private final double similarityThreshold;
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LinkedHashMap<Long, Entry> entries;
+    private long nextId;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong lookupNanos = new AtomicLong();
+
+    /**
+     * Constructor that initializes an empty SemanticCache.
+     *
+     * @param embeddingModel      The model used to embed prompts, for example "mistral-embed"
+     * @param similarityThreshold The minimum cosine similarity between two prompts to return a cached response, between 0.0 and 1.0
+     * @param maxEntries          The maximum number of cached responses, has to be at least 1. The least recently used response is evicted first.
+     * @param ttl                 How long a cached response is returned, has to be positive
+     */
+    public SemanticCache(@NonNull String embeddingModel, double similarityThreshold, int maxEntries, @NonNull Duration ttl) {
+        if (similarityThreshold < 0 || similarityThreshold > 1) {
+            throw new IllegalArgumentException("similarityThreshold must be between 0.0 and 1.0");
+        }
+
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+
+        this.embeddingModel = embeddingModel;
+        this.similarityThreshold = similarityThreshold;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttl.toMillis();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > SemanticCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the prompt of a request that is embedded for the lookup.
+     *
+     * @param request The chat completion request
+     * @return The text of the last message if it is a text-only user message, otherwise null, in which case the request is not cached
+     */
+    public String promptOf(@NonNull ChatCompletionRequest request) {
+        List<ChatMessage> messages = request.getMessages();
+
+        if (messages == null || messages.isEmpty()) {
+            return null;
+        }
+
+        ChatMessage last = messages.get(messages.size() - 1);
+        if (last == null || last.getRole() != MessageRole.USER || last.getContent() == null) {
+            return null;
+        }
+
+        for (ContentChunk chunk : last.getContent()) {
+            if (!(chunk instanceof TextChunk)) {
+                return null;
+            }
+        }
+
+        String text = last.getTextContent();
+        return text == null || text.isBlank() ? null : text;
+    }
+
+    /**
+     * Finds the response to the most similar cached prompt and records the lookup in the statistics.
+     *
+     * @param scope           The hash of the request without its last message
+     * @param embedding       The embedding of the prompt
+     * @param startedAtNanos  The {@link System#nanoTime()} at which the lookup started, including embedding the prompt
+     * @return The cached response, or null if no cached prompt is similar enough
+     */
+    public ChatCompletionResponse get(@NonNull String scope, @NonNull float[] embedding, long startedAtNanos) {
+        float[] query = normalize(embedding);
+        ChatCompletionResponse response = find(scope, query);
+
+        lookupNanos.addAndGet(System.nanoTime() - startedAtNanos);
+        (response != null ? hits : misses).incrementAndGet();
+        return response;
+    }
+
+    /**
+     * Stores the response to a prompt.
+     *
+     * @param scope     The hash of the request without its last message
+     * @param embedding The embedding of the prompt
+     * @param response  The response to the request
+     */
+    public synchronized void put(@NonNull String scope, @NonNull float[] embedding, @NonNull ChatCompletionResponse response) {
+        entries.put(nextId++, new Entry(scope, normalize(embedding), response, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * Records a lookup that failed, for example because the prompt could not be embedded. The request is then sent without the cache.
+     */
+    public void recordError() {
+        errors.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of cached responses, including expired responses that were not removed yet.
+     *
+     * @return the number of cached responses
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this cache.
+     *
+     * @return the cache statistics
+     */
+    public Stats getStats() {
+        return new Stats(hits.get(), misses.get(), errors.get(), lookupNanos.get());
+    }
+
+    private synchronized ChatCompletionResponse find(String scope, float[] query) {
+        long now = System.currentTimeMillis();
+        Long bestId = null;
+        Entry best = null;
+        float bestSimilarity = (float) similarityThreshold;
+
+        Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Entry> mapEntry = iterator.next();
+            Entry entry = mapEntry.getValue();
+
+            if (entry.expiresAtMillis <= now) {
+                iterator.remove();
+                continue;
+            }
+
+            if (!entry.scope.equals(scope) || entry.embedding.length != query.length) {
+                continue;
+            }
+
+            float similarity = VectorMath.dot(query, entry.embedding);
+            if (similarity >= bestSimilarity) {
+                bestSimilarity = similarity;
+                bestId = mapEntry.getKey();
+                best = entry;
+            }
+        }
+
+        if (best == null) {
+            return null;
+        }
+
+        // Marks the entry as recently used
+        entries.get(bestId);
+        return best.response;
+    }
+
+    private static float[] normalize(float[] embedding) {
+        float norm = (float) Math.sqrt(VectorMath.dot(embedding, embedding));
+        float[] normalized = embedding.clone();
+
+        if (norm > 0) {
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] /= norm;
+            }
+        }
+
+        return normalized;
+    }
+
+    private static final class Entry {
+
+        private final String scope;
+        private final float[] embedding;
+        private final ChatCompletionResponse response;
+        private final long expiresAtMillis;
+
+        private Entry(String scope, float[] embedding, ChatCompletionResponse response, long expiresAtMillis) {
+            this.scope = scope;
+            this.embedding = embedding;
+            this.response = response;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    /**
+     * Statistics of a SemanticCache.
+     */
+    @Getter
+    @AllArgsConstructor
+    @ToString
+    public static class Stats {
+
+        /**
+         * The number of requests answered from the cache.
+         *
+         * @return the number of hits
+         */
+        private final long hits;
+
+        /**
+         * The number of lookups without a similar enough cached prompt.
+         *
+         * @return the number of misses
+         */
+        private final long misses;
+
+        /**
+         * The number of lookups that failed, for example because the prompt could not be embedded.
+         *
+         * @return the number of errors
+         */
+        private final long errors;
+
+        /**
+         * The total time spent on successful lookups, including embedding the prompts.
+         *
+         * @return the total lookup time in nanoseconds
+         */
+        private final long totalLookupNanos;
+
+        /**
+         * The fraction of successful lookups that were answered from the cache.
+         *
+         * @return the hit rate between 0.0 and 1.0, or 0.0 if nothing was looked up yet
+         */
+        public double getHitRate() {
+            long lookups = hits + misses;
+
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        /**
+         * The average time of a successful lookup, including embedding the prompt.
+         *
+         * @return the average lookup latency, or zero if nothing was looked up yet
+         */
+        public Duration getAverageLookupLatency() {
+            long lookups = hits + misses;
+
+            return lookups == 0 ? Duration.ZERO : Duration.ofNanos(totalLookupNanos / lookups);
+        }
+    }
+}
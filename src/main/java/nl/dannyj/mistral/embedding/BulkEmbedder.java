@@ -0,0 +1,367 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding;
+
+import lombok.NonNull;
+import nl.dannyj.mistral.MistralClient;
+import nl.dannyj.mistral.exceptions.CircuitBreakerOpenException;
+import nl.dannyj.mistral.exceptions.MistralAPIException;
+import nl.dannyj.mistral.exceptions.UnexpectedResponseException;
+import nl.dannyj.mistral.exceptions.UnsuccessfulResponseException;
+import nl.dannyj.mistral.models.embedding.EmbeddingRequest;
+import nl.dannyj.mistral.models.embedding.EmbeddingResponse;
+import nl.dannyj.mistral.models.embedding.FloatEmbedding;
+import nl.dannyj.mistral.models.usage.Usage;
+import nl.dannyj.mistral.net.CancellableFuture;
+import nl.dannyj.mistral.utils.TokenEstimator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates embeddings for input lists that are too large for a single {@link EmbeddingRequest}.
+ * The input is split into shards that are bounded by the number of inputs and the estimated number of tokens.
+ * The shards are sent concurrently, up to the configured parallelism, and a failed shard is retried on its own with an exponential backoff.
+ * The results are reassembled into a single {@link EmbeddingResponse} with the embeddings in input order and the usage of all shards combined.
+ */
+public class BulkEmbedder {
+
+    private static final int DEFAULT_MAX_BATCH_SIZE = 128;
+    private static final int DEFAULT_MAX_BATCH_TOKENS = 16384;
+    private static final int DEFAULT_PARALLELISM = 4;
+    private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final long RETRY_BACKOFF_MILLIS = 500;
+    private static final Set<Integer> RETRYABLE_STATUS_CODES = Set.of(408, 429, 500, 502, 503, 504);
+
+    private final MistralClient client;
+    private final int maxBatchSize;
+    private final int maxBatchTokens;
+    private final int parallelism;
+    private final int maxRetries;
+
+    /**
+     * Constructor that initializes the BulkEmbedder with the default limits: shards of at most 128 inputs and 16384 estimated tokens, 4 shards in parallel and 3 retries per shard.
+     *
+     * @param client The MistralClient used to create the embeddings
+     */
+    public BulkEmbedder(@NonNull MistralClient client) {
+        this(client, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_TOKENS, DEFAULT_PARALLELISM, DEFAULT_MAX_RETRIES);
+    }
+
+    /**
+     * Constructor that initializes the BulkEmbedder with custom limits.
+     *
+     * @param client         The MistralClient used to create the embeddings
+     * @param maxBatchSize   The maximum number of inputs per shard, has to be at least 1
+     * @param maxBatchTokens The maximum number of estimated tokens per shard, has to be at least 1. A single input above this budget is sent as its own shard.
+     * @param parallelism    The maximum number of shards that are sent concurrently, has to be at least 1
+     * @param maxRetries     The number of times a failed shard is retried, has to be zero or positive
+     */
+    public BulkEmbedder(@NonNull MistralClient client, int maxBatchSize, int maxBatchTokens, int parallelism, int maxRetries) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+
+        if (maxBatchTokens < 1) {
+            throw new IllegalArgumentException("maxBatchTokens must be at least 1");
+        }
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries must be zero or positive");
+        }
+
+        this.client = client;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchTokens = maxBatchTokens;
+        this.parallelism = parallelism;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Creates embeddings for all inputs of the request.
+     * This is a blocking method.
+     *
+     * @param request The request containing the model and the inputs to embed. The number of inputs is not limited.
+     * @return The embeddings of all inputs in input order, with the combined usage of all shards
+     * @throws MistralAPIException         if a shard still fails after all retries
+     * @throws UnexpectedResponseException if an unexpected response is received from the Mistral AI API
+     */
+    public EmbeddingResponse embed(@NonNull EmbeddingRequest request) {
+        CancellableFuture<EmbeddingResponse> future = embedAsync(request);
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new MistralAPIException("Interrupted while waiting for the embeddings", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new MistralAPIException(e.getCause());
+        }
+    }
+
+    /**
+     * Creates embeddings for all inputs of the request.
+     * This is a non-blocking/asynchronous method.
+     *
+     * @param request The request containing the model and the inputs to embed. The number of inputs is not limited.
+     * @return A CancellableFuture that will complete with the embeddings of all inputs in input order, with the combined usage of all shards.
+     * Cancelling it cancels the shards that are in flight and stops sending the remaining ones.
+     */
+    public CancellableFuture<EmbeddingResponse> embedAsync(@NonNull EmbeddingRequest request) {
+        if (request.getInput() == null || request.getInput().isEmpty()) {
+            CancellableFuture<EmbeddingResponse> failed = new CancellableFuture<>(() -> {
+            });
+            failed.completeExceptionally(new IllegalArgumentException("The request must contain at least one input"));
+            return failed;
+        }
+
+        BulkJob job = new BulkJob(request, split(request.getInput()));
+        job.start();
+
+        return job.result;
+    }
+
+    /**
+     * Splits the inputs into shards bounded by the maximum number of inputs and estimated tokens.
+     *
+     * @param inputs The inputs to split
+     * @return The start offsets of the shards, followed by the size of the input list
+     */
+    private int[] split(List<String> inputs) {
+        int[] offsets = new int[inputs.size() + 1];
+        int shardCount = 0;
+        int shardSize = 0;
+        int shardTokens = 0;
+
+        for (int i = 0; i < inputs.size(); i++) {
+            int tokens = TokenEstimator.estimateTokens(inputs.get(i));
+
+            if (shardSize > 0 && (shardSize >= maxBatchSize || shardTokens + tokens > maxBatchTokens)) {
+                shardSize = 0;
+                shardTokens = 0;
+            }
+
+            if (shardSize == 0) {
+                offsets[shardCount++] = i;
+            }
+
+            shardSize++;
+            shardTokens += tokens;
+        }
+
+        offsets[shardCount] = inputs.size();
+        return Arrays.copyOf(offsets, shardCount + 1);
+    }
+
+    /**
+     * Returns whether a failed shard may succeed when it is sent again: on a 408, 429 or 5xx response, or an I/O error while sending it.
+     * Other responses, like validation errors, and requests that the circuit breaker rejected fail the same way again.
+     *
+     * @param error The error of the shard
+     * @return True if the shard should be retried
+     */
+    private static boolean isRetryable(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+
+        if (cause instanceof UnsuccessfulResponseException unsuccessful) {
+            return RETRYABLE_STATUS_CODES.contains(unsuccessful.getStatusCode());
+        }
+
+        return cause instanceof MistralAPIException
+                && cause.getCause() instanceof IOException
+                && !(cause.getCause() instanceof CircuitBreakerOpenException);
+    }
+
+    /**
+     * The state of a single bulk request.
+     */
+    private final class BulkJob {
+
+        private final EmbeddingRequest request;
+        private final int[] shardOffsets;
+        private final FloatEmbedding[] embeddings;
+        private final AtomicInteger nextShard = new AtomicInteger();
+        private final AtomicInteger remainingShards;
+        private final Set<CancellableFuture<EmbeddingResponse>> inFlight = ConcurrentHashMap.newKeySet();
+        private final CancellableFuture<EmbeddingResponse> result = new CancellableFuture<>(this::cancelShards);
+
+        private String id;
+        private String object;
+        private String model;
+        private int promptTokens;
+        private int totalTokens;
+        private int completionTokens;
+        private int duplicateInputs;
+        private int savedTokens;
+
+        private BulkJob(EmbeddingRequest request, int[] shardOffsets) {
+            this.request = request;
+            this.shardOffsets = shardOffsets;
+            this.embeddings = new FloatEmbedding[request.getInput().size()];
+            this.remainingShards = new AtomicInteger(shardOffsets.length - 1);
+        }
+
+        private void start() {
+            int initialShards = Math.min(parallelism, shardOffsets.length - 1);
+
+            for (int i = 0; i < initialShards; i++) {
+                sendNextShard();
+            }
+        }
+
+        private void sendNextShard() {
+            int shard = nextShard.getAndIncrement();
+
+            if (shard < shardOffsets.length - 1 && !result.isDone()) {
+                sendShard(shard, 0);
+            }
+        }
+
+        private void sendShard(int shard, int attempt) {
+            // A retry is scheduled with a delay, in which the job may have failed or been cancelled
+            if (result.isDone()) {
+                return;
+            }
+
+            int start = shardOffsets[shard];
+            int end = shardOffsets[shard + 1];
+
+            EmbeddingRequest shardRequest = EmbeddingRequest.builder()
+                    .model(request.getModel())
+                    .input(new ArrayList<>(request.getInput().subList(start, end)))
+                    .build();
+
+            CancellableFuture<EmbeddingResponse> shardResult = client.createEmbeddingAsync(shardRequest);
+            inFlight.add(shardResult);
+
+            // The job may have been cancelled before the shard was added, in which case cancelShards did not see it
+            if (result.isCancelled()) {
+                shardResult.cancel(true);
+            }
+
+            shardResult.whenComplete((response, error) -> {
+                inFlight.remove(shardResult);
+
+                if (result.isDone()) {
+                    return;
+                }
+
+                if (error != null) {
+                    if (attempt < maxRetries && isRetryable(error)) {
+                        long backoffMillis = RETRY_BACKOFF_MILLIS << attempt;
+
+                        CompletableFuture.delayedExecutor(backoffMillis, TimeUnit.MILLISECONDS)
+                                .execute(() -> sendShard(shard, attempt + 1));
+                    } else {
+                        fail(error);
+                    }
+
+                    return;
+                }
+
+                try {
+                    store(start, end, response);
+                } catch (RuntimeException e) {
+                    fail(e);
+                    return;
+                }
+
+                if (remainingShards.decrementAndGet() == 0) {
+                    complete();
+                } else {
+                    sendNextShard();
+                }
+            });
+        }
+
+        private synchronized void store(int start, int end, EmbeddingResponse response) {
+            if (response.getData() != null) {
+                for (FloatEmbedding embedding : response.getData()) {
+                    int index = start + embedding.getIndex();
+
+                    if (embedding.getIndex() < 0 || index >= end) {
+                        throw new UnexpectedResponseException("Received an embedding with an unexpected index from the Mistral AI API: " + embedding.getIndex());
+                    }
+
+                    embeddings[index] = FloatEmbedding.wrap(embedding.getObject(), embedding.getEmbeddingArray(), index);
+                }
+            }
+
+            for (int i = start; i < end; i++) {
+                if (embeddings[i] == null) {
+                    throw new UnexpectedResponseException("The Mistral AI API did not return an embedding for input " + i);
+                }
+            }
+
+            if (id == null) {
+                id = response.getId();
+                object = response.getObject();
+                model = response.getModel();
+            }
+
+            Usage usage = response.getUsage();
+
+            if (usage != null) {
+                promptTokens += usage.getPromptTokens();
+                totalTokens += usage.getTotalTokens();
+                completionTokens += usage.getCompletionTokens();
+            }
+
+            duplicateInputs += response.getDuplicateInputs();
+            savedTokens += response.getSavedTokens();
+        }
+
+        /**
+         * Fails the job and cancels the other shards, so they stop using connections and tokens for a result that is not used.
+         *
+         * @param error The error of the job
+         */
+        private void fail(Throwable error) {
+            if (result.completeExceptionally(error)) {
+                cancelShards();
+            }
+        }
+
+        private void cancelShards() {
+            inFlight.forEach(shardResult -> shardResult.cancel(true));
+        }
+
+        private synchronized void complete() {
+            Usage usage = new Usage(promptTokens, totalTokens, completionTokens);
+
+            result.complete(new EmbeddingResponse(id, object, List.of(embeddings), model, usage, duplicateInputs, savedTokens));
+        }
+    }
+}
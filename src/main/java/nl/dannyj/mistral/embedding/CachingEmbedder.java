@@ -0,0 +1,150 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding;
+
+import lombok.NonNull;
+import nl.dannyj.mistral.MistralClient;
+import nl.dannyj.mistral.exceptions.MistralAPIException;
+import nl.dannyj.mistral.exceptions.UnexpectedResponseException;
+import nl.dannyj.mistral.models.embedding.EmbeddingRequest;
+import nl.dannyj.mistral.models.embedding.EmbeddingResponse;
+import nl.dannyj.mistral.models.embedding.FloatEmbedding;
+import nl.dannyj.mistral.models.usage.Usage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Creates embeddings through an {@link EmbeddingCache}.
+ * Inputs that are in the cache are served locally, only the cache misses are sent to the Mistral AI API in a single {@link EmbeddingRequest}.
+ * The response contains the embeddings of all inputs in input order. Its usage only covers the inputs that were sent to the API.
+ */
+public class CachingEmbedder {
+
+    private static final String EMBEDDING_OBJECT = "embedding";
+    private static final String LIST_OBJECT = "list";
+
+    private final MistralClient client;
+    private final EmbeddingCache cache;
+
+    /**
+     * Constructor that initializes the CachingEmbedder with the client and the cache to use.
+     *
+     * @param client The MistralClient used to create the embeddings of cache misses
+     * @param cache  The cache to serve and store the embeddings
+     */
+    public CachingEmbedder(@NonNull MistralClient client, @NonNull EmbeddingCache cache) {
+        this.client = client;
+        this.cache = cache;
+    }
+
+    /**
+     * Creates the embeddings for the inputs of the request, serving cached inputs locally.
+     * This is a blocking method.
+     *
+     * @param request The request to create an embedding. See {@link EmbeddingRequest}.
+     * @return The embeddings of all inputs in input order
+     * @throws MistralAPIException         if the request for the cache misses fails
+     * @throws UnexpectedResponseException if an unexpected response is received from the Mistral AI API
+     */
+    public EmbeddingResponse createEmbedding(@NonNull EmbeddingRequest request) {
+        try {
+            return createEmbeddingAsync(request).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MistralAPIException("Interrupted while waiting for the embeddings", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new MistralAPIException(e.getCause());
+        }
+    }
+
+    /**
+     * Creates the embeddings for the inputs of the request, serving cached inputs locally.
+     * This is a non-blocking/asynchronous method.
+     *
+     * @param request The request to create an embedding. See {@link EmbeddingRequest}.
+     * @return A CompletableFuture that will complete with the embeddings of all inputs in input order
+     */
+    public CompletableFuture<EmbeddingResponse> createEmbeddingAsync(@NonNull EmbeddingRequest request) {
+        if (request.getModel() == null || request.getInput() == null) {
+            // Let the client report the validation errors
+            return client.createEmbeddingAsync(request);
+        }
+
+        String model = request.getModel();
+        List<String> inputs = request.getInput();
+        float[][] embeddings = new float[inputs.size()][];
+        List<String> missingInputs = new ArrayList<>();
+        List<Integer> missingPositions = new ArrayList<>();
+
+        for (int i = 0; i < inputs.size(); i++) {
+            embeddings[i] = cache.get(model, inputs.get(i));
+
+            if (embeddings[i] == null) {
+                missingInputs.add(inputs.get(i));
+                missingPositions.add(i);
+            }
+        }
+
+        if (missingInputs.isEmpty()) {
+            return CompletableFuture.completedFuture(buildResponse(null, model, embeddings, new Usage(0, 0, 0)));
+        }
+
+        EmbeddingRequest missRequest = EmbeddingRequest.builder()
+                .model(model)
+                .input(missingInputs)
+                .build();
+
+        return client.createEmbeddingAsync(missRequest).thenApply(response -> {
+            if (response.getData() != null) {
+                for (FloatEmbedding embedding : response.getData()) {
+                    int missIndex = embedding.getIndex();
+
+                    if (missIndex < 0 || missIndex >= missingInputs.size() || embedding.getEmbeddingArray() == null) {
+                        throw new UnexpectedResponseException("Received an embedding with an unexpected index from the Mistral AI API: " + missIndex);
+                    }
+
+                    embeddings[missingPositions.get(missIndex)] = embedding.getEmbeddingArray();
+                    cache.put(model, missingInputs.get(missIndex), embedding.getEmbeddingArray());
+                }
+            }
+
+            if (Arrays.stream(embeddings).anyMatch(embedding -> embedding == null)) {
+                throw new UnexpectedResponseException("The Mistral AI API did not return an embedding for every input");
+            }
+
+            return buildResponse(response.getId(), response.getModel() != null ? response.getModel() : model, embeddings, response.getUsage());
+        });
+    }
+
+    private static EmbeddingResponse buildResponse(String id, String model, float[][] embeddings, Usage usage) {
+        List<FloatEmbedding> data = new ArrayList<>(embeddings.length);
+
+        for (int i = 0; i < embeddings.length; i++) {
+            data.add(FloatEmbedding.wrap(EMBEDDING_OBJECT, embeddings[i], i));
+        }
+
+        return new EmbeddingResponse(id, LIST_OBJECT, data, model, usage);
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding;
+
+import lombok.NonNull;
+import nl.dannyj.mistral.MistralClient;
+import nl.dannyj.mistral.exceptions.UnexpectedResponseException;
+import nl.dannyj.mistral.models.embedding.EmbeddingRequest;
+import nl.dannyj.mistral.models.embedding.EmbeddingResponse;
+import nl.dannyj.mistral.models.embedding.FloatEmbedding;
+import nl.dannyj.mistral.net.MistralExecutors;
+import nl.dannyj.mistral.utils.TokenEstimator;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects single-input embedding calls from many threads and sends them to the Mistral AI API as one {@link EmbeddingRequest}.
+ * A batch is sent as soon as it reaches the maximum number of inputs or the token budget, or when the oldest input has waited for the maximum delay.
+ * The embeddings in the response are matched to the callers by their index, so every caller receives the embedding of its own input.
+ * Close the batcher to send the pending inputs and stop its timer thread.
+ */
+public class EmbeddingBatcher implements AutoCloseable {
+
+    private static final int DEFAULT_MAX_BATCH_SIZE = 128;
+    private static final int DEFAULT_MAX_BATCH_TOKENS = 16384;
+    private static final Duration DEFAULT_MAX_DELAY = Duration.ofMillis(20);
+
+    private final MistralClient client;
+    private final String model;
+    private final int maxBatchSize;
+    private final int maxBatchTokens;
+    private final Duration maxDelay;
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+    private List<PendingInput> pending = new ArrayList<>();
+    private int pendingTokens;
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean closed;
+
+    /**
+     * Constructor that initializes the EmbeddingBatcher with the default limits: batches of at most 128 inputs and 16384 estimated tokens, sent after at most 20 milliseconds.
+     *
+     * @param client The MistralClient used to create the embeddings
+     * @param model  The ID of the embedding model to use
+     */
+    public EmbeddingBatcher(@NonNull MistralClient client, @NonNull String model) {
+        this(client, model, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_TOKENS, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * Constructor that initializes the EmbeddingBatcher with custom limits.
+     *
+     * @param client         The MistralClient used to create the embeddings
+     * @param model          The ID of the embedding model to use
+     * @param maxBatchSize   The maximum number of inputs per request, has to be at least 1
+     * @param maxBatchTokens The maximum number of estimated tokens per request, has to be at least 1. A single input above this budget is sent on its own.
+     * @param maxDelay       The maximum time an input waits for other inputs before its batch is sent
+     */
+    public EmbeddingBatcher(@NonNull MistralClient client, @NonNull String model, int maxBatchSize, int maxBatchTokens, @NonNull Duration maxDelay) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+
+        if (maxBatchTokens < 1) {
+            throw new IllegalArgumentException("maxBatchTokens must be at least 1");
+        }
+
+        if (maxDelay.isNegative()) {
+            throw new IllegalArgumentException("maxDelay must not be negative");
+        }
+
+        this.client = client;
+        this.model = model;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchTokens = maxBatchTokens;
+        this.maxDelay = maxDelay;
+        this.scheduler = MistralExecutors.newDaemonScheduler("mistral-embedding-batcher");
+    }
+
+    /**
+     * Adds an input to the current batch.
+     * The returned future completes when the batch containing the input has been embedded.
+     *
+     * @param input The string to embed
+     * @return A CompletableFuture that will complete with the embedding of the input. The index of the embedding is always 0.
+     * @throws IllegalStateException if the batcher has been closed
+     */
+    public CompletableFuture<FloatEmbedding> embed(@NonNull String input) {
+        PendingInput pendingInput = new PendingInput(input, TokenEstimator.estimateTokens(input));
+        List<PendingInput> batch = null;
+        List<PendingInput> fullBatch = null;
+
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("The embedding batcher has been closed");
+            }
+
+            if (!pending.isEmpty() && pendingTokens + pendingInput.tokens > maxBatchTokens) {
+                batch = takePending();
+            }
+
+            pending.add(pendingInput);
+            pendingTokens += pendingInput.tokens;
+
+            if (pending.size() >= maxBatchSize || pendingTokens >= maxBatchTokens) {
+                fullBatch = takePending();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flush, maxDelay.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+
+        send(batch);
+        send(fullBatch);
+
+        return pendingInput.future;
+    }
+
+    /**
+     * Sends the pending inputs immediately, without waiting for the batch to fill up.
+     */
+    public void flush() {
+        List<PendingInput> batch;
+
+        synchronized (lock) {
+            batch = takePending();
+        }
+
+        send(batch);
+    }
+
+    /**
+     * Sends the pending inputs and stops the timer thread. Inputs can't be added after the batcher is closed.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+
+        flush();
+        scheduler.shutdown();
+    }
+
+    /**
+     * Removes the pending inputs and cancels the scheduled flush. Must be called while holding the lock.
+     *
+     * @return The pending inputs, or null if there are none
+     */
+    private List<PendingInput> takePending() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+
+        if (pending.isEmpty()) {
+            return null;
+        }
+
+        List<PendingInput> batch = pending;
+        pending = new ArrayList<>();
+        pendingTokens = 0;
+        return batch;
+    }
+
+    private void send(List<PendingInput> batch) {
+        if (batch == null) {
+            return;
+        }
+
+        List<String> inputs = new ArrayList<>(batch.size());
+        batch.forEach(pendingInput -> inputs.add(pendingInput.input));
+
+        EmbeddingRequest request = EmbeddingRequest.builder()
+                .model(model)
+                .input(inputs)
+                .build();
+
+        client.createEmbeddingAsync(request).whenComplete((response, error) -> {
+            if (error != null) {
+                batch.forEach(pendingInput -> pendingInput.future.completeExceptionally(error));
+                return;
+            }
+
+            complete(batch, response);
+        });
+    }
+
+    private void complete(List<PendingInput> batch, EmbeddingResponse response) {
+        if (response.getData() != null) {
+            for (FloatEmbedding embedding : response.getData()) {
+                int index = embedding.getIndex();
+
+                if (index >= 0 && index < batch.size()) {
+                    batch.get(index).future.complete(FloatEmbedding.wrap(embedding.getObject(), embedding.getEmbeddingArray(), 0));
+                }
+            }
+        }
+
+        for (PendingInput pendingInput : batch) {
+            if (!pendingInput.future.isDone()) {
+                pendingInput.future.completeExceptionally(new UnexpectedResponseException("The Mistral AI API did not return an embedding for the input"));
+            }
+        }
+    }
+
+    private static final class PendingInput {
+
+        private final String input;
+        private final int tokens;
+        private final CompletableFuture<FloatEmbedding> future = new CompletableFuture<>();
+
+        private PendingInput(String input, int tokens) {
+            this.input = input;
+            this.tokens = tokens;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import okio.Buffer;
+import okio.ByteString;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A content-addressed cache of embeddings, keyed by the model and the SHA-256 hash of the input string.
+ * Embeddings are kept in a bounded in-memory LRU cache. Optionally, cached embeddings are also written to a memory-mapped file,
+ * which survives restarts and is consulted when an embedding is not in memory. The file holds a bounded number of embeddings as well,
+ * evicting the least recently used ones and compacting itself so it stays within about twice the size of the live embeddings.
+ * The file is a best-effort tier: failures to write to it are counted in the {@link Stats} and never fail a lookup or store.
+ * The cache is thread-safe. Use it with a {@link CachingEmbedder} to only send cache misses to the Mistral AI API.
+ */
+public class EmbeddingCache implements AutoCloseable {
+
+    /**
+     * The default maximum number of embeddings in the persistent tier, about 400 MB of 1024 dimensional embeddings.
+     */
+    public static final int DEFAULT_MAX_PERSISTENT_ENTRIES = 100_000;
+
+    private final int maxEntries;
+    private final LinkedHashMap<ByteString, float[]> entries;
+    private MappedEmbeddingCacheFile persistentTier;
+
+    private long hits;
+    private long persistentHits;
+    private long misses;
+    private long evictions;
+    private long persistentWriteFailures;
+
+    /**
+     * Constructor that initializes an in-memory EmbeddingCache.
+     *
+     * @param maxEntries The maximum number of embeddings kept in memory, has to be at least 1
+     */
+    public EmbeddingCache(int maxEntries) {
+        this(maxEntries, null);
+    }
+
+    /**
+     * Constructor that initializes an EmbeddingCache with a persistent tier of at most {@link #DEFAULT_MAX_PERSISTENT_ENTRIES} embeddings.
+     * Embeddings that were stored in the file by a previous run are served from the file.
+     *
+     * @param maxEntries     The maximum number of embeddings kept in memory, has to be at least 1
+     * @param persistentFile The file to persist the embeddings in, or null for an in-memory cache. Created if it does not exist.
+     * @throws UncheckedIOException if the file can't be opened or is not a valid cache file
+     */
+    public EmbeddingCache(int maxEntries, Path persistentFile) {
+        this(maxEntries, persistentFile, DEFAULT_MAX_PERSISTENT_ENTRIES);
+    }
+
+    /**
+     * Constructor that initializes an EmbeddingCache with a persistent tier of a bounded size.
+     * Embeddings that were stored in the file by a previous run are served from the file, the most recently written ones first.
+     *
+     * @param maxEntries           The maximum number of embeddings kept in memory, has to be at least 1
+     * @param persistentFile       The file to persist the embeddings in, or null for an in-memory cache. Created if it does not exist.
+     * @param maxPersistentEntries The maximum number of embeddings kept in the file, has to be at least 1
+     * @throws UncheckedIOException if the file can't be opened or is not a valid cache file
+     */
+    public EmbeddingCache(int maxEntries, Path persistentFile, int maxPersistentEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+
+        if (maxPersistentEntries < 1) {
+            throw new IllegalArgumentException("maxPersistentEntries must be at least 1");
+        }
+
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteString, float[]> eldest) {
+                if (size() > EmbeddingCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+
+                return false;
+            }
+        };
+
+        try {
+            this.persistentTier = persistentFile == null ? null : new MappedEmbeddingCacheFile(persistentFile, maxPersistentEntries);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the embedding cache file " + persistentFile, e);
+        }
+    }
+
+    /**
+     * Creates the cache key for an input string.
+     *
+     * @param model The ID of the embedding model
+     * @param input The input string
+     * @return The SHA-256 hash of the model and the input
+     */
+    public static ByteString key(@NonNull String model, @NonNull String input) {
+        return new Buffer()
+                .writeUtf8(model)
+                .writeByte(0)
+                .writeUtf8(input)
+                .sha256();
+    }
+
+    /**
+     * Looks up the embedding of an input string.
+     *
+     * @param model The ID of the embedding model
+     * @param input The input string
+     * @return The cached embedding, or null if the input is not cached
+     */
+    public float[] get(@NonNull String model, @NonNull String input) {
+        ByteString key = key(model, input);
+        MappedEmbeddingCacheFile file;
+
+        synchronized (this) {
+            float[] embedding = entries.get(key);
+
+            if (embedding != null) {
+                hits++;
+                return embedding;
+            }
+
+            file = persistentTier;
+        }
+
+        // The file has its own lock, reading it must not block the in-memory hits of other threads
+        float[] embedding = file != null ? file.get(key) : null;
+
+        synchronized (this) {
+            if (embedding == null) {
+                misses++;
+                return null;
+            }
+
+            persistentHits++;
+            entries.put(key, embedding);
+            return embedding;
+        }
+    }
+
+    /**
+     * Stores the embedding of an input string.
+     * If the embedding can't be written to the persistent tier, it is only kept in memory and the failure is counted in the {@link Stats}.
+     *
+     * @param model     The ID of the embedding model
+     * @param input     The input string
+     * @param embedding The embedding of the input string
+     */
+    public void put(@NonNull String model, @NonNull String input, @NonNull float[] embedding) {
+        ByteString key = key(model, input);
+        MappedEmbeddingCacheFile file;
+
+        synchronized (this) {
+            entries.put(key, embedding);
+            file = persistentTier;
+        }
+
+        if (file == null) {
+            return;
+        }
+
+        // The file has its own lock, writing it must not block the in-memory lookups of other threads
+        try {
+            file.put(key, embedding);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                persistentWriteFailures++;
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics.
+     *
+     * @return the current cache statistics
+     */
+    public synchronized Stats getStats() {
+        return new Stats(hits, persistentHits, misses, evictions, persistentWriteFailures, entries.size(),
+                persistentTier != null ? persistentTier.size() : 0);
+    }
+
+    /**
+     * Closes the persistent tier, flushing it to disk. The cache keeps working in memory only.
+     *
+     * @throws UncheckedIOException if the persistent tier can't be closed
+     */
+    @Override
+    public synchronized void close() {
+        if (persistentTier == null) {
+            return;
+        }
+
+        try {
+            persistentTier.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close the embedding cache file", e);
+        } finally {
+            persistentTier = null;
+        }
+    }
+
+    /**
+     * Statistics of an EmbeddingCache.
+     */
+    @Getter
+    @AllArgsConstructor
+    @ToString
+    public static class Stats {
+
+        /**
+         * The number of lookups served from memory.
+         *
+         * @return the number of in-memory hits
+         */
+        private final long hits;
+
+        /**
+         * The number of lookups served from the persistent tier.
+         *
+         * @return the number of persistent hits
+         */
+        private final long persistentHits;
+
+        /**
+         * The number of lookups that were not in the cache.
+         *
+         * @return the number of misses
+         */
+        private final long misses;
+
+        /**
+         * The number of embeddings evicted from memory.
+         *
+         * @return the number of evictions
+         */
+        private final long evictions;
+
+        /**
+         * The number of embeddings that could not be written to the persistent tier.
+         *
+         * @return the number of persistent write failures
+         */
+        private final long persistentWriteFailures;
+
+        /**
+         * The number of embeddings in memory.
+         *
+         * @return the in-memory size
+         */
+        private final int size;
+
+        /**
+         * The number of embeddings in the persistent tier.
+         *
+         * @return the persistent size, 0 without a persistent tier
+         */
+        private final int persistentSize;
+
+        /**
+         * The fraction of lookups served from the cache.
+         *
+         * @return the hit rate between 0.0 and 1.0
+         */
+        public double getHitRate() {
+            long lookups = hits + persistentHits + misses;
+
+            return lookups == 0 ? 0.0 : (double) (hits + persistentHits) / lookups;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding;
+
+import okio.ByteString;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The persistent tier of the {@link EmbeddingCache}: an append-only file of embeddings that is memory-mapped in fixed size segments.
+ * The file starts with a header containing a magic number, the format version and the end offset of the written records.
+ * Each record consists of the dimension, the 32 byte cache key and the float values. All values are stored little-endian.
+ * Records never cross a segment boundary, the unused space at the end of a segment is skipped.
+ * The keys and record offsets are kept in memory, the embedding values are read from the mapped file on demand.
+ * <p>
+ * At most maxEntries records are live. When a new record is added at capacity, the least recently used record is evicted and its space
+ * becomes dead. Once the dead records take more space than the live ones, the live records are copied to a new file that replaces this one,
+ * so the file stays within about twice the size of its live records. After a restart the most recently written records are live.
+ * The file must not be used by multiple processes at the same time.
+ */
+class MappedEmbeddingCacheFile implements Closeable {
+
+    private static final int MAGIC = 0x4D454346;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int END_OFFSET_POSITION = 8;
+    private static final int KEY_SIZE = 32;
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + KEY_SIZE;
+    private static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private final Path path;
+    private final int maxEntries;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final LinkedHashMap<ByteString, Long> offsets;
+    private FileChannel channel;
+    private long endOffset;
+    private long liveBytes;
+    private long deadBytes;
+    private boolean closed;
+
+    /**
+     * Opens the cache file, creating it if it does not exist, and loads the keys of the stored records.
+     *
+     * @param path       The path of the cache file
+     * @param maxEntries The maximum number of live records, has to be at least 1
+     * @throws IOException if the file can't be opened or is not a valid cache file
+     */
+    MappedEmbeddingCacheFile(Path path, int maxEntries) throws IOException {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+
+        this.path = path;
+        this.maxEntries = maxEntries;
+        this.offsets = new LinkedHashMap<>(16, 0.75f, true);
+        open();
+    }
+
+    /**
+     * Reads the embedding stored for the key.
+     *
+     * @param key The cache key
+     * @return The embedding, or null if the key is not stored or the file is closed
+     */
+    synchronized float[] get(ByteString key) {
+        Long offset = closed ? null : offsets.get(key);
+
+        return offset == null ? null : read(offset);
+    }
+
+    /**
+     * Appends the embedding for the key, unless the key is already stored or the file is closed.
+     * Evicts the least recently used record at capacity and compacts the file when needed.
+     *
+     * @param key       The cache key
+     * @param embedding The embedding values
+     * @throws IOException if the file can't be extended or compacted
+     */
+    synchronized void put(ByteString key, float[] embedding) throws IOException {
+        if (closed || offsets.containsKey(key)) {
+            return;
+        }
+
+        long recordSize = recordSize(embedding.length);
+
+        if (recordSize > SEGMENT_SIZE) {
+            throw new IllegalArgumentException("The embedding is too large to be cached: " + embedding.length + " dimensions");
+        }
+
+        if (offsets.size() >= maxEntries) {
+            evictEldest();
+        }
+
+        if (deadBytes > liveBytes) {
+            compact();
+        }
+
+        append(key, embedding);
+    }
+
+    /**
+     * The number of embeddings stored in the file.
+     *
+     * @return the number of live embeddings
+     */
+    synchronized int size() {
+        return offsets.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        unmap();
+    }
+
+    private void open() throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            boolean created = channel.size() == 0;
+            MappedByteBuffer header = segment(0);
+
+            if (created) {
+                header.putInt(0, MAGIC);
+                header.putInt(4, VERSION);
+                header.putLong(END_OFFSET_POSITION, HEADER_SIZE);
+            } else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a valid embedding cache file: " + path);
+            }
+
+            this.endOffset = header.getLong(END_OFFSET_POSITION);
+            loadOffsets();
+        } catch (IOException | RuntimeException e) {
+            unmap();
+            throw e;
+        }
+    }
+
+    private void unmap() throws IOException {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+
+        segments.clear();
+        channel.close();
+    }
+
+    private void append(ByteString key, float[] embedding) throws IOException {
+        long recordSize = recordSize(embedding.length);
+        long offset = endOffset;
+
+        if (offset % SEGMENT_SIZE + recordSize > SEGMENT_SIZE) {
+            offset = (offset / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+        }
+
+        MappedByteBuffer segment = segment((int) (offset / SEGMENT_SIZE));
+        int position = (int) (offset % SEGMENT_SIZE);
+
+        segment.putInt(position, embedding.length);
+        segment.put(position + Integer.BYTES, key.toByteArray());
+        segment.slice(position + RECORD_HEADER_SIZE, embedding.length * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer()
+                .put(embedding);
+
+        endOffset = offset + recordSize;
+        segments.get(0).putLong(END_OFFSET_POSITION, endOffset);
+        offsets.put(key, offset);
+        liveBytes += recordSize;
+    }
+
+    private float[] read(long offset) {
+        MappedByteBuffer segment = segments.get((int) (offset / SEGMENT_SIZE));
+        int position = (int) (offset % SEGMENT_SIZE);
+        float[] embedding = new float[segment.getInt(position)];
+
+        segment.slice(position + RECORD_HEADER_SIZE, embedding.length * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer()
+                .get(embedding);
+
+        return embedding;
+    }
+
+    private void evictEldest() {
+        Map.Entry<ByteString, Long> eldest = offsets.entrySet().iterator().next();
+        long recordSize = recordSize(dimension(eldest.getValue()));
+
+        offsets.remove(eldest.getKey());
+        liveBytes -= recordSize;
+        deadBytes += recordSize;
+    }
+
+    /**
+     * Copies the live records, from least to most recently used, to a new file and replaces this file with it.
+     * This file is left untouched if the copy or the replacement fails.
+     */
+    private void compact() throws IOException {
+        Path compactedPath = path.resolveSibling(path.getFileName() + ".compact");
+        Files.deleteIfExists(compactedPath);
+
+        try (MappedEmbeddingCacheFile compacted = new MappedEmbeddingCacheFile(compactedPath, maxEntries)) {
+            for (Map.Entry<ByteString, Long> entry : offsets.entrySet()) {
+                compacted.append(entry.getKey(), read(entry.getValue()));
+            }
+        }
+
+        try {
+            Files.move(compactedPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(compactedPath);
+            throw e;
+        }
+
+        unmap();
+        offsets.clear();
+        liveBytes = 0;
+        deadBytes = 0;
+
+        try {
+            open();
+        } catch (IOException | RuntimeException e) {
+            closed = true;
+            throw e;
+        }
+    }
+
+    private void loadOffsets() throws IOException {
+        long offset = HEADER_SIZE;
+
+        while (offset < endOffset) {
+            if (offset % SEGMENT_SIZE + RECORD_HEADER_SIZE > SEGMENT_SIZE) {
+                offset = (offset / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+                continue;
+            }
+
+            MappedByteBuffer segment = segment((int) (offset / SEGMENT_SIZE));
+            int position = (int) (offset % SEGMENT_SIZE);
+            int dimension = segment.getInt(position);
+
+            if (dimension == 0) {
+                // Unused space at the end of a segment
+                offset = (offset / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+                continue;
+            }
+
+            byte[] key = new byte[KEY_SIZE];
+            segment.get(position + Integer.BYTES, key);
+
+            // Records written later are newer, so a re-appended or over capacity key leaves the older record dead
+            Long previous = offsets.put(ByteString.of(key), offset);
+            liveBytes += recordSize(dimension);
+
+            if (previous != null) {
+                long previousSize = recordSize(dimension(previous));
+                liveBytes -= previousSize;
+                deadBytes += previousSize;
+            }
+
+            if (offsets.size() > maxEntries) {
+                evictEldest();
+            }
+
+            offset += recordSize(dimension);
+        }
+    }
+
+    private int dimension(long offset) {
+        return segments.get((int) (offset / SEGMENT_SIZE)).getInt((int) (offset % SEGMENT_SIZE));
+    }
+
+    private static long recordSize(int dimension) {
+        return RECORD_HEADER_SIZE + (long) dimension * Float.BYTES;
+    }
+
+    /**
+     * Returns the mapped segment with the given index, mapping it (and extending the file) if needed.
+     */
+    private MappedByteBuffer segment(int index) throws IOException {
+        while (segments.size() <= index) {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, segments.size() * SEGMENT_SIZE, SEGMENT_SIZE);
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            segments.add(segment);
+        }
+
+        return segments.get(index);
+    }
+}
@@ -0,0 +1,758 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.index;
+
+import lombok.Getter;
+import lombok.NonNull;
+import nl.dannyj.mistral.embedding.vector.SimilarityMetric;
+import nl.dannyj.mistral.embedding.vector.VectorMath;
+import nl.dannyj.mistral.embedding.vector.VectorOperations;
+import nl.dannyj.mistral.models.embedding.FloatEmbedding;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-process approximate nearest neighbour index for embeddings, based on Hierarchical Navigable Small World graphs
+ * (<a href="https://arxiv.org/abs/1603.09320">Malkov and Yashunin</a>).
+ * <p>
+ * Vectors are added with a caller-provided id. Adding vectors and searching is thread-safe and can happen concurrently:
+ * every node has its own lock that protects its neighbour lists. The index can be saved to a compact little-endian file
+ * with {@link #save(Path)} and loaded again with {@link #load(Path)}. Vectors can't be removed.
+ * <p>
+ * For cosine similarity, vectors are normalized when they are added, so the dot product can be used during search.
+ */
+public class HnswIndex {
+
+    /**
+     * The default maximum number of neighbours of a node per layer.
+     */
+    public static final int DEFAULT_M = 16;
+
+    /**
+     * The default size of the candidate list while adding vectors.
+     */
+    public static final int DEFAULT_EF_CONSTRUCTION = 200;
+
+    /**
+     * The default size of the candidate list while searching.
+     */
+    public static final int DEFAULT_EF_SEARCH = 64;
+
+    private static final int MAGIC = 0x484E5357;
+    private static final int VERSION = 1;
+    private static final int MAX_LEVEL = 16;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The dimension of the vectors in the index.
+     *
+     * @return the dimension of the vectors
+     */
+    @Getter
+    private final int dimension;
+
+    /**
+     * The metric used to compare vectors.
+     *
+     * @return the similarity metric
+     */
+    @Getter
+    private final SimilarityMetric metric;
+
+    /**
+     * The maximum number of neighbours of a node per layer. Nodes on the bottom layer have up to twice as many neighbours.
+     *
+     * @return the maximum number of neighbours
+     */
+    @Getter
+    private final int m;
+
+    /**
+     * The size of the candidate list while adding vectors. Higher values create a better graph, but make adding vectors slower.
+     *
+     * @return the size of the candidate list while adding vectors
+     */
+    @Getter
+    private final int efConstruction;
+
+    /**
+     * The default size of the candidate list while searching. Higher values increase the recall, but make searching slower.
+     *
+     * @return the default size of the candidate list while searching
+     */
+    @Getter
+    private volatile int efSearch;
+
+    private final int maxM0;
+    private final double levelMultiplier;
+    private final VectorOperations operations = VectorMath.operations();
+    private final Set<Long> ids = ConcurrentHashMap.newKeySet();
+    private final Queue<VisitedSet> visitedSets = new ConcurrentLinkedQueue<>();
+    private final ReadWriteLock saveLock = new ReentrantReadWriteLock();
+    private final Object growLock = new Object();
+    private final Object entryLock = new Object();
+
+    private volatile Node[] nodes = new Node[INITIAL_CAPACITY];
+    private volatile int size;
+    private volatile EntryPoint entryPoint;
+
+    /**
+     * Constructor that initializes an empty HnswIndex with the default parameters.
+     *
+     * @param dimension The dimension of the vectors, has to be at least 1
+     * @param metric    The metric used to compare vectors
+     */
+    public HnswIndex(int dimension, @NonNull SimilarityMetric metric) {
+        this(dimension, metric, DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH);
+    }
+
+    /**
+     * Constructor that initializes an empty HnswIndex.
+     *
+     * @param dimension      The dimension of the vectors, has to be at least 1
+     * @param metric         The metric used to compare vectors
+     * @param m              The maximum number of neighbours of a node per layer, has to be at least 2
+     * @param efConstruction The size of the candidate list while adding vectors, has to be at least m
+     * @param efSearch       The default size of the candidate list while searching, has to be at least 1
+     */
+    public HnswIndex(int dimension, @NonNull SimilarityMetric metric, int m, int efConstruction, int efSearch) {
+        if (dimension < 1) {
+            throw new IllegalArgumentException("dimension must be at least 1");
+        }
+
+        if (m < 2) {
+            throw new IllegalArgumentException("m must be at least 2");
+        }
+
+        if (efConstruction < m) {
+            throw new IllegalArgumentException("efConstruction must be at least m");
+        }
+
+        this.dimension = dimension;
+        this.metric = metric;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        setEfSearch(efSearch);
+    }
+
+    /**
+     * Sets the default size of the candidate list while searching.
+     *
+     * @param efSearch The size of the candidate list, has to be at least 1
+     */
+    public void setEfSearch(int efSearch) {
+        if (efSearch < 1) {
+            throw new IllegalArgumentException("efSearch must be at least 1");
+        }
+
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * Returns the number of vectors in the index.
+     *
+     * @return the number of vectors
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether a vector with the given id was added to the index.
+     *
+     * @param id The id of the vector
+     * @return true if the index contains the id
+     */
+    public boolean contains(long id) {
+        return ids.contains(id);
+    }
+
+    /**
+     * Adds a vector to the index. The vector is copied.
+     *
+     * @param id     The id of the vector, returned in search results
+     * @param vector The vector, must have the dimension of the index
+     * @throws IllegalArgumentException if the index already contains the id or the vector has a different dimension
+     */
+    public void add(long id, @NonNull float[] vector) {
+        checkDimension(vector);
+
+        Node node = new Node(id, prepare(vector, true), randomLevel(), m, maxM0);
+
+        saveLock.readLock().lock();
+        try {
+            if (!ids.add(id)) {
+                throw new IllegalArgumentException("The index already contains id " + id);
+            }
+
+            link(append(node), node);
+        } finally {
+            saveLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds an embedding returned by the Mistral AI API to the index.
+     *
+     * @param id        The id of the embedding, returned in search results
+     * @param embedding The embedding, must have the dimension of the index
+     * @throws IllegalArgumentException if the index already contains the id or the embedding has a different dimension
+     */
+    public void add(long id, @NonNull FloatEmbedding embedding) {
+        add(id, embedding.getEmbeddingArray());
+    }
+
+    /**
+     * Finds the approximate k nearest neighbours of the query, using the default size of the candidate list.
+     *
+     * @param query The query vector, must have the dimension of the index
+     * @param k     The maximum number of results, has to be at least 1
+     * @return The results, ordered from most to least similar
+     */
+    public List<IndexSearchResult> search(@NonNull float[] query, int k) {
+        return search(query, k, efSearch);
+    }
+
+    /**
+     * Finds the approximate k nearest neighbours of the query embedding, using the default size of the candidate list.
+     *
+     * @param query The query embedding, must have the dimension of the index
+     * @param k     The maximum number of results, has to be at least 1
+     * @return The results, ordered from most to least similar
+     */
+    public List<IndexSearchResult> search(@NonNull FloatEmbedding query, int k) {
+        return search(query.getEmbeddingArray(), k, efSearch);
+    }
+
+    /**
+     * Finds the approximate k nearest neighbours of the query.
+     *
+     * @param query The query vector, must have the dimension of the index
+     * @param k     The maximum number of results, has to be at least 1
+     * @param ef    The size of the candidate list, values below k are raised to k
+     * @return The results, ordered from most to least similar
+     */
+    public List<IndexSearchResult> search(@NonNull float[] query, int k, int ef) {
+        checkDimension(query);
+
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+
+        EntryPoint entry = entryPoint;
+        if (entry == null) {
+            return List.of();
+        }
+
+        float[] vector = prepare(query, false);
+        VisitedSet visited = acquireVisitedSet();
+        int[] buffer = new int[maxM0];
+
+        try {
+            int current = entry.node;
+            for (int level = entry.level; level > 0; level--) {
+                current = greedySearch(vector, current, level, buffer);
+            }
+
+            visited.clear(size);
+            NodeQueue candidates = searchLayer(vector, current, Math.max(ef, k), 0, visited, buffer);
+
+            while (candidates.size() > k) {
+                candidates.pop();
+            }
+
+            IndexSearchResult[] results = new IndexSearchResult[candidates.size()];
+            for (int i = results.length - 1; i >= 0; i--) {
+                float distance = candidates.peekDistance();
+                results[i] = new IndexSearchResult(node(candidates.pop()).id, score(distance));
+            }
+
+            return Arrays.asList(results);
+        } finally {
+            visitedSets.offer(visited);
+        }
+    }
+
+    /**
+     * Saves the index to a file, replacing an existing file at the same path.
+     * Vectors can't be added while the index is being saved, searches are not blocked.
+     *
+     * @param path The path of the file
+     * @throws UncheckedIOException if writing the file fails
+     */
+    public void save(@NonNull Path path) {
+        saveLock.writeLock().lock();
+
+        try (BufferedSink sink = Okio.buffer(Okio.sink(path))) {
+            EntryPoint entry = entryPoint;
+            int count = size;
+
+            sink.writeIntLe(MAGIC)
+                    .writeIntLe(VERSION)
+                    .writeIntLe(dimension)
+                    .writeIntLe(metric.ordinal())
+                    .writeIntLe(m)
+                    .writeIntLe(efConstruction)
+                    .writeIntLe(efSearch)
+                    .writeIntLe(count)
+                    .writeIntLe(entry == null ? -1 : entry.node);
+
+            int[] buffer = new int[maxM0];
+            for (int i = 0; i < count; i++) {
+                Node node = node(i);
+                sink.writeLongLe(node.id).writeIntLe(node.level);
+
+                for (float value : node.vector) {
+                    sink.writeIntLe(Float.floatToRawIntBits(value));
+                }
+
+                for (int level = 0; level <= node.level; level++) {
+                    int neighbourCount = node.copyNeighbours(level, buffer);
+                    sink.writeIntLe(neighbourCount);
+
+                    for (int j = 0; j < neighbourCount; j++) {
+                        sink.writeIntLe(buffer[j]);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to save the index to " + path, e);
+        } finally {
+            saveLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Loads an index that was saved with {@link #save(Path)}.
+     *
+     * @param path The path of the file
+     * @return The loaded index
+     * @throws UncheckedIOException if the file can't be read or is not a valid index file
+     */
+    public static HnswIndex load(@NonNull Path path) {
+        try (BufferedSource source = Okio.buffer(Okio.source(path))) {
+            if (source.readIntLe() != MAGIC || source.readIntLe() != VERSION) {
+                throw new IOException("Not a valid index file: " + path);
+            }
+
+            int dimension = source.readIntLe();
+            int metricOrdinal = source.readIntLe();
+            int m = source.readIntLe();
+            int efConstruction = source.readIntLe();
+            int efSearch = source.readIntLe();
+            int count = source.readIntLe();
+            int entryNode = source.readIntLe();
+
+            if (metricOrdinal < 0 || metricOrdinal >= SimilarityMetric.values().length || count < 0 || entryNode >= count) {
+                throw new IOException("Not a valid index file: " + path);
+            }
+
+            HnswIndex index;
+            try {
+                index = new HnswIndex(dimension, SimilarityMetric.values()[metricOrdinal], m, efConstruction, efSearch);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Not a valid index file: " + path, e);
+            }
+
+            Node[] nodes = new Node[Math.max(count, INITIAL_CAPACITY)];
+            for (int i = 0; i < count; i++) {
+                long id = source.readLongLe();
+                int level = source.readIntLe();
+
+                if (level < 0 || level > MAX_LEVEL) {
+                    throw new IOException("Not a valid index file: " + path);
+                }
+
+                float[] vector = new float[dimension];
+                for (int j = 0; j < dimension; j++) {
+                    vector[j] = Float.intBitsToFloat(source.readIntLe());
+                }
+
+                Node node = new Node(id, vector, level, m, index.maxM0);
+                for (int l = 0; l <= level; l++) {
+                    int neighbourCount = source.readIntLe();
+
+                    if (neighbourCount < 0 || neighbourCount > node.neighbours[l].length) {
+                        throw new IOException("Not a valid index file: " + path);
+                    }
+
+                    for (int j = 0; j < neighbourCount; j++) {
+                        int neighbour = source.readIntLe();
+
+                        if (neighbour < 0 || neighbour >= count) {
+                            throw new IOException("Not a valid index file: " + path);
+                        }
+
+                        node.neighbours[l][j] = neighbour;
+                    }
+
+                    node.counts[l] = neighbourCount;
+                }
+
+                nodes[i] = node;
+                index.ids.add(id);
+            }
+
+            index.nodes = nodes;
+            index.size = count;
+            index.entryPoint = entryNode < 0 ? null : new EntryPoint(entryNode, nodes[entryNode].level);
+            return index;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load the index from " + path, e);
+        }
+    }
+
+    private void link(int index, Node node) {
+        EntryPoint entry = entryPoint;
+
+        if (entry == null) {
+            synchronized (entryLock) {
+                if (entryPoint == null) {
+                    entryPoint = new EntryPoint(index, node.level);
+                    return;
+                }
+
+                entry = entryPoint;
+            }
+        }
+
+        VisitedSet visited = acquireVisitedSet();
+        int[] buffer = new int[maxM0];
+
+        try {
+            int current = entry.node;
+            for (int level = entry.level; level > node.level; level--) {
+                current = greedySearch(node.vector, current, level, buffer);
+            }
+
+            for (int level = Math.min(node.level, entry.level); level >= 0; level--) {
+                visited.clear(size);
+                visited.visit(index);
+
+                NodeQueue results = searchLayer(node.vector, current, efConstruction, level, visited, buffer);
+                int count = results.size();
+                int[] candidates = new int[count];
+                float[] distances = new float[count];
+
+                for (int i = count - 1; i >= 0; i--) {
+                    distances[i] = results.peekDistance();
+                    candidates[i] = results.pop();
+                }
+
+                current = candidates[0];
+
+                int[] selected = new int[m];
+                int selectedCount = selectNeighbours(candidates, distances, count, m, selected);
+
+                synchronized (node) {
+                    System.arraycopy(selected, 0, node.neighbours[level], 0, selectedCount);
+                    node.counts[level] = selectedCount;
+                }
+
+                for (int i = 0; i < selectedCount; i++) {
+                    connect(selected[i], index, level);
+                }
+            }
+        } finally {
+            visitedSets.offer(visited);
+        }
+
+        if (node.level > entry.level) {
+            synchronized (entryLock) {
+                if (node.level > entryPoint.level) {
+                    entryPoint = new EntryPoint(index, node.level);
+                }
+            }
+        }
+    }
+
+    private void connect(int from, int to, int level) {
+        Node node = node(from);
+
+        synchronized (node) {
+            int[] neighbours = node.neighbours[level];
+            int count = node.counts[level];
+
+            if (count < neighbours.length) {
+                neighbours[count] = to;
+                node.counts[level] = count + 1;
+                return;
+            }
+
+            int[] candidates = Arrays.copyOf(neighbours, count + 1);
+            float[] distances = new float[count + 1];
+            candidates[count] = to;
+
+            for (int i = 0; i <= count; i++) {
+                distances[i] = distance(node.vector, node(candidates[i]).vector);
+            }
+
+            sortByDistance(candidates, distances);
+            node.counts[level] = selectNeighbours(candidates, distances, candidates.length, neighbours.length, neighbours);
+        }
+    }
+
+    /**
+     * Selects up to max neighbours from candidates sorted by distance with the heuristic of the HNSW paper: a candidate is skipped
+     * when it is closer to an already selected neighbour than to the base node, which keeps connections between clusters.
+     * Remaining slots are filled with the skipped candidates.
+     */
+    private int selectNeighbours(int[] candidates, float[] distances, int count, int max, int[] selected) {
+        if (count <= max) {
+            System.arraycopy(candidates, 0, selected, 0, count);
+            return count;
+        }
+
+        boolean[] skipped = new boolean[count];
+        int selectedCount = 0;
+
+        for (int i = 0; i < count && selectedCount < max; i++) {
+            float[] candidate = node(candidates[i]).vector;
+            boolean keep = true;
+
+            for (int j = 0; j < selectedCount; j++) {
+                if (distance(candidate, node(selected[j]).vector) < distances[i]) {
+                    keep = false;
+                    break;
+                }
+            }
+
+            if (keep) {
+                selected[selectedCount++] = candidates[i];
+            } else {
+                skipped[i] = true;
+            }
+        }
+
+        for (int i = 0; i < count && selectedCount < max; i++) {
+            if (skipped[i]) {
+                selected[selectedCount++] = candidates[i];
+            }
+        }
+
+        return selectedCount;
+    }
+
+    private int greedySearch(float[] query, int entry, int level, int[] buffer) {
+        int current = entry;
+        float currentDistance = distance(query, node(current).vector);
+        boolean changed = true;
+
+        while (changed) {
+            changed = false;
+            int count = node(current).copyNeighbours(level, buffer);
+
+            for (int i = 0; i < count; i++) {
+                float distance = distance(query, node(buffer[i]).vector);
+
+                if (distance < currentDistance) {
+                    current = buffer[i];
+                    currentDistance = distance;
+                    changed = true;
+                }
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Searches a single layer, starting at the entry node.
+     *
+     * @return the up to ef nearest nodes found, with the farthest node at the top of the queue
+     */
+    private NodeQueue searchLayer(float[] query, int entry, int ef, int level, VisitedSet visited, int[] buffer) {
+        float entryDistance = distance(query, node(entry).vector);
+        NodeQueue candidates = new NodeQueue(ef, false);
+        NodeQueue results = new NodeQueue(ef + 1, true);
+
+        visited.visit(entry);
+        candidates.push(entry, entryDistance);
+        results.push(entry, entryDistance);
+
+        while (candidates.size() > 0) {
+            if (candidates.peekDistance() > results.peekDistance()) {
+                break;
+            }
+
+            int count = node(candidates.pop()).copyNeighbours(level, buffer);
+
+            for (int i = 0; i < count; i++) {
+                int neighbour = buffer[i];
+
+                if (!visited.visit(neighbour)) {
+                    continue;
+                }
+
+                float distance = distance(query, node(neighbour).vector);
+
+                if (results.size() < ef || distance < results.peekDistance()) {
+                    candidates.push(neighbour, distance);
+                    results.push(neighbour, distance);
+
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+
+        return results;
+    }
+
+    private int append(Node node) {
+        synchronized (growLock) {
+            int index = size;
+            Node[] current = nodes;
+
+            if (index == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+
+            current[index] = node;
+            nodes = current;
+            size = index + 1;
+            return index;
+        }
+    }
+
+    private Node node(int index) {
+        return nodes[index];
+    }
+
+    private VisitedSet acquireVisitedSet() {
+        VisitedSet visited = visitedSets.poll();
+
+        return visited != null ? visited : new VisitedSet();
+    }
+
+    private float distance(float[] a, float[] b) {
+        return switch (metric) {
+            case DOT_PRODUCT -> -operations.dot(a, b);
+            case COSINE -> 1 - operations.dot(a, b);
+            case EUCLIDEAN -> operations.squaredEuclidean(a, b);
+        };
+    }
+
+    private float score(float distance) {
+        return switch (metric) {
+            case DOT_PRODUCT -> -distance;
+            case COSINE -> 1 - distance;
+            case EUCLIDEAN -> (float) Math.sqrt(distance);
+        };
+    }
+
+    private float[] prepare(float[] vector, boolean copy) {
+        if (metric != SimilarityMetric.COSINE) {
+            return copy ? vector.clone() : vector;
+        }
+
+        float norm = (float) Math.sqrt(operations.dot(vector, vector));
+        float[] normalized = vector.clone();
+
+        if (norm > 0) {
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] /= norm;
+            }
+        }
+
+        return normalized;
+    }
+
+    private int randomLevel() {
+        double random = 1 - ThreadLocalRandom.current().nextDouble();
+
+        return Math.min((int) (-Math.log(random) * levelMultiplier), MAX_LEVEL);
+    }
+
+    private void checkDimension(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected a vector with " + dimension + " dimensions but got " + vector.length);
+        }
+    }
+
+    private static void sortByDistance(int[] nodes, float[] distances) {
+        for (int i = 1; i < nodes.length; i++) {
+            int node = nodes[i];
+            float distance = distances[i];
+            int j = i - 1;
+
+            while (j >= 0 && distances[j] > distance) {
+                nodes[j + 1] = nodes[j];
+                distances[j + 1] = distances[j];
+                j--;
+            }
+
+            nodes[j + 1] = node;
+            distances[j + 1] = distance;
+        }
+    }
+
+    private static final class EntryPoint {
+
+        private final int node;
+        private final int level;
+
+        private EntryPoint(int node, int level) {
+            this.node = node;
+            this.level = level;
+        }
+    }
+
+    private static final class Node {
+
+        private final long id;
+        private final float[] vector;
+        private final int level;
+        private final int[][] neighbours;
+        private final int[] counts;
+
+        private Node(long id, float[] vector, int level, int m, int maxM0) {
+            this.id = id;
+            this.vector = vector;
+            this.level = level;
+            this.neighbours = new int[level + 1][];
+            this.counts = new int[level + 1];
+
+            for (int l = 0; l <= level; l++) {
+                neighbours[l] = new int[l == 0 ? maxM0 : m];
+            }
+        }
+
+        private synchronized int copyNeighbours(int level, int[] destination) {
+            int count = counts[level];
+            System.arraycopy(neighbours[level], 0, destination, 0, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.index;
+
+import java.util.Arrays;
+
+/**
+ * A binary heap of node indices ordered by their distance, backed by primitive arrays.
+ * Depending on the order, either the closest or the farthest node is at the top. Not thread-safe.
+ */
+class NodeQueue {
+
+    private final boolean farthestFirst;
+    private int[] nodes;
+    private float[] distances;
+    private int size;
+
+    NodeQueue(int initialCapacity, boolean farthestFirst) {
+        this.farthestFirst = farthestFirst;
+        this.nodes = new int[Math.max(initialCapacity, 1)];
+        this.distances = new float[nodes.length];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int peekNode() {
+        return nodes[0];
+    }
+
+    float peekDistance() {
+        return distances[0];
+    }
+
+    void push(int node, float distance) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            distances = Arrays.copyOf(distances, size * 2);
+        }
+
+        int position = size++;
+        nodes[position] = node;
+        distances[position] = distance;
+
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+
+            if (!before(position, parent)) {
+                return;
+            }
+
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    int pop() {
+        int top = nodes[0];
+        size--;
+        nodes[0] = nodes[size];
+        distances[0] = distances[size];
+
+        int position = 0;
+        while (true) {
+            int first = position;
+            int left = position * 2 + 1;
+            int right = left + 1;
+
+            if (left < size && before(left, first)) {
+                first = left;
+            }
+
+            if (right < size && before(right, first)) {
+                first = right;
+            }
+
+            if (first == position) {
+                return top;
+            }
+
+            swap(position, first);
+            position = first;
+        }
+    }
+
+    private boolean before(int i, int j) {
+        return farthestFirst ? distances[i] > distances[j] : distances[i] < distances[j];
+    }
+
+    private void swap(int i, int j) {
+        int node = nodes[i];
+        nodes[i] = nodes[j];
+        nodes[j] = node;
+
+        float distance = distances[i];
+        distances[i] = distances[j];
+        distances[j] = distance;
+    }
+}
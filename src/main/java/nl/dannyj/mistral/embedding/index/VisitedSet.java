@@ -0,0 +1,59 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.index;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the nodes visited by a single graph search. Clearing the set only increments a generation counter,
+ * so a set can be reused for many searches without being reallocated. Not thread-safe.
+ */
+class VisitedSet {
+
+    private int[] marks = new int[0];
+    private int generation;
+
+    void clear(int capacity) {
+        if (marks.length < capacity) {
+            marks = new int[capacity];
+        }
+
+        if (++generation == 0) {
+            Arrays.fill(marks, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * Marks a node as visited.
+     *
+     * @param node The index of the node
+     * @return true if the node was not visited before
+     */
+    boolean visit(int node) {
+        if (node >= marks.length) {
+            marks = Arrays.copyOf(marks, Math.max(node + 1, marks.length * 2));
+        }
+
+        if (marks[node] == generation) {
+            return false;
+        }
+
+        marks[node] = generation;
+        return true;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.store;
+
+/**
+ * Constants of the binary embedding file format shared by the {@link EmbeddingFileWriter} and the {@link EmbeddingFileReader}.
+ * All values are little-endian. The header contains:
+ * <ul>
+ *     <li>offset 0: magic number (int)</li>
+ *     <li>offset 4: format version (int)</li>
+ *     <li>offset 8: dimension of the embeddings (int)</li>
+ *     <li>offset 12: size of the header in bytes (int)</li>
+ *     <li>offset 16: length of the model ID in bytes (int)</li>
+ *     <li>offset 20: model ID (UTF-8)</li>
+ * </ul>
+ * The header is padded to a multiple of 64 bytes and is followed by the rows. Every row contains the float values of one embedding,
+ * so row {@code i} starts at {@code headerSize + i * dimension * 4}. The number of rows follows from the size of the file.
+ */
+final class EmbeddingFileFormat {
+
+    static final int MAGIC = 0x4D454D42;
+    static final int VERSION = 1;
+    static final int DIMENSION_OFFSET = 8;
+    static final int HEADER_SIZE_OFFSET = 12;
+    static final int MODEL_LENGTH_OFFSET = 16;
+    static final int MODEL_OFFSET = 20;
+    static final int HEADER_ALIGNMENT = 64;
+
+    private EmbeddingFileFormat() {
+    }
+
+    static int headerSize(int modelLength) {
+        int size = MODEL_OFFSET + modelLength;
+
+        return (size + HEADER_ALIGNMENT - 1) / HEADER_ALIGNMENT * HEADER_ALIGNMENT;
+    }
+}
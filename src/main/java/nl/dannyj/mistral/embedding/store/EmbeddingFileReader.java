@@ -0,0 +1,217 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.store;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Provides off-heap random access to an embedding file written by an {@link EmbeddingFileWriter}.
+ * The rows are memory-mapped, so the embeddings are not loaded onto the heap and are read by the operating system on demand.
+ * Files larger than 2 GB are mapped in multiple segments; a row never crosses a segment boundary.
+ * Instances are thread-safe.
+ */
+public class EmbeddingFileReader implements AutoCloseable {
+
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final int rowBytes;
+    private final long rowsPerSegment;
+
+    /**
+     * The ID of the model that created the embeddings.
+     *
+     * @return the model ID
+     */
+    @Getter
+    private final String model;
+
+    /**
+     * The dimension of the embeddings in the file.
+     *
+     * @return the dimension of the embeddings
+     */
+    @Getter
+    private final int dimension;
+
+    /**
+     * The number of rows (embeddings) in the file.
+     *
+     * @return the number of rows
+     */
+    @Getter
+    private final long rowCount;
+
+    /**
+     * Opens and memory-maps an embedding file.
+     *
+     * @param path The path of the file
+     * @throws UncheckedIOException if the file can't be opened or is not a valid embedding file
+     */
+    public EmbeddingFileReader(@NonNull Path path) {
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the embedding file " + path, e);
+        }
+
+        try {
+            ByteBuffer fixedHeader = ByteBuffer.allocate(EmbeddingFileFormat.MODEL_OFFSET).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(fixedHeader, 0);
+
+            int fileDimension = fixedHeader.getInt(EmbeddingFileFormat.DIMENSION_OFFSET);
+            int headerSize = fixedHeader.getInt(EmbeddingFileFormat.HEADER_SIZE_OFFSET);
+            int modelLength = fixedHeader.getInt(EmbeddingFileFormat.MODEL_LENGTH_OFFSET);
+
+            // A row has to fit in a segment, and the model ID has to fit in the header, which has to fit in the file
+            if (fixedHeader.getInt(0) != EmbeddingFileFormat.MAGIC || fixedHeader.getInt(4) != EmbeddingFileFormat.VERSION
+                    || fileDimension < 1 || fileDimension > MAX_SEGMENT_SIZE / Float.BYTES
+                    || modelLength < 0 || headerSize < (long) EmbeddingFileFormat.MODEL_OFFSET + modelLength || headerSize > channel.size()) {
+                throw new IOException("Not a valid embedding file: " + path);
+            }
+
+            this.dimension = fileDimension;
+            ByteBuffer modelBytes = ByteBuffer.allocate(modelLength);
+            readFully(modelBytes, EmbeddingFileFormat.MODEL_OFFSET);
+            this.model = new String(modelBytes.array(), StandardCharsets.UTF_8);
+
+            this.rowBytes = dimension * Float.BYTES;
+            this.rowCount = (channel.size() - headerSize) / rowBytes;
+            this.rowsPerSegment = MAX_SEGMENT_SIZE / rowBytes;
+
+            int segmentCount = (int) ((rowCount + rowsPerSegment - 1) / rowsPerSegment);
+            this.segments = new MappedByteBuffer[segmentCount];
+
+            for (int i = 0; i < segmentCount; i++) {
+                long firstRow = i * rowsPerSegment;
+                long rows = Math.min(rowsPerSegment, rowCount - firstRow);
+
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, headerSize + firstRow * rowBytes, rows * rowBytes);
+                segments[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (IOException e) {
+            closeQuietly();
+            throw new UncheckedIOException("Failed to read the embedding file " + path, e);
+        } catch (RuntimeException e) {
+            closeQuietly();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a read-only view of a row, backed directly by the mapped file.
+     *
+     * @param row The row index
+     * @return A FloatBuffer containing the values of the embedding
+     * @throws IndexOutOfBoundsException if the row does not exist
+     */
+    public FloatBuffer row(long row) {
+        checkRow(row);
+
+        return segments[(int) (row / rowsPerSegment)]
+                .slice((int) (row % rowsPerSegment) * rowBytes, rowBytes)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer()
+                .asReadOnlyBuffer();
+    }
+
+    /**
+     * Copies a row into the given array.
+     *
+     * @param row         The row index
+     * @param destination The array to copy the values into, must be at least as long as the dimension
+     * @return The destination array
+     * @throws IndexOutOfBoundsException if the row does not exist
+     */
+    public float[] get(long row, @NonNull float[] destination) {
+        row(row).get(destination, 0, dimension);
+        return destination;
+    }
+
+    /**
+     * Copies a row into a new array.
+     *
+     * @param row The row index
+     * @return The values of the embedding
+     * @throws IndexOutOfBoundsException if the row does not exist
+     */
+    public float[] get(long row) {
+        return get(row, new float[dimension]);
+    }
+
+    /**
+     * Reads a single value of a row.
+     *
+     * @param row       The row index
+     * @param component The index of the value within the embedding
+     * @return The value
+     * @throws IndexOutOfBoundsException if the row or component does not exist
+     */
+    public float get(long row, int component) {
+        checkRow(row);
+
+        if (component < 0 || component >= dimension) {
+            throw new IndexOutOfBoundsException("Component " + component + " is out of bounds for dimension " + dimension);
+        }
+
+        return segments[(int) (row / rowsPerSegment)].getFloat((int) (row % rowsPerSegment) * rowBytes + component * Float.BYTES);
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close the embedding file", e);
+        }
+    }
+
+    private void checkRow(long row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " is out of bounds for " + rowCount + " rows");
+        }
+    }
+
+    private void readFully(ByteBuffer destination, long position) throws IOException {
+        while (destination.hasRemaining()) {
+            if (channel.read(destination, position + destination.position()) < 0) {
+                throw new IOException("Unexpected end of the embedding file");
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // The original exception is more relevant
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.store;
+
+import lombok.Getter;
+import lombok.NonNull;
+import nl.dannyj.mistral.models.embedding.EmbeddingResponse;
+import nl.dannyj.mistral.models.embedding.FloatEmbedding;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Streams embeddings into a fixed-stride little-endian binary file that can be memory-mapped by an {@link EmbeddingFileReader}.
+ * Rows are appended in the order they are written, the first row has index 0.
+ * Writes are buffered, so the writer must be closed (or flushed) before the file is read.
+ * Instances are not thread-safe.
+ */
+public class EmbeddingFileWriter implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final FloatBuffer floatBuffer;
+
+    /**
+     * The start of the buffered bytes that still have to be written. Only a failed flush leaves it above 0, the buffered bytes are never moved,
+     * so rows stay aligned in the buffer.
+     */
+    private int unflushedOffset;
+
+    /**
+     * The dimension of the embeddings in the file.
+     *
+     * @return the dimension of the embeddings
+     */
+    @Getter
+    private final int dimension;
+
+    /**
+     * The number of rows written so far.
+     *
+     * @return the number of written rows
+     */
+    @Getter
+    private long rowCount;
+
+    /**
+     * Creates a new embedding file, replacing an existing file at the same path.
+     *
+     * @param path      The path of the file
+     * @param model     The ID of the model that created the embeddings
+     * @param dimension The dimension of the embeddings, has to be at least 1
+     * @throws UncheckedIOException if the file can't be created
+     */
+    public EmbeddingFileWriter(@NonNull Path path, @NonNull String model, int dimension) {
+        this(open(path, dimension), path, model, dimension);
+    }
+
+    /**
+     * Creates a new embedding file on an open channel, which is closed if the header can't be written.
+     *
+     * @param channel   The channel to write the file to, positioned at the start of an empty file
+     * @param path      The path of the file, used in error messages
+     * @param model     The ID of the model that created the embeddings
+     * @param dimension The dimension of the embeddings, has to be at least 1
+     * @throws UncheckedIOException if the header can't be written
+     */
+    EmbeddingFileWriter(@NonNull FileChannel channel, Path path, @NonNull String model, int dimension) {
+        if (dimension < 1) {
+            closeQuietly(channel);
+            throw new IllegalArgumentException("dimension must be at least 1");
+        }
+
+        this.channel = channel;
+        this.dimension = dimension;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, dimension * Float.BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+        this.floatBuffer = buffer.asFloatBuffer();
+
+        byte[] modelBytes = model.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(EmbeddingFileFormat.headerSize(modelBytes.length)).order(ByteOrder.LITTLE_ENDIAN);
+
+        header.putInt(EmbeddingFileFormat.MAGIC)
+                .putInt(EmbeddingFileFormat.VERSION)
+                .putInt(dimension)
+                .putInt(header.capacity())
+                .putInt(modelBytes.length)
+                .put(modelBytes)
+                .rewind();
+
+        try {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new UncheckedIOException("Failed to create the embedding file " + path, e);
+        }
+    }
+
+    /**
+     * Appends an embedding as the next row.
+     *
+     * @param embedding The embedding values, must have the dimension of the file
+     * @return The row index of the embedding
+     * @throws UncheckedIOException if writing to the file fails
+     */
+    public long write(@NonNull float[] embedding) {
+        if (embedding.length != dimension) {
+            throw new IllegalArgumentException("Expected an embedding with " + dimension + " dimensions but got " + embedding.length);
+        }
+
+        int rowBytes = dimension * Float.BYTES;
+
+        if (buffer.remaining() < rowBytes) {
+            flush();
+        }
+
+        floatBuffer.position(buffer.position() / Float.BYTES);
+        floatBuffer.put(embedding);
+        buffer.position(buffer.position() + rowBytes);
+
+        return rowCount++;
+    }
+
+    /**
+     * Appends an embedding returned by the Mistral AI API as the next row.
+     *
+     * @param embedding The embedding, must have the dimension of the file
+     * @return The row index of the embedding
+     * @throws UncheckedIOException if writing to the file fails
+     */
+    public long write(@NonNull FloatEmbedding embedding) {
+        return write(embedding.getEmbeddingArray());
+    }
+
+    /**
+     * Appends all embeddings of a response, ordered by their index in the input list.
+     *
+     * @param response The response of an embedding request
+     * @return The row index of the first embedding of the response
+     * @throws UncheckedIOException if writing to the file fails
+     */
+    public long write(@NonNull EmbeddingResponse response) {
+        long firstRow = rowCount;
+        List<FloatEmbedding> data = response.getData();
+
+        if (data != null) {
+            data.stream()
+                    .sorted(Comparator.comparingInt(FloatEmbedding::getIndex))
+                    .forEach(this::write);
+        }
+
+        return firstRow;
+    }
+
+    /**
+     * Writes the buffered rows to the file.
+     * If writing fails, the bytes that were not written stay buffered and are written by the next flush.
+     *
+     * @throws UncheckedIOException if writing to the file fails
+     */
+    public void flush() {
+        int end = buffer.position();
+        buffer.limit(end).position(unflushedOffset);
+
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            // The channel position is right after the bytes that were written, continue from there on the next flush
+            unflushedOffset = buffer.position();
+            buffer.limit(buffer.capacity()).position(end);
+            throw new UncheckedIOException("Failed to write to the embedding file", e);
+        }
+
+        unflushedOffset = 0;
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffered rows and closes the file.
+     *
+     * @throws UncheckedIOException if writing to or closing the file fails
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to close the embedding file", e);
+            }
+        }
+    }
+
+    private static FileChannel open(Path path, int dimension) {
+        if (dimension < 1) {
+            // Checked before the file is created, so an existing file is not truncated
+            throw new IllegalArgumentException("dimension must be at least 1");
+        }
+
+        try {
+            return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create the embedding file " + path, e);
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // The original exception is more relevant
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.vector;
+
+import lombok.Getter;
+import lombok.NonNull;
+import nl.dannyj.mistral.models.embedding.FloatEmbedding;
+
+import java.util.List;
+
+/**
+ * Vectors stored as sign bits, which uses 1/32 of the memory of floats. Vectors are compared by their hamming distance,
+ * the number of dimensions with a different sign. Binary search results are coarse, so they are usually oversampled and
+ * reranked with a {@link Rescorer}. The vectors are stored in chunked arrays, so the number of words is not limited to the maximum
+ * array length. Instances are immutable and thread-safe.
+ */
+public class BinaryVectors implements QuantizedVectors {
+
+    private final long[][] chunks;
+    private final RowChunks layout;
+    private final int size;
+    private final int wordsPerVector;
+
+    /**
+     * The dimension of the vectors.
+     *
+     * @return the dimension of the vectors
+     */
+    @Getter
+    private final int dimension;
+
+    private BinaryVectors(long[][] chunks, RowChunks layout, int size, int dimension) {
+        this.chunks = chunks;
+        this.layout = layout;
+        this.size = size;
+        this.dimension = dimension;
+        this.wordsPerVector = wordCount(dimension);
+    }
+
+    /**
+     * Encodes vectors as sign bits.
+     *
+     * @param vectors The vectors, as rows of a matrix. All vectors must have the same dimension.
+     * @return The encoded vectors
+     * @throws IllegalArgumentException if the vectors have different dimensions
+     */
+    public static BinaryVectors encode(@NonNull float[][] vectors) {
+        int dimension = vectors.length == 0 ? 0 : vectors[0].length;
+        int wordsPerVector = wordCount(dimension);
+        RowChunks layout = new RowChunks(vectors.length, wordsPerVector);
+        long[][] chunks = new long[layout.chunkCount()][];
+
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            chunks[chunk] = new long[layout.chunkLength(chunk)];
+        }
+
+        for (int row = 0; row < vectors.length; row++) {
+            VectorMath.checkLength(vectors[0], vectors[row]);
+            encode(vectors[row], chunks[layout.chunk(row)], layout.offset(row));
+        }
+
+        return new BinaryVectors(chunks, layout, vectors.length, dimension);
+    }
+
+    /**
+     * Encodes embeddings returned by the Mistral AI API as sign bits. The rows are in the order of the list.
+     *
+     * @param embeddings The embeddings. All embeddings must have the same dimension.
+     * @return The encoded embeddings
+     * @throws IllegalArgumentException if the embeddings have different dimensions
+     */
+    public static BinaryVectors encode(@NonNull List<FloatEmbedding> embeddings) {
+        return encode(VectorMath.toMatrix(embeddings));
+    }
+
+    /**
+     * Encodes a single vector as sign bits. Bit {@code i % 64} of word {@code i / 64} is set when component {@code i} is positive.
+     *
+     * @param vector The vector to encode
+     * @return The sign bits
+     */
+    public static long[] encode(@NonNull float[] vector) {
+        long[] words = new long[wordCount(vector.length)];
+        encode(vector, words, 0);
+        return words;
+    }
+
+    /**
+     * Calculates the hamming distance between two vectors encoded as sign bits.
+     *
+     * @param a The first vector
+     * @param b The second vector
+     * @return The number of bits that differ
+     */
+    public static int hammingDistance(@NonNull long[] a, @NonNull long[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("Vectors must have the same number of words, got " + a.length + " and " + b.length);
+        }
+
+        int distance = 0;
+        for (int i = 0; i < a.length; i++) {
+            distance += Long.bitCount(a[i] ^ b[i]);
+        }
+
+        return distance;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return layout.elementCount() * Long.BYTES;
+    }
+
+    /**
+     * Returns the hamming distance between the query and a stored vector.
+     *
+     * @param query The query, encoded with {@link #encode(float[])}
+     * @param row   The index of the vector
+     * @return The number of dimensions with a different sign
+     */
+    public int hammingDistance(@NonNull long[] query, int row) {
+        checkRow(row);
+
+        if (query.length != wordsPerVector) {
+            throw new IllegalArgumentException("Expected a query with " + wordsPerVector + " words but got " + query.length);
+        }
+
+        return hamming(query, row);
+    }
+
+    /**
+     * Decodes a vector to +1 and -1 values. Only the signs of the original vector are preserved.
+     *
+     * @param row The index of the vector
+     * @return The decoded vector
+     */
+    @Override
+    public float[] decode(int row) {
+        checkRow(row);
+
+        long[] words = chunks[layout.chunk(row)];
+        int offset = layout.offset(row);
+        float[] decoded = new float[dimension];
+
+        for (int i = 0; i < dimension; i++) {
+            decoded[i] = (words[offset + (i >>> 6)] & (1L << i)) != 0 ? 1 : -1;
+        }
+
+        return decoded;
+    }
+
+    /**
+     * Approximates the dot product of the signs of the query and a stored vector as {@code dimension - 2 * hammingDistance}.
+     *
+     * @param query The full precision query vector
+     * @param row   The index of the vector
+     * @return The approximate score, higher is more similar
+     */
+    @Override
+    public float score(@NonNull float[] query, int row) {
+        checkRow(row);
+        checkQuery(query);
+
+        return dimension - 2 * hamming(encode(query), row);
+    }
+
+    @Override
+    public List<SearchResult> topK(@NonNull float[] query, int k) {
+        checkQuery(query);
+
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+
+        long[] encodedQuery = encode(query);
+        TopKCollector collector = new TopKCollector(Math.min(k, Math.max(size, 1)), true);
+
+        for (int row = 0; row < size; row++) {
+            collector.offer(row, dimension - 2 * hamming(encodedQuery, row));
+        }
+
+        return collector.toResults();
+    }
+
+    private int hamming(long[] query, int row) {
+        long[] words = chunks[layout.chunk(row)];
+        int offset = layout.offset(row);
+        int distance = 0;
+
+        for (int i = 0; i < wordsPerVector; i++) {
+            distance += Long.bitCount(query[i] ^ words[offset + i]);
+        }
+
+        return distance;
+    }
+
+    private static void encode(float[] vector, long[] destination, int offset) {
+        for (int i = 0; i < vector.length; i++) {
+            if (vector[i] > 0) {
+                destination[offset + (i >>> 6)] |= 1L << i;
+            }
+        }
+    }
+
+    private static int wordCount(int dimension) {
+        return (dimension + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " is out of bounds for " + size + " vectors");
+        }
+    }
+
+    private void checkQuery(float[] query) {
+        if (query.length != dimension && size > 0) {
+            throw new IllegalArgumentException("Expected a vector with " + dimension + " dimensions but got " + query.length);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.vector;
+
+import lombok.NonNull;
+
+/**
+ * Conversion between floats and IEEE 754 half precision floats, stored in a short.
+ * Floats are rounded to the nearest half precision value, ties are rounded to even.
+ */
+public final class Float16 {
+
+    private static final float[] TO_FLOAT = new float[1 << 16];
+
+    static {
+        for (int i = 0; i < TO_FLOAT.length; i++) {
+            TO_FLOAT[i] = convertToFloat(i);
+        }
+    }
+
+    private Float16() {
+    }
+
+    /**
+     * Converts a float to half precision.
+     *
+     * @param value The float value
+     * @return The half precision value
+     */
+    public static short fromFloat(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+
+        if (exponent == 0xFF) {
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+
+        int halfExponent = exponent - 127 + 15;
+
+        if (halfExponent >= 0x1F) {
+            return (short) (sign | 0x7C00);
+        }
+
+        if (halfExponent <= 0) {
+            if (halfExponent < -10) {
+                return (short) sign;
+            }
+
+            // Subnormal half precision value, the implicit leading bit becomes part of the mantissa
+            return (short) (sign | round(mantissa | 0x800000, 14 - halfExponent));
+        }
+
+        // A carry out of the mantissa correctly increments the exponent, up to infinity
+        return (short) (sign | ((halfExponent << 10) + round(mantissa, 13)));
+    }
+
+    /**
+     * Converts a half precision value to a float.
+     *
+     * @param value The half precision value
+     * @return The float value
+     */
+    public static float toFloat(short value) {
+        return TO_FLOAT[value & 0xFFFF];
+    }
+
+    /**
+     * Converts a vector to half precision.
+     *
+     * @param vector The float vector
+     * @return The half precision vector
+     */
+    public static short[] encode(@NonNull float[] vector) {
+        short[] encoded = new short[vector.length];
+
+        for (int i = 0; i < vector.length; i++) {
+            encoded[i] = fromFloat(vector[i]);
+        }
+
+        return encoded;
+    }
+
+    /**
+     * Converts a half precision vector to floats.
+     *
+     * @param vector The half precision vector
+     * @return The float vector
+     */
+    public static float[] decode(@NonNull short[] vector) {
+        float[] decoded = new float[vector.length];
+
+        for (int i = 0; i < vector.length; i++) {
+            decoded[i] = toFloat(vector[i]);
+        }
+
+        return decoded;
+    }
+
+    private static int round(int mantissa, int shift) {
+        int result = mantissa >> shift;
+        int remainder = mantissa & ((1 << shift) - 1);
+        int halfway = 1 << (shift - 1);
+
+        if (remainder > halfway || (remainder == halfway && (result & 1) != 0)) {
+            result++;
+        }
+
+        return result;
+    }
+
+    private static float convertToFloat(int half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+
+        if (exponent == 0) {
+            float value = mantissa * 0x1p-24f;
+            return sign != 0 ? -value : value;
+        }
+
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.vector;
+
+import lombok.Getter;
+import lombok.NonNull;
+import nl.dannyj.mistral.models.embedding.FloatEmbedding;
+
+import java.util.List;
+
+/**
+ * Vectors stored in half precision, which halves the memory usage with a negligible loss of accuracy for embeddings.
+ * The vectors are stored in chunked arrays, so the number of values is not limited to the maximum array length. Instances are immutable and thread-safe.
+ */
+public class Float16Vectors implements QuantizedVectors {
+
+    private final short[][] chunks;
+    private final RowChunks layout;
+    private final int size;
+
+    /**
+     * The dimension of the vectors.
+     *
+     * @return the dimension of the vectors
+     */
+    @Getter
+    private final int dimension;
+
+    private Float16Vectors(short[][] chunks, RowChunks layout, int size, int dimension) {
+        this.chunks = chunks;
+        this.layout = layout;
+        this.size = size;
+        this.dimension = dimension;
+    }
+
+    /**
+     * Encodes vectors in half precision.
+     *
+     * @param vectors The vectors, as rows of a matrix. All vectors must have the same dimension.
+     * @return The encoded vectors
+     * @throws IllegalArgumentException if the vectors have different dimensions
+     */
+    public static Float16Vectors encode(@NonNull float[][] vectors) {
+        int dimension = vectors.length == 0 ? 0 : vectors[0].length;
+        RowChunks layout = new RowChunks(vectors.length, dimension);
+        short[][] chunks = new short[layout.chunkCount()][];
+
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            chunks[chunk] = new short[layout.chunkLength(chunk)];
+        }
+
+        for (int row = 0; row < vectors.length; row++) {
+            VectorMath.checkLength(vectors[0], vectors[row]);
+
+            short[] values = chunks[layout.chunk(row)];
+            int offset = layout.offset(row);
+
+            for (int i = 0; i < dimension; i++) {
+                values[offset + i] = Float16.fromFloat(vectors[row][i]);
+            }
+        }
+
+        return new Float16Vectors(chunks, layout, vectors.length, dimension);
+    }
+
+    /**
+     * Encodes embeddings returned by the Mistral AI API in half precision. The rows are in the order of the list.
+     *
+     * @param embeddings The embeddings. All embeddings must have the same dimension.
+     * @return The encoded embeddings
+     * @throws IllegalArgumentException if the embeddings have different dimensions
+     */
+    public static Float16Vectors encode(@NonNull List<FloatEmbedding> embeddings) {
+        return encode(VectorMath.toMatrix(embeddings));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return layout.elementCount() * Short.BYTES;
+    }
+
+    @Override
+    public float[] decode(int row) {
+        checkRow(row);
+
+        short[] values = chunks[layout.chunk(row)];
+        int offset = layout.offset(row);
+        float[] decoded = new float[dimension];
+
+        for (int i = 0; i < dimension; i++) {
+            decoded[i] = Float16.toFloat(values[offset + i]);
+        }
+
+        return decoded;
+    }
+
+    @Override
+    public float score(@NonNull float[] query, int row) {
+        checkRow(row);
+        checkQuery(query);
+
+        return dot(query, row);
+    }
+
+    @Override
+    public List<SearchResult> topK(@NonNull float[] query, int k) {
+        checkQuery(query);
+
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+
+        TopKCollector collector = new TopKCollector(Math.min(k, Math.max(size, 1)), true);
+        for (int row = 0; row < size; row++) {
+            collector.offer(row, dot(query, row));
+        }
+
+        return collector.toResults();
+    }
+
+    private float dot(float[] query, int row) {
+        short[] values = chunks[layout.chunk(row)];
+        int offset = layout.offset(row);
+        float sum0 = 0;
+        float sum1 = 0;
+        int i = 0;
+
+        for (; i + 1 < dimension; i += 2) {
+            sum0 += query[i] * Float16.toFloat(values[offset + i]);
+            sum1 += query[i + 1] * Float16.toFloat(values[offset + i + 1]);
+        }
+
+        if (i < dimension) {
+            sum0 += query[i] * Float16.toFloat(values[offset + i]);
+        }
+
+        return sum0 + sum1;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " is out of bounds for " + size + " vectors");
+        }
+    }
+
+    private void checkQuery(float[] query) {
+        if (query.length != dimension && size > 0) {
+            throw new IllegalArgumentException("Expected a vector with " + dimension + " dimensions but got " + query.length);
+        }
+    }
+}
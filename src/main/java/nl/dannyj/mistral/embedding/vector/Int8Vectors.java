@@ -0,0 +1,202 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.vector;
+
+import lombok.Getter;
+import lombok.NonNull;
+import nl.dannyj.mistral.models.embedding.FloatEmbedding;
+
+import java.util.List;
+
+/**
+ * Vectors stored with symmetric scalar int8 quantization, which uses a quarter of the memory of floats.
+ * Every vector is scaled by its own factor so that its largest absolute value maps to 127.
+ * Queries are quantized the same way, so scores are calculated with integer arithmetic.
+ * The vectors are stored in chunked arrays, so the number of values is not limited to the maximum array length. Instances are immutable and thread-safe.
+ */
+public class Int8Vectors implements QuantizedVectors {
+
+    private static final int MAX_VALUE = 127;
+
+    private final byte[][] chunks;
+    private final RowChunks layout;
+    private final float[] scales;
+
+    /**
+     * The dimension of the vectors.
+     *
+     * @return the dimension of the vectors
+     */
+    @Getter
+    private final int dimension;
+
+    private Int8Vectors(byte[][] chunks, RowChunks layout, float[] scales, int dimension) {
+        this.chunks = chunks;
+        this.layout = layout;
+        this.scales = scales;
+        this.dimension = dimension;
+    }
+
+    /**
+     * Encodes vectors with int8 quantization.
+     *
+     * @param vectors The vectors, as rows of a matrix. All vectors must have the same dimension.
+     * @return The encoded vectors
+     * @throws IllegalArgumentException if the vectors have different dimensions
+     */
+    public static Int8Vectors encode(@NonNull float[][] vectors) {
+        int dimension = vectors.length == 0 ? 0 : vectors[0].length;
+        RowChunks layout = new RowChunks(vectors.length, dimension);
+        byte[][] chunks = new byte[layout.chunkCount()][];
+        float[] scales = new float[vectors.length];
+
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            chunks[chunk] = new byte[layout.chunkLength(chunk)];
+        }
+
+        for (int row = 0; row < vectors.length; row++) {
+            VectorMath.checkLength(vectors[0], vectors[row]);
+            scales[row] = quantize(vectors[row], chunks[layout.chunk(row)], layout.offset(row));
+        }
+
+        return new Int8Vectors(chunks, layout, scales, dimension);
+    }
+
+    /**
+     * Encodes embeddings returned by the Mistral AI API with int8 quantization. The rows are in the order of the list.
+     *
+     * @param embeddings The embeddings. All embeddings must have the same dimension.
+     * @return The encoded embeddings
+     * @throws IllegalArgumentException if the embeddings have different dimensions
+     */
+    public static Int8Vectors encode(@NonNull List<FloatEmbedding> embeddings) {
+        return encode(VectorMath.toMatrix(embeddings));
+    }
+
+    /**
+     * Quantizes a single vector.
+     *
+     * @param vector      The vector to quantize
+     * @param destination The array to write the quantized values to
+     * @param offset      The offset in the destination array
+     * @return The scale of the vector, multiply a quantized value with the scale to approximate the original value
+     */
+    public static float quantize(@NonNull float[] vector, @NonNull byte[] destination, int offset) {
+        float max = 0;
+
+        for (float value : vector) {
+            max = Math.max(max, Math.abs(value));
+        }
+
+        if (max == 0) {
+            return 0;
+        }
+
+        float inverseScale = MAX_VALUE / max;
+        for (int i = 0; i < vector.length; i++) {
+            destination[offset + i] = (byte) Math.round(vector[i] * inverseScale);
+        }
+
+        return max / MAX_VALUE;
+    }
+
+    @Override
+    public int size() {
+        return scales.length;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return layout.elementCount() + (long) scales.length * Float.BYTES;
+    }
+
+    @Override
+    public float[] decode(int row) {
+        checkRow(row);
+
+        byte[] values = chunks[layout.chunk(row)];
+        int offset = layout.offset(row);
+        float[] decoded = new float[dimension];
+
+        for (int i = 0; i < dimension; i++) {
+            decoded[i] = values[offset + i] * scales[row];
+        }
+
+        return decoded;
+    }
+
+    @Override
+    public float score(@NonNull float[] query, int row) {
+        checkRow(row);
+        checkQuery(query);
+
+        byte[] quantizedQuery = new byte[dimension];
+        float queryScale = quantize(query, quantizedQuery, 0);
+
+        return dot(quantizedQuery, row) * queryScale * scales[row];
+    }
+
+    @Override
+    public List<SearchResult> topK(@NonNull float[] query, int k) {
+        checkQuery(query);
+
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+
+        byte[] quantizedQuery = new byte[dimension];
+        float queryScale = quantize(query, quantizedQuery, 0);
+
+        TopKCollector collector = new TopKCollector(Math.min(k, Math.max(size(), 1)), true);
+        for (int row = 0; row < scales.length; row++) {
+            collector.offer(row, dot(quantizedQuery, row) * queryScale * scales[row]);
+        }
+
+        return collector.toResults();
+    }
+
+    private int dot(byte[] query, int row) {
+        byte[] values = chunks[layout.chunk(row)];
+        int offset = layout.offset(row);
+        int sum0 = 0;
+        int sum1 = 0;
+        int i = 0;
+
+        for (; i + 1 < dimension; i += 2) {
+            sum0 += query[i] * values[offset + i];
+            sum1 += query[i + 1] * values[offset + i + 1];
+        }
+
+        if (i < dimension) {
+            sum0 += query[i] * values[offset + i];
+        }
+
+        return sum0 + sum1;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= scales.length) {
+            throw new IndexOutOfBoundsException("Row " + row + " is out of bounds for " + scales.length + " vectors");
+        }
+    }
+
+    private void checkQuery(float[] query) {
+        if (query.length != dimension && scales.length > 0) {
+            throw new IllegalArgumentException("Expected a vector with " + dimension + " dimensions but got " + query.length);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.vector;
+
+import java.util.List;
+
+/**
+ * A collection of vectors stored in a compressed encoding, which trades accuracy for memory.
+ * Scores approximate the dot product with a full precision query vector, which equals the cosine similarity for
+ * normalized embeddings such as the ones returned by mistral-embed. Use {@link Rescorer} to rerank the approximate results
+ * with the full precision vectors.
+ */
+public interface QuantizedVectors {
+
+    /**
+     * Returns the number of vectors.
+     *
+     * @return the number of vectors
+     */
+    int size();
+
+    /**
+     * Returns the dimension of the vectors.
+     *
+     * @return the dimension of the vectors
+     */
+    int getDimension();
+
+    /**
+     * Returns the number of bytes used to store the encoded vectors.
+     *
+     * @return the size of the encoded vectors in bytes
+     */
+    long sizeInBytes();
+
+    /**
+     * Decodes a vector back to floats. The result is an approximation of the original vector.
+     *
+     * @param row The index of the vector
+     * @return The decoded vector
+     */
+    float[] decode(int row);
+
+    /**
+     * Approximates the dot product of the query and a stored vector.
+     *
+     * @param query The full precision query vector
+     * @param row   The index of the vector
+     * @return The approximate score, higher is more similar
+     */
+    float score(float[] query, int row);
+
+    /**
+     * Finds the k vectors with the highest approximate score for the query.
+     *
+     * @param query The full precision query vector
+     * @param k     The maximum number of results, has to be at least 1
+     * @return The results, ordered from highest to lowest score
+     */
+    List<SearchResult> topK(float[] query, int k);
+}
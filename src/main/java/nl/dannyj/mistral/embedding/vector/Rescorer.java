@@ -0,0 +1,81 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.vector;
+
+import lombok.NonNull;
+
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Reranks approximate search results with the full precision vectors.
+ * A typical setup keeps {@link QuantizedVectors} in memory and the original vectors on disk, for example in an
+ * {@code EmbeddingFileReader}: the quantized vectors select a few candidates, which are then scored exactly.
+ */
+public final class Rescorer {
+
+    private Rescorer() {
+    }
+
+    /**
+     * Scores candidates with their full precision vectors and returns the best k.
+     *
+     * @param query      The full precision query vector
+     * @param candidates The candidates, for example the results of {@link QuantizedVectors#topK(float[], int)}
+     * @param originals  Returns the full precision vector for the index of a candidate
+     * @param k          The maximum number of results, has to be at least 1
+     * @param metric     The metric used to score the candidates
+     * @return The results, ordered from most to least similar
+     */
+    public static List<SearchResult> rescore(@NonNull float[] query, @NonNull List<SearchResult> candidates, @NonNull IntFunction<float[]> originals,
+                                             int k, @NonNull SimilarityMetric metric) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+
+        VectorOperations operations = VectorMath.operations();
+        TopKCollector collector = new TopKCollector(Math.min(k, Math.max(candidates.size(), 1)), metric.isHigherBetter());
+
+        for (SearchResult candidate : candidates) {
+            float[] original = originals.apply(candidate.getIndex());
+            VectorMath.checkLength(query, original);
+            collector.offer(candidate.getIndex(), metric.score(operations, query, original));
+        }
+
+        return collector.toResults();
+    }
+
+    /**
+     * Searches the quantized vectors for {@code k * oversampling} candidates and reranks them with the full precision vectors.
+     *
+     * @param vectors      The quantized vectors
+     * @param query        The full precision query vector
+     * @param k            The maximum number of results, has to be at least 1
+     * @param oversampling The number of candidates per result, has to be at least 1
+     * @param originals    Returns the full precision vector for the index of a candidate
+     * @param metric       The metric used to score the candidates
+     * @return The results, ordered from most to least similar
+     */
+    public static List<SearchResult> search(@NonNull QuantizedVectors vectors, @NonNull float[] query, int k, int oversampling,
+                                            @NonNull IntFunction<float[]> originals, @NonNull SimilarityMetric metric) {
+        if (oversampling < 1) {
+            throw new IllegalArgumentException("oversampling must be at least 1");
+        }
+
+        return rescore(query, vectors.topK(query, (int) Math.min((long) k * oversampling, Integer.MAX_VALUE)), originals, k, metric);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.vector;
+
+/**
+ * The layout of fixed-length rows in chunked arrays, so a corpus is not limited to the maximum length of a single Java array.
+ * Every chunk holds a whole number of rows, so a row never spans two chunks and offsets within a chunk fit in an int.
+ */
+final class RowChunks {
+
+    /**
+     * The maximum number of elements in a chunk, which stays well below the maximum array length of the JVM.
+     */
+    static final int MAX_CHUNK_ELEMENTS = 1 << 30;
+
+    private final int size;
+    private final int rowLength;
+    private final int rowsPerChunk;
+
+    /**
+     * Creates the layout for the provided number of rows.
+     *
+     * @param size      The number of rows
+     * @param rowLength The number of elements in a row
+     */
+    RowChunks(int size, int rowLength) {
+        this(size, rowLength, MAX_CHUNK_ELEMENTS);
+    }
+
+    /**
+     * Creates the layout for the provided number of rows with a custom chunk size.
+     *
+     * @param size             The number of rows
+     * @param rowLength        The number of elements in a row
+     * @param maxChunkElements The maximum number of elements in a chunk. A row that is longer than this gets a chunk of its own.
+     */
+    RowChunks(int size, int rowLength, int maxChunkElements) {
+        if (size < 0 || rowLength < 0) {
+            throw new IllegalArgumentException("The number of rows and the row length must not be negative, got " + size + " rows of " + rowLength);
+        }
+
+        if (maxChunkElements < 1) {
+            throw new IllegalArgumentException("maxChunkElements must be at least 1");
+        }
+
+        this.size = size;
+        this.rowLength = rowLength;
+        this.rowsPerChunk = rowLength == 0 ? Integer.MAX_VALUE : Math.max(1, maxChunkElements / rowLength);
+    }
+
+    /**
+     * Returns the number of chunks.
+     *
+     * @return The number of chunks
+     */
+    int chunkCount() {
+        return size == 0 ? 0 : (int) (((long) size + rowsPerChunk - 1) / rowsPerChunk);
+    }
+
+    /**
+     * Returns the number of elements in a chunk.
+     *
+     * @param chunk The index of the chunk
+     * @return The number of elements in the chunk
+     */
+    int chunkLength(int chunk) {
+        long firstRow = (long) chunk * rowsPerChunk;
+        long rows = Math.min(rowsPerChunk, size - firstRow);
+
+        return Math.toIntExact(rows * rowLength);
+    }
+
+    /**
+     * Returns the chunk that holds a row.
+     *
+     * @param row The index of the row
+     * @return The index of the chunk that holds the row
+     */
+    int chunk(int row) {
+        return row / rowsPerChunk;
+    }
+
+    /**
+     * Returns the offset of a row in its chunk.
+     *
+     * @param row The index of the row
+     * @return The offset of the first element of the row in its chunk
+     */
+    int offset(int row) {
+        return (row % rowsPerChunk) * rowLength;
+    }
+
+    /**
+     * Returns the total number of elements of all rows.
+     *
+     * @return The total number of elements of all rows
+     */
+    long elementCount() {
+        return (long) size * rowLength;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.vector;
+
+/**
+ * Plain Java implementation of the vector operations, used when the Vector API is not available.
+ * The loops are unrolled with independent accumulators, so the JIT compiler can pipeline the floating point operations.
+ */
+class ScalarVectorOperations implements VectorOperations {
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        float sum0 = 0;
+        float sum1 = 0;
+        float sum2 = 0;
+        float sum3 = 0;
+        int i = 0;
+        int bound = a.length & ~3;
+
+        for (; i < bound; i += 4) {
+            sum0 += a[i] * b[i];
+            sum1 += a[i + 1] * b[i + 1];
+            sum2 += a[i + 2] * b[i + 2];
+            sum3 += a[i + 3] * b[i + 3];
+        }
+
+        for (; i < a.length; i++) {
+            sum0 += a[i] * b[i];
+        }
+
+        return sum0 + sum1 + sum2 + sum3;
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b) {
+        float dot = 0;
+        float normA = 0;
+        float normB = 0;
+
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+
+        return VectorMath.cosine(dot, normA, normB);
+    }
+
+    @Override
+    public float squaredEuclidean(float[] a, float[] b) {
+        float sum0 = 0;
+        float sum1 = 0;
+        int i = 0;
+        int bound = a.length & ~1;
+
+        for (; i < bound; i += 2) {
+            float diff0 = a[i] - b[i];
+            float diff1 = a[i + 1] - b[i + 1];
+            sum0 += diff0 * diff0;
+            sum1 += diff1 * diff1;
+        }
+
+        for (; i < a.length; i++) {
+            float diff = a[i] - b[i];
+            sum0 += diff * diff;
+        }
+
+        return sum0 + sum1;
+    }
+}
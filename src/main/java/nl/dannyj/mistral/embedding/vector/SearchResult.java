@@ -0,0 +1,44 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.vector;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A single result of a nearest neighbour search.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class SearchResult {
+
+    /**
+     * The index of the matching vector in the searched corpus.
+     *
+     * @return the index of the matching vector
+     */
+    private final int index;
+
+    /**
+     * The score of the matching vector, calculated with the metric used for the search.
+     *
+     * @return the score of the matching vector
+     */
+    private final float score;
+}
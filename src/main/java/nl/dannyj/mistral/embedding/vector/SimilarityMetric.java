@@ -0,0 +1,69 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.vector;
+
+/**
+ * The metrics that can be used to compare embeddings.
+ */
+public enum SimilarityMetric {
+
+    /**
+     * The dot product, higher is more similar. Equivalent to cosine similarity for normalized embeddings such as the ones returned by mistral-embed.
+     */
+    DOT_PRODUCT(true),
+
+    /**
+     * The cosine similarity, higher is more similar.
+     */
+    COSINE(true),
+
+    /**
+     * The euclidean (L2) distance, lower is more similar.
+     */
+    EUCLIDEAN(false);
+
+    private final boolean higherIsBetter;
+
+    SimilarityMetric(boolean higherIsBetter) {
+        this.higherIsBetter = higherIsBetter;
+    }
+
+    /**
+     * Whether a higher score means that two vectors are more similar.
+     *
+     * @return true for similarity metrics, false for distance metrics
+     */
+    public boolean isHigherBetter() {
+        return higherIsBetter;
+    }
+
+    /**
+     * Calculates the score of two vectors with this metric.
+     *
+     * @param operations The vector operations to use
+     * @param a          The first vector
+     * @param b          The second vector
+     * @return The score
+     */
+    float score(VectorOperations operations, float[] a, float[] b) {
+        return switch (this) {
+            case DOT_PRODUCT -> operations.dot(a, b);
+            case COSINE -> operations.cosine(a, b);
+            case EUCLIDEAN -> (float) Math.sqrt(operations.squaredEuclidean(a, b));
+        };
+    }
+}
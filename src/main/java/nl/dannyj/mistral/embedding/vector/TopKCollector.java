@@ -0,0 +1,119 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.vector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the k best scores of a search in a binary heap with the worst collected score at the root.
+ * Scores are kept in primitive arrays, so offering a candidate does not allocate. Not thread-safe.
+ */
+class TopKCollector {
+
+    private final int k;
+    private final boolean higherIsBetter;
+    private final int[] indices;
+    private final float[] scores;
+    private int size;
+
+    TopKCollector(int k, boolean higherIsBetter) {
+        this.k = k;
+        this.higherIsBetter = higherIsBetter;
+        this.indices = new int[k];
+        this.scores = new float[k];
+    }
+
+    void offer(int index, float score) {
+        if (size < k) {
+            indices[size] = index;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (isBetter(score, scores[0])) {
+            indices[0] = index;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    void addAll(TopKCollector other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.indices[i], other.scores[i]);
+        }
+    }
+
+    List<SearchResult> toResults() {
+        List<SearchResult> results = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            results.add(new SearchResult(indices[i], scores[i]));
+        }
+
+        results.sort((a, b) -> higherIsBetter ? Float.compare(b.getScore(), a.getScore()) : Float.compare(a.getScore(), b.getScore()));
+        return results;
+    }
+
+    private boolean isBetter(float score, float other) {
+        return higherIsBetter ? score > other : score < other;
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+
+            if (!isBetter(scores[parent], scores[position])) {
+                return;
+            }
+
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int worst = position;
+            int left = position * 2 + 1;
+            int right = left + 1;
+
+            if (left < size && isBetter(scores[worst], scores[left])) {
+                worst = left;
+            }
+
+            if (right < size && isBetter(scores[worst], scores[right])) {
+                worst = right;
+            }
+
+            if (worst == position) {
+                return;
+            }
+
+            swap(position, worst);
+            position = worst;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int index = indices[i];
+        indices[i] = indices[j];
+        indices[j] = index;
+
+        float score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.vector;
+
+import lombok.NonNull;
+import nl.dannyj.mistral.models.embedding.FloatEmbedding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Similarity functions and brute-force nearest neighbour search over embeddings.
+ * <p>
+ * When the incubating Vector API is available (the JVM was started with {@code --add-modules jdk.incubator.vector}),
+ * the calculations use SIMD instructions. Otherwise, a scalar implementation is used. Both produce the same results,
+ * apart from floating point rounding differences.
+ */
+public final class VectorMath {
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_OPERATIONS_CLASS = "nl.dannyj.mistral.embedding.vector.PanamaVectorOperations";
+    private static final int MIN_PARALLEL_CHUNK_SIZE = 1024;
+    private static final VectorOperations OPERATIONS = loadOperations();
+
+    private VectorMath() {
+    }
+
+    /**
+     * Returns the vector operations in use.
+     *
+     * @return the SIMD implementation if the Vector API is available, otherwise the scalar implementation
+     */
+    public static VectorOperations operations() {
+        return OPERATIONS;
+    }
+
+    /**
+     * Whether the SIMD implementation of the Vector API is in use.
+     *
+     * @return true if the Vector API is in use, false if the scalar fallback is in use
+     */
+    public static boolean isVectorApiEnabled() {
+        return !(OPERATIONS instanceof ScalarVectorOperations);
+    }
+
+    /**
+     * Calculates the dot product of two vectors.
+     *
+     * @param a The first vector
+     * @param b The second vector
+     * @return The dot product
+     * @throws IllegalArgumentException if the vectors have different lengths
+     */
+    public static float dot(@NonNull float[] a, @NonNull float[] b) {
+        checkLength(a, b);
+        return OPERATIONS.dot(a, b);
+    }
+
+    /**
+     * Calculates the cosine similarity of two vectors.
+     *
+     * @param a The first vector
+     * @param b The second vector
+     * @return The cosine similarity, or 0.0 if one of the vectors has a norm of zero
+     * @throws IllegalArgumentException if the vectors have different lengths
+     */
+    public static float cosine(@NonNull float[] a, @NonNull float[] b) {
+        checkLength(a, b);
+        return OPERATIONS.cosine(a, b);
+    }
+
+    /**
+     * Calculates the euclidean (L2) distance between two vectors.
+     *
+     * @param a The first vector
+     * @param b The second vector
+     * @return The euclidean distance
+     * @throws IllegalArgumentException if the vectors have different lengths
+     */
+    public static float euclidean(@NonNull float[] a, @NonNull float[] b) {
+        checkLength(a, b);
+        return (float) Math.sqrt(OPERATIONS.squaredEuclidean(a, b));
+    }
+
+    /**
+     * Calculates the score of two embeddings with the given metric.
+     *
+     * @param a      The first embedding
+     * @param b      The second embedding
+     * @param metric The metric to use
+     * @return The score
+     * @throws IllegalArgumentException if the embeddings have different dimensions
+     */
+    public static float similarity(@NonNull FloatEmbedding a, @NonNull FloatEmbedding b, @NonNull SimilarityMetric metric) {
+        checkLength(a.getEmbeddingArray(), b.getEmbeddingArray());
+        return metric.score(OPERATIONS, a.getEmbeddingArray(), b.getEmbeddingArray());
+    }
+
+    /**
+     * Finds the k vectors in the corpus that are the most similar to the query.
+     *
+     * @param query  The query vector
+     * @param corpus The vectors to search, as rows of a matrix
+     * @param k      The maximum number of results, has to be at least 1
+     * @param metric The metric to use
+     * @return The results, ordered from most to least similar
+     * @throws IllegalArgumentException if a vector in the corpus has a different dimension than the query
+     */
+    public static List<SearchResult> topK(@NonNull float[] query, @NonNull float[][] corpus, int k, @NonNull SimilarityMetric metric) {
+        checkSearch(query, corpus, k);
+
+        TopKCollector collector = new TopKCollector(Math.min(k, Math.max(corpus.length, 1)), metric.isHigherBetter());
+        search(query, corpus, null, 0, corpus.length, metric, collector);
+        return collector.toResults();
+    }
+
+    /**
+     * Finds the k embeddings in the corpus that are the most similar to the query.
+     * The indices of the results refer to positions in the corpus list.
+     *
+     * @param query  The query embedding
+     * @param corpus The embeddings to search
+     * @param k      The maximum number of results, has to be at least 1
+     * @param metric The metric to use
+     * @return The results, ordered from most to least similar
+     * @throws IllegalArgumentException if an embedding in the corpus has a different dimension than the query
+     */
+    public static List<SearchResult> topK(@NonNull FloatEmbedding query, @NonNull List<FloatEmbedding> corpus, int k, @NonNull SimilarityMetric metric) {
+        return topK(query.getEmbeddingArray(), toMatrix(corpus), k, metric);
+    }
+
+    /**
+     * Finds the k most similar vectors in the corpus for each query in a batch.
+     * For cosine similarity, the norms of the corpus vectors are only calculated once for the whole batch.
+     *
+     * @param queries The query vectors, as rows of a matrix
+     * @param corpus  The vectors to search, as rows of a matrix
+     * @param k       The maximum number of results per query, has to be at least 1
+     * @param metric  The metric to use
+     * @return For each query, the results ordered from most to least similar
+     * @throws IllegalArgumentException if a vector has a different dimension than the others
+     */
+    public static List<List<SearchResult>> topK(@NonNull float[][] queries, @NonNull float[][] corpus, int k, @NonNull SimilarityMetric metric) {
+        List<List<SearchResult>> results = new ArrayList<>(queries.length);
+        float[] norms = null;
+
+        if (metric == SimilarityMetric.COSINE && queries.length > 1) {
+            norms = norms(corpus);
+        }
+
+        for (float[] query : queries) {
+            checkSearch(query, corpus, k);
+
+            TopKCollector collector = new TopKCollector(Math.min(k, Math.max(corpus.length, 1)), metric.isHigherBetter());
+            search(query, corpus, norms, 0, corpus.length, metric, collector);
+            results.add(collector.toResults());
+        }
+
+        return results;
+    }
+
+    /**
+     * Finds the k vectors in the corpus that are the most similar to the query, splitting the corpus across the
+     * threads of the common {@link ForkJoinPool}.
+     *
+     * @param query  The query vector
+     * @param corpus The vectors to search, as rows of a matrix
+     * @param k      The maximum number of results, has to be at least 1
+     * @param metric The metric to use
+     * @return The results, ordered from most to least similar
+     * @throws IllegalArgumentException if a vector in the corpus has a different dimension than the query
+     */
+    public static List<SearchResult> parallelTopK(@NonNull float[] query, @NonNull float[][] corpus, int k, @NonNull SimilarityMetric metric) {
+        return parallelTopK(query, corpus, k, metric, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Finds the k vectors in the corpus that are the most similar to the query, splitting the corpus across the threads of the given pool.
+     * Every thread collects its own top k, which are merged at the end. Small corpora are searched on the calling thread.
+     *
+     * @param query  The query vector
+     * @param corpus The vectors to search, as rows of a matrix
+     * @param k      The maximum number of results, has to be at least 1
+     * @param metric The metric to use
+     * @param pool   The pool to run the search in
+     * @return The results, ordered from most to least similar
+     * @throws IllegalArgumentException if a vector in the corpus has a different dimension than the query
+     */
+    public static List<SearchResult> parallelTopK(@NonNull float[] query, @NonNull float[][] corpus, int k, @NonNull SimilarityMetric metric, @NonNull ForkJoinPool pool) {
+        checkSearch(query, corpus, k);
+
+        int chunks = Math.min(pool.getParallelism(), corpus.length / MIN_PARALLEL_CHUNK_SIZE);
+        if (chunks <= 1) {
+            return topK(query, corpus, k, metric);
+        }
+
+        int capacity = Math.min(k, corpus.length);
+        int chunkSize = (corpus.length + chunks - 1) / chunks;
+
+        TopKCollector merged = pool.submit(() -> IntStream.range(0, chunks)
+                .parallel()
+                .mapToObj(chunk -> {
+                    TopKCollector collector = new TopKCollector(capacity, metric.isHigherBetter());
+                    int from = chunk * chunkSize;
+                    search(query, corpus, null, from, Math.min(from + chunkSize, corpus.length), metric, collector);
+                    return collector;
+                })
+                .reduce((a, b) -> {
+                    a.addAll(b);
+                    return a;
+                })
+                .orElseThrow()).join();
+
+        return merged.toResults();
+    }
+
+    static float cosine(float dot, float squaredNormA, float squaredNormB) {
+        if (squaredNormA == 0 || squaredNormB == 0) {
+            return 0;
+        }
+
+        return (float) (dot / (Math.sqrt(squaredNormA) * Math.sqrt(squaredNormB)));
+    }
+
+    private static void search(float[] query, float[][] corpus, float[] norms, int from, int to, SimilarityMetric metric, TopKCollector collector) {
+        float queryNorm = norms == null ? 0 : OPERATIONS.dot(query, query);
+
+        for (int i = from; i < to; i++) {
+            float[] vector = corpus[i];
+            checkLength(query, vector);
+
+            float score;
+            if (norms != null) {
+                score = cosine(OPERATIONS.dot(query, vector), queryNorm, norms[i]);
+            } else {
+                score = metric.score(OPERATIONS, query, vector);
+            }
+
+            collector.offer(i, score);
+        }
+    }
+
+    private static float[] norms(float[][] corpus) {
+        float[] norms = new float[corpus.length];
+
+        for (int i = 0; i < corpus.length; i++) {
+            norms[i] = OPERATIONS.dot(corpus[i], corpus[i]);
+        }
+
+        return norms;
+    }
+
+    static float[][] toMatrix(List<FloatEmbedding> embeddings) {
+        float[][] matrix = new float[embeddings.size()][];
+
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = embeddings.get(i).getEmbeddingArray();
+        }
+
+        return matrix;
+    }
+
+    private static void checkSearch(float[] query, float[][] corpus, int k) {
+        if (query == null || corpus == null) {
+            throw new IllegalArgumentException("query and corpus can't be null");
+        }
+
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+    }
+
+    static void checkLength(float[] a, float[] b) {
+        if (b == null || a.length != b.length) {
+            throw new IllegalArgumentException("Vectors must have the same dimension, got " + a.length + " and " + (b == null ? "null" : b.length));
+        }
+    }
+
+    private static VectorOperations loadOperations() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                return (VectorOperations) Class.forName(VECTOR_OPERATIONS_CLASS).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Fall back to the scalar implementation
+            }
+        }
+
+        return new ScalarVectorOperations();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.vector;
+
+/**
+ * The vector operations used by {@link VectorMath}.
+ * Implementations don't validate their arguments, both vectors must have the same length.
+ */
+public interface VectorOperations {
+
+    /**
+     * Calculates the dot product of two vectors.
+     *
+     * @param a The first vector
+     * @param b The second vector
+     * @return The dot product
+     */
+    float dot(float[] a, float[] b);
+
+    /**
+     * Calculates the cosine similarity of two vectors.
+     *
+     * @param a The first vector
+     * @param b The second vector
+     * @return The cosine similarity between -1.0 and 1.0, or 0.0 if one of the vectors has a norm of zero
+     */
+    float cosine(float[] a, float[] b);
+
+    /**
+     * Calculates the squared euclidean (L2) distance between two vectors.
+     *
+     * @param a The first vector
+     * @param b The second vector
+     * @return The squared euclidean distance
+     */
+    float squaredEuclidean(float[] a, float[] b);
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.exceptions;
+
+import lombok.experimental.StandardException;
+
+import java.io.IOException;
+
+/**
+ * Thrown by the {@link nl.dannyj.mistral.interceptors.CircuitBreakerInterceptor} when a request is not sent because the circuit
+ * breaker of its endpoint is open. It is an IOException so OkHttp reports it as a failed call; the methods of the
+ * MistralClient throw it wrapped in a {@link MistralAPIException}.
+ */
+@StandardException
+public class CircuitBreakerOpenException extends IOException {
+
+}
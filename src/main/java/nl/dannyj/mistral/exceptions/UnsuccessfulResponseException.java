@@ -0,0 +1,44 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.exceptions;
+
+import lombok.Getter;
+
+/**
+ * Thrown when the Mistral AI API answers a request with an unsuccessful HTTP status code.
+ */
+@Getter
+public class UnsuccessfulResponseException extends MistralAPIException {
+
+    /**
+     * The HTTP status code of the response.
+     *
+     * @return the status code
+     */
+    private final int statusCode;
+
+    /**
+     * Creates a new exception for an unsuccessful response.
+     *
+     * @param message    The detail message, including the response body
+     * @param statusCode The HTTP status code of the response
+     */
+    public UnsuccessfulResponseException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+}
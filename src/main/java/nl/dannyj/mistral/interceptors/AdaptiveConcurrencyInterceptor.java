@@ -0,0 +1,385 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.interceptors;
+
+import lombok.Getter;
+import lombok.NonNull;
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits the number of concurrent requests to the Mistral AI API to a limit that adapts to the observed latency and error rate (AIMD).
+ * <p>
+ * Every successful request that used at least half of the limit increases the limit by {@code 1 / limit}, so the limit grows
+ * by about one per round trip while the API keeps up. A request that fails with a 429 or 5xx response or an I/O error multiplies
+ * the limit by {@link #getBackoffRatio()}. Optionally, a request that takes longer than {@link #getLatencyTolerance()} times the
+ * smoothed latency of earlier requests counts as congestion too. The latency of every request that did not fail is part of the
+ * smoothed latency, so it follows a lasting change of the latency of the API. The limit is decreased at most once per smoothed
+ * latency, so a burst of failures of requests that were sent together counts as a single congestion signal.
+ * <p>
+ * A request holds its permit until its response body is closed, so a streaming request counts as in flight until the stream ends.
+ * Requests that exceed the limit wait for a permit on the thread that executes the call, which is an OkHttp dispatcher thread
+ * for asynchronous and streaming requests. A call that is cancelled while waiting fails immediately.
+ */
+public class AdaptiveConcurrencyInterceptor implements Interceptor {
+
+    private static final Set<Integer> DROP_STATUS_CODES = Set.of(429, 500, 502, 503, 504);
+    private static final long CANCEL_CHECK_INTERVAL_MILLIS = 50;
+    private static final double LATENCY_SMOOTHING = 0.05;
+
+    /**
+     * The lowest concurrency limit.
+     *
+     * @return the minimum limit
+     */
+    @Getter
+    private final int minLimit;
+
+    /**
+     * The highest concurrency limit.
+     *
+     * @return the maximum limit
+     */
+    @Getter
+    private final int maxLimit;
+
+    /**
+     * The factor the limit is multiplied with when the API is congested.
+     *
+     * @return the backoff ratio
+     */
+    @Getter
+    private final double backoffRatio;
+
+    /**
+     * How many times slower than the smoothed latency a request can be before it counts as congestion, or 0 if latency is ignored.
+     *
+     * @return the latency tolerance
+     */
+    @Getter
+    private final double latencyTolerance;
+
+    private double limit;
+    private int inFlight;
+    private double smoothedLatencyNanos;
+    private long lastDecreaseNanos;
+
+    private AdaptiveConcurrencyInterceptor(Builder builder) {
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.backoffRatio = builder.backoffRatio;
+        this.latencyTolerance = builder.latencyTolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, builder.initialLimit));
+        this.lastDecreaseNanos = System.nanoTime();
+    }
+
+    /**
+     * Creates a new builder for an AdaptiveConcurrencyInterceptor, initialized with the default settings.
+     *
+     * @return A new Builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        int inFlightAtStart = acquire(chain.call());
+        long startedAt = System.nanoTime();
+        Response response;
+
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException | RuntimeException e) {
+            release();
+
+            if (!chain.call().isCanceled()) {
+                onSample(System.nanoTime() - startedAt, true, inFlightAtStart);
+            }
+
+            throw e;
+        }
+
+        onSample(System.nanoTime() - startedAt, DROP_STATUS_CODES.contains(response.code()), inFlightAtStart);
+
+        ResponseBody body = response.body();
+        if (body == null) {
+            release();
+            return response;
+        }
+
+        return response.newBuilder().body(new PermitResponseBody(body)).build();
+    }
+
+    /**
+     * Returns the current concurrency limit.
+     *
+     * @return the number of requests that may be in flight at the same time
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Returns the number of requests that are currently in flight.
+     *
+     * @return the number of requests in flight
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Waits until a request may be sent and takes a permit.
+     *
+     * @param call The call that needs a permit
+     * @return The number of requests in flight, including this one
+     * @throws IOException if the call is cancelled or the thread is interrupted while waiting
+     */
+    private synchronized int acquire(Call call) throws IOException {
+        while (inFlight >= (int) limit) {
+            if (call.isCanceled()) {
+                throw new IOException("Canceled");
+            }
+
+            try {
+                wait(CANCEL_CHECK_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a concurrency permit");
+            }
+        }
+
+        return ++inFlight;
+    }
+
+    private synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Adjusts the limit to the outcome of a request.
+     *
+     * @param latencyNanos    The time until the response headers were received
+     * @param dropped         Whether the request failed because of congestion
+     * @param inFlightAtStart The number of requests in flight when the request was sent
+     */
+    private synchronized void onSample(long latencyNanos, boolean dropped, int inFlightAtStart) {
+        if (!dropped) {
+            boolean slow = latencyTolerance > 0 && smoothedLatencyNanos > 0 && latencyNanos > smoothedLatencyNanos * latencyTolerance;
+
+            // Slow requests are part of the average as well, otherwise a lasting increase of the latency would keep counting as congestion
+            smoothedLatencyNanos = smoothedLatencyNanos == 0 ? latencyNanos : smoothedLatencyNanos + (latencyNanos - smoothedLatencyNanos) * LATENCY_SMOOTHING;
+            dropped = slow;
+        }
+
+        if (dropped) {
+            long now = System.nanoTime();
+
+            if (now - lastDecreaseNanos >= smoothedLatencyNanos) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                lastDecreaseNanos = now;
+            }
+
+            return;
+        }
+
+        // Only grow when the limit is actually used, otherwise a quiet period inflates the limit far beyond what was ever tested
+        if (inFlightAtStart * 2 >= (int) limit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+            notifyAll();
+        }
+    }
+
+    /**
+     * A response body that releases the permit of its request when it is closed or fully read.
+     */
+    private final class PermitResponseBody extends ResponseBody {
+
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private PermitResponseBody(ResponseBody delegate) {
+            this.delegate = delegate;
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public long read(@NonNull Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+
+                    if (read == -1) {
+                        releaseOnce();
+                    }
+
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        releaseOnce();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @NotNull
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+
+        private void releaseOnce() {
+            if (released.compareAndSet(false, true)) {
+                release();
+            }
+        }
+    }
+
+    /**
+     * Builder for the AdaptiveConcurrencyInterceptor.
+     */
+    public static class Builder {
+
+        private int initialLimit = 16;
+        private int minLimit = 1;
+        private int maxLimit = 64;
+        private double backoffRatio = 0.9;
+        private double latencyTolerance = 0;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the limit before any request has been made. Defaults to 16.
+         *
+         * @param initialLimit The initial limit, has to be at least 1
+         * @return This builder instance
+         */
+        public Builder initialLimit(int initialLimit) {
+            if (initialLimit < 1) {
+                throw new IllegalArgumentException("initialLimit must be at least 1");
+            }
+
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * Sets the lowest limit. Defaults to 1.
+         *
+         * @param minLimit The minimum limit, has to be at least 1
+         * @return This builder instance
+         */
+        public Builder minLimit(int minLimit) {
+            if (minLimit < 1) {
+                throw new IllegalArgumentException("minLimit must be at least 1");
+            }
+
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        /**
+         * Sets the highest limit. Defaults to 64, the default maximum number of concurrent requests of the MistralClient.
+         *
+         * @param maxLimit The maximum limit, has to be at least 1
+         * @return This builder instance
+         */
+        public Builder maxLimit(int maxLimit) {
+            if (maxLimit < 1) {
+                throw new IllegalArgumentException("maxLimit must be at least 1");
+            }
+
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Sets the factor the limit is multiplied with when the API is congested. Defaults to 0.9.
+         *
+         * @param backoffRatio The backoff ratio, has to be between 0.0 and 1.0 (exclusive)
+         * @return This builder instance
+         */
+        public Builder backoffRatio(double backoffRatio) {
+            if (!(backoffRatio > 0 && backoffRatio < 1)) {
+                throw new IllegalArgumentException("backoffRatio must be between 0.0 and 1.0");
+            }
+
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * Sets how many times slower than the smoothed latency a request can be before it counts as congestion. Defaults to 0, which only
+         * reacts to errors, as chat completion latencies depend on the length of the completion. A tolerance like 2.0 suits workloads with
+         * a steady latency, such as embeddings or completions with a similar length.
+         *
+         * @param latencyTolerance The latency tolerance, has to be greater than 1.0, or 0 to only react to errors
+         * @return This builder instance
+         */
+        public Builder latencyTolerance(double latencyTolerance) {
+            if (latencyTolerance != 0 && !(latencyTolerance > 1)) {
+                throw new IllegalArgumentException("latencyTolerance must be greater than 1.0, or 0 to ignore latency");
+            }
+
+            this.latencyTolerance = latencyTolerance;
+            return this;
+        }
+
+        /**
+         * Builds the AdaptiveConcurrencyInterceptor.
+         *
+         * @return A new AdaptiveConcurrencyInterceptor
+         * @throws IllegalStateException if the minimum limit is higher than the maximum limit
+         */
+        public AdaptiveConcurrencyInterceptor build() {
+            if (minLimit > maxLimit) {
+                throw new IllegalStateException("minLimit must not be higher than maxLimit");
+            }
+
+            return new AdaptiveConcurrencyInterceptor(this);
+        }
+    }
+}
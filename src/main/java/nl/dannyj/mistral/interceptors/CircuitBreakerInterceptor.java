@@ -0,0 +1,456 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.interceptors;
+
+import lombok.Getter;
+import lombok.NonNull;
+import nl.dannyj.mistral.exceptions.CircuitBreakerOpenException;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops sending requests to an endpoint of the Mistral AI API while it is failing, so callers fail fast instead of waiting for timeouts.
+ * <p>
+ * Every endpoint ({@code /chat/completions}, {@code /embeddings}, {@code /ocr}, {@code /models}, ...) has its own circuit breaker.
+ * A closed breaker records the outcome of the last {@link #getSlidingWindowSize()} calls. A call fails when it throws an I/O error
+ * or receives a 5xx response, and is slow when its response headers take longer than {@link #getSlowCallDuration()}.
+ * Once at least {@link #getMinimumNumberOfCalls()} calls are recorded and the failure rate or the slow call rate reaches its
+ * threshold, the breaker opens and rejects all calls with a {@link CircuitBreakerOpenException}.
+ * <p>
+ * After {@link #getOpenDuration()} the breaker is half-open and lets {@link #getPermittedCallsInHalfOpenState()} trial calls through.
+ * If all of them succeed in time, the breaker closes again; the first trial call that fails or is slow opens it again.
+ * <p>
+ * Responses with a 4xx status, including 429, don't count as failures, because they show that the API is available.
+ */
+public class CircuitBreakerInterceptor implements Interceptor {
+
+    /**
+     * The state of a circuit breaker.
+     */
+    public enum State {
+
+        /**
+         * Calls are sent and their outcomes are recorded.
+         */
+        CLOSED,
+
+        /**
+         * Calls are rejected.
+         */
+        OPEN,
+
+        /**
+         * A limited number of trial calls is sent to find out whether the endpoint has recovered.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * The failure rate at which a breaker opens.
+     *
+     * @return the failure rate threshold between 0.0 and 1.0
+     */
+    @Getter
+    private final double failureRateThreshold;
+
+    /**
+     * The slow call rate at which a breaker opens.
+     *
+     * @return the slow call rate threshold between 0.0 and 1.0
+     */
+    @Getter
+    private final double slowCallRateThreshold;
+
+    /**
+     * The time after which a call counts as slow.
+     *
+     * @return the slow call duration
+     */
+    @Getter
+    private final Duration slowCallDuration;
+
+    /**
+     * The number of most recent calls whose outcomes are recorded.
+     *
+     * @return the size of the sliding window
+     */
+    @Getter
+    private final int slidingWindowSize;
+
+    /**
+     * The number of calls that has to be recorded before a breaker can open.
+     *
+     * @return the minimum number of calls
+     */
+    @Getter
+    private final int minimumNumberOfCalls;
+
+    /**
+     * How long a breaker stays open before it lets trial calls through.
+     *
+     * @return the open duration
+     */
+    @Getter
+    private final Duration openDuration;
+
+    /**
+     * The number of trial calls in the half-open state.
+     *
+     * @return the number of permitted calls in the half-open state
+     */
+    @Getter
+    private final int permittedCallsInHalfOpenState;
+
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+    private final AtomicLong rejectedCalls = new AtomicLong();
+
+    private CircuitBreakerInterceptor(Builder builder) {
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallDuration = builder.slowCallDuration;
+        this.slidingWindowSize = builder.slidingWindowSize;
+        this.minimumNumberOfCalls = Math.min(builder.minimumNumberOfCalls, builder.slidingWindowSize);
+        this.openDuration = builder.openDuration;
+        this.permittedCallsInHalfOpenState = builder.permittedCallsInHalfOpenState;
+    }
+
+    /**
+     * Creates a new builder for a CircuitBreakerInterceptor, initialized with the default settings.
+     *
+     * @return A new Builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        String endpoint = endpointOf(chain.request().url().encodedPath());
+        Breaker breaker = breakers.computeIfAbsent(endpoint, key -> new Breaker());
+        boolean trial = breaker.acquire(endpoint);
+        long startedAt = System.nanoTime();
+        Response response;
+
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException | RuntimeException e) {
+            if (chain.call().isCanceled()) {
+                breaker.onIgnored(trial);
+            } else {
+                breaker.onResult(trial, true, false);
+            }
+
+            throw e;
+        }
+
+        breaker.onResult(trial, response.code() >= 500, System.nanoTime() - startedAt > slowCallDuration.toNanos());
+        return response;
+    }
+
+    /**
+     * Returns the state of the circuit breaker of an endpoint.
+     *
+     * @param endpoint The endpoint, for example "/chat/completions"
+     * @return the state of the breaker, {@link State#CLOSED} if the endpoint has not been called yet
+     */
+    public State getState(@NonNull String endpoint) {
+        Breaker breaker = breakers.get(endpoint);
+        return breaker == null ? State.CLOSED : breaker.getState();
+    }
+
+    /**
+     * Returns the number of calls that were rejected because a circuit breaker was open.
+     *
+     * @return the number of rejected calls
+     */
+    public long getRejectedCalls() {
+        return rejectedCalls.get();
+    }
+
+    /**
+     * Strips the API version from the URL path, so "/v1/chat/completions" becomes "/chat/completions".
+     */
+    private static String endpointOf(String path) {
+        if (path.startsWith("/v") && path.indexOf('/', 1) > 0) {
+            String version = path.substring(2, path.indexOf('/', 1));
+
+            if (!version.isEmpty() && version.chars().allMatch(Character::isDigit)) {
+                return path.substring(path.indexOf('/', 1));
+            }
+        }
+
+        return path;
+    }
+
+    /**
+     * The circuit breaker of a single endpoint.
+     */
+    private final class Breaker {
+
+        private final boolean[] failures = new boolean[slidingWindowSize];
+        private final boolean[] slowCalls = new boolean[slidingWindowSize];
+        private int recorded;
+        private int next;
+        private int failureCount;
+        private int slowCallCount;
+
+        private State state = State.CLOSED;
+        private long openedAt;
+        private int trialPermits;
+        private int trialSuccesses;
+
+        private synchronized State getState() {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openDuration.toNanos()) {
+                return State.HALF_OPEN;
+            }
+
+            return state;
+        }
+
+        /**
+         * Checks whether a call may be sent.
+         *
+         * @return true if the call is a trial call of the half-open state
+         * @throws CircuitBreakerOpenException if the breaker is open, or half-open without trial permits left
+         */
+        private synchronized boolean acquire(String endpoint) throws CircuitBreakerOpenException {
+            if (state == State.OPEN) {
+                long remaining = openDuration.toNanos() - (System.nanoTime() - openedAt);
+
+                if (remaining > 0) {
+                    rejectedCalls.incrementAndGet();
+                    throw new CircuitBreakerOpenException("The circuit breaker for " + endpoint + " is open, it lets calls through again in "
+                            + TimeUnit.NANOSECONDS.toMillis(remaining) + " ms");
+                }
+
+                state = State.HALF_OPEN;
+                trialPermits = permittedCallsInHalfOpenState;
+                trialSuccesses = 0;
+            }
+
+            if (state == State.HALF_OPEN) {
+                if (trialPermits == 0) {
+                    rejectedCalls.incrementAndGet();
+                    throw new CircuitBreakerOpenException("The circuit breaker for " + endpoint + " is half-open and waiting for the results of its trial calls");
+                }
+
+                trialPermits--;
+                return true;
+            }
+
+            return false;
+        }
+
+        private synchronized void onResult(boolean trial, boolean failed, boolean slow) {
+            if (trial) {
+                if (state != State.HALF_OPEN) {
+                    return;
+                }
+
+                if (failed || slow) {
+                    open();
+                } else if (++trialSuccesses >= permittedCallsInHalfOpenState) {
+                    close();
+                }
+
+                return;
+            }
+
+            // Results of calls that were sent before the breaker opened don't count anymore
+            if (state != State.CLOSED) {
+                return;
+            }
+
+            if (recorded == slidingWindowSize) {
+                failureCount -= failures[next] ? 1 : 0;
+                slowCallCount -= slowCalls[next] ? 1 : 0;
+            } else {
+                recorded++;
+            }
+
+            failures[next] = failed;
+            slowCalls[next] = slow;
+            failureCount += failed ? 1 : 0;
+            slowCallCount += slow ? 1 : 0;
+            next = (next + 1) % slidingWindowSize;
+
+            if (recorded >= minimumNumberOfCalls
+                    && ((double) failureCount / recorded >= failureRateThreshold || (double) slowCallCount / recorded >= slowCallRateThreshold)) {
+                open();
+            }
+        }
+
+        private synchronized void onIgnored(boolean trial) {
+            if (trial && state == State.HALF_OPEN) {
+                trialPermits++;
+            }
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+
+        private void close() {
+            state = State.CLOSED;
+            recorded = 0;
+            next = 0;
+            failureCount = 0;
+            slowCallCount = 0;
+        }
+    }
+
+    /**
+     * Builder for the CircuitBreakerInterceptor.
+     */
+    public static class Builder {
+
+        private double failureRateThreshold = 0.5;
+        private double slowCallRateThreshold = 1.0;
+        private Duration slowCallDuration = Duration.ofSeconds(60);
+        private int slidingWindowSize = 20;
+        private int minimumNumberOfCalls = 10;
+        private Duration openDuration = Duration.ofSeconds(30);
+        private int permittedCallsInHalfOpenState = 3;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the failure rate at which a breaker opens. Defaults to 0.5.
+         *
+         * @param failureRateThreshold The failure rate threshold, has to be greater than 0.0 and at most 1.0
+         * @return This builder instance
+         */
+        public Builder failureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = checkRate(failureRateThreshold, "failureRateThreshold");
+            return this;
+        }
+
+        /**
+         * Sets the slow call rate at which a breaker opens. Defaults to 1.0, so a breaker opens when all recorded calls are slow.
+         *
+         * @param slowCallRateThreshold The slow call rate threshold, has to be greater than 0.0 and at most 1.0
+         * @return This builder instance
+         */
+        public Builder slowCallRateThreshold(double slowCallRateThreshold) {
+            this.slowCallRateThreshold = checkRate(slowCallRateThreshold, "slowCallRateThreshold");
+            return this;
+        }
+
+        /**
+         * Sets the time after which a call counts as slow, measured until the response headers are received. Defaults to 60 seconds.
+         *
+         * @param slowCallDuration The slow call duration, has to be positive
+         * @return This builder instance
+         */
+        public Builder slowCallDuration(@NonNull Duration slowCallDuration) {
+            if (slowCallDuration.isNegative() || slowCallDuration.isZero()) {
+                throw new IllegalArgumentException("slowCallDuration must be positive");
+            }
+
+            this.slowCallDuration = slowCallDuration;
+            return this;
+        }
+
+        /**
+         * Sets the number of most recent calls whose outcomes are recorded. Defaults to 20.
+         *
+         * @param slidingWindowSize The size of the sliding window, has to be at least 1
+         * @return This builder instance
+         */
+        public Builder slidingWindowSize(int slidingWindowSize) {
+            if (slidingWindowSize < 1) {
+                throw new IllegalArgumentException("slidingWindowSize must be at least 1");
+            }
+
+            this.slidingWindowSize = slidingWindowSize;
+            return this;
+        }
+
+        /**
+         * Sets the number of calls that has to be recorded before a breaker can open. Defaults to 10.
+         *
+         * @param minimumNumberOfCalls The minimum number of calls, has to be at least 1
+         * @return This builder instance
+         */
+        public Builder minimumNumberOfCalls(int minimumNumberOfCalls) {
+            if (minimumNumberOfCalls < 1) {
+                throw new IllegalArgumentException("minimumNumberOfCalls must be at least 1");
+            }
+
+            this.minimumNumberOfCalls = minimumNumberOfCalls;
+            return this;
+        }
+
+        /**
+         * Sets how long a breaker stays open before it lets trial calls through. Defaults to 30 seconds.
+         *
+         * @param openDuration The open duration, has to be positive
+         * @return This builder instance
+         */
+        public Builder openDuration(@NonNull Duration openDuration) {
+            if (openDuration.isNegative() || openDuration.isZero()) {
+                throw new IllegalArgumentException("openDuration must be positive");
+            }
+
+            this.openDuration = openDuration;
+            return this;
+        }
+
+        /**
+         * Sets the number of trial calls in the half-open state. Defaults to 3.
+         *
+         * @param permittedCallsInHalfOpenState The number of trial calls, has to be at least 1
+         * @return This builder instance
+         */
+        public Builder permittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+            if (permittedCallsInHalfOpenState < 1) {
+                throw new IllegalArgumentException("permittedCallsInHalfOpenState must be at least 1");
+            }
+
+            this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+            return this;
+        }
+
+        /**
+         * Builds the CircuitBreakerInterceptor.
+         *
+         * @return A new CircuitBreakerInterceptor
+         */
+        public CircuitBreakerInterceptor build() {
+            return new CircuitBreakerInterceptor(this);
+        }
+
+        private static double checkRate(double rate, String name) {
+            if (!(rate > 0 && rate <= 1)) {
+                throw new IllegalArgumentException(name + " must be greater than 0.0 and at most 1.0");
+            }
+
+            return rate;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.interceptors;
+
+import lombok.Getter;
+import lombok.NonNull;
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retries failed requests to the Mistral AI API according to a {@link RetryPolicy}.
+ * <p>
+ * The interceptor retries until the response headers have been received, so it applies to blocking, asynchronous and
+ * streaming requests alike, but a stream that fails after it has started is not retried.
+ * The backoff blocks the thread that executes the call, which is an OkHttp dispatcher thread for asynchronous and streaming requests.
+ * A call that is cancelled while waiting for a retry fails immediately.
+ */
+public class RetryInterceptor implements Interceptor {
+
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "OPTIONS", "PUT", "DELETE");
+    private static final Set<Integer> UNPROCESSED_STATUS_CODES = Set.of(408, 429, 503);
+    private static final long CANCEL_CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /**
+     * The retry policy of this interceptor.
+     *
+     * @return The retry policy
+     */
+    @Getter
+    private final RetryPolicy policy;
+
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong exhaustedRetries = new AtomicLong();
+    private final Object budgetLock = new Object();
+    private double budget;
+
+    /**
+     * Constructor that initializes the RetryInterceptor with a full retry budget.
+     *
+     * @param policy The retry policy
+     */
+    public RetryInterceptor(@NonNull RetryPolicy policy) {
+        this.policy = policy;
+        this.budget = policy.getRetryBudgetCapacity();
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        boolean idempotent = policy.isRetryNonIdempotentRequests() || isIdempotent(request);
+        boolean replayable = request.body() == null || !request.body().isOneShot();
+        depositBudget();
+
+        for (int attempt = 1; ; attempt++) {
+            boolean lastAttempt = attempt >= policy.getMaxAttempts() || !replayable;
+            Response response;
+
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                if (lastAttempt || chain.call().isCanceled() || !isRetryable(e, idempotent) || !withdrawBudget()) {
+                    throw e;
+                }
+
+                sleep(chain.call(), backoffNanos(attempt));
+                continue;
+            }
+
+            if (lastAttempt || !isRetryable(response.code(), idempotent)) {
+                return response;
+            }
+
+            long delayNanos = retryAfterNanos(response);
+            if (delayNanos < 0) {
+                delayNanos = backoffNanos(attempt);
+            } else if (delayNanos > policy.getMaxRetryAfter().toNanos()) {
+                return response;
+            }
+
+            if (!withdrawBudget()) {
+                return response;
+            }
+
+            response.close();
+            sleep(chain.call(), delayNanos);
+        }
+    }
+
+    /**
+     * Returns the number of retries this interceptor has made.
+     *
+     * @return The number of retries
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Returns the number of retries this interceptor did not make because the retry budget was exhausted.
+     *
+     * @return The number of retries that were skipped because of the retry budget
+     */
+    public long getExhaustedRetries() {
+        return exhaustedRetries.get();
+    }
+
+    private boolean isIdempotent(Request request) {
+        return IDEMPOTENT_METHODS.contains(request.method()) || request.header("Idempotency-Key") != null;
+    }
+
+    private boolean isRetryable(int code, boolean idempotent) {
+        return policy.getRetryableStatusCodes().contains(code) && (idempotent || UNPROCESSED_STATUS_CODES.contains(code));
+    }
+
+    /**
+     * Checks whether a request that failed with the exception can be retried.
+     * Connection failures are always retryable, because the request was never sent. Timeouts and other I/O errors may happen
+     * after the API received the request, so they are only retryable for idempotent requests.
+     */
+    private boolean isRetryable(IOException e, boolean idempotent) {
+        if (e instanceof ConnectException || e instanceof NoRouteToHostException) {
+            return true;
+        }
+
+        return idempotent;
+    }
+
+    private void depositBudget() {
+        synchronized (budgetLock) {
+            budget = Math.min(budget + policy.getRetryBudgetRatio(), policy.getRetryBudgetCapacity());
+        }
+    }
+
+    private boolean withdrawBudget() {
+        synchronized (budgetLock) {
+            if (budget < 1) {
+                exhaustedRetries.incrementAndGet();
+                return false;
+            }
+
+            budget--;
+        }
+
+        retries.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Picks a random backoff between zero and the exponential backoff of the attempt (full jitter).
+     *
+     * @param attempt The attempt that failed, starting at 1
+     * @return The backoff in nanoseconds
+     */
+    private long backoffNanos(int attempt) {
+        long initial = policy.getInitialBackoff().toNanos();
+        long max = policy.getMaxBackoff().toNanos();
+        int doublings = attempt - 1;
+        long ceiling = doublings < 63 && initial <= (max >> doublings) ? initial << doublings : max;
+
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Parses the Retry-After header of the response, which is either a number of seconds or an HTTP date.
+     *
+     * @param response The response
+     * @return The requested delay in nanoseconds, or -1 if the response has no valid Retry-After header
+     */
+    private static long retryAfterNanos(Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter == null) {
+            return -1;
+        }
+
+        try {
+            return TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            Date date = response.headers().getDate("Retry-After");
+
+            if (date == null) {
+                return -1;
+            }
+
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, date.getTime() - System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Waits before the next attempt, failing as soon as the call is cancelled or the thread is interrupted.
+     */
+    private static void sleep(Call call, long nanos) throws IOException {
+        long deadline = System.nanoTime() + nanos;
+
+        for (long remaining = nanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+            if (call.isCanceled()) {
+                throw new IOException("Canceled");
+            }
+
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.min(remaining, CANCEL_CHECK_INTERVAL_NANOS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to retry the request");
+            }
+        }
+
+        if (call.isCanceled()) {
+            throw new IOException("Canceled");
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.interceptors;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Configures when and how often the {@link RetryInterceptor} retries failed requests to the Mistral AI API.
+ * <p>
+ * Requests are retried with exponential backoff and full jitter: before retry {@code n} the interceptor waits a random
+ * duration between zero and {@code min(maxBackoff, initialBackoff * 2^(n - 1))}. If the response has a {@code Retry-After}
+ * header, the interceptor waits as long as the header asks instead, unless that is longer than {@link #getMaxRetryAfter()}.
+ * <p>
+ * POST requests, which includes all chat completion, embedding and OCR requests, are not idempotent. By default they are only
+ * retried if the API certainly did not process them: when the connection could not be established or the API answered 408, 429 or 503.
+ * Requests with an {@code Idempotency-Key} header, or all requests if {@link Builder#retryNonIdempotentRequests(boolean)} is enabled,
+ * are retried on every retryable status code and I/O error.
+ * <p>
+ * Retries are limited by a retry budget, so an outage does not multiply the load on the API: every request adds
+ * {@link #getRetryBudgetRatio()} to the budget, every retry takes one from it, and the budget holds at most
+ * {@link #getRetryBudgetCapacity()} retries.
+ */
+@Getter
+public class RetryPolicy {
+
+    private static final Set<Integer> DEFAULT_RETRYABLE_STATUS_CODES = Set.of(408, 429, 500, 502, 503, 504);
+
+    /**
+     * The maximum number of attempts of a request, including the first attempt.
+     */
+    private final int maxAttempts;
+
+    /**
+     * The upper bound of the backoff before the first retry.
+     */
+    private final Duration initialBackoff;
+
+    /**
+     * The upper bound of the backoff before any retry.
+     */
+    private final Duration maxBackoff;
+
+    /**
+     * The longest {@code Retry-After} delay the interceptor waits for. Responses that ask for a longer delay are not retried.
+     */
+    private final Duration maxRetryAfter;
+
+    /**
+     * The HTTP status codes of responses that are retried.
+     */
+    private final Set<Integer> retryableStatusCodes;
+
+    /**
+     * Whether requests that are not idempotent are retried on every retryable status code and I/O error.
+     */
+    private final boolean retryNonIdempotentRequests;
+
+    /**
+     * The number of retries each request adds to the retry budget, for example 0.1 allows retrying 10% of the requests.
+     */
+    private final double retryBudgetRatio;
+
+    /**
+     * The maximum number of retries in the retry budget, which is also the number of retries that is available initially.
+     */
+    private final int retryBudgetCapacity;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoff = builder.initialBackoff;
+        this.maxBackoff = builder.maxBackoff;
+        this.maxRetryAfter = builder.maxRetryAfter;
+        this.retryableStatusCodes = builder.retryableStatusCodes;
+        this.retryNonIdempotentRequests = builder.retryNonIdempotentRequests;
+        this.retryBudgetRatio = builder.retryBudgetRatio;
+        this.retryBudgetCapacity = builder.retryBudgetCapacity;
+    }
+
+    /**
+     * Returns a retry policy with the default settings: 3 attempts, backoff from 500 milliseconds up to 30 seconds,
+     * {@code Retry-After} delays of up to 60 seconds and a retry budget of 10% of the requests with a capacity of 10 retries.
+     *
+     * @return The default retry policy
+     */
+    public static RetryPolicy defaults() {
+        return builder().build();
+    }
+
+    /**
+     * Creates a new builder for a RetryPolicy, initialized with the default settings.
+     *
+     * @return A new Builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder for the RetryPolicy.
+     */
+    public static class Builder {
+
+        private int maxAttempts = 3;
+        private Duration initialBackoff = Duration.ofMillis(500);
+        private Duration maxBackoff = Duration.ofSeconds(30);
+        private Duration maxRetryAfter = Duration.ofSeconds(60);
+        private Set<Integer> retryableStatusCodes = DEFAULT_RETRYABLE_STATUS_CODES;
+        private boolean retryNonIdempotentRequests = false;
+        private double retryBudgetRatio = 0.1;
+        private int retryBudgetCapacity = 10;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the maximum number of attempts of a request, including the first attempt. Defaults to 3.
+         *
+         * @param maxAttempts The maximum number of attempts, has to be at least 1. 1 disables retries.
+         * @return This builder instance
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            }
+
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Sets the upper bound of the backoff before the first retry. Defaults to 500 milliseconds.
+         *
+         * @param initialBackoff The initial backoff, has to be positive
+         * @return This builder instance
+         */
+        public Builder initialBackoff(@NonNull Duration initialBackoff) {
+            if (initialBackoff.isNegative() || initialBackoff.isZero()) {
+                throw new IllegalArgumentException("initialBackoff must be positive");
+            }
+
+            this.initialBackoff = initialBackoff;
+            return this;
+        }
+
+        /**
+         * Sets the upper bound of the backoff before any retry. Defaults to 30 seconds.
+         *
+         * @param maxBackoff The maximum backoff, has to be positive
+         * @return This builder instance
+         */
+        public Builder maxBackoff(@NonNull Duration maxBackoff) {
+            if (maxBackoff.isNegative() || maxBackoff.isZero()) {
+                throw new IllegalArgumentException("maxBackoff must be positive");
+            }
+
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        /**
+         * Sets the longest {@code Retry-After} delay to wait for. Responses that ask for a longer delay are returned without retrying. Defaults to 60 seconds.
+         *
+         * @param maxRetryAfter The maximum Retry-After delay, has to be zero or positive
+         * @return This builder instance
+         */
+        public Builder maxRetryAfter(@NonNull Duration maxRetryAfter) {
+            if (maxRetryAfter.isNegative()) {
+                throw new IllegalArgumentException("maxRetryAfter must not be negative");
+            }
+
+            this.maxRetryAfter = maxRetryAfter;
+            return this;
+        }
+
+        /**
+         * Sets the HTTP status codes of responses that are retried. Defaults to 408, 429, 500, 502, 503 and 504.
+         *
+         * @param retryableStatusCodes The retryable status codes
+         * @return This builder instance
+         */
+        public Builder retryableStatusCodes(@NonNull Set<Integer> retryableStatusCodes) {
+            this.retryableStatusCodes = Set.copyOf(retryableStatusCodes);
+            return this;
+        }
+
+        /**
+         * Sets whether requests that are not idempotent are retried on every retryable status code and I/O error,
+         * even though the API may already have processed (and billed) them. Defaults to false.
+         *
+         * @param retryNonIdempotentRequests True to retry non-idempotent requests like idempotent ones
+         * @return This builder instance
+         */
+        public Builder retryNonIdempotentRequests(boolean retryNonIdempotentRequests) {
+            this.retryNonIdempotentRequests = retryNonIdempotentRequests;
+            return this;
+        }
+
+        /**
+         * Sets the number of retries each request adds to the retry budget. Defaults to 0.1, which allows retrying 10% of the requests.
+         *
+         * @param retryBudgetRatio The retry budget ratio, has to be zero or positive
+         * @return This builder instance
+         */
+        public Builder retryBudgetRatio(double retryBudgetRatio) {
+            if (!(retryBudgetRatio >= 0)) {
+                throw new IllegalArgumentException("retryBudgetRatio must not be negative");
+            }
+
+            this.retryBudgetRatio = retryBudgetRatio;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of retries in the retry budget, which is also the number of retries that is available initially. Defaults to 10.
+         *
+         * @param retryBudgetCapacity The capacity of the retry budget, has to be at least 1
+         * @return This builder instance
+         */
+        public Builder retryBudgetCapacity(int retryBudgetCapacity) {
+            if (retryBudgetCapacity < 1) {
+                throw new IllegalArgumentException("retryBudgetCapacity must be at least 1");
+            }
+
+            this.retryBudgetCapacity = retryBudgetCapacity;
+            return this;
+        }
+
+        /**
+         * Builds the RetryPolicy.
+         *
+         * @return A new RetryPolicy
+         */
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
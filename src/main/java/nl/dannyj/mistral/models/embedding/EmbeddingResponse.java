@@ -16,6 +16,7 @@
 
 package nl.dannyj.mistral.models.embedding;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -70,4 +71,35 @@ public class EmbeddingResponse implements Response {
      */
     private Usage usage;
 
+    /**
+     * The number of inputs that were identical to an earlier input of the request. Duplicate inputs are not sent to the
+     * Mistral AI API, they receive the embedding of the first identical input.
+     *
+     * @return the number of duplicate inputs
+     */
+    @JsonIgnore
+    private int duplicateInputs;
+
+    /**
+     * The estimated number of prompt tokens saved by not sending duplicate inputs.
+     * Estimated from the character count of the duplicates relative to the prompt tokens reported for the unique inputs.
+     *
+     * @return the estimated number of saved tokens
+     */
+    @JsonIgnore
+    private int savedTokens;
+
+    /**
+     * Constructor that initializes an EmbeddingResponse without duplicate inputs.
+     *
+     * @param id     The unique identifier of the response
+     * @param object The object type
+     * @param data   The embeddings for the input strings
+     * @param model  The ID of the model used to create the embeddings
+     * @param usage  The token usage of the request
+     */
+    public EmbeddingResponse(String id, String object, List<FloatEmbedding> data, String model, Usage usage) {
+        this(id, object, data, model, usage, 0, 0);
+    }
+
 }
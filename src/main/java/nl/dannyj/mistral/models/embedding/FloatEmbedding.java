@@ -16,15 +16,21 @@
 
 package nl.dannyj.mistral.models.embedding;
 
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
+import nl.dannyj.mistral.serialization.FloatArrayDeserializer;
 
+import java.nio.FloatBuffer;
+import java.util.AbstractList;
 import java.util.List;
+import java.util.RandomAccess;
 
 @Getter
-@AllArgsConstructor
 @NoArgsConstructor
 @ToString
 public class FloatEmbedding {
@@ -37,11 +43,12 @@ public class FloatEmbedding {
     private String object;
 
     /**
-     * The embeddings for the input strings. See the <a href="https://docs.mistral.ai/capabilities/embeddings/">mistral documentation</a> for more details on embeddings.
-     *
-     * @return the float embeddings for the input string
+     * The embedding for the input string, stored as a primitive array. See the <a href="https://docs.mistral.ai/capabilities/embeddings/">mistral documentation</a> for more details on embeddings.
      */
-    private List<Float> embedding;
+    @JsonProperty("embedding")
+    @JsonDeserialize(using = FloatArrayDeserializer.class)
+    @Getter(AccessLevel.NONE)
+    private float[] embedding;
 
     /**
      * The index of the input string in the input list.
@@ -50,4 +57,105 @@ public class FloatEmbedding {
      */
     private int index;
 
+    /**
+     * Constructor that initializes the FloatEmbedding with a list of embedding values.
+     * Use {@link #wrap(String, float[], int)} to create a FloatEmbedding from a primitive array without copying.
+     *
+     * @param object    The type of the response
+     * @param embedding The embedding values, copied into a primitive array, or null
+     * @param index     The index of the input string in the input list
+     */
+    public FloatEmbedding(String object, List<Float> embedding, int index) {
+        this.object = object;
+        this.index = index;
+
+        if (embedding != null) {
+            this.embedding = new float[embedding.size()];
+
+            for (int i = 0; i < this.embedding.length; i++) {
+                this.embedding[i] = embedding.get(i);
+            }
+        }
+    }
+
+    /**
+     * Creates a FloatEmbedding that wraps a primitive embedding array.
+     *
+     * @param object    The type of the response
+     * @param embedding The embedding values, the array is used as-is and not copied
+     * @param index     The index of the input string in the input list
+     * @return A new FloatEmbedding backed by the array
+     */
+    public static FloatEmbedding wrap(String object, float[] embedding, int index) {
+        FloatEmbedding floatEmbedding = new FloatEmbedding();
+        floatEmbedding.object = object;
+        floatEmbedding.embedding = embedding;
+        floatEmbedding.index = index;
+        return floatEmbedding;
+    }
+
+    /**
+     * The embeddings for the input strings. See the <a href="https://docs.mistral.ai/capabilities/embeddings/">mistral documentation</a> for more details on embeddings.
+     * The returned list is a read-only view of the underlying primitive array, values are only boxed when they are accessed.
+     * Use {@link #getEmbeddingArray()} or {@link #getEmbeddingBuffer()} to access the values without boxing.
+     *
+     * @return the float embeddings for the input string
+     */
+    @JsonIgnore
+    public List<Float> getEmbedding() {
+        return embedding == null ? null : new FloatArrayList(embedding);
+    }
+
+    /**
+     * The embedding for the input string as a primitive array.
+     * The underlying array is returned without copying, so it should not be modified.
+     *
+     * @return the float embedding for the input string
+     */
+    @JsonIgnore
+    public float[] getEmbeddingArray() {
+        return embedding;
+    }
+
+    /**
+     * The embedding for the input string as a read-only FloatBuffer that wraps the underlying array.
+     *
+     * @return the float embedding for the input string
+     */
+    @JsonIgnore
+    public FloatBuffer getEmbeddingBuffer() {
+        return embedding == null ? null : FloatBuffer.wrap(embedding).asReadOnlyBuffer();
+    }
+
+    /**
+     * The number of dimensions of the embedding.
+     *
+     * @return the number of values in the embedding, or 0 if there is no embedding
+     */
+    @JsonIgnore
+    public int getDimension() {
+        return embedding == null ? 0 : embedding.length;
+    }
+
+    /**
+     * Read-only list view of a float array that boxes values on access.
+     */
+    private static final class FloatArrayList extends AbstractList<Float> implements RandomAccess {
+
+        private final float[] values;
+
+        private FloatArrayList(float[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Float get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
 }
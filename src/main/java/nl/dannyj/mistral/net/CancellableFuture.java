@@ -0,0 +1,62 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.net;
+
+import lombok.NonNull;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A CompletableFuture that cancels the work behind it when it is cancelled.
+ * The futures returned by the asynchronous and streaming methods of the client cancel the HTTP calls of the request,
+ * so a request that is no longer needed stops using a connection and, for chat completions, stops generating tokens.
+ * <p>
+ * Only cancelling this future cancels the request. Futures that are derived from it, for example with {@link #thenApply},
+ * are plain CompletableFutures whose cancellation does not propagate back.
+ *
+ * @param <T> The type of the result
+ */
+public class CancellableFuture<T> extends CompletableFuture<T> {
+
+    private final Runnable onCancel;
+
+    /**
+     * Creates a new incomplete future.
+     *
+     * @param onCancel The action that cancels the work behind the future, which is run once if the future is cancelled before it completes
+     */
+    public CancellableFuture(@NonNull Runnable onCancel) {
+        this.onCancel = onCancel;
+    }
+
+    /**
+     * Cancels the future and the work behind it, if the future has not completed yet.
+     *
+     * @param mayInterruptIfRunning Ignored, the work is cancelled regardless
+     * @return True if the future is cancelled
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+        if (cancelled) {
+            onCancel.run();
+        }
+
+        return cancelled;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.net;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.NonNull;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.IOException;
+
+/**
+ * A request body that serializes an object to JSON directly into the HTTP request sink.
+ * The JSON is never materialized as a String or byte array, which keeps the transient heap usage low for large requests (e.g. long conversations or base64 encoded images).
+ * The object is serialized again every time the body is written, so the body can be retried.
+ */
+public class JsonRequestBody extends RequestBody {
+
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.get("application/json");
+
+    private final ObjectWriter writer;
+    private final Object value;
+
+    /**
+     * Constructor that initializes the JsonRequestBody with the writer to use and the object to serialize.
+     *
+     * @param writer The ObjectWriter to serialize the object with
+     * @param value  The object to serialize as the request body
+     */
+    public JsonRequestBody(@NonNull ObjectWriter writer, @NonNull Object value) {
+        // The sink is owned by OkHttp, so Jackson must not close it after writing the value
+        this.writer = writer.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.value = value;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON_MEDIA_TYPE;
+    }
+
+    /**
+     * The length is unknown until the object is serialized, so the body is sent using chunked transfer encoding.
+     *
+     * @return -1, as the content length is unknown
+     */
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(@NonNull BufferedSink sink) throws IOException {
+        writer.writeValue(sink.outputStream(), value);
+    }
+}
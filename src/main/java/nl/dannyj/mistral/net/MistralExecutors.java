@@ -0,0 +1,90 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.net;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * Factory methods for executors that can be used to handle asynchronous and streaming responses of the MistralClient.
+ */
+public final class MistralExecutors {
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadFactoryMethod();
+
+    private MistralExecutors() {
+    }
+
+    /**
+     * Checks whether the current Java runtime supports virtual threads (Java 21 or newer).
+     *
+     * @return true if virtual threads are supported, false otherwise
+     */
+    public static boolean isVirtualThreadSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task.
+     * This allows thousands of concurrent requests and stream callbacks without tying up platform threads.
+     * The library targets Java 17, so the executor is looked up at runtime and is only available on Java 21 or newer.
+     *
+     * @return A new virtual-thread-per-task executor
+     * @throws UnsupportedOperationException if the current Java runtime does not support virtual threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer, current runtime is Java " + Runtime.version().feature());
+        }
+
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Failed to create a virtual thread executor", e);
+        }
+    }
+
+    /**
+     * Creates a scheduler backed by a single daemon thread, used for timers such as flushing batches and delaying requests.
+     * The thread is a daemon thread, so an unused scheduler does not prevent the JVM from exiting.
+     * Cancelled timers are removed from the queue right away, so timers that are usually cancelled (like deadlines) do not pile up.
+     *
+     * @param threadName The name of the scheduler thread
+     * @return A new single threaded scheduler
+     */
+    public static ScheduledExecutorService newDaemonScheduler(String threadName) {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return Executors.unconfigurableScheduledExecutorService(scheduler);
+    }
+
+    private static Method findVirtualThreadFactoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
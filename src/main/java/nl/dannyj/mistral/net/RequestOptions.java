@@ -0,0 +1,100 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.net;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.time.Duration;
+
+/**
+ * Options for a single call to the Mistral AI API, like its deadline.
+ * <p>
+ * The timeout is a deadline for the whole call, measured from the moment the client method is invoked. It includes waiting for the
+ * rate limiter, the semantic cache lookup, retries, hedged requests and reading the response body (or, for a streaming chat completion,
+ * the whole stream). When the deadline passes, the HTTP calls of the request are cancelled and the request fails with a timeout.
+ * A request that the rate limiter would delay past the deadline is rejected right away with a
+ * {@link nl.dannyj.mistral.exceptions.RateLimitExceededException} instead of waiting.
+ * The deadline applies in addition to the read, connect and write timeouts of the client.
+ */
+@Getter
+public class RequestOptions {
+
+    private static final RequestOptions DEFAULTS = builder().build();
+
+    /**
+     * The deadline of the call, measured from the moment the client method is invoked, or null if the call has no deadline.
+     */
+    private final Duration timeout;
+
+    private RequestOptions(Builder builder) {
+        this.timeout = builder.timeout;
+    }
+
+    /**
+     * Returns the default request options: the call has no deadline besides the timeouts of the client.
+     *
+     * @return The default request options
+     */
+    public static RequestOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Creates a new builder for RequestOptions, initialized with the default settings.
+     *
+     * @return A new Builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder for the RequestOptions.
+     */
+    public static class Builder {
+
+        private Duration timeout;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the deadline of the call, measured from the moment the client method is invoked. By default, a call has no deadline.
+         *
+         * @param timeout The deadline of the call, has to be positive
+         * @return This builder instance
+         */
+        public Builder timeout(@NonNull Duration timeout) {
+            if (timeout.isNegative() || timeout.isZero()) {
+                throw new IllegalArgumentException("timeout must be positive");
+            }
+
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * Builds the RequestOptions.
+         *
+         * @return A new RequestOptions
+         */
+        public RequestOptions build() {
+            return new RequestOptions(this);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.net;
+
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+
+/**
+ * Interface for converting the body of a successful response into a result.
+ * Allows consuming the response as a byte stream instead of reading it into a String first.
+ *
+ * @param <T> The type of the result
+ */
+@FunctionalInterface
+public interface ResponseBodyHandler<T> {
+
+    /**
+     * Converts the response body into a result. The body is closed by the caller after this method returns.
+     *
+     * @param body The body of a successful response
+     * @return The result
+     * @throws IOException if reading the response body fails
+     */
+    T handle(ResponseBody body) throws IOException;
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.net;
+
+import lombok.NonNull;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+
+import java.io.IOException;
+
+/**
+ * Decodes a stream of <a href="https://html.spec.whatwg.org/multipage/server-sent-events.html">server-sent events</a> directly from the bytes of a {@link BufferedSource}.
+ * Field names are matched against the buffered bytes and the data of an event is handed to the listener as a reusable byte array,
+ * so no Strings are created for the lines or the event data.
+ * Supports multi-line {@code data:} fields, {@code event:} and {@code id:} fields and comments. The {@code retry:} field and unknown fields are ignored.
+ * An event that is still pending when the stream ends is dispatched as well, even though it is not followed by an empty line.
+ * Instances are not thread-safe and are meant to be used for a single response.
+ */
+public class ServerSentEventReader {
+
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+    private static final byte COLON = ':';
+    private static final byte SPACE = ' ';
+
+    private static final ByteString DATA_FIELD = ByteString.encodeUtf8("data");
+    private static final ByteString EVENT_FIELD = ByteString.encodeUtf8("event");
+    private static final ByteString ID_FIELD = ByteString.encodeUtf8("id");
+
+    private static final int INITIAL_EVENT_DATA_SIZE = 8192;
+
+    private final BufferedSource source;
+    private final Buffer data = new Buffer();
+
+    private byte[] eventData = new byte[INITIAL_EVENT_DATA_SIZE];
+    private boolean hasData;
+    private String eventType;
+    private String lastEventId;
+
+    /**
+     * Constructor that initializes the ServerSentEventReader with the source to read the events from.
+     *
+     * @param source The source containing the server-sent events, for example the source of a response body
+     */
+    public ServerSentEventReader(@NonNull BufferedSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Reads events from the source and passes them to the listener until the source is exhausted or the listener asks to stop.
+     *
+     * @param listener The listener that receives the events
+     * @return true if the listener stopped reading, false if the end of the source was reached
+     * @throws IOException if reading from the source fails or the listener throws an IOException
+     */
+    public boolean read(@NonNull Listener listener) throws IOException {
+        while (true) {
+            long lineEnd = source.indexOf(LF);
+
+            if (lineEnd == -1L) {
+                long remaining = source.getBuffer().size();
+
+                if (remaining > 0 && !processLine(remaining, listener)) {
+                    return true;
+                }
+
+                return !dispatchEvent(listener);
+            }
+
+            long lineLength = lineEnd;
+
+            if (lineLength > 0 && source.getBuffer().getByte(lineLength - 1) == CR) {
+                lineLength--;
+            }
+
+            if (!processLine(lineLength, listener)) {
+                return true;
+            }
+
+            source.skip(lineEnd - lineLength + 1);
+        }
+    }
+
+    /**
+     * Processes a single line that is fully available in the buffer of the source and consumes it, excluding the line terminator.
+     *
+     * @param length   The length of the line in bytes, excluding the line terminator
+     * @param listener The listener to dispatch completed events to
+     * @return false if the listener asked to stop reading, true otherwise
+     */
+    private boolean processLine(long length, Listener listener) throws IOException {
+        if (length == 0) {
+            return dispatchEvent(listener);
+        }
+
+        Buffer buffer = source.getBuffer();
+
+        if (buffer.getByte(0) == COLON) {
+            source.skip(length);
+        } else if (isField(buffer, DATA_FIELD, length)) {
+            long valueOffset = valueOffset(buffer, DATA_FIELD, length);
+
+            if (hasData) {
+                data.writeByte(LF);
+            }
+
+            hasData = true;
+
+            source.skip(valueOffset);
+            source.readFully(data, length - valueOffset);
+        } else if (isField(buffer, EVENT_FIELD, length)) {
+            long valueOffset = valueOffset(buffer, EVENT_FIELD, length);
+
+            source.skip(valueOffset);
+            eventType = source.readUtf8(length - valueOffset);
+        } else if (isField(buffer, ID_FIELD, length)) {
+            long valueOffset = valueOffset(buffer, ID_FIELD, length);
+
+            source.skip(valueOffset);
+            lastEventId = source.readUtf8(length - valueOffset);
+        } else {
+            source.skip(length);
+        }
+
+        return true;
+    }
+
+    /**
+     * Passes the pending event to the listener, if it has any data, and resets the event state.
+     *
+     * @param listener The listener to pass the event to
+     * @return false if the listener asked to stop reading, true otherwise
+     */
+    private boolean dispatchEvent(Listener listener) throws IOException {
+        String type = eventType;
+        eventType = null;
+        hasData = false;
+
+        if (data.size() == 0) {
+            return true;
+        }
+
+        int length = (int) data.size();
+
+        if (eventData.length < length) {
+            eventData = new byte[Math.max(length, eventData.length * 2)];
+        }
+
+        int offset = 0;
+
+        while (offset < length) {
+            offset += data.read(eventData, offset, length - offset);
+        }
+
+        return listener.onEvent(lastEventId, type, eventData, length);
+    }
+
+    private static boolean isField(Buffer buffer, ByteString field, long lineLength) {
+        int fieldLength = field.size();
+
+        return lineLength >= fieldLength
+                && buffer.rangeEquals(0, field)
+                && (lineLength == fieldLength || buffer.getByte(fieldLength) == COLON);
+    }
+
+    private static long valueOffset(Buffer buffer, ByteString field, long lineLength) {
+        int fieldLength = field.size();
+
+        if (lineLength == fieldLength) {
+            return fieldLength;
+        }
+
+        if (lineLength > fieldLength + 1 && buffer.getByte(fieldLength + 1L) == SPACE) {
+            return fieldLength + 2L;
+        }
+
+        return fieldLength + 1L;
+    }
+
+    /**
+     * Interface for receiving the events decoded by a {@link ServerSentEventReader}.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Called for every event that contains data.
+         * The data array is reused for the next event, so it must not be retained after this method returns.
+         *
+         * @param id     The last event ID received in the stream, or null if no ID was received
+         * @param type   The type of the event, or null if the event has no type
+         * @param data   The data of the event as UTF-8 bytes. Lines of multi-line data are joined with a line feed.
+         * @param length The number of valid bytes in the data array
+         * @return true to continue reading, false to stop reading
+         * @throws IOException if handling the event fails
+         */
+        boolean onEvent(String id, String type, byte[] data, int length) throws IOException;
+    }
+}
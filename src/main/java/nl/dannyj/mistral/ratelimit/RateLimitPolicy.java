@@ -0,0 +1,33 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.ratelimit;
+
+/**
+ * What a {@link RateLimiter} does with a request that exceeds the configured budgets.
+ */
+public enum RateLimitPolicy {
+
+    /**
+     * Delay the request until the budgets allow it, unless the delay would be longer than the maximum queue time.
+     */
+    QUEUE,
+
+    /**
+     * Fail the request immediately with a {@link nl.dannyj.mistral.exceptions.RateLimitExceededException}.
+     */
+    REJECT
+}
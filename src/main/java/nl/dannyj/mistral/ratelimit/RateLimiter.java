@@ -0,0 +1,491 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.ratelimit;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import nl.dannyj.mistral.exceptions.RateLimitExceededException;
+import nl.dannyj.mistral.models.usage.Usage;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shapes the traffic to the Mistral AI API to a budget of requests per second and tokens per minute, configured with
+ * {@code MistralClient.builder().rateLimiter(...)}.
+ * <p>
+ * Both budgets are token buckets that hold at most one second of requests and one minute of tokens. Before a request is sent,
+ * its tokens are estimated (see {@link nl.dannyj.mistral.utils.TokenEstimator}) and reserved. When the response arrives, the
+ * reservation is corrected with the actual {@link Usage}, so the budget follows the real token usage.
+ * A request that exceeds a budget is delayed or rejected, depending on the {@link RateLimitPolicy}.
+ * Delayed requests reserve their budget up front, so they are sent in the order they arrived.
+ * <p>
+ * The rate limiter is thread-safe and can be shared by multiple clients that use the same workspace.
+ */
+public class RateLimiter {
+
+    /**
+     * The maximum number of requests per second, or 0 if requests are not limited.
+     *
+     * @return the requests per second budget
+     */
+    @Getter
+    private final double requestsPerSecond;
+
+    /**
+     * The maximum number of tokens per minute, or 0 if tokens are not limited.
+     *
+     * @return the tokens per minute budget
+     */
+    @Getter
+    private final long tokensPerMinute;
+
+    /**
+     * What happens with requests that exceed the budgets.
+     *
+     * @return the rate limit policy
+     */
+    @Getter
+    private final RateLimitPolicy policy;
+
+    /**
+     * The longest delay of a queued request. Requests that would have to wait longer are rejected.
+     *
+     * @return the maximum queue time
+     */
+    @Getter
+    private final Duration maxQueueTime;
+
+    private final Bucket requests;
+    private final Bucket tokens;
+    private final long maxWaitNanos;
+    private final AtomicLong delayedRequests = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    private RateLimiter(Builder builder) {
+        this.requestsPerSecond = builder.requestsPerSecond;
+        this.tokensPerMinute = builder.tokensPerMinute;
+        this.policy = builder.policy;
+        this.maxQueueTime = builder.maxQueueTime;
+        this.maxWaitNanos = builder.policy == RateLimitPolicy.REJECT ? 0 : builder.maxQueueTime.toNanos();
+
+        long now = System.nanoTime();
+        this.requests = requestsPerSecond > 0 ? new Bucket(Math.max(1, requestsPerSecond), requestsPerSecond / TimeUnit.SECONDS.toNanos(1), now) : null;
+        this.tokens = tokensPerMinute > 0 ? new Bucket(tokensPerMinute, (double) tokensPerMinute / TimeUnit.MINUTES.toNanos(1), now) : null;
+    }
+
+    /**
+     * Creates a new builder for a RateLimiter.
+     *
+     * @return A new Builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Reserves budget for one request with the estimated number of tokens.
+     *
+     * @param estimatedTokens The estimated number of tokens of the request
+     * @return How long the request has to wait before it can be sent, in nanoseconds
+     * @throws RateLimitExceededException if the request would have to wait longer than the policy allows
+     */
+    public long reserve(long estimatedTokens) {
+        return reserve(estimatedTokens, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reserves budget for one request with the estimated number of tokens, if the request can be sent within the provided time.
+     *
+     * @param estimatedTokens The estimated number of tokens of the request
+     * @param maxWaitNanos    The longest the request can wait, in nanoseconds, for example the time left until the deadline of the call
+     * @return How long the request has to wait before it can be sent, in nanoseconds
+     * @throws RateLimitExceededException if the request would have to wait longer than the policy or maxWaitNanos allows
+     */
+    public long reserve(long estimatedTokens, long maxWaitNanos) {
+        long waitNanos;
+
+        synchronized (this) {
+            long now = System.nanoTime();
+            waitNanos = Math.max(waitNanos(requests, 1, now), waitNanos(tokens, estimatedTokens, now));
+
+            if (waitNanos > Math.min(this.maxWaitNanos, maxWaitNanos)) {
+                rejectedRequests.incrementAndGet();
+                throw new RateLimitExceededException("The request exceeds the rate limit of " + requestsPerSecond + " requests per second and "
+                        + tokensPerMinute + " tokens per minute, it would have to wait " + TimeUnit.NANOSECONDS.toMillis(waitNanos) + " ms"
+                        + (waitNanos <= this.maxWaitNanos ? ", which is past the deadline of the call" : ""));
+            }
+
+            take(requests, 1);
+            take(tokens, estimatedTokens);
+        }
+
+        if (waitNanos > 0) {
+            delayedRequests.incrementAndGet();
+        }
+
+        return waitNanos;
+    }
+
+    /**
+     * Reserves budget for one request with the estimated number of tokens, only if the request can be sent right away.
+     * Used for optional requests, like hedged requests, that should only use budget that is left. A request that is not admitted
+     * does not count as rejected.
+     *
+     * @param estimatedTokens The estimated number of tokens of the request
+     * @return true if the budget was reserved, false if the request would have to wait
+     */
+    public boolean tryReserve(long estimatedTokens) {
+        synchronized (this) {
+            long now = System.nanoTime();
+
+            if (Math.max(waitNanos(requests, 1, now), waitNanos(tokens, estimatedTokens, now)) > 0) {
+                return false;
+            }
+
+            take(requests, 1);
+            take(tokens, estimatedTokens);
+            return true;
+        }
+    }
+
+    /**
+     * Reserves budget for one request with the estimated number of tokens and blocks until the request can be sent.
+     *
+     * @param estimatedTokens The estimated number of tokens of the request
+     * @throws RateLimitExceededException if the request would have to wait longer than the policy allows, or the thread is interrupted while waiting
+     */
+    public void acquire(long estimatedTokens) {
+        acquire(estimatedTokens, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reserves budget for one request with the estimated number of tokens and blocks until the request can be sent.
+     * A request that can't be sent within the provided time is rejected right away instead of waiting.
+     *
+     * @param estimatedTokens The estimated number of tokens of the request
+     * @param maxWaitNanos    The longest the request can wait, in nanoseconds, for example the time left until the deadline of the call
+     * @throws RateLimitExceededException if the request would have to wait longer than the policy or maxWaitNanos allows, or the thread is interrupted while waiting
+     */
+    public void acquire(long estimatedTokens, long maxWaitNanos) {
+        long waitNanos = reserve(estimatedTokens, maxWaitNanos);
+
+        if (waitNanos <= 0) {
+            return;
+        }
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            release(estimatedTokens);
+            throw new RateLimitExceededException("Interrupted while waiting for the rate limit", e);
+        }
+    }
+
+    /**
+     * Reserves budget for one request with the estimated number of tokens, without blocking the calling thread.
+     *
+     * @param estimatedTokens The estimated number of tokens of the request
+     * @return A CompletableFuture that completes when the request can be sent, or exceptionally with a {@link RateLimitExceededException}
+     */
+    public CompletableFuture<Void> acquireAsync(long estimatedTokens) {
+        return acquireAsync(estimatedTokens, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reserves budget for one request with the estimated number of tokens, without blocking the calling thread.
+     * A request that can't be sent within the provided time is rejected right away instead of waiting.
+     *
+     * @param estimatedTokens The estimated number of tokens of the request
+     * @param maxWaitNanos    The longest the request can wait, in nanoseconds, for example the time left until the deadline of the call
+     * @return A CompletableFuture that completes when the request can be sent, or exceptionally with a {@link RateLimitExceededException}
+     */
+    public CompletableFuture<Void> acquireAsync(long estimatedTokens, long maxWaitNanos) {
+        long waitNanos;
+
+        try {
+            waitNanos = reserve(estimatedTokens, maxWaitNanos);
+        } catch (RateLimitExceededException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if (waitNanos <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return CompletableFuture.runAsync(() -> {
+        }, CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Corrects the token reservation of a request with the actual usage reported by the Mistral AI API.
+     * Reserved tokens that were not used are returned to the budget; additional tokens are taken from it.
+     *
+     * @param estimatedTokens The estimated number of tokens that was reserved for the request
+     * @param usage           The usage of the response, or null if the response did not report it
+     */
+    public void correct(long estimatedTokens, Usage usage) {
+        if (usage == null || tokens == null) {
+            return;
+        }
+
+        synchronized (this) {
+            tokens.refill(System.nanoTime());
+            tokens.add(estimatedTokens - usage.getTotalTokens());
+        }
+    }
+
+    /**
+     * Returns the token reservation of a request that was sent but failed, as failed requests do not use tokens.
+     * The request itself still counts towards the requests per second budget.
+     *
+     * @param estimatedTokens The estimated number of tokens that was reserved for the request
+     */
+    public void refund(long estimatedTokens) {
+        if (tokens == null) {
+            return;
+        }
+
+        synchronized (this) {
+            tokens.refill(System.nanoTime());
+            tokens.add(estimatedTokens);
+        }
+    }
+
+    /**
+     * Returns the budget of a request that was reserved but not sent.
+     *
+     * @param estimatedTokens The estimated number of tokens that was reserved for the request
+     */
+    public void release(long estimatedTokens) {
+        synchronized (this) {
+            long now = System.nanoTime();
+
+            if (requests != null) {
+                requests.refill(now);
+                requests.add(1);
+            }
+
+            if (tokens != null) {
+                tokens.refill(now);
+                tokens.add(estimatedTokens);
+            }
+        }
+    }
+
+    /**
+     * Returns the budget that is currently available.
+     *
+     * @return the current headroom
+     */
+    public Headroom getHeadroom() {
+        synchronized (this) {
+            long now = System.nanoTime();
+            long delayNanos = waitNanos(requests, 1, now);
+
+            return new Headroom(
+                    requests == null ? Double.POSITIVE_INFINITY : requests.available,
+                    tokens == null ? Long.MAX_VALUE : (long) Math.floor(tokens.available),
+                    Duration.ofNanos(delayNanos),
+                    delayedRequests.get(),
+                    rejectedRequests.get());
+        }
+    }
+
+    private static long waitNanos(Bucket bucket, long cost, long now) {
+        if (bucket == null) {
+            return 0;
+        }
+
+        bucket.refill(now);
+
+        // A request that costs more than the whole bucket only waits for a full bucket, and leaves the bucket in debt
+        double needed = Math.min(cost, bucket.capacity) - bucket.available;
+        return needed <= 0 ? 0 : (long) Math.ceil(needed / bucket.ratePerNano);
+    }
+
+    private static void take(Bucket bucket, long cost) {
+        if (bucket != null) {
+            bucket.available -= cost;
+        }
+    }
+
+    /**
+     * A token bucket. The available budget is negative while reserved requests are waiting for it.
+     * Access is guarded by the lock of the RateLimiter.
+     */
+    private static final class Bucket {
+
+        private final double capacity;
+        private final double ratePerNano;
+        private double available;
+        private long updatedAt;
+
+        private Bucket(double capacity, double ratePerNano, long now) {
+            this.capacity = capacity;
+            this.ratePerNano = ratePerNano;
+            this.available = capacity;
+            this.updatedAt = now;
+        }
+
+        private void refill(long now) {
+            if (now > updatedAt) {
+                available = Math.min(capacity, available + (now - updatedAt) * ratePerNano);
+                updatedAt = now;
+            }
+        }
+
+        private void add(double amount) {
+            available = Math.min(capacity, available + amount);
+        }
+    }
+
+    /**
+     * The budget of a RateLimiter that is available at a point in time.
+     */
+    @Getter
+    @AllArgsConstructor
+    @ToString
+    public static class Headroom {
+
+        /**
+         * The number of requests that can be sent immediately. Negative while delayed requests are waiting for the budget,
+         * and infinite if requests are not limited.
+         *
+         * @return the available requests
+         */
+        private final double availableRequests;
+
+        /**
+         * The number of tokens that can be used immediately. Negative while delayed requests are waiting for the budget,
+         * and {@link Long#MAX_VALUE} if tokens are not limited.
+         *
+         * @return the available tokens
+         */
+        private final long availableTokens;
+
+        /**
+         * How long a new request without tokens would have to wait.
+         *
+         * @return the delay of a new request
+         */
+        private final Duration delay;
+
+        /**
+         * The number of requests that were delayed so far.
+         *
+         * @return the number of delayed requests
+         */
+        private final long delayedRequests;
+
+        /**
+         * The number of requests that were rejected so far.
+         *
+         * @return the number of rejected requests
+         */
+        private final long rejectedRequests;
+    }
+
+    /**
+     * Builder for the RateLimiter. At least one of the budgets has to be set.
+     */
+    public static class Builder {
+
+        private double requestsPerSecond;
+        private long tokensPerMinute;
+        private RateLimitPolicy policy = RateLimitPolicy.QUEUE;
+        private Duration maxQueueTime = Duration.ofSeconds(60);
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the maximum number of requests per second.
+         *
+         * @param requestsPerSecond The requests per second budget, has to be positive
+         * @return This builder instance
+         */
+        public Builder requestsPerSecond(double requestsPerSecond) {
+            if (!(requestsPerSecond > 0) || Double.isInfinite(requestsPerSecond)) {
+                throw new IllegalArgumentException("requestsPerSecond must be positive");
+            }
+
+            this.requestsPerSecond = requestsPerSecond;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of tokens per minute, counting both prompt and completion tokens.
+         *
+         * @param tokensPerMinute The tokens per minute budget, has to be positive
+         * @return This builder instance
+         */
+        public Builder tokensPerMinute(long tokensPerMinute) {
+            if (tokensPerMinute <= 0) {
+                throw new IllegalArgumentException("tokensPerMinute must be positive");
+            }
+
+            this.tokensPerMinute = tokensPerMinute;
+            return this;
+        }
+
+        /**
+         * Sets what happens with requests that exceed the budgets. Defaults to {@link RateLimitPolicy#QUEUE}.
+         *
+         * @param policy The rate limit policy
+         * @return This builder instance
+         */
+        public Builder policy(@NonNull RateLimitPolicy policy) {
+            this.policy = policy;
+            return this;
+        }
+
+        /**
+         * Sets the longest delay of a queued request. Requests that would have to wait longer are rejected. Defaults to 60 seconds.
+         *
+         * @param maxQueueTime The maximum queue time, has to be zero or positive
+         * @return This builder instance
+         */
+        public Builder maxQueueTime(@NonNull Duration maxQueueTime) {
+            if (maxQueueTime.isNegative()) {
+                throw new IllegalArgumentException("maxQueueTime must not be negative");
+            }
+
+            this.maxQueueTime = maxQueueTime;
+            return this;
+        }
+
+        /**
+         * Builds the RateLimiter.
+         *
+         * @return A new RateLimiter
+         * @throws IllegalStateException if neither a requests per second nor a tokens per minute budget is set
+         */
+        public RateLimiter build() {
+            if (requestsPerSecond <= 0 && tokensPerMinute <= 0) {
+                throw new IllegalStateException("At least one of requestsPerSecond and tokensPerMinute has to be set");
+            }
+
+            return new RateLimiter(this);
+        }
+    }
+}
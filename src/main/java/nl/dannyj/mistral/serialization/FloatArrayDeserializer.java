@@ -0,0 +1,63 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.serialization;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Deserializes a JSON array of numbers straight into a primitive float array, without boxing the values.
+ * The initial capacity matches the dimension of the mistral-embed model, so embeddings of that model are parsed without resizing or copying the array.
+ */
+public class FloatArrayDeserializer extends StdDeserializer<float[]> {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    public FloatArrayDeserializer() {
+        super(float[].class);
+    }
+
+    @Override
+    public float[] deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (!p.isExpectedStartArrayToken()) {
+            return (float[]) ctxt.handleUnexpectedToken(float[].class, p);
+        }
+
+        float[] values = new float[INITIAL_CAPACITY];
+        int size = 0;
+        JsonToken token;
+
+        while ((token = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.VALUE_NUMBER_FLOAT && token != JsonToken.VALUE_NUMBER_INT) {
+                return (float[]) ctxt.handleUnexpectedToken(float[].class, p);
+            }
+
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            values[size++] = p.getFloatValue();
+        }
+
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.services;
+
+import nl.dannyj.mistral.exceptions.MistralAPIException;
+import nl.dannyj.mistral.net.CancellableFuture;
+import nl.dannyj.mistral.net.MistralExecutors;
+import nl.dannyj.mistral.net.RequestOptions;
+import nl.dannyj.mistral.ratelimit.RateLimiter;
+import okhttp3.Call;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The deadline and HTTP calls of a single invocation of a {@link MistralService} method.
+ * Every call that is made for the invocation is registered, so cancelling the context cancels all of them,
+ * including calls that are only made afterwards (for example after waiting for the rate limiter).
+ * <p>
+ * The timeout of an OkHttp call only starts once the dispatcher executes it, so asynchronous invocations also cancel the context
+ * at the deadline with a timer. This bounds the time a call waits in the queue of the dispatcher.
+ */
+class CallContext {
+
+    private static final ScheduledExecutorService DEADLINES = MistralExecutors.newDaemonScheduler("mistral-deadlines");
+
+    private final boolean hasDeadline;
+    private final long deadline;
+    private final List<Call> calls = new ArrayList<>(1);
+    private final List<Runnable> cancelActions = new ArrayList<>(1);
+    private boolean cancelled;
+    private volatile boolean expired;
+    private volatile RateLimiter rateLimiter;
+    private volatile long estimatedTokens;
+
+    /**
+     * Creates a context whose deadline starts now.
+     *
+     * @param options The options of the invocation
+     */
+    CallContext(RequestOptions options) {
+        this(options.getTimeout() != null, options.getTimeout() != null ? System.nanoTime() + options.getTimeout().toNanos() : 0);
+    }
+
+    private CallContext(boolean hasDeadline, long deadline) {
+        this.hasDeadline = hasDeadline;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Creates a context with the same deadline that is not cancelled together with this context.
+     * Used for calls whose response is shared with other invocations.
+     *
+     * @return The detached context
+     */
+    CallContext detached() {
+        return new CallContext(hasDeadline, deadline);
+    }
+
+    /**
+     * Returns the time that is left until the deadline.
+     *
+     * @return The remaining time in nanoseconds, which is negative once the deadline has passed, or {@link Long#MAX_VALUE} without a deadline
+     */
+    long remainingNanos() {
+        return hasDeadline ? deadline - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns whether the deadline of this context is not earlier than the deadline of the other context.
+     *
+     * @param other The other context
+     * @return True if this context has no deadline, or a deadline that is not earlier than the deadline of the other context
+     */
+    boolean outlasts(CallContext other) {
+        return !hasDeadline || other.hasDeadline && deadline - other.deadline >= 0;
+    }
+
+    /**
+     * Returns whether the context was cancelled because its deadline passed, see {@link #cancelAtDeadline(CompletableFuture, Supplier)}.
+     *
+     * @return True if the deadline passed before the invocation completed
+     */
+    boolean isExpired() {
+        return expired;
+    }
+
+    /**
+     * Records the rate limiter that admitted the request of the invocation, so hedged requests only use budget that is left.
+     *
+     * @param rateLimiter     The rate limiter
+     * @param estimatedTokens The estimated number of tokens of the request
+     */
+    void rateLimitedBy(RateLimiter rateLimiter, long estimatedTokens) {
+        this.estimatedTokens = estimatedTokens;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Reserves budget of the rate limiter for a hedged request, only if the rate limiter can admit it right away.
+     * The reservation has to be returned with {@link #releaseHedge()} once the request has completed.
+     *
+     * @return true if the hedged request may be sent, which is always the case without a rate limiter
+     */
+    boolean reserveHedge() {
+        RateLimiter limiter = this.rateLimiter;
+        return limiter == null || limiter.tryReserve(estimatedTokens);
+    }
+
+    /**
+     * Returns the reservation of a hedged request. Only one of the two requests provides the response, whose usage is accounted
+     * by the reservation of the invocation itself.
+     */
+    void releaseHedge() {
+        RateLimiter limiter = this.rateLimiter;
+
+        if (limiter != null) {
+            limiter.release(estimatedTokens);
+        }
+    }
+
+    /**
+     * Registers a call that has not been executed yet. The call times out at the deadline, and is cancelled right away if the context is already cancelled.
+     *
+     * @param call The call
+     */
+    void register(Call call) {
+        if (hasDeadline) {
+            // A timeout of zero disables the timeout, so a deadline that already passed times out after a nanosecond
+            call.timeout().timeout(Math.max(1, remainingNanos()), TimeUnit.NANOSECONDS);
+        }
+
+        synchronized (this) {
+            if (!cancelled) {
+                calls.add(call);
+                return;
+            }
+        }
+
+        call.cancel();
+    }
+
+    /**
+     * Registers an action that is run when the context is cancelled, for work that is not an HTTP call (like waiting for the rate limiter).
+     * The action is run right away if the context is already cancelled.
+     *
+     * @param action The action
+     */
+    void onCancel(Runnable action) {
+        synchronized (this) {
+            if (!cancelled) {
+                cancelActions.add(action);
+                return;
+            }
+        }
+
+        action.run();
+    }
+
+    /**
+     * Cancels all calls of the invocation and runs the registered cancel actions.
+     */
+    void cancel() {
+        List<Call> registered;
+        List<Runnable> actions;
+
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+
+            cancelled = true;
+            registered = new ArrayList<>(calls);
+            actions = new ArrayList<>(cancelActions);
+            calls.clear();
+            cancelActions.clear();
+        }
+
+        registered.forEach(Call::cancel);
+        actions.forEach(Runnable::run);
+    }
+
+    /**
+     * Fails the future of the invocation with the timeout and cancels the context once the deadline passes, unless the future completes first.
+     * Does nothing without a deadline.
+     *
+     * @param completion The future of the invocation
+     * @param timeout    Creates the exception the future fails with at the deadline
+     */
+    void cancelAtDeadline(CompletableFuture<?> completion, Supplier<? extends Throwable> timeout) {
+        if (!hasDeadline) {
+            return;
+        }
+
+        ScheduledFuture<?> expiry = DEADLINES.schedule(() -> {
+            expired = true;
+            completion.completeExceptionally(timeout.get());
+            cancel();
+        }, Math.max(0, remainingNanos()), TimeUnit.NANOSECONDS);
+
+        completion.whenComplete((result, error) -> expiry.cancel(false));
+    }
+
+    /**
+     * Returns a future that completes like the provided future and cancels this context when it is cancelled.
+     * The returned future fails with the timeout of {@link #timeout()}, wrapped in a {@link MistralAPIException}, when the deadline passes.
+     *
+     * @param <T>    The type of the result
+     * @param future The future of the invocation
+     * @return The cancellable future
+     */
+    <T> CancellableFuture<T> bind(CompletableFuture<T> future) {
+        CancellableFuture<T> cancellable = new CancellableFuture<>(this::cancel);
+        cancelAtDeadline(cancellable, () -> new MistralAPIException(timeout()));
+
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                cancellable.completeExceptionally(error);
+            } else {
+                cancellable.complete(result);
+            }
+        });
+
+        return cancellable;
+    }
+
+    /**
+     * Creates the exception of an invocation whose deadline passed, which is the exception OkHttp fails a call with when its timeout passes.
+     *
+     * @return The exception
+     */
+    static InterruptedIOException timeout() {
+        return new InterruptedIOException("timeout");
+    }
+}
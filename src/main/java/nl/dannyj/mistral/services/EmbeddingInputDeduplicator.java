@@ -0,0 +1,145 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.services;
+
+import nl.dannyj.mistral.exceptions.UnexpectedResponseException;
+import nl.dannyj.mistral.models.embedding.EmbeddingRequest;
+import nl.dannyj.mistral.models.embedding.EmbeddingResponse;
+import nl.dannyj.mistral.models.embedding.FloatEmbedding;
+import nl.dannyj.mistral.models.usage.Usage;
+import nl.dannyj.mistral.utils.TokenEstimator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collapses identical inputs of an embedding request, so every unique string is only embedded once,
+ * and fans the embeddings of the response back out to the original input positions.
+ */
+class EmbeddingInputDeduplicator {
+
+    private final List<String> uniqueInputs;
+    private final int[] uniqueIndices;
+    private final long uniqueCharacters;
+    private final long duplicateCharacters;
+    private final int estimatedDuplicateTokens;
+
+    private EmbeddingInputDeduplicator(List<String> uniqueInputs, int[] uniqueIndices, long uniqueCharacters, long duplicateCharacters,
+                                       int estimatedDuplicateTokens) {
+        this.uniqueInputs = uniqueInputs;
+        this.uniqueIndices = uniqueIndices;
+        this.uniqueCharacters = uniqueCharacters;
+        this.duplicateCharacters = duplicateCharacters;
+        this.estimatedDuplicateTokens = estimatedDuplicateTokens;
+    }
+
+    /**
+     * Finds the duplicate inputs of a request.
+     *
+     * @param inputs The inputs of the request
+     * @return The deduplicator, or null if the inputs contain no duplicates
+     */
+    static EmbeddingInputDeduplicator of(List<String> inputs) {
+        Map<String, Integer> positions = new HashMap<>(inputs.size() * 2);
+        List<String> uniqueInputs = new ArrayList<>(inputs.size());
+        int[] uniqueIndices = new int[inputs.size()];
+        long uniqueCharacters = 0;
+        long duplicateCharacters = 0;
+        int estimatedDuplicateTokens = 0;
+
+        for (int i = 0; i < inputs.size(); i++) {
+            String input = inputs.get(i);
+            Integer position = positions.putIfAbsent(input, uniqueInputs.size());
+            int length = input == null ? 0 : input.length();
+
+            if (position == null) {
+                uniqueIndices[i] = uniqueInputs.size();
+                uniqueInputs.add(input);
+                uniqueCharacters += length;
+            } else {
+                uniqueIndices[i] = position;
+                duplicateCharacters += length;
+                estimatedDuplicateTokens += input == null ? 0 : TokenEstimator.estimateTokens(input);
+            }
+        }
+
+        if (uniqueInputs.size() == inputs.size()) {
+            return null;
+        }
+
+        return new EmbeddingInputDeduplicator(uniqueInputs, uniqueIndices, uniqueCharacters, duplicateCharacters, estimatedDuplicateTokens);
+    }
+
+    /**
+     * Creates a copy of the request that only contains the unique inputs.
+     *
+     * @param request The original request
+     * @return The request to send to the API
+     */
+    EmbeddingRequest deduplicate(EmbeddingRequest request) {
+        return new EmbeddingRequest(request.getModel(), uniqueInputs);
+    }
+
+    /**
+     * Expands the response for the unique inputs to a response with an embedding for every original input.
+     *
+     * @param response The response for the deduplicated request
+     * @return The response for the original request
+     * @throws UnexpectedResponseException if the response does not contain an embedding for every unique input
+     */
+    EmbeddingResponse expand(EmbeddingResponse response) {
+        FloatEmbedding[] embeddings = new FloatEmbedding[uniqueInputs.size()];
+
+        if (response.getData() != null) {
+            for (FloatEmbedding embedding : response.getData()) {
+                if (embedding.getIndex() < 0 || embedding.getIndex() >= embeddings.length) {
+                    throw new UnexpectedResponseException("Received an embedding with an unexpected index from the Mistral AI API: " + embedding.getIndex());
+                }
+
+                embeddings[embedding.getIndex()] = embedding;
+            }
+        }
+
+        List<FloatEmbedding> data = new ArrayList<>(uniqueIndices.length);
+        for (int i = 0; i < uniqueIndices.length; i++) {
+            FloatEmbedding embedding = embeddings[uniqueIndices[i]];
+
+            if (embedding == null) {
+                throw new UnexpectedResponseException("The Mistral AI API did not return an embedding for input " + i);
+            }
+
+            data.add(FloatEmbedding.wrap(embedding.getObject(), embedding.getEmbeddingArray(), i));
+        }
+
+        return new EmbeddingResponse(response.getId(), response.getObject(), data, response.getModel(), response.getUsage(),
+                uniqueIndices.length - uniqueInputs.size(), estimateSavedTokens(response.getUsage()));
+    }
+
+    /**
+     * Scales the prompt tokens reported for the unique inputs by the characters of the duplicates,
+     * or falls back to the {@link TokenEstimator} heuristic when the response has no usage.
+     */
+    private int estimateSavedTokens(Usage usage) {
+        if (usage == null || uniqueCharacters == 0) {
+            return estimatedDuplicateTokens;
+        }
+
+        return (int) Math.round((double) usage.getPromptTokens() * duplicateCharacters / uniqueCharacters);
+    }
+}
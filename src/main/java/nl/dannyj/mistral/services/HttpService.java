@@ -16,8 +16,16 @@
 
 package nl.dannyj.mistral.services;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
+import nl.dannyj.mistral.exceptions.InvalidJsonException;
 import nl.dannyj.mistral.exceptions.MistralAPIException;
+import nl.dannyj.mistral.exceptions.UnsuccessfulResponseException;
+import nl.dannyj.mistral.net.JsonRequestBody;
+import nl.dannyj.mistral.net.ResponseBodyHandler;
+import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
@@ -27,6 +35,13 @@ import okhttp3.Response;
 import okhttp3.ResponseBody;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The HttpService class is responsible for making HTTP requests to the Mistral AI API.
@@ -38,13 +53,41 @@ public class HttpService {
 
     private final OkHttpClient httpClient;
 
+    private final Executor callbackExecutor;
+
+    /**
+     * The hedger that sends a second request when a request is slow, or null if requests are not hedged.
+     *
+     * @param requestHedger The request hedger, or null to disable hedging.
+     * @return The request hedger, or null if hedging is disabled.
+     */
+    @Getter
+    @Setter
+    private volatile RequestHedger requestHedger;
+
     /**
      * Constructor that initializes the HttpService with a provided OkHttpClient.
+     * Responses of asynchronous and streaming requests are handled on the OkHttp dispatcher threads.
      *
      * @param httpClient The OkHttpClient to be used for making requests to the Mistral AI API
      */
     public HttpService(@NonNull OkHttpClient httpClient) {
         this.httpClient = httpClient;
+        this.callbackExecutor = null;
+    }
+
+    /**
+     * Constructor that initializes the HttpService with a provided OkHttpClient and callback executor.
+     * Responses of asynchronous and streaming requests are read and handled on the callback executor,
+     * which frees the OkHttp dispatcher thread as soon as the response headers have been received.
+     * The dispatcher then counts the request as finished, so its request limits do not bound the responses that are still being read.
+     *
+     * @param httpClient       The OkHttpClient to be used for making requests to the Mistral AI API
+     * @param callbackExecutor The executor on which responses of asynchronous and streaming requests are handled
+     */
+    public HttpService(@NonNull OkHttpClient httpClient, @NonNull Executor callbackExecutor) {
+        this.httpClient = httpClient;
+        this.callbackExecutor = callbackExecutor;
     }
 
     /**
@@ -54,12 +97,79 @@ public class HttpService {
      * @return The response body as a string
      */
     public String get(@NonNull String urlPath) {
+        return get(urlPath, ResponseBody::string);
+    }
+
+    /**
+     * Makes a GET request to the specified URL path.
+     *
+     * @param <T>     The type of the result
+     * @param urlPath The URL path to make the GET request to
+     * @param handler The handler that converts the response body into the result
+     * @return The result of the handler
+     */
+    public <T> T get(@NonNull String urlPath, @NonNull ResponseBodyHandler<T> handler) {
+        return get(urlPath, handler, null);
+    }
+
+    /**
+     * Makes a GET request to the specified URL path for an invocation of a {@link MistralService} method.
+     *
+     * @param <T>     The type of the result
+     * @param urlPath The URL path to make the GET request to
+     * @param handler The handler that converts the response body into the result
+     * @param context The context of the invocation, or null
+     * @return The result of the handler
+     */
+    <T> T get(String urlPath, ResponseBodyHandler<T> handler, CallContext context) {
+        Request request = new Request.Builder()
+                .url(API_URL + urlPath)
+                .get()
+                .build();
+
+        return executeRequest(request, handler, context);
+    }
+
+    /**
+     * Makes an asynchronous GET request to the specified URL path.
+     * The request is enqueued on the OkHttp dispatcher instead of blocking the calling thread.
+     *
+     * @param urlPath The URL path to make the GET request to
+     * @return A CompletableFuture that will complete with the response body as a string
+     */
+    public CompletableFuture<String> getAsync(@NonNull String urlPath) {
+        return getAsync(urlPath, ResponseBody::string);
+    }
+
+    /**
+     * Makes an asynchronous GET request to the specified URL path.
+     * The request is enqueued on the OkHttp dispatcher instead of blocking the calling thread.
+     *
+     * @param <T>     The type of the result
+     * @param urlPath The URL path to make the GET request to
+     * @param handler The handler that converts the response body into the result
+     * @return A CompletableFuture that will complete with the result of the handler
+     */
+    public <T> CompletableFuture<T> getAsync(@NonNull String urlPath, @NonNull ResponseBodyHandler<T> handler) {
+        return getAsync(urlPath, handler, null);
+    }
+
+    /**
+     * Makes an asynchronous GET request to the specified URL path for an invocation of a {@link MistralService} method.
+     *
+     * @param <T>     The type of the result
+     * @param urlPath The URL path to make the GET request to
+     * @param handler The handler that converts the response body into the result
+     * @param context The context of the invocation, or null
+     * @return A CompletableFuture that will complete with the result of the handler
+     */
+    <T> CompletableFuture<T> getAsync(String urlPath, ResponseBodyHandler<T> handler, CallContext context) {
         Request request = new Request.Builder()
                 .url(API_URL + urlPath)
                 .get()
                 .build();
 
-        return executeRequest(request);
+        return executeRequestAsync(request, handler, context);
     }
 
     /**
@@ -70,12 +180,107 @@ public class HttpService {
      * @return The response body as a string
      */
     public String post(@NonNull String urlPath, @NonNull String body) {
+        return post(urlPath, RequestBody.create(body, MediaType.parse("application/json")));
+    }
+
+    /**
+     * Makes a POST request to the specified URL path with the provided body.
+     *
+     * @param urlPath The URL path to make the POST request to
+     * @param body    The body of the POST request, for example a {@link JsonRequestBody}
+     * @return The response body as a string
+     */
+    public String post(@NonNull String urlPath, @NonNull RequestBody body) {
+        return post(urlPath, body, ResponseBody::string);
+    }
+
+    /**
+     * Makes a POST request to the specified URL path with the provided body.
+     *
+     * @param <T>     The type of the result
+     * @param urlPath The URL path to make the POST request to
+     * @param body    The body of the POST request, for example a {@link JsonRequestBody}
+     * @param handler The handler that converts the response body into the result
+     * @return The result of the handler
+     */
+    public <T> T post(@NonNull String urlPath, @NonNull RequestBody body, @NonNull ResponseBodyHandler<T> handler) {
+        return post(urlPath, body, handler, null);
+    }
+
+    /**
+     * Makes a POST request to the specified URL path with the provided body for an invocation of a {@link MistralService} method.
+     *
+     * @param <T>     The type of the result
+     * @param urlPath The URL path to make the POST request to
+     * @param body    The body of the POST request
+     * @param handler The handler that converts the response body into the result
+     * @param context The context of the invocation, or null
+     * @return The result of the handler
+     */
+    <T> T post(String urlPath, RequestBody body, ResponseBodyHandler<T> handler, CallContext context) {
         Request request = new Request.Builder()
                 .url(API_URL + urlPath)
-                .post(RequestBody.create(body, MediaType.parse("application/json")))
+                .post(body)
                 .build();
 
-        return executeRequest(request);
+        return executeRequest(request, handler, context);
+    }
+
+    /**
+     * Makes an asynchronous POST request to the specified URL path with the provided body.
+     * The request is enqueued on the OkHttp dispatcher instead of blocking the calling thread.
+     *
+     * @param urlPath The URL path to make the POST request to
+     * @param body    The JSON body of the POST request
+     * @return A CompletableFuture that will complete with the response body as a string
+     */
+    public CompletableFuture<String> postAsync(@NonNull String urlPath, @NonNull String body) {
+        return postAsync(urlPath, RequestBody.create(body, MediaType.parse("application/json")));
+    }
+
+    /**
+     * Makes an asynchronous POST request to the specified URL path with the provided body.
+     * The request is enqueued on the OkHttp dispatcher instead of blocking the calling thread.
+     *
+     * @param urlPath The URL path to make the POST request to
+     * @param body    The body of the POST request, for example a {@link JsonRequestBody}
+     * @return A CompletableFuture that will complete with the response body as a string
+     */
+    public CompletableFuture<String> postAsync(@NonNull String urlPath, @NonNull RequestBody body) {
+        return postAsync(urlPath, body, ResponseBody::string);
+    }
+
+    /**
+     * Makes an asynchronous POST request to the specified URL path with the provided body.
+     * The request is enqueued on the OkHttp dispatcher instead of blocking the calling thread.
+     *
+     * @param <T>     The type of the result
+     * @param urlPath The URL path to make the POST request to
+     * @param body    The body of the POST request, for example a {@link JsonRequestBody}
+     * @param handler The handler that converts the response body into the result
+     * @return A CompletableFuture that will complete with the result of the handler
+     */
+    public <T> CompletableFuture<T> postAsync(@NonNull String urlPath, @NonNull RequestBody body, @NonNull ResponseBodyHandler<T> handler) {
+        return postAsync(urlPath, body, handler, null);
+    }
+
+    /**
+     * Makes an asynchronous POST request to the specified URL path with the provided body for an invocation of a {@link MistralService} method.
+     *
+     * @param <T>     The type of the result
+     * @param urlPath The URL path to make the POST request to
+     * @param body    The body of the POST request
+     * @param handler The handler that converts the response body into the result
+     * @param context The context of the invocation, or null
+     * @return A CompletableFuture that will complete with the result of the handler
+     */
+    <T> CompletableFuture<T> postAsync(String urlPath, RequestBody body, ResponseBodyHandler<T> handler, CallContext context) {
+        Request request = new Request.Builder()
+                .url(API_URL + urlPath)
+                .post(body)
+                .build();
+
+        return executeRequestAsync(request, handler, context);
     }
 
     /**
@@ -86,36 +291,381 @@ public class HttpService {
      * @param callBack The callback to handle chunks received during streaming
      */
     public void streamPost(@NonNull String urlPath, @NonNull String body, Callback callBack) {
+        streamPost(urlPath, RequestBody.create(body, MediaType.parse("application/json")), callBack);
+    }
+
+    /**
+     * Makes a streaming POST request to the specified URL path with the provided body.
+     *
+     * @param urlPath  The URL path to make the POST request to
+     * @param body     The body of the POST request, for example a {@link JsonRequestBody}
+     * @param callBack The callback to handle chunks received during streaming
+     */
+    public void streamPost(@NonNull String urlPath, @NonNull RequestBody body, Callback callBack) {
+        streamPost(urlPath, body, callBack, null);
+    }
+
+    /**
+     * Makes a streaming POST request to the specified URL path with the provided body for an invocation of a {@link MistralService} method.
+     *
+     * @param urlPath  The URL path to make the POST request to
+     * @param body     The body of the POST request
+     * @param callBack The callback to handle chunks received during streaming
+     * @param context  The context of the invocation, or null
+     */
+    void streamPost(String urlPath, RequestBody body, Callback callBack, CallContext context) {
         Request request = new Request.Builder()
                 .url(API_URL + urlPath)
-                .post(RequestBody.create(body, MediaType.parse("application/json")))
+                .post(body)
                 .build();
 
-        httpClient.newCall(request).enqueue(callBack);
+        newCall(request, context).enqueue(new ExecutorCallback(callBack));
+    }
+
+    /**
+     * Creates a call for the provided request and registers it with the context, so it follows the deadline and cancellation of the invocation.
+     *
+     * @param request The request
+     * @param context The context of the invocation, or null
+     * @return The call
+     */
+    private Call newCall(Request request, CallContext context) {
+        Call call = httpClient.newCall(request);
+
+        if (context != null) {
+            context.register(call);
+        }
+
+        return call;
     }
 
     /**
      * Executes the provided request using the OkHttpClient from the MistralClient.
      *
+     * @param <T>     The type of the result
      * @param request The request to be executed
-     * @return The response body as a string
-     * @throws MistralAPIException If the response is not successful, the response body is null or an IOException occurs in the objectmapper
+     * @param handler The handler that converts the response body into the result
+     * @param context The context of the invocation, or null
+     * @return The result of the handler
+     * @throws MistralAPIException  If the response is not successful, the response body is null or an IOException occurs in the objectmapper
+     * @throws InvalidJsonException If the request body could not be converted to JSON
      */
-    private String executeRequest(Request request) {
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new MistralAPIException("Received unexpected response code " + response.code() + ": " + (response.body() != null ? response.body().string() : response));
+    private <T> T executeRequest(Request request, ResponseBodyHandler<T> handler, CallContext context) {
+        RequestHedger hedger = this.requestHedger;
+        if (hedger != null && hedger.isHedged(request.url().encodedPath())) {
+            CompletableFuture<T> future = executeHedgedRequestAsync(request, handler, hedger, context);
+
+            if (context != null) {
+                // The hedged calls are enqueued, so their timeouts do not cover the time they wait in the queue of the dispatcher
+                context.cancelAtDeadline(future, () -> new MistralAPIException(CallContext.timeout()));
             }
 
-            try (ResponseBody responseBody = response.body()) {
-                if (responseBody == null) {
-                    throw new MistralAPIException("Received null response from the API: " + response);
-                }
+            return awaitHedged(future);
+        }
 
-                return responseBody.string();
-            }
+        try (Response response = newCall(request, context).execute()) {
+            return readResponse(response, handler);
+        } catch (JsonProcessingException e) {
+            throw new InvalidJsonException("Failed to convert request to JSON", e);
         } catch (IOException e) {
             throw new MistralAPIException(e);
         }
     }
+
+    /**
+     * Enqueues the provided request on the OkHttpClient from the MistralClient.
+     * The returned future is completed from the OkHttp callback, so waiting for the response does not occupy a thread.
+     *
+     * @param <T>     The type of the result
+     * @param request The request to be executed
+     * @param handler The handler that converts the response body into the result
+     * @param context The context of the invocation, or null
+     * @return A CompletableFuture that will complete with the result of the handler, or exceptionally with a {@link MistralAPIException}
+     */
+    private <T> CompletableFuture<T> executeRequestAsync(Request request, ResponseBodyHandler<T> handler, CallContext context) {
+        RequestHedger hedger = this.requestHedger;
+        if (hedger != null && hedger.isHedged(request.url().encodedPath())) {
+            return executeHedgedRequestAsync(request, handler, hedger, context);
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        newCall(request, context).enqueue(new ExecutorCallback(new Callback() {
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                try (response) {
+                    future.complete(readResponse(response, handler));
+                } catch (IOException e) {
+                    future.completeExceptionally(new MistralAPIException(e));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                if (e instanceof JsonProcessingException) {
+                    future.completeExceptionally(new InvalidJsonException("Failed to convert request to JSON", e));
+                } else {
+                    future.completeExceptionally(new MistralAPIException(e));
+                }
+            }
+        }));
+
+        return future;
+    }
+
+    /**
+     * Enqueues the provided request and, if it has not completed after the hedge delay, an identical second request.
+     * The first request to complete wins and the other one is cancelled.
+     * The second request is only sent when the rate limiter of the invocation can admit it right away; its reservation is returned
+     * when the request completes, as the reservation of the invocation accounts for the response.
+     *
+     * @param <T>     The type of the result
+     * @param request The request to be executed
+     * @param handler The handler that converts the response body into the result
+     * @param hedger  The hedger that decides when to send the second request
+     * @param context The context of the invocation, or null
+     * @return A CompletableFuture that will complete with the result of the handler, or exceptionally with a {@link MistralAPIException}
+     */
+    private <T> CompletableFuture<T> executeHedgedRequestAsync(Request request, ResponseBodyHandler<T> handler, RequestHedger hedger, CallContext context) {
+        String urlPath = request.url().encodedPath();
+        HedgedExchange<T> exchange = new HedgedExchange<>(request, handler, hedger, urlPath, context);
+
+        hedger.onRequest();
+        exchange.send(false);
+
+        long delayNanos = hedger.delayNanos(urlPath);
+        if (delayNanos >= 0) {
+            CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(() -> {
+                if (exchange.future.isDone() || context != null && !context.reserveHedge()) {
+                    return;
+                }
+
+                if (!hedger.tryHedge()) {
+                    if (context != null) {
+                        context.releaseHedge();
+                    }
+
+                    return;
+                }
+
+                if (context != null) {
+                    exchange.future.whenComplete((result, error) -> context.releaseHedge());
+                }
+
+                exchange.send(true);
+            });
+        }
+
+        return exchange.future;
+    }
+
+    /**
+     * Waits for a hedged request on the calling thread and rethrows its exception unwrapped, as if the request had been executed directly.
+     *
+     * @param <T>    The type of the result
+     * @param future The future of the hedged request
+     * @return The result of the request
+     */
+    private static <T> T awaitHedged(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the body of the provided response, checking that the response is successful.
+     * The body is only read into a string if the response is not successful, so it can be included in the error message.
+     *
+     * @param <T>      The type of the result
+     * @param response The response to read
+     * @param handler  The handler that converts the response body into the result
+     * @return The result of the handler
+     * @throws IOException         If reading the response body fails
+     * @throws MistralAPIException If the response is not successful (as an {@link UnsuccessfulResponseException}) or the response body is null
+     */
+    private <T> T readResponse(Response response, ResponseBodyHandler<T> handler) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new UnsuccessfulResponseException("Received unexpected response code " + response.code() + ": " + (response.body() != null ? response.body().string() : response), response.code());
+        }
+
+        try (ResponseBody responseBody = response.body()) {
+            if (responseBody == null) {
+                throw new MistralAPIException("Received null response from the API: " + response);
+            }
+
+            return handler.handle(responseBody);
+        }
+    }
+
+    /**
+     * The calls of a hedged request. The future completes with the first successful response, or with the first error once all calls failed.
+     *
+     * @param <T> The type of the result
+     */
+    private class HedgedExchange<T> {
+
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final List<Call> calls = new ArrayList<>(2);
+        private final Request request;
+        private final ResponseBodyHandler<T> handler;
+        private final RequestHedger hedger;
+        private final String urlPath;
+        private final CallContext context;
+        private int pending;
+        private RuntimeException error;
+        private volatile long primaryStartedAt;
+
+        private HedgedExchange(Request request, ResponseBodyHandler<T> handler, RequestHedger hedger, String urlPath, CallContext context) {
+            this.request = request;
+            this.handler = handler;
+            this.hedger = hedger;
+            this.urlPath = urlPath;
+            this.context = context;
+        }
+
+        /**
+         * Sends one of the calls, unless the request has already completed.
+         *
+         * @param hedge Whether this is the second call
+         */
+        private void send(boolean hedge) {
+            Call call = newCall(request, context);
+
+            synchronized (this) {
+                if (future.isDone()) {
+                    return;
+                }
+
+                calls.add(call);
+                pending++;
+            }
+
+            if (!hedge) {
+                primaryStartedAt = System.nanoTime();
+            }
+
+            call.enqueue(new ExecutorCallback(new Callback() {
+                @Override
+                public void onResponse(@NonNull Call call, @NonNull Response response) {
+                    T result;
+
+                    try (response) {
+                        result = readResponse(response, handler);
+                    } catch (IOException e) {
+                        fail(new MistralAPIException(e));
+                        return;
+                    } catch (RuntimeException e) {
+                        fail(e);
+                        return;
+                    }
+
+                    succeed(result, hedge);
+                }
+
+                @Override
+                public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                    if (e instanceof JsonProcessingException) {
+                        fail(new InvalidJsonException("Failed to convert request to JSON", e));
+                    } else {
+                        fail(new MistralAPIException(e));
+                    }
+                }
+            }));
+        }
+
+        private void succeed(T result, boolean hedge) {
+            if (!future.complete(result)) {
+                return;
+            }
+
+            // Always sample the primary call, the hedge delay is a percentile of unhedged latencies. When the hedge wins,
+            // the primary is cancelled now, so its latency is censored at this point instead of recording the faster hedge.
+            hedger.recordLatency(urlPath, System.nanoTime() - primaryStartedAt);
+            if (hedge) {
+                hedger.onHedgeWin();
+            }
+
+            List<Call> losers;
+            synchronized (this) {
+                losers = new ArrayList<>(calls);
+            }
+
+            losers.forEach(Call::cancel);
+        }
+
+        private void fail(RuntimeException e) {
+            synchronized (this) {
+                pending--;
+
+                if (error == null) {
+                    error = e;
+                }
+
+                if (pending > 0) {
+                    return;
+                }
+            }
+
+            future.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Callback that hands the response over to the callback executor, if one is configured.
+     * Without a callback executor, the delegate is invoked directly on the OkHttp dispatcher thread.
+     * Once the response is handed over, OkHttp finishes the call in the dispatcher while the body may still be read on the executor.
+     */
+    private class ExecutorCallback implements Callback {
+
+        private final Callback delegate;
+
+        private ExecutorCallback(Callback delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
+            if (callbackExecutor == null) {
+                delegate.onResponse(call, response);
+                return;
+            }
+
+            try {
+                callbackExecutor.execute(() -> {
+                    try {
+                        delegate.onResponse(call, response);
+                    } catch (IOException e) {
+                        response.close();
+                        delegate.onFailure(call, e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                response.close();
+                delegate.onFailure(call, new IOException("The callback executor rejected the response", e));
+            }
+        }
+
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+            if (callbackExecutor == null) {
+                delegate.onFailure(call, e);
+                return;
+            }
+
+            try {
+                callbackExecutor.execute(() -> delegate.onFailure(call, e));
+            } catch (RejectedExecutionException rejected) {
+                e.addSuppressed(rejected);
+                delegate.onFailure(call, e);
+            }
+        }
+    }
 }
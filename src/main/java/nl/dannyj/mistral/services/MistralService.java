@@ -16,15 +16,25 @@
 
 package nl.dannyj.mistral.services;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
 import jakarta.validation.Validation;
 import jakarta.validation.Validator;
 import jakarta.validation.ValidatorFactory;
+import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
+import nl.dannyj.mistral.cache.RequestHasher;
+import nl.dannyj.mistral.cache.ResponseCache;
+import nl.dannyj.mistral.cache.SemanticCache;
+import nl.dannyj.mistral.exceptions.CircuitBreakerOpenException;
 import nl.dannyj.mistral.exceptions.InvalidJsonException;
+import nl.dannyj.mistral.exceptions.RateLimitExceededException;
 import nl.dannyj.mistral.exceptions.UnexpectedResponseEndException;
 import nl.dannyj.mistral.exceptions.UnexpectedResponseException;
 import nl.dannyj.mistral.models.Request;
@@ -39,15 +49,31 @@ import nl.dannyj.mistral.models.embedding.EmbeddingResponse;
 import nl.dannyj.mistral.models.model.ListModelsResponse;
 import nl.dannyj.mistral.models.ocr.OCRRequest;
 import nl.dannyj.mistral.models.ocr.OCRResponse;
+import nl.dannyj.mistral.models.usage.Usage;
+import nl.dannyj.mistral.net.CancellableFuture;
 import nl.dannyj.mistral.net.ChatCompletionChunkCallback;
+import nl.dannyj.mistral.net.JsonRequestBody;
+import nl.dannyj.mistral.net.RequestOptions;
+import nl.dannyj.mistral.net.ResponseBodyHandler;
+import nl.dannyj.mistral.net.ServerSentEventReader;
+import nl.dannyj.mistral.ratelimit.RateLimiter;
+import nl.dannyj.mistral.utils.TokenEstimator;
 import okhttp3.Call;
 import okhttp3.Callback;
+import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * The MistralService class provides methods to interact with the Mistral AI API.
@@ -55,9 +81,58 @@ import java.util.concurrent.CompletableFuture;
  */
 public class MistralService {
 
+    private static final byte[] DONE_EVENT_DATA = "[DONE]".getBytes(StandardCharsets.US_ASCII);
+
+    private static final List<Class<? extends Request>> REQUEST_TYPES = List.of(ChatCompletionRequest.class, EmbeddingRequest.class, OCRRequest.class);
+    private static final List<Class<?>> RESPONSE_TYPES = List.of(ChatCompletionResponse.class, MessageChunk.class, EmbeddingResponse.class, OCRResponse.class, ListModelsResponse.class);
+
     private final HttpService httpService;
     private final ObjectMapper objectMapper;
     private final Validator validator;
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private final RequestHasher requestHasher;
+    private final RequestCoalescer requestCoalescer = new RequestCoalescer();
+
+    /**
+     * The cache for responses of deterministic chat completion requests, or null if responses are not cached.
+     *
+     * @param responseCache The response cache, or null to disable caching.
+     * @return The response cache, or null if caching is disabled.
+     */
+    @Getter
+    @Setter
+    private volatile ResponseCache responseCache;
+
+    /**
+     * The cache that answers chat completion requests with the response to a similar earlier request, or null if it is disabled.
+     *
+     * @param semanticCache The semantic cache, or null to disable it.
+     * @return The semantic cache, or null if it is disabled.
+     */
+    @Getter
+    @Setter
+    private volatile SemanticCache semanticCache;
+
+    /**
+     * Whether identical chat completion and embedding requests that are made while one of them is in flight share one HTTP call and response.
+     *
+     * @param requestCoalescing True to share the HTTP call of identical concurrent requests.
+     * @return True if identical concurrent requests share one HTTP call.
+     */
+    @Getter
+    @Setter
+    private volatile boolean requestCoalescing;
+
+    /**
+     * The rate limiter that shapes the requests to the Mistral AI API, or null if requests are not rate limited.
+     *
+     * @param rateLimiter The rate limiter, or null to disable rate limiting.
+     * @return The rate limiter, or null if rate limiting is disabled.
+     */
+    @Getter
+    @Setter
+    private volatile RateLimiter rateLimiter;
 
     /**
      * Constructor that initializes the MistralService with a provided HttpService and ObjectMapper.
@@ -68,10 +143,15 @@ public class MistralService {
     public MistralService(@NonNull HttpService httpService, @NonNull ObjectMapper objectMapper) {
         this.objectMapper = objectMapper;
         this.httpService = httpService;
+        this.requestHasher = new RequestHasher(objectMapper);
 
         try (ValidatorFactory validatorFactory = Validation.buildDefaultValidatorFactory()) {
             this.validator = validatorFactory.getValidator();
         }
+
+        // Building the readers and writers up front resolves the (de)serializers of all API types before the first request
+        REQUEST_TYPES.forEach(this::writerFor);
+        RESPONSE_TYPES.forEach(this::readerFor);
     }
 
     /**
@@ -85,19 +165,63 @@ public class MistralService {
      * @throws IllegalArgumentException     if the first message role is not 'user' or 'system'
      */
     public ChatCompletionResponse createChatCompletion(@NonNull ChatCompletionRequest request) {
-        if (request.getStream() != null && request.getStream()) {
-            throw new IllegalArgumentException("The stream parameter is not supported for this method. Use createChatCompletionStream instead.");
+        return createChatCompletion(request, RequestOptions.defaults());
+    }
+
+    /**
+     * Use the Mistral AI API to create a chat completion (an assistant reply to the conversation), with options like a deadline for the call.
+     * This is a blocking method.
+     *
+     * @param request The request to create a chat completion. See {@link ChatCompletionRequest}.
+     * @param options The options of the call. See {@link RequestOptions}.
+     * @return The response from the Mistral AI API containing the generated message. See {@link ChatCompletionResponse}.
+     * @throws ConstraintViolationException if the request does not pass validation
+     * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
+     * @throws IllegalArgumentException     if the first message role is not 'user' or 'system'
+     */
+    public ChatCompletionResponse createChatCompletion(@NonNull ChatCompletionRequest request, @NonNull RequestOptions options) {
+        validateChatCompletionRequest(request);
+
+        CallContext context = new CallContext(options);
+
+        ResponseCache cache = this.responseCache;
+        String key = null;
+
+        if (cache != null && cache.isCacheable(request)) {
+            key = requestHasher.hash("/chat/completions", request);
+            ChatCompletionResponse cached = readCachedResponse(cache, key, ChatCompletionResponse.class);
+
+            if (cached != null) {
+                return cached;
+            }
         }
 
-        ChatMessage firstMessage = request.getMessages().get(0);
-        MessageRole role = firstMessage.getRole();
+        SemanticCache semantic = this.semanticCache;
+        String prompt = semantic != null ? semantic.promptOf(request) : null;
 
-        if (firstMessage.getRole() == null || (!role.equals(MessageRole.USER) && !role.equals(MessageRole.SYSTEM))) {
-            throw new IllegalArgumentException("The first message role should be either 'user' or 'system'");
+        if (prompt == null) {
+            return postChatCompletion(request, cache, key, context);
         }
 
-        validateRequest(request);
-        return postRequest("/chat/completions", request, ChatCompletionResponse.class);
+        long startedAt = System.nanoTime();
+        String scope = requestHasher.hashWithoutLastMessage("/chat/completions", request);
+        float[] embedding;
+
+        try {
+            embedding = promptEmbedding(createEmbedding(new EmbeddingRequest(semantic.getEmbeddingModel(), List.of(prompt)), context));
+        } catch (RuntimeException e) {
+            semantic.recordError();
+            return postChatCompletion(request, cache, key, context);
+        }
+
+        ChatCompletionResponse similar = semantic.get(scope, embedding, startedAt);
+        if (similar != null) {
+            return similar;
+        }
+
+        ChatCompletionResponse response = postChatCompletion(request, cache, key, context);
+        semantic.put(scope, embedding, response);
+        return response;
     }
 
     /**
@@ -105,50 +229,202 @@ public class MistralService {
      * This is a non-blocking/asynchronous method.
      *
      * @param request The request to create a chat completion. See {@link ChatCompletionRequest}.
-     * @return A CompletableFuture that will complete with generated message from the Mistral AI API. See {@link ChatCompletionResponse}.
+     * @return A CancellableFuture that will complete with generated message from the Mistral AI API. See {@link ChatCompletionResponse}.
+     * Cancelling it cancels the HTTP calls of the request.
+     */
+    public CancellableFuture<ChatCompletionResponse> createChatCompletionAsync(@NonNull ChatCompletionRequest request) {
+        return createChatCompletionAsync(request, RequestOptions.defaults());
+    }
+
+    /**
+     * Use the Mistral AI API to create a chat completion (an assistant reply to the conversation), with options like a deadline for the call.
+     * This is a non-blocking/asynchronous method.
+     *
+     * @param request The request to create a chat completion. See {@link ChatCompletionRequest}.
+     * @param options The options of the call. See {@link RequestOptions}.
+     * @return A CancellableFuture that will complete with generated message from the Mistral AI API. See {@link ChatCompletionResponse}.
+     * Cancelling it cancels the HTTP calls of the request.
+     */
+    public CancellableFuture<ChatCompletionResponse> createChatCompletionAsync(@NonNull ChatCompletionRequest request, @NonNull RequestOptions options) {
+        CallContext context = new CallContext(options);
+        return context.bind(createChatCompletionAsync(request, context));
+    }
+
+    /**
+     * Creates a chat completion for an invocation of one of the public asynchronous methods.
+     *
+     * @param request The request to create a chat completion.
+     * @param context The context of the invocation.
+     * @return A CompletableFuture that will complete with generated message from the Mistral AI API.
+     */
+    private CompletableFuture<ChatCompletionResponse> createChatCompletionAsync(ChatCompletionRequest request, CallContext context) {
+        ResponseCache cache = this.responseCache;
+        SemanticCache semantic = this.semanticCache;
+        String key = null;
+        String prompt;
+        String scope = null;
+
+        try {
+            validateChatCompletionRequest(request);
+
+            if (cache != null && cache.isCacheable(request)) {
+                key = requestHasher.hash("/chat/completions", request);
+                ChatCompletionResponse cached = readCachedResponse(cache, key, ChatCompletionResponse.class);
+
+                if (cached != null) {
+                    return CompletableFuture.completedFuture(cached);
+                }
+            }
+
+            prompt = semantic != null ? semantic.promptOf(request) : null;
+            if (prompt != null) {
+                scope = requestHasher.hashWithoutLastMessage("/chat/completions", request);
+            }
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if (prompt == null) {
+            return postChatCompletionAsync(request, cache, key, context);
+        }
+
+        long startedAt = System.nanoTime();
+        String responseKey = key;
+        String semanticScope = scope;
+
+        return createEmbeddingAsync(new EmbeddingRequest(semantic.getEmbeddingModel(), List.of(prompt)), context)
+                .thenApply(this::promptEmbedding)
+                .handle((embedding, error) -> {
+                    if (error != null) {
+                        semantic.recordError();
+                        return postChatCompletionAsync(request, cache, responseKey, context);
+                    }
+
+                    ChatCompletionResponse similar = semantic.get(semanticScope, embedding, startedAt);
+                    if (similar != null) {
+                        return CompletableFuture.completedFuture(similar);
+                    }
+
+                    return postChatCompletionAsync(request, cache, responseKey, context).thenApply(response -> {
+                        semantic.put(semanticScope, embedding, response);
+                        return response;
+                    });
+                })
+                .thenCompose(future -> future);
+    }
+
+    /**
+     * Use the Mistral AI API to create a streaming chat completion. The chunks of the response are passed to the callback as they are received.
+     * This is a non-blocking/asynchronous method.
+     *
+     * @param request  The request to create a chat completion, with the stream parameter set to true. See {@link ChatCompletionRequest}.
+     * @param callback The callback that receives the chunks of the response. See {@link ChatCompletionChunkCallback}.
+     * @return A CancellableFuture that completes when the stream completes or fails. Cancelling it stops the stream.
+     * @throws ConstraintViolationException if the request does not pass validation
+     * @throws IllegalArgumentException     if the stream parameter is not set to true
      */
-    public CompletableFuture<ChatCompletionResponse> createChatCompletionAsync(@NonNull ChatCompletionRequest request) {
-        return CompletableFuture.supplyAsync(() -> createChatCompletion(request));
+    public CancellableFuture<Void> createChatCompletionStream(@NonNull ChatCompletionRequest request, @NonNull ChatCompletionChunkCallback callback) {
+        return createChatCompletionStream(request, callback, RequestOptions.defaults());
     }
 
-    public void createChatCompletionStream(@NonNull ChatCompletionRequest request, @NonNull ChatCompletionChunkCallback callback) {
+    /**
+     * Use the Mistral AI API to create a streaming chat completion, with options like a deadline for the call.
+     * The chunks of the response are passed to the callback as they are received. The deadline applies to the whole stream.
+     * This is a non-blocking/asynchronous method.
+     *
+     * @param request  The request to create a chat completion, with the stream parameter set to true. See {@link ChatCompletionRequest}.
+     * @param callback The callback that receives the chunks of the response. See {@link ChatCompletionChunkCallback}.
+     * @param options  The options of the call. See {@link RequestOptions}.
+     * @return A CancellableFuture that completes when the stream completes or fails. Cancelling it stops the stream.
+     * @throws ConstraintViolationException if the request does not pass validation
+     * @throws IllegalArgumentException     if the stream parameter is not set to true
+     */
+    public CancellableFuture<Void> createChatCompletionStream(@NonNull ChatCompletionRequest request, @NonNull ChatCompletionChunkCallback callback, @NonNull RequestOptions options) {
         if (request.getStream() == null || !request.getStream()) {
             throw new IllegalArgumentException("The stream parameter is required and should be set to true for this method.");
         }
 
         validateRequest(request);
 
-        try {
-            String requestJson = this.objectMapper.writeValueAsString(request);
+        CallContext context = new CallContext(options);
+        CancellableFuture<Void> stream = new CancellableFuture<>(context::cancel);
+        context.cancelAtDeadline(stream, CallContext::timeout);
+        RateLimiter limiter = this.rateLimiter;
 
-            httpService.streamPost("/chat/completions", requestJson, new Callback() {
-                @Override
-                public void onResponse(@NonNull Call call, @NonNull okhttp3.Response response) {
-                    if (!response.isSuccessful()) {
-                        callback.onError(new UnexpectedResponseException("Received unexpected response code " + response.code() + ": " + response));
-                        return;
-                    }
+        if (limiter == null) {
+            streamChatCompletion(request, new StreamCallback(callback, stream, null, 0), context);
+            return stream;
+        }
 
-                    try (ResponseBody responseBody = response.body()) {
-                        if (responseBody == null) {
-                            callback.onError(new UnexpectedResponseException("Received null response from the API: " + response));
-                            return;
-                        }
+        long estimatedTokens = TokenEstimator.estimateTokens(request);
+        CompletableFuture<Void> permit = limiter.acquireAsync(estimatedTokens, context.remainingNanos());
 
-                        handleResponseBody(responseBody, callback);
-                    } catch (IOException e) {
-                        callback.onError(new UnexpectedResponseException(e));
+        context.onCancel(() -> {
+            if (permit.cancel(false)) {
+                limiter.release(estimatedTokens);
+            }
+        });
+
+        permit.whenComplete((ignored, error) -> {
+            if (permit.isCancelled()) {
+                new StreamCallback(callback, stream, null, 0).onError(context.isExpired()
+                        ? CallContext.timeout()
+                        : new CancellationException("The stream was cancelled while waiting for the rate limiter"));
+                return;
+            }
+
+            StreamCallback streamCallback = new StreamCallback(callback, stream, error == null ? limiter : null, estimatedTokens);
+            if (error != null) {
+                streamCallback.onError(error instanceof Exception e ? e : new RateLimitExceededException(error));
+                return;
+            }
+
+            streamChatCompletion(request, streamCallback, context);
+        });
+
+        return stream;
+    }
+
+    /**
+     * Sends a validated streaming chat completion request and passes the received chunks to the callback.
+     *
+     * @param request  The validated streaming request.
+     * @param callback The callback that receives the chunks.
+     * @param context  The context of the invocation.
+     */
+    private void streamChatCompletion(ChatCompletionRequest request, ChatCompletionChunkCallback callback, CallContext context) {
+        httpService.streamPost("/chat/completions", writeRequest(request), new Callback() {
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull okhttp3.Response response) {
+                if (!response.isSuccessful()) {
+                    response.close();
+                    callback.onError(new UnexpectedResponseException("Received unexpected response code " + response.code() + ": " + response));
+                    return;
+                }
+
+                try (ResponseBody responseBody = response.body()) {
+                    if (responseBody == null) {
+                        callback.onError(new UnexpectedResponseException("Received null response from the API: " + response));
+                        return;
                     }
+
+                    handleResponseBody(responseBody, callback);
+                } catch (IOException e) {
+                    callback.onError(new UnexpectedResponseException(context.isExpired() ? CallContext.timeout() : e));
                 }
+            }
 
-                @Override
-                public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                    callback.onError(e);
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                if (e instanceof JsonProcessingException) {
+                    callback.onError(new InvalidJsonException("Failed to convert request to JSON", e));
+                    return;
                 }
-            });
-        } catch (JsonProcessingException e) {
-            throw new InvalidJsonException("Failed to convert request to JSON", e);
-        }
+
+                // A call that is cancelled at the deadline fails like a call whose timeout passed
+                callback.onError(context.isExpired() ? CallContext.timeout() : e);
+            }
+        }, context);
     }
 
     /**
@@ -159,28 +435,50 @@ public class MistralService {
      * @throws UnexpectedResponseException if an unexpected response is received from the Mistral AI API
      */
     public ListModelsResponse listModels() {
-        String response = httpService.get("/models");
+        return listModels(RequestOptions.defaults());
+    }
 
-        try {
-            return this.objectMapper.readValue(response, ListModelsResponse.class);
-        } catch (JsonProcessingException e) {
-            throw new UnexpectedResponseException("Received unexpected response from the Mistral.ai API (mistral-java-client might need to be updated): " + response, e);
-        }
+    /**
+     * Lists all models available according to the Mistral AI API, with options like a deadline for the call.
+     * This is a blocking method.
+     *
+     * @param options The options of the call. See {@link RequestOptions}.
+     * @return The response from the Mistral AI API containing the list of models. See {@link ListModelsResponse}.
+     * @throws UnexpectedResponseException if an unexpected response is received from the Mistral AI API
+     */
+    public ListModelsResponse listModels(@NonNull RequestOptions options) {
+        CallContext context = new CallContext(options);
+        return rateLimited(null, context, () -> httpService.get("/models", responseReader(ListModelsResponse.class), context));
     }
 
     /**
      * Lists all models available according to the Mistral AI API.
      * This is a non-blocking/asynchronous method.
      *
-     * @return A CompletableFuture that will complete with the list of models from the Mistral AI API. See {@link ListModelsResponse}.
+     * @return A CancellableFuture that will complete with the list of models from the Mistral AI API. See {@link ListModelsResponse}.
+     * Cancelling it cancels the HTTP call of the request.
      */
-    public CompletableFuture<ListModelsResponse> listModelsAsync() {
-        return CompletableFuture.supplyAsync(this::listModels);
+    public CancellableFuture<ListModelsResponse> listModelsAsync() {
+        return listModelsAsync(RequestOptions.defaults());
+    }
+
+    /**
+     * Lists all models available according to the Mistral AI API, with options like a deadline for the call.
+     * This is a non-blocking/asynchronous method.
+     *
+     * @param options The options of the call. See {@link RequestOptions}.
+     * @return A CancellableFuture that will complete with the list of models from the Mistral AI API. See {@link ListModelsResponse}.
+     * Cancelling it cancels the HTTP call of the request.
+     */
+    public CancellableFuture<ListModelsResponse> listModelsAsync(@NonNull RequestOptions options) {
+        CallContext context = new CallContext(options);
+        return context.bind(rateLimitedAsync(null, context, () -> httpService.getAsync("/models", responseReader(ListModelsResponse.class), context)));
     }
 
     /**
      * This method is used to create an embedding using the Mistral AI API.
      * The embeddings for the input strings. See the <a href="https://docs.mistral.ai/capabilities/embeddings/">mistral documentation</a> for more details on embeddings.
+     * Identical inputs are only sent once and share an embedding in the response, see {@link EmbeddingResponse#getSavedTokens()}.
      * This is a blocking method.
      *
      * @param request The request to create an embedding. See {@link EmbeddingRequest}.
@@ -189,22 +487,95 @@ public class MistralService {
      * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
      */
     public EmbeddingResponse createEmbedding(@NonNull EmbeddingRequest request) {
+        return createEmbedding(request, RequestOptions.defaults());
+    }
+
+    /**
+     * This method is used to create an embedding using the Mistral AI API, with options like a deadline for the call.
+     * Identical inputs are only sent once and share an embedding in the response, see {@link EmbeddingResponse#getSavedTokens()}.
+     * This is a blocking method.
+     *
+     * @param request The request to create an embedding. See {@link EmbeddingRequest}.
+     * @param options The options of the call. See {@link RequestOptions}.
+     * @return The response from the Mistral AI API containing the generated embedding. See {@link EmbeddingResponse}.
+     * @throws ConstraintViolationException if the request does not pass validation
+     * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
+     */
+    public EmbeddingResponse createEmbedding(@NonNull EmbeddingRequest request, @NonNull RequestOptions options) {
+        return createEmbedding(request, new CallContext(options));
+    }
+
+    /**
+     * Creates an embedding for an invocation of one of the public methods.
+     *
+     * @param request The request to create an embedding.
+     * @param context The context of the invocation.
+     * @return The response from the Mistral AI API containing the generated embedding.
+     */
+    private EmbeddingResponse createEmbedding(EmbeddingRequest request, CallContext context) {
         validateRequest(request);
-        return postRequest("/embeddings", request, EmbeddingResponse.class);
+
+        EmbeddingInputDeduplicator deduplicator = EmbeddingInputDeduplicator.of(request.getInput());
+        EmbeddingRequest uniqueRequest = deduplicator == null ? request : deduplicator.deduplicate(request);
+        EmbeddingResponse response = coalesce("/embeddings", uniqueRequest, null, context,
+                callContext -> postRequest("/embeddings", uniqueRequest, EmbeddingResponse.class, callContext));
+
+        return deduplicator == null ? response : deduplicator.expand(response);
     }
 
     /**
      * This method is used to create an embedding using the Mistral AI API.
      * The embeddings for the input strings. See the <a href="https://docs.mistral.ai/capabilities/embeddings/">mistral documentation</a> for more details on embeddings.
+     * Identical inputs are only sent once and share an embedding in the response, see {@link EmbeddingResponse#getSavedTokens()}.
      * This is a non-blocking/asynchronous method.
      *
      * @param request The request to create an embedding. See {@link EmbeddingRequest}.
-     * @return A CompletableFuture that will complete with the generated embedding from the Mistral AI API. See {@link EmbeddingResponse}.
+     * @return A CancellableFuture that will complete with the generated embedding from the Mistral AI API. See {@link EmbeddingResponse}.
+     * Cancelling it cancels the HTTP calls of the request.
      * @throws ConstraintViolationException if the request does not pass validation
      * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
      */
-    public CompletableFuture<EmbeddingResponse> createEmbeddingAsync(@NonNull EmbeddingRequest request) {
-        return CompletableFuture.supplyAsync(() -> createEmbedding(request));
+    public CancellableFuture<EmbeddingResponse> createEmbeddingAsync(@NonNull EmbeddingRequest request) {
+        return createEmbeddingAsync(request, RequestOptions.defaults());
+    }
+
+    /**
+     * This method is used to create an embedding using the Mistral AI API, with options like a deadline for the call.
+     * Identical inputs are only sent once and share an embedding in the response, see {@link EmbeddingResponse#getSavedTokens()}.
+     * This is a non-blocking/asynchronous method.
+     *
+     * @param request The request to create an embedding. See {@link EmbeddingRequest}.
+     * @param options The options of the call. See {@link RequestOptions}.
+     * @return A CancellableFuture that will complete with the generated embedding from the Mistral AI API. See {@link EmbeddingResponse}.
+     * Cancelling it cancels the HTTP calls of the request.
+     * @throws ConstraintViolationException if the request does not pass validation
+     * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
+     */
+    public CancellableFuture<EmbeddingResponse> createEmbeddingAsync(@NonNull EmbeddingRequest request, @NonNull RequestOptions options) {
+        CallContext context = new CallContext(options);
+        return context.bind(createEmbeddingAsync(request, context));
+    }
+
+    /**
+     * Creates an embedding for an invocation of one of the public asynchronous methods.
+     *
+     * @param request The request to create an embedding.
+     * @param context The context of the invocation.
+     * @return A CompletableFuture that will complete with the generated embedding from the Mistral AI API.
+     */
+    private CompletableFuture<EmbeddingResponse> createEmbeddingAsync(EmbeddingRequest request, CallContext context) {
+        try {
+            validateRequest(request);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        EmbeddingInputDeduplicator deduplicator = EmbeddingInputDeduplicator.of(request.getInput());
+        EmbeddingRequest uniqueRequest = deduplicator == null ? request : deduplicator.deduplicate(request);
+        CompletableFuture<EmbeddingResponse> response = coalesceAsync("/embeddings", uniqueRequest, null, context,
+                callContext -> postRequestAsync("/embeddings", uniqueRequest, EmbeddingResponse.class, callContext));
+
+        return deduplicator == null ? response : response.thenApply(deduplicator::expand);
     }
 
     /**
@@ -217,8 +588,22 @@ public class MistralService {
      * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
      */
     public OCRResponse performOcr(@NonNull OCRRequest request) {
+        return performOcr(request, RequestOptions.defaults());
+    }
+
+    /**
+     * Use the Mistral AI API to perform OCR on a document, with options like a deadline for the call.
+     * This is a blocking method.
+     *
+     * @param request The request to perform OCR. See {@link OCRRequest}.
+     * @param options The options of the call. See {@link RequestOptions}.
+     * @return The response from the Mistral AI API containing the OCR results. See {@link OCRResponse}.
+     * @throws ConstraintViolationException if the request does not pass validation
+     * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
+     */
+    public OCRResponse performOcr(@NonNull OCRRequest request, @NonNull RequestOptions options) {
         validateRequest(request);
-        return postRequest("/ocr", request, OCRResponse.class);
+        return postRequest("/ocr", request, OCRResponse.class, new CallContext(options));
     }
 
     /**
@@ -226,12 +611,58 @@ public class MistralService {
      * This is a non-blocking/asynchronous method.
      *
      * @param request The request to perform OCR. See {@link OCRRequest}.
-     * @return A CompletableFuture that will complete with the OCR results from the Mistral AI API. See {@link OCRResponse}.
+     * @return A CancellableFuture that will complete with the OCR results from the Mistral AI API. See {@link OCRResponse}.
+     * Cancelling it cancels the HTTP calls of the request.
      * @throws ConstraintViolationException if the request does not pass validation
      * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
      */
-    public CompletableFuture<OCRResponse> performOcrAsync(@NonNull OCRRequest request) {
-        return CompletableFuture.supplyAsync(() -> performOcr(request));
+    public CancellableFuture<OCRResponse> performOcrAsync(@NonNull OCRRequest request) {
+        return performOcrAsync(request, RequestOptions.defaults());
+    }
+
+    /**
+     * Use the Mistral AI API to perform OCR on a document, with options like a deadline for the call.
+     * This is a non-blocking/asynchronous method.
+     *
+     * @param request The request to perform OCR. See {@link OCRRequest}.
+     * @param options The options of the call. See {@link RequestOptions}.
+     * @return A CancellableFuture that will complete with the OCR results from the Mistral AI API. See {@link OCRResponse}.
+     * Cancelling it cancels the HTTP calls of the request.
+     * @throws ConstraintViolationException if the request does not pass validation
+     * @throws UnexpectedResponseException  if an unexpected response is received from the Mistral AI API
+     */
+    public CancellableFuture<OCRResponse> performOcrAsync(@NonNull OCRRequest request, @NonNull RequestOptions options) {
+        CallContext context = new CallContext(options);
+
+        try {
+            validateRequest(request);
+        } catch (RuntimeException e) {
+            return context.bind(CompletableFuture.failedFuture(e));
+        }
+
+        return context.bind(postRequestAsync("/ocr", request, OCRResponse.class, context));
+    }
+
+    /**
+     * Validates a chat completion request that is not streamed.
+     *
+     * @param request The request to be validated.
+     * @throws ConstraintViolationException if the request does not pass validation
+     * @throws IllegalArgumentException     if the request is a streaming request or the first message role is not 'user' or 'system'
+     */
+    private void validateChatCompletionRequest(ChatCompletionRequest request) {
+        if (request.getStream() != null && request.getStream()) {
+            throw new IllegalArgumentException("The stream parameter is not supported for this method. Use createChatCompletionStream instead.");
+        }
+
+        ChatMessage firstMessage = request.getMessages().get(0);
+        MessageRole role = firstMessage.getRole();
+
+        if (firstMessage.getRole() == null || (!role.equals(MessageRole.USER) && !role.equals(MessageRole.SYSTEM))) {
+            throw new IllegalArgumentException("The first message role should be either 'user' or 'system'");
+        }
+
+        validateRequest(request);
     }
 
     /**
@@ -260,52 +691,457 @@ public class MistralService {
      * @param endpoint     The endpoint to which the request should be posted.
      * @param request      The validated request to be posted.
      * @param responseType The class of the response type.
+     * @param context      The context of the invocation.
      * @return The response from the endpoint, converted to the specified response type.
      * @throws UnexpectedResponseException if an unexpected response is received from the Mistral AI API
      */
-    private <T extends Request, U extends Response> U postRequest(String endpoint, T request, Class<U> responseType) {
-        String response = null;
-        String requestJson = null;
+    private <T extends Request, U extends Response> U postRequest(String endpoint, T request, Class<U> responseType, CallContext context) {
+        return rateLimited(request, context, () -> httpService.post(endpoint, writeRequest(request), responseReader(responseType), context));
+    }
+
+    /**
+     * Asynchronous variant of {@link #postRequest(String, Request, Class, CallContext)}.
+     * The request is enqueued on the HTTP client, so no thread is blocked while waiting for the Mistral AI API.
+     *
+     * @param <T>          The type of the request. It must extend Request.
+     * @param <U>          The type of the response. It must extend Response.
+     * @param endpoint     The endpoint to which the request should be posted.
+     * @param request      The validated request to be posted.
+     * @param responseType The class of the response type.
+     * @param context      The context of the invocation.
+     * @return A CompletableFuture that will complete with the response from the endpoint, converted to the specified response type.
+     */
+    private <T extends Request, U extends Response> CompletableFuture<U> postRequestAsync(String endpoint, T request, Class<U> responseType, CallContext context) {
+        return rateLimitedAsync(request, context, () -> httpService.postAsync(endpoint, writeRequest(request), responseReader(responseType), context));
+    }
+
+    /**
+     * Creates a request body that converts the request to JSON while it is being sent.
+     * The JSON is written directly into the HTTP request, so it is never held in memory as a whole.
+     *
+     * @param request The request to convert.
+     * @return The request body for the request.
+     */
+    private RequestBody writeRequest(Request request) {
+        return new JsonRequestBody(writerFor(request.getClass()), request);
+    }
+
+    /**
+     * Returns the cached ObjectReader for the specified type, creating it if it does not exist yet.
+     * Reusing the reader skips the root type lookup of the ObjectMapper on every response and streamed chunk.
+     *
+     * @param type The type to read.
+     * @return The ObjectReader for the type.
+     */
+    private ObjectReader readerFor(Class<?> type) {
+        return readers.computeIfAbsent(type, this.objectMapper::readerFor);
+    }
+
+    /**
+     * Returns the cached ObjectWriter for the specified type, creating it if it does not exist yet.
+     * The writer does not close the output it writes to, as required by {@link JsonRequestBody}.
+     *
+     * @param type The type to write.
+     * @return The ObjectWriter for the type.
+     */
+    private ObjectWriter writerFor(Class<?> type) {
+        return writers.computeIfAbsent(type, key -> this.objectMapper.writerFor(key).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET));
+    }
 
+    /**
+     * Creates a handler that converts a JSON response from the Mistral AI API to the specified type.
+     * The response is parsed directly from the byte stream of the response body, without reading it into a String first.
+     *
+     * @param <U>          The type of the response.
+     * @param responseType The class of the response type.
+     * @return The handler that converts the response body.
+     */
+    private <U> ResponseBodyHandler<U> responseReader(Class<U> responseType) {
+        ObjectReader reader = readerFor(responseType);
+
+        return responseBody -> {
+            try {
+                return reader.readValue(responseBody.byteStream());
+            } catch (JsonProcessingException e) {
+                throw new UnexpectedResponseException("Received unexpected response from the Mistral.ai API (mistral-java-client might need to be updated): " + e.getOriginalMessage(), e);
+            }
+        };
+    }
+
+    /**
+     * Posts a validated chat completion request, storing the response in the response cache if a cache key is given.
+     *
+     * @param request The validated request.
+     * @param cache   The response cache, or null.
+     * @param key     The canonical hash of the request, or null if the response should not be cached.
+     * @param context The context of the invocation.
+     * @return The response from the Mistral AI API.
+     */
+    private ChatCompletionResponse postChatCompletion(ChatCompletionRequest request, ResponseCache cache, String key, CallContext context) {
+        return coalesce("/chat/completions", request, key, context, callContext -> {
+            if (key == null) {
+                return postRequest("/chat/completions", request, ChatCompletionResponse.class, callContext);
+            }
+
+            return rateLimited(request, callContext, () -> httpService.post("/chat/completions", writeRequest(request), cachingResponseReader(ChatCompletionResponse.class, cache, key), callContext));
+        });
+    }
+
+    /**
+     * Asynchronous variant of {@link #postChatCompletion(ChatCompletionRequest, ResponseCache, String, CallContext)}.
+     *
+     * @param request The validated request.
+     * @param cache   The response cache, or null.
+     * @param key     The canonical hash of the request, or null if the response should not be cached.
+     * @param context The context of the invocation.
+     * @return A CompletableFuture that will complete with the response from the Mistral AI API.
+     */
+    private CompletableFuture<ChatCompletionResponse> postChatCompletionAsync(ChatCompletionRequest request, ResponseCache cache, String key, CallContext context) {
+        return coalesceAsync("/chat/completions", request, key, context, callContext -> {
+            if (key == null) {
+                return postRequestAsync("/chat/completions", request, ChatCompletionResponse.class, callContext);
+            }
+
+            return rateLimitedAsync(request, callContext, () -> httpService.postAsync("/chat/completions", writeRequest(request), cachingResponseReader(ChatCompletionResponse.class, cache, key), callContext));
+        });
+    }
+
+    /**
+     * Performs the call, or shares the response of an identical request that is in flight if request coalescing is enabled.
+     * A shared call keeps the deadline of the invocation that made it, but is not cancelled with it, as other callers may still wait for the response.
+     * Callers only join a call whose deadline is not earlier than their own, and wait for it until their own deadline.
+     *
+     * @param <U>      The type of the response.
+     * @param endpoint The endpoint the request is posted to.
+     * @param request  The validated request.
+     * @param key      The canonical hash of the request, or null to compute it.
+     * @param context  The context of the invocation.
+     * @param call     The call that posts the request, given the context to make it in.
+     * @return The response from the Mistral AI API, which may be shared with other callers.
+     */
+    private <U extends Response> U coalesce(String endpoint, Request request, String key, CallContext context, Function<CallContext, U> call) {
+        if (!requestCoalescing) {
+            return call.apply(context);
+        }
+
+        return requestCoalescer.execute(key != null ? key : requestHasher.hash(endpoint, request), context, () -> call.apply(context.detached()));
+    }
+
+    /**
+     * Asynchronous variant of {@link #coalesce(String, Request, String, CallContext, Function)}.
+     *
+     * @param <U>      The type of the response.
+     * @param endpoint The endpoint the request is posted to.
+     * @param request  The validated request.
+     * @param key      The canonical hash of the request, or null to compute it.
+     * @param context  The context of the invocation.
+     * @param call     The call that posts the request, given the context to make it in.
+     * @return A CompletableFuture that will complete with the response from the Mistral AI API, which may be shared with other callers.
+     */
+    private <U extends Response> CompletableFuture<U> coalesceAsync(String endpoint, Request request, String key, CallContext context, Function<CallContext, CompletableFuture<U>> call) {
+        if (!requestCoalescing) {
+            return call.apply(context);
+        }
+
+        String flightKey;
         try {
-            requestJson = this.objectMapper.writeValueAsString(request);
-        } catch (JsonProcessingException e) {
-            throw new InvalidJsonException("Failed to convert request to JSON", e);
+            flightKey = key != null ? key : requestHasher.hash(endpoint, request);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
         }
 
+        return requestCoalescer.executeAsync(flightKey, context, () -> call.apply(context.detached()));
+    }
+
+    /**
+     * Sends a request through the rate limiter, if one is configured. The token reservation is corrected with the usage of the response,
+     * or returned if the request fails. A request that would have to wait past the deadline of the invocation is rejected right away.
+     *
+     * @param <U>     The type of the response.
+     * @param request The validated request, or null for requests without a body.
+     * @param context The context of the invocation.
+     * @param call    The call that sends the request.
+     * @return The response from the Mistral AI API.
+     * @throws RateLimitExceededException if the request exceeds the rate limit or the deadline and is rejected
+     */
+    private <U extends Response> U rateLimited(Request request, CallContext context, Supplier<U> call) {
+        RateLimiter limiter = this.rateLimiter;
+        if (limiter == null) {
+            return call.get();
+        }
+
+        long estimatedTokens = estimateTokens(request);
+        limiter.acquire(estimatedTokens, context.remainingNanos());
+        context.rateLimitedBy(limiter, estimatedTokens);
+
+        U response;
         try {
-            response = httpService.post(endpoint, requestJson);
+            response = call.get();
+        } catch (RuntimeException e) {
+            returnReservation(limiter, estimatedTokens, e);
+            throw e;
+        }
+
+        limiter.correct(estimatedTokens, usageOf(response));
+        return response;
+    }
+
+    /**
+     * Asynchronous variant of {@link #rateLimited(Request, CallContext, Supplier)}. A delayed request does not block a thread while it waits,
+     * and its reservation is released if the invocation is cancelled before it is sent.
+     *
+     * @param <U>     The type of the response.
+     * @param request The validated request, or null for requests without a body.
+     * @param context The context of the invocation.
+     * @param call    The call that sends the request.
+     * @return A CompletableFuture that will complete with the response from the Mistral AI API.
+     */
+    private <U extends Response> CompletableFuture<U> rateLimitedAsync(Request request, CallContext context, Supplier<CompletableFuture<U>> call) {
+        RateLimiter limiter = this.rateLimiter;
+        if (limiter == null) {
+            return call.get();
+        }
+
+        long estimatedTokens = estimateTokens(request);
+        CompletableFuture<Void> permit = limiter.acquireAsync(estimatedTokens, context.remainingNanos());
+
+        context.onCancel(() -> {
+            if (permit.cancel(false)) {
+                limiter.release(estimatedTokens);
+            }
+        });
+
+        return permit
+                .thenCompose(ignored -> {
+                    context.rateLimitedBy(limiter, estimatedTokens);
+                    return call.get();
+                })
+                .whenComplete((response, error) -> {
+                    if (error == null) {
+                        limiter.correct(estimatedTokens, usageOf(response));
+                    } else if (!permit.isCompletedExceptionally()) {
+                        returnReservation(limiter, estimatedTokens, error);
+                    }
+                });
+    }
+
+    /**
+     * Returns the reservation of a request that failed. A request that was rejected by the circuit breaker was never sent,
+     * so its whole reservation is released; other failed requests were sent, but do not use tokens.
+     *
+     * @param limiter         The rate limiter the reservation was made with.
+     * @param estimatedTokens The estimated number of tokens that was reserved.
+     * @param error           The error of the request.
+     */
+    private static void returnReservation(RateLimiter limiter, long estimatedTokens, Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CircuitBreakerOpenException) {
+                limiter.release(estimatedTokens);
+                return;
+            }
+        }
+
+        limiter.refund(estimatedTokens);
+    }
 
-            return this.objectMapper.readValue(response, responseType);
-        } catch (JsonProcessingException e) {
-            throw new UnexpectedResponseException("Received unexpected response from the Mistral.ai API (mistral-java-client might need to be updated): " + response, e);
+    /**
+     * Estimates the number of tokens a request uses, see {@link TokenEstimator}.
+     *
+     * @param request The request, or null for requests without a body.
+     * @return The estimated number of tokens, or 0 if the request type does not use tokens.
+     */
+    private static long estimateTokens(Request request) {
+        if (request instanceof ChatCompletionRequest chatCompletionRequest) {
+            return TokenEstimator.estimateTokens(chatCompletionRequest);
         }
+
+        if (request instanceof EmbeddingRequest embeddingRequest) {
+            return TokenEstimator.estimateTokens(embeddingRequest);
+        }
+
+        return 0;
     }
 
+    /**
+     * Returns the token usage reported in a response.
+     *
+     * @param response The response.
+     * @return The usage, or null if the response type does not report it.
+     */
+    private static Usage usageOf(Response response) {
+        if (response instanceof ChatCompletionResponse chatCompletionResponse) {
+            return chatCompletionResponse.getUsage();
+        }
+
+        if (response instanceof EmbeddingResponse embeddingResponse) {
+            return embeddingResponse.getUsage();
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the number of requests that shared the HTTP call of an identical request that was in flight.
+     * Requests are only shared if request coalescing is enabled, see {@link #setRequestCoalescing(boolean)}.
+     *
+     * @return The number of coalesced requests
+     */
+    public long getCoalescedRequests() {
+        return requestCoalescer.getCoalescedCalls();
+    }
+
+    /**
+     * Extracts the embedding of a single prompt from an embedding response.
+     *
+     * @param response The response to an embedding request with a single input.
+     * @return The embedding of the prompt.
+     * @throws UnexpectedResponseException if the response does not contain an embedding
+     */
+    private float[] promptEmbedding(EmbeddingResponse response) {
+        if (response.getData() == null || response.getData().isEmpty() || response.getData().get(0).getEmbeddingArray() == null) {
+            throw new UnexpectedResponseException("The Mistral AI API did not return an embedding for the prompt");
+        }
+
+        return response.getData().get(0).getEmbeddingArray();
+    }
+
+    /**
+     * Creates a handler that converts a JSON response from the Mistral AI API to the specified type and stores the JSON in the response cache.
+     * The raw response is cached instead of a re-serialized copy, so cached responses are identical to the ones returned by the API.
+     *
+     * @param <U>          The type of the response.
+     * @param responseType The class of the response type.
+     * @param cache        The cache to store the response in.
+     * @param key          The canonical hash of the request.
+     * @return The handler that converts the response body.
+     */
+    private <U> ResponseBodyHandler<U> cachingResponseReader(Class<U> responseType, ResponseCache cache, String key) {
+        ObjectReader reader = readerFor(responseType);
+
+        return responseBody -> {
+            byte[] body = responseBody.bytes();
+            U response;
+
+            try {
+                response = reader.readValue(body);
+            } catch (JsonProcessingException e) {
+                throw new UnexpectedResponseException("Received unexpected response from the Mistral.ai API (mistral-java-client might need to be updated): " + e.getOriginalMessage(), e);
+            }
+
+            cache.put(key, body);
+            return response;
+        };
+    }
+
+    /**
+     * Looks up a response in the response cache.
+     * Entries that can't be parsed (for example because they were written by an older version) are removed and treated as a miss.
+     *
+     * @param <U>          The type of the response.
+     * @param cache        The cache to look in.
+     * @param key          The canonical hash of the request.
+     * @param responseType The class of the response type.
+     * @return The cached response, or null on a miss.
+     */
+    private <U> U readCachedResponse(ResponseCache cache, String key, Class<U> responseType) {
+        byte[] cached = cache.get(key);
+
+        if (cached == null) {
+            return null;
+        }
+
+        try {
+            return readerFor(responseType).readValue(cached);
+        } catch (IOException e) {
+            cache.remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the server-sent events of a streaming chat completion and passes the decoded chunks to the callback.
+     * The events are decoded from the bytes of the response body and each chunk is parsed directly from the event data.
+     *
+     * @param responseBody The body of the streaming response.
+     * @param callback     The callback to pass the chunks to.
+     * @throws IOException if reading the response body fails
+     */
     private void handleResponseBody(@NonNull ResponseBody responseBody, ChatCompletionChunkCallback callback) throws IOException {
-        BufferedReader reader = new BufferedReader(responseBody.charStream());
-        String line;
+        ObjectReader chunkReader = readerFor(MessageChunk.class);
+        ServerSentEventReader eventReader = new ServerSentEventReader(responseBody.source());
+
+        boolean stopped = eventReader.read((id, type, data, length) -> {
+            if (Arrays.equals(data, 0, length, DONE_EVENT_DATA, 0, DONE_EVENT_DATA.length)) {
+                callback.onComplete();
+                return false;
+            }
 
-        while ((line = reader.readLine()) != null) {
-            if (line.startsWith("data: ")) {
-                String chunk = line.substring(6);
+            try {
+                MessageChunk messageChunk = chunkReader.readValue(data, 0, length);
 
-                if ("[DONE]".equals(chunk)) {
-                    callback.onComplete();
-                    return;
-                }
+                callback.onChunkReceived(messageChunk);
+                return true;
+            } catch (JsonProcessingException e) {
+                callback.onError(new UnexpectedResponseException("Received unexpected response from the Mistral.ai API (mistral-java-client might need to be updated): " + new String(data, 0, length, StandardCharsets.UTF_8), e));
+                return false;
+            }
+        });
+
+        if (!stopped) {
+            callback.onError(new UnexpectedResponseEndException("Received unexpected end of the streaming response: Expected [DONE] but received nothing"));
+        }
+    }
+
+    /**
+     * Passes the chunks of a streaming chat completion to the callback of the user and completes the future of the stream.
+     * The token reservation of the stream is corrected with the usage in the last chunk, or returned if the stream fails before any chunk is received.
+     */
+    private static final class StreamCallback implements ChatCompletionChunkCallback {
 
-                try {
-                    MessageChunk messageChunk = this.objectMapper.readValue(chunk, MessageChunk.class);
+        private final ChatCompletionChunkCallback callback;
+        private final CompletableFuture<Void> stream;
+        private final RateLimiter limiter;
+        private final long estimatedTokens;
+        private volatile boolean received;
 
-                    callback.onChunkReceived(messageChunk);
-                } catch (JsonProcessingException e) {
-                    callback.onError(new UnexpectedResponseException("Received unexpected response from the Mistral.ai API (mistral-java-client might need to be updated): " + chunk, e));
-                    return;
-                }
+        private StreamCallback(ChatCompletionChunkCallback callback, CompletableFuture<Void> stream, RateLimiter limiter, long estimatedTokens) {
+            this.callback = callback;
+            this.stream = stream;
+            this.limiter = limiter;
+            this.estimatedTokens = estimatedTokens;
+        }
+
+        @Override
+        public void onChunkReceived(MessageChunk chunk) {
+            received = true;
+
+            if (limiter != null && chunk.getUsage() != null) {
+                limiter.correct(estimatedTokens, chunk.getUsage());
             }
+
+            callback.onChunkReceived(chunk);
         }
 
-        callback.onError(new UnexpectedResponseEndException("Received unexpected end of the streaming response: Expected [DONE] but received nothing"));
+        @Override
+        public void onComplete() {
+            try {
+                callback.onComplete();
+            } finally {
+                stream.complete(null);
+            }
+        }
+
+        @Override
+        public void onError(Exception e) {
+            if (limiter != null && !received) {
+                returnReservation(limiter, estimatedTokens, e);
+            }
+
+            try {
+                callback.onError(e);
+            } finally {
+                stream.completeExceptionally(e);
+            }
+        }
     }
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.services;
+
+import nl.dannyj.mistral.exceptions.MistralAPIException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Shares one call among all callers that make an identical call while it is in flight (single-flight).
+ * The first caller for a key performs the call; callers that arrive before it completes receive the same result or exception.
+ * A key is forgotten as soon as its call completes, so results are never reused by later calls.
+ * <p>
+ * Every caller waits at most until its own deadline and then fails with the same timeout as a call of its own.
+ * A caller only joins a call whose deadline is not earlier than its own, so a call with a short deadline never fails callers that have more time;
+ * such a caller makes its own call instead, which identical calls that arrive later join.
+ */
+class RequestCoalescer {
+
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedCalls = new AtomicLong();
+
+    /**
+     * Performs the call, or waits for the identical call that is already in flight.
+     *
+     * @param <T>     The type of the result
+     * @param key     The key that identifies identical calls
+     * @param context The context of the invocation, which bounds the wait for a call that is in flight
+     * @param call    The call to perform if no identical call can be joined
+     * @return The result of the call
+     * @throws MistralAPIException if the deadline of the invocation passes while waiting for the call that is in flight
+     */
+    @SuppressWarnings("unchecked")
+    <T> T execute(String key, CallContext context, Supplier<T> call) {
+        Flight flight = new Flight(context);
+        Flight existing = join(key, flight);
+
+        if (existing != null) {
+            coalescedCalls.incrementAndGet();
+            return (T) await(existing.future, context.remainingNanos());
+        }
+
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, flight);
+            flight.future.completeExceptionally(e);
+            throw e;
+        }
+
+        inFlight.remove(key, flight);
+        flight.future.complete(result);
+        return result;
+    }
+
+    /**
+     * Performs the asynchronous call, or shares the result of the identical call that is already in flight.
+     * Every caller receives its own future, so cancelling it does not affect the other callers.
+     *
+     * @param <T>     The type of the result
+     * @param key     The key that identifies identical calls
+     * @param context The context of the invocation, which bounds the wait for a call that is in flight
+     * @param call    The call to perform if no identical call can be joined
+     * @return A CompletableFuture that will complete with the result of the call, or with a {@link MistralAPIException}
+     * if the deadline of the invocation passes while waiting for the call that is in flight
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> executeAsync(String key, CallContext context, Supplier<CompletableFuture<T>> call) {
+        Flight flight = new Flight(context);
+        Flight existing = join(key, flight);
+
+        if (existing != null) {
+            coalescedCalls.incrementAndGet();
+            return (CompletableFuture<T>) awaitAsync(existing.future, context.remainingNanos());
+        }
+
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        future.whenComplete((result, error) -> {
+            inFlight.remove(key, flight);
+
+            if (error != null) {
+                flight.future.completeExceptionally(error);
+            } else {
+                flight.future.complete(result);
+            }
+        });
+
+        return (CompletableFuture<T>) flight.future.copy();
+    }
+
+    /**
+     * Returns the number of calls that were answered by an identical call that was already in flight.
+     *
+     * @return The number of coalesced calls
+     */
+    long getCoalescedCalls() {
+        return coalescedCalls.get();
+    }
+
+    /**
+     * Finds the call in flight that the new flight can join. A call whose deadline is earlier than the deadline of the new flight
+     * is replaced by the new flight, so the caller makes its own call.
+     *
+     * @param key    The key that identifies identical calls
+     * @param flight The flight of the caller
+     * @return The flight to join, or null if the caller has to make the call
+     */
+    private Flight join(String key, Flight flight) {
+        while (true) {
+            Flight existing = inFlight.putIfAbsent(key, flight);
+
+            if (existing == null) {
+                return null;
+            }
+
+            if (existing.context.outlasts(flight.context)) {
+                return existing;
+            }
+
+            if (inFlight.replace(key, existing, flight)) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Waits for a call of another caller and rethrows its exception unwrapped, as if the call had been made by the current thread.
+     *
+     * @param flight    The future of the call
+     * @param remaining The time the caller may wait in nanoseconds, or {@link Long#MAX_VALUE} to wait until the call completes
+     * @return The result of the call
+     */
+    private static Object await(CompletableFuture<Object> flight, long remaining) {
+        try {
+            return remaining == Long.MAX_VALUE ? flight.join() : flight.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new MistralAPIException(CallContext.timeout());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MistralAPIException("Interrupted while waiting for an identical request", e);
+        } catch (CompletionException | ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new CompletionException(cause);
+        }
+    }
+
+    /**
+     * Returns a future of the caller that completes like the call of another caller, or fails once the caller may no longer wait.
+     *
+     * @param flight    The future of the call
+     * @param remaining The time the caller may wait in nanoseconds, or {@link Long#MAX_VALUE} to wait until the call completes
+     * @return The future of the caller
+     */
+    private static CompletableFuture<Object> awaitAsync(CompletableFuture<Object> flight, long remaining) {
+        if (remaining == Long.MAX_VALUE) {
+            return flight.copy();
+        }
+
+        CompletableFuture<Object> waiter = new CompletableFuture<>();
+        flight.copy().orTimeout(Math.max(0, remaining), TimeUnit.NANOSECONDS).whenComplete((result, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+
+            if (cause == null) {
+                waiter.complete(result);
+            } else if (cause instanceof TimeoutException) {
+                waiter.completeExceptionally(new MistralAPIException(CallContext.timeout()));
+            } else {
+                waiter.completeExceptionally(cause);
+            }
+        });
+
+        return waiter;
+    }
+
+    /**
+     * A call in flight and the context of the invocation that makes it.
+     */
+    private static final class Flight {
+
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        private final CallContext context;
+
+        private Flight(CallContext context) {
+            this.context = context;
+        }
+    }
+}
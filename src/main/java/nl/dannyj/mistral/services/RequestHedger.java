@@ -0,0 +1,375 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.services;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Configures hedged requests, which cut the tail latency of short requests at the cost of some duplicate requests.
+ * Enable it with {@code MistralClient.builder().hedging(...)}.
+ * <p>
+ * When a request to one of the hedged endpoints has not completed after the {@link #getPercentile()} latency of recent requests
+ * to that endpoint, an identical second request is sent. The first request to complete wins, and the other one is cancelled with
+ * {@code Call.cancel()}. A request only fails when both requests fail, or when the first request fails before the second is sent.
+ * The latencies are those of the first requests; when the second request wins, the first one counts with the time until it was cancelled,
+ * so fast hedges don't pull the percentile down.
+ * <p>
+ * Hedging starts once {@link #getMinSamples()} requests to an endpoint have completed. At most {@link #getMaxHedgeRate()} of the
+ * requests are hedged, with bursts of at most 10 hedged requests, so the cost of duplicate requests stays bounded.
+ * Every hedged request is billed, so only enable hedging for requests that are cheap compared to their latency.
+ * <p>
+ * With a {@link nl.dannyj.mistral.ratelimit.RateLimiter}, a second request is only sent when the rate limiter has budget left for it
+ * right away, so hedging never delays or rejects other requests. The budget of the second request is returned when the request completes,
+ * as only one of the two requests provides the response.
+ */
+public class RequestHedger {
+
+    private static final int BUDGET_CAPACITY = 10;
+    private static final int RECOMPUTE_INTERVAL = 16;
+
+    /**
+     * The percentile of recent latencies after which a second request is sent.
+     *
+     * @return the percentile between 0.0 and 1.0
+     */
+    @Getter
+    private final double percentile;
+
+    /**
+     * The shortest delay before a second request is sent.
+     *
+     * @return the minimum hedge delay
+     */
+    @Getter
+    private final Duration minDelay;
+
+    /**
+     * The maximum fraction of requests that is hedged.
+     *
+     * @return the maximum hedge rate between 0.0 and 1.0
+     */
+    @Getter
+    private final double maxHedgeRate;
+
+    /**
+     * The number of recent latencies per endpoint the percentile is computed from.
+     *
+     * @return the size of the latency window
+     */
+    @Getter
+    private final int windowSize;
+
+    /**
+     * The number of completed requests to an endpoint before its requests are hedged.
+     *
+     * @return the minimum number of latency samples
+     */
+    @Getter
+    private final int minSamples;
+
+    /**
+     * The endpoints whose requests are hedged, for example "/chat/completions".
+     *
+     * @return the hedged endpoints
+     */
+    @Getter
+    private final Set<String> endpoints;
+
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedgedRequests = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final Object budgetLock = new Object();
+    private double budget;
+
+    private RequestHedger(Builder builder) {
+        this.percentile = builder.percentile;
+        this.minDelay = builder.minDelay;
+        this.maxHedgeRate = builder.maxHedgeRate;
+        this.windowSize = builder.windowSize;
+        this.minSamples = Math.min(builder.minSamples, builder.windowSize);
+        this.endpoints = builder.endpoints;
+    }
+
+    /**
+     * Creates a new builder for a RequestHedger, initialized with the default settings.
+     *
+     * @return A new Builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the number of requests to hedged endpoints.
+     *
+     * @return the number of requests
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Returns the number of requests for which a second request was sent.
+     *
+     * @return the number of hedged requests
+     */
+    public long getHedgedRequests() {
+        return hedgedRequests.get();
+    }
+
+    /**
+     * Returns the number of hedged requests that were answered by the second request.
+     *
+     * @return the number of hedged requests won by the second request
+     */
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * Returns the current delay after which a request to the endpoint is hedged.
+     *
+     * @param urlPath The URL path of the endpoint, for example "/v1/chat/completions"
+     * @return the hedge delay, or null if not enough requests to the endpoint have completed yet
+     */
+    public Duration getDelay(@NonNull String urlPath) {
+        long delayNanos = delayNanos(urlPath);
+        return delayNanos < 0 ? null : Duration.ofNanos(delayNanos);
+    }
+
+    /**
+     * Checks whether requests to the URL path are hedged.
+     *
+     * @param urlPath The URL path of the request
+     * @return true if the path belongs to a hedged endpoint
+     */
+    boolean isHedged(String urlPath) {
+        for (String endpoint : endpoints) {
+            if (urlPath.endsWith(endpoint)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Records a new request and adds its share to the hedge budget.
+     */
+    void onRequest() {
+        requests.incrementAndGet();
+
+        synchronized (budgetLock) {
+            budget = Math.min(budget + maxHedgeRate, BUDGET_CAPACITY);
+        }
+    }
+
+    /**
+     * Takes a hedge from the hedge budget.
+     *
+     * @return true if the request may be hedged
+     */
+    boolean tryHedge() {
+        synchronized (budgetLock) {
+            if (budget < 1) {
+                return false;
+            }
+
+            budget--;
+        }
+
+        hedgedRequests.incrementAndGet();
+        return true;
+    }
+
+    void onHedgeWin() {
+        hedgeWins.incrementAndGet();
+    }
+
+    /**
+     * Records the latency of the primary call of a successful request.
+     *
+     * @param urlPath      The URL path of the request
+     * @param latencyNanos The time from sending the primary call until the request completed, a lower bound if the hedge won
+     */
+    void recordLatency(String urlPath, long latencyNanos) {
+        latencies.computeIfAbsent(urlPath, path -> new LatencyWindow()).add(latencyNanos);
+    }
+
+    /**
+     * Returns the delay after which a request to the URL path is hedged.
+     *
+     * @param urlPath The URL path of the request
+     * @return the delay in nanoseconds, or -1 if not enough requests have completed yet
+     */
+    long delayNanos(String urlPath) {
+        LatencyWindow window = latencies.get(urlPath);
+        return window == null ? -1 : window.delayNanos();
+    }
+
+    /**
+     * The most recent latencies of an endpoint. The percentile is recomputed every few samples instead of on every request.
+     */
+    private final class LatencyWindow {
+
+        private final long[] samples = new long[windowSize];
+        private int count;
+        private int next;
+        private int sinceRecompute;
+        private long delayNanos = -1;
+
+        private synchronized void add(long latencyNanos) {
+            samples[next] = latencyNanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+
+            if (count >= minSamples && (delayNanos < 0 || ++sinceRecompute >= RECOMPUTE_INTERVAL)) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+
+                int index = (int) Math.min(count - 1, Math.ceil(percentile * count) - 1);
+                delayNanos = Math.max(minDelay.toNanos(), sorted[Math.max(0, index)]);
+                sinceRecompute = 0;
+            }
+        }
+
+        private synchronized long delayNanos() {
+            return delayNanos;
+        }
+    }
+
+    /**
+     * Builder for the RequestHedger.
+     */
+    public static class Builder {
+
+        private double percentile = 0.95;
+        private Duration minDelay = Duration.ofMillis(50);
+        private double maxHedgeRate = 0.05;
+        private int windowSize = 1000;
+        private int minSamples = 20;
+        private Set<String> endpoints = Set.of("/chat/completions", "/embeddings");
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the percentile of recent latencies after which a second request is sent. Defaults to 0.95.
+         *
+         * @param percentile The percentile, has to be greater than 0.0 and at most 1.0
+         * @return This builder instance
+         */
+        public Builder percentile(double percentile) {
+            if (!(percentile > 0 && percentile <= 1)) {
+                throw new IllegalArgumentException("percentile must be greater than 0.0 and at most 1.0");
+            }
+
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * Sets the shortest delay before a second request is sent. Defaults to 50 milliseconds.
+         *
+         * @param minDelay The minimum hedge delay, has to be zero or positive
+         * @return This builder instance
+         */
+        public Builder minDelay(@NonNull Duration minDelay) {
+            if (minDelay.isNegative()) {
+                throw new IllegalArgumentException("minDelay must not be negative");
+            }
+
+            this.minDelay = minDelay;
+            return this;
+        }
+
+        /**
+         * Sets the maximum fraction of requests that is hedged. Defaults to 0.05.
+         *
+         * @param maxHedgeRate The maximum hedge rate, has to be greater than 0.0 and at most 1.0
+         * @return This builder instance
+         */
+        public Builder maxHedgeRate(double maxHedgeRate) {
+            if (!(maxHedgeRate > 0 && maxHedgeRate <= 1)) {
+                throw new IllegalArgumentException("maxHedgeRate must be greater than 0.0 and at most 1.0");
+            }
+
+            this.maxHedgeRate = maxHedgeRate;
+            return this;
+        }
+
+        /**
+         * Sets the number of recent latencies per endpoint the percentile is computed from. Defaults to 1000.
+         *
+         * @param windowSize The size of the latency window, has to be at least 1
+         * @return This builder instance
+         */
+        public Builder windowSize(int windowSize) {
+            if (windowSize < 1) {
+                throw new IllegalArgumentException("windowSize must be at least 1");
+            }
+
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * Sets the number of completed requests to an endpoint before its requests are hedged. Defaults to 20.
+         *
+         * @param minSamples The minimum number of latency samples, has to be at least 1
+         * @return This builder instance
+         */
+        public Builder minSamples(int minSamples) {
+            if (minSamples < 1) {
+                throw new IllegalArgumentException("minSamples must be at least 1");
+            }
+
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * Sets the endpoints whose requests are hedged. Defaults to "/chat/completions" and "/embeddings".
+         * Streaming chat completions are never hedged.
+         *
+         * @param endpoints The hedged endpoints
+         * @return This builder instance
+         */
+        public Builder endpoints(@NonNull Set<String> endpoints) {
+            this.endpoints = Set.copyOf(endpoints);
+            return this;
+        }
+
+        /**
+         * Builds the RequestHedger.
+         *
+         * @return A new RequestHedger
+         */
+        public RequestHedger build() {
+            return new RequestHedger(this);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.utils;
+
+import lombok.NonNull;
+import nl.dannyj.mistral.models.completion.ChatCompletionRequest;
+import nl.dannyj.mistral.models.completion.content.ContentChunk;
+import nl.dannyj.mistral.models.completion.content.TextChunk;
+import nl.dannyj.mistral.models.completion.message.ChatMessage;
+import nl.dannyj.mistral.models.embedding.EmbeddingRequest;
+
+/**
+ * Estimates the number of tokens of a text before it is sent to the Mistral AI API.
+ * The estimate is a heuristic of roughly four characters per token, which is accurate enough for budgeting and batching.
+ * The actual token usage is reported by the API in the usage of the response.
+ */
+public final class TokenEstimator {
+
+    private static final int CHARACTERS_PER_TOKEN = 4;
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * Estimates the number of tokens of the given text.
+     *
+     * @param text The text to estimate the number of tokens for
+     * @return The estimated number of tokens, at least 1 for a non-empty text
+     */
+    public static int estimateTokens(@NonNull CharSequence text) {
+        return (text.length() + CHARACTERS_PER_TOKEN - 1) / CHARACTERS_PER_TOKEN;
+    }
+
+    /**
+     * Estimates the number of tokens a chat completion request uses: the text of all messages plus the maximum
+     * number of completion tokens of every choice, if it is set. Images and tool definitions are not counted.
+     *
+     * @param request The request to estimate the number of tokens for
+     * @return The estimated number of tokens
+     */
+    public static long estimateTokens(@NonNull ChatCompletionRequest request) {
+        long characters = 0;
+
+        if (request.getMessages() != null) {
+            for (ChatMessage message : request.getMessages()) {
+                if (message == null || message.getContent() == null) {
+                    continue;
+                }
+
+                for (ContentChunk chunk : message.getContent()) {
+                    if (chunk instanceof TextChunk textChunk && textChunk.getText() != null) {
+                        characters += textChunk.getText().length();
+                    }
+                }
+            }
+        }
+
+        long completionTokens = request.getMaxTokens() == null ? 0 : (long) request.getMaxTokens() * (request.getN() == null ? 1 : request.getN());
+        return (characters + CHARACTERS_PER_TOKEN - 1) / CHARACTERS_PER_TOKEN + completionTokens;
+    }
+
+    /**
+     * Estimates the number of tokens of all inputs of an embedding request.
+     *
+     * @param request The request to estimate the number of tokens for
+     * @return The estimated number of tokens
+     */
+    public static long estimateTokens(@NonNull EmbeddingRequest request) {
+        long tokens = 0;
+
+        for (String input : request.getInput()) {
+            if (input != null) {
+                tokens += estimateTokens(input);
+            }
+        }
+
+        return tokens;
+    }
+}
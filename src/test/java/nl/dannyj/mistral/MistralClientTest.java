@@ -0,0 +1,165 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.dannyj.mistral.exceptions.MistralAPIException;
+import nl.dannyj.mistral.interceptors.MistralHeaderInterceptor;
+import nl.dannyj.mistral.models.completion.ChatCompletionRequest;
+import nl.dannyj.mistral.models.completion.message.MessageChunk;
+import nl.dannyj.mistral.models.completion.message.UserMessage;
+import nl.dannyj.mistral.net.ChatCompletionChunkCallback;
+import nl.dannyj.mistral.net.RequestOptions;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MistralClientTest {
+
+    @Test
+    void closeShutsDownOwnedHttpClient() {
+        MistralClient client = MistralClient.builder().apiKey("key").build();
+
+        client.close();
+
+        assertTrue(client.getHttpClient().dispatcher().executorService().isShutdown());
+    }
+
+    @Test
+    void closeLeavesProvidedHttpClientAndExecutorRunning() {
+        OkHttpClient httpClient = new OkHttpClient();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            new MistralClient("key", httpClient, new ObjectMapper(), executor).close();
+
+            assertFalse(httpClient.dispatcher().executorService().isShutdown());
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdown();
+            httpClient.dispatcher().executorService().shutdown();
+        }
+    }
+
+    @Test
+    void deadlineCoversTimeQueuedInDispatcher() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("{\"object\":\"list\",\"data\":[]}").setHeadersDelay(2, TimeUnit.SECONDS));
+            server.enqueue(new MockResponse().setBody("{\"object\":\"list\",\"data\":[]}"));
+            MistralClient client = queueingClient(server);
+
+            try {
+                Future<?> occupying = client.listModelsAsync();
+                long start = System.nanoTime();
+                Future<?> queued = client.listModelsAsync(deadline());
+
+                ExecutionException e = assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "the queued request should fail at its deadline");
+                assertInstanceOf(MistralAPIException.class, e.getCause());
+                assertTimeout(e.getCause().getCause());
+                assertFalse(occupying.isDone());
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    void streamDeadlineCoversTimeQueuedInDispatcher() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody("{\"object\":\"list\",\"data\":[]}").setHeadersDelay(2, TimeUnit.SECONDS));
+            server.enqueue(new MockResponse().setBody("data: [DONE]\n\n").setHeader("Content-Type", "text/event-stream"));
+            MistralClient client = queueingClient(server);
+
+            try {
+                client.listModelsAsync();
+                long start = System.nanoTime();
+                CompletableFuture<Exception> error = new CompletableFuture<>();
+                ChatCompletionRequest request = ChatCompletionRequest.builder()
+                        .model("model")
+                        .stream(true)
+                        .messages(List.of(new UserMessage("hello")))
+                        .build();
+
+                Future<Void> stream = client.createChatCompletionStream(request, new ChatCompletionChunkCallback() {
+                    @Override
+                    public void onChunkReceived(MessageChunk chunk) {
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        error.complete(null);
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        error.complete(e);
+                    }
+                }, deadline());
+
+                ExecutionException e = assertThrows(ExecutionException.class, () -> stream.get(5, TimeUnit.SECONDS));
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "the queued stream should fail at its deadline");
+                assertTimeout(e.getCause());
+                assertTimeout(error.get(5, TimeUnit.SECONDS));
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    private static MistralClient queueingClient(MockWebServer server) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(1);
+
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .addInterceptor(new MistralHeaderInterceptor("key"))
+                .addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                        .url(server.url(chain.request().url().encodedPath()))
+                        .build()))
+                .build();
+
+        return MistralClient.builder().apiKey("key").httpClient(httpClient).build();
+    }
+
+    private static RequestOptions deadline() {
+        return RequestOptions.builder().timeout(Duration.ofMillis(200)).build();
+    }
+
+    private static void assertTimeout(Throwable e) {
+        assertInstanceOf(InterruptedIOException.class, e);
+        assertEquals("timeout", e.getMessage());
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DiskResponseCacheStoreTest {
+
+    private static final Duration TTL = Duration.ofMinutes(1);
+    private static final long ENTRY_SIZE = Long.BYTES + 5;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void storesAndReplacesEntries() {
+        DiskResponseCacheStore store = new DiskResponseCacheStore(directory, 1024);
+
+        store.put("key", bytes("first"), TTL);
+        store.put("key", bytes("other"), TTL);
+
+        assertArrayEquals(bytes("other"), store.get("key"));
+        assertEquals(ENTRY_SIZE, store.sizeInBytes());
+        assertNull(store.get("missing"));
+    }
+
+    @Test
+    void entriesSurviveReopening() {
+        new DiskResponseCacheStore(directory, 1024).put("key", bytes("value"), TTL);
+
+        DiskResponseCacheStore reopened = new DiskResponseCacheStore(directory, 1024);
+
+        assertArrayEquals(bytes("value"), reopened.get("key"));
+        assertEquals(ENTRY_SIZE, reopened.sizeInBytes());
+    }
+
+    @Test
+    void expiredEntryIsDeleted() throws InterruptedException {
+        DiskResponseCacheStore store = new DiskResponseCacheStore(directory, 1024);
+
+        store.put("key", bytes("value"), Duration.ofMillis(50));
+        Thread.sleep(100);
+
+        assertNull(store.get("key"));
+        assertEquals(0, store.sizeInBytes());
+        assertFalse(Files.exists(directory.resolve("key.entry")));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntriesAboveMaxBytes() {
+        DiskResponseCacheStore store = new DiskResponseCacheStore(directory, 2 * ENTRY_SIZE);
+
+        store.put("a", bytes("aaaaa"), TTL);
+        store.put("b", bytes("bbbbb"), TTL);
+        store.get("a");
+        store.put("c", bytes("ccccc"), TTL);
+
+        assertArrayEquals(bytes("aaaaa"), store.get("a"));
+        assertNull(store.get("b"));
+        assertArrayEquals(bytes("ccccc"), store.get("c"));
+        assertEquals(2 * ENTRY_SIZE, store.sizeInBytes());
+        assertFalse(Files.exists(directory.resolve("b.entry")));
+    }
+
+    @Test
+    void reopeningEvictsOldestEntriesAboveMaxBytes() throws IOException {
+        DiskResponseCacheStore store = new DiskResponseCacheStore(directory, 1024);
+        store.put("old", bytes("aaaaa"), TTL);
+        store.put("new", bytes("bbbbb"), TTL);
+        Files.setLastModifiedTime(directory.resolve("old.entry"), FileTime.fromMillis(0));
+
+        DiskResponseCacheStore reopened = new DiskResponseCacheStore(directory, ENTRY_SIZE);
+
+        assertNull(reopened.get("old"));
+        assertArrayEquals(bytes("bbbbb"), reopened.get("new"));
+    }
+
+    @Test
+    void valueLargerThanMaxBytesIsNotStored() {
+        DiskResponseCacheStore store = new DiskResponseCacheStore(directory, ENTRY_SIZE);
+
+        store.put("key", bytes("too large"), TTL);
+
+        assertNull(store.get("key"));
+        assertEquals(0, store.sizeInBytes());
+    }
+
+    @Test
+    void removeDeletesTheEntry() {
+        DiskResponseCacheStore store = new DiskResponseCacheStore(directory, 1024);
+
+        store.put("key", bytes("value"), TTL);
+        store.remove("key");
+        store.remove("missing");
+
+        assertNull(store.get("key"));
+        assertFalse(Files.exists(directory.resolve("key.entry")));
+    }
+
+    @Test
+    void keyThatIsNotAFileNameIsRejected() {
+        DiskResponseCacheStore store = new DiskResponseCacheStore(directory, 1024);
+
+        assertThrows(IllegalArgumentException.class, () -> store.put("../escape", bytes("value"), TTL));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.cache;
+
+import nl.dannyj.mistral.MistralClient;
+import nl.dannyj.mistral.interceptors.MistralHeaderInterceptor;
+import nl.dannyj.mistral.models.completion.ChatCompletionRequest;
+import nl.dannyj.mistral.models.completion.message.UserMessage;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCacheTest {
+
+    private static final String CHAT = "{\"id\":\"chat\",\"object\":\"chat.completion\",\"created\":1,\"model\":\"model\","
+            + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"hi\"},\"finish_reason\":\"stop\"}],"
+            + "\"usage\":{\"prompt_tokens\":3,\"total_tokens\":5,\"completion_tokens\":2}}";
+
+    @Test
+    void onlyDeterministicRequestsAreCacheable() {
+        ResponseCache cache = ResponseCache.inMemory(10, Duration.ofMinutes(1));
+
+        assertTrue(cache.isCacheable(request().temperature(0.0).build()));
+        assertTrue(cache.isCacheable(request().randomSeed(42L).build()));
+        assertFalse(cache.isCacheable(request().build()));
+        assertFalse(cache.isCacheable(request().temperature(0.7).build()));
+        assertFalse(cache.isCacheable(request().temperature(0.0).stream(true).build()));
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        ResponseCache cache = ResponseCache.inMemory(10, Duration.ofMinutes(1));
+
+        assertNull(cache.get("key"));
+        cache.put("key", bytes("value"));
+        assertArrayEquals(bytes("value"), cache.get("key"));
+        assertArrayEquals(bytes("value"), cache.get("key"));
+
+        ResponseCache.Stats stats = cache.getStats();
+        assertEquals(2, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(0, stats.getErrors());
+        assertEquals(2.0 / 3, stats.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void expiredResponseIsAMiss() throws InterruptedException {
+        ResponseCache cache = ResponseCache.inMemory(10, Duration.ofMillis(50));
+
+        cache.put("key", bytes("value"));
+        Thread.sleep(100);
+
+        assertNull(cache.get("key"));
+        assertEquals(1, cache.getStats().getMisses());
+    }
+
+    @Test
+    void failingStoreNeverFailsTheRequest() {
+        ResponseCache cache = new ResponseCache(new ResponseCacheStore() {
+            @Override
+            public byte[] get(String key) {
+                throw new IllegalStateException("read failed");
+            }
+
+            @Override
+            public void put(String key, byte[] value, Duration ttl) {
+                throw new IllegalStateException("write failed");
+            }
+
+            @Override
+            public void remove(String key) {
+                throw new IllegalStateException("remove failed");
+            }
+        }, Duration.ofMinutes(1));
+
+        cache.put("key", bytes("value"));
+        assertNull(cache.get("key"));
+        cache.remove("key");
+
+        ResponseCache.Stats stats = cache.getStats();
+        assertEquals(3, stats.getErrors());
+        assertEquals(1, stats.getMisses());
+        assertEquals(0, stats.getHits());
+    }
+
+    @Test
+    void ttlHasToBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> ResponseCache.inMemory(10, Duration.ZERO));
+    }
+
+    @Test
+    void inMemoryStoreEvictsLeastRecentlyUsedEntry() {
+        InMemoryResponseCacheStore store = new InMemoryResponseCacheStore(2);
+        Duration ttl = Duration.ofMinutes(1);
+
+        store.put("a", bytes("a"), ttl);
+        store.put("b", bytes("b"), ttl);
+        store.get("a");
+        store.put("c", bytes("c"), ttl);
+
+        assertEquals(2, store.size());
+        assertArrayEquals(bytes("a"), store.get("a"));
+        assertNull(store.get("b"));
+        assertArrayEquals(bytes("c"), store.get("c"));
+    }
+
+    @Test
+    void clientAnswersRepeatedDeterministicRequestFromCache() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody(CHAT));
+            server.enqueue(new MockResponse().setBody(CHAT));
+            ResponseCache cache = ResponseCache.inMemory(10, Duration.ofMinutes(1));
+            MistralClient client = MistralClient.builder()
+                    .apiKey("key")
+                    .httpClient(redirecting(server))
+                    .responseCache(cache)
+                    .build();
+
+            try {
+                ChatCompletionRequest deterministic = request().temperature(0.0).build();
+                assertEquals("chat", client.createChatCompletion(deterministic).getId());
+                assertEquals("chat", client.createChatCompletion(deterministic).getId());
+                assertEquals("chat", client.createChatCompletionAsync(deterministic).get().getId());
+                assertEquals(1, server.getRequestCount());
+
+                client.createChatCompletion(request().build());
+                assertEquals(2, server.getRequestCount());
+
+                assertEquals(2, cache.getStats().getHits());
+                assertEquals(1, cache.getStats().getMisses());
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    private static ChatCompletionRequest.ChatCompletionRequestBuilder request() {
+        return ChatCompletionRequest.builder()
+                .model("model")
+                .messages(List.of(new UserMessage("hello")));
+    }
+
+    private static OkHttpClient redirecting(MockWebServer server) {
+        return new OkHttpClient.Builder()
+                .addInterceptor(new MistralHeaderInterceptor("key"))
+                .addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                        .url(server.url(chain.request().url().encodedPath()))
+                        .build()))
+                .build();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.cache;
+
+import nl.dannyj.mistral.MistralClient;
+import nl.dannyj.mistral.interceptors.MistralHeaderInterceptor;
+import nl.dannyj.mistral.models.completion.ChatCompletionRequest;
+import nl.dannyj.mistral.models.completion.ChatCompletionResponse;
+import nl.dannyj.mistral.models.completion.content.ImageURLChunk;
+import nl.dannyj.mistral.models.completion.content.TextChunk;
+import nl.dannyj.mistral.models.completion.message.AssistantMessage;
+import nl.dannyj.mistral.models.completion.message.ChatMessage;
+import nl.dannyj.mistral.models.completion.message.SystemMessage;
+import nl.dannyj.mistral.models.completion.message.UserMessage;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SemanticCacheTest {
+
+    private static final String SCOPE = "scope";
+    private static final Duration TTL = Duration.ofMinutes(1);
+    private static final String CHAT = "{\"id\":\"chat\",\"object\":\"chat.completion\",\"created\":1,\"model\":\"model\","
+            + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"hi\"},\"finish_reason\":\"stop\"}],"
+            + "\"usage\":{\"prompt_tokens\":3,\"total_tokens\":5,\"completion_tokens\":2}}";
+
+    @Test
+    void promptIsTheTextOfTheLastUserMessage() {
+        SemanticCache cache = new SemanticCache("mistral-embed", 0.9, 10, TTL);
+
+        assertEquals("hello", cache.promptOf(request(new SystemMessage("system"), new UserMessage("hello"))));
+        assertNull(cache.promptOf(request(new UserMessage("hello"), new AssistantMessage("hi"))));
+        assertNull(cache.promptOf(request(new UserMessage(" "))));
+        assertNull(cache.promptOf(request(new UserMessage(List.of(new TextChunk("describe"), new ImageURLChunk())))));
+    }
+
+    @Test
+    void returnsResponseOfMostSimilarPromptAboveThreshold() {
+        SemanticCache cache = new SemanticCache("mistral-embed", 0.9, 10, TTL);
+        ChatCompletionResponse close = new ChatCompletionResponse();
+        ChatCompletionResponse closest = new ChatCompletionResponse();
+        cache.put(SCOPE, new float[]{1, 0.4f}, close);
+        cache.put(SCOPE, new float[]{2, 0.1f}, closest);
+
+        // Embeddings are normalized, so only their direction matters
+        assertSame(closest, cache.get(SCOPE, new float[]{10, 0}, System.nanoTime()));
+        assertNull(cache.get(SCOPE, new float[]{0, 1}, System.nanoTime()));
+    }
+
+    @Test
+    void onlyComparesPromptsInTheSameScope() {
+        SemanticCache cache = new SemanticCache("mistral-embed", 0.9, 10, TTL);
+        cache.put(SCOPE, new float[]{1, 0}, new ChatCompletionResponse());
+
+        assertNull(cache.get("other scope", new float[]{1, 0}, System.nanoTime()));
+        assertNull(cache.get(SCOPE, new float[]{1, 0, 0}, System.nanoTime()));
+    }
+
+    @Test
+    void expiredResponsesAreRemoved() throws InterruptedException {
+        SemanticCache cache = new SemanticCache("mistral-embed", 0.9, 10, Duration.ofMillis(50));
+        cache.put(SCOPE, new float[]{1, 0}, new ChatCompletionResponse());
+        Thread.sleep(100);
+
+        assertNull(cache.get(SCOPE, new float[]{1, 0}, System.nanoTime()));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedResponse() {
+        SemanticCache cache = new SemanticCache("mistral-embed", 0.9, 2, TTL);
+        ChatCompletionResponse first = new ChatCompletionResponse();
+        cache.put(SCOPE, new float[]{1, 0}, first);
+        cache.put(SCOPE, new float[]{0, 1}, new ChatCompletionResponse());
+
+        assertSame(first, cache.get(SCOPE, new float[]{1, 0}, System.nanoTime()));
+        cache.put(SCOPE, new float[]{-1, 0}, new ChatCompletionResponse());
+
+        assertEquals(2, cache.size());
+        assertSame(first, cache.get(SCOPE, new float[]{1, 0}, System.nanoTime()));
+        assertNull(cache.get(SCOPE, new float[]{0, 1}, System.nanoTime()));
+    }
+
+    @Test
+    void countsHitsMissesAndErrors() {
+        SemanticCache cache = new SemanticCache("mistral-embed", 0.9, 10, TTL);
+        cache.put(SCOPE, new float[]{1, 0}, new ChatCompletionResponse());
+
+        long startedAt = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10);
+        cache.get(SCOPE, new float[]{1, 0}, startedAt);
+        cache.get(SCOPE, new float[]{0, 1}, startedAt);
+        cache.recordError();
+
+        SemanticCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getErrors());
+        assertEquals(0.5, stats.getHitRate());
+        assertEquals(10, stats.getAverageLookupLatency().toMillis(), 5);
+    }
+
+    @Test
+    void validatesSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new SemanticCache("mistral-embed", 1.1, 10, TTL));
+        assertThrows(IllegalArgumentException.class, () -> new SemanticCache("mistral-embed", 0.9, 0, TTL));
+        assertThrows(IllegalArgumentException.class, () -> new SemanticCache("mistral-embed", 0.9, 10, Duration.ZERO));
+    }
+
+    @Test
+    void clientAnswersSimilarPromptFromCache() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.enqueue(new MockResponse().setBody(embedding(1, 0)));
+            server.enqueue(new MockResponse().setBody(CHAT));
+            server.enqueue(new MockResponse().setBody(embedding(0.99f, 0.05f)));
+            server.enqueue(new MockResponse().setBody(embedding(1, 0)));
+            server.enqueue(new MockResponse().setBody(CHAT));
+            SemanticCache cache = new SemanticCache("mistral-embed", 0.95, 10, TTL);
+            MistralClient client = MistralClient.builder()
+                    .apiKey("key")
+                    .httpClient(redirecting(server))
+                    .semanticCache(cache)
+                    .build();
+
+            try {
+                assertEquals("chat", client.createChatCompletion(request(new SystemMessage("system"), new UserMessage("hello"))).getId());
+                assertEquals("chat", client.createChatCompletionAsync(request(new SystemMessage("system"), new UserMessage("hello!")))
+                        .get(5, TimeUnit.SECONDS).getId());
+                assertEquals(3, server.getRequestCount());
+
+                // A different system message is a different conversation, so the prompt is not compared
+                client.createChatCompletion(request(new SystemMessage("other system"), new UserMessage("hello")));
+                assertEquals(5, server.getRequestCount());
+
+                assertEquals(1, cache.getStats().getHits());
+                assertEquals(2, cache.getStats().getMisses());
+                assertEquals(2, cache.size());
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    private static ChatCompletionRequest request(ChatMessage... messages) {
+        return ChatCompletionRequest.builder()
+                .model("model")
+                .messages(List.of(messages))
+                .build();
+    }
+
+    private static String embedding(float x, float y) {
+        return "{\"id\":\"embedding\",\"object\":\"list\",\"model\":\"mistral-embed\",\"data\":[{\"object\":\"embedding\",\"index\":0,"
+                + "\"embedding\":[" + x + "," + y + "]}],\"usage\":{\"prompt_tokens\":1,\"completion_tokens\":0,\"total_tokens\":1}}";
+    }
+
+    private static OkHttpClient redirecting(MockWebServer server) {
+        return new OkHttpClient.Builder()
+                .addInterceptor(new MistralHeaderInterceptor("key"))
+                .addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                        .url(server.url(chain.request().url().encodedPath()))
+                        .build()))
+                .build();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.index;
+
+import nl.dannyj.mistral.embedding.vector.SearchResult;
+import nl.dannyj.mistral.embedding.vector.SimilarityMetric;
+import nl.dannyj.mistral.embedding.vector.VectorMath;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswIndexTest {
+
+    private static final int SIZE = 5000;
+    private static final int DIMENSION = 32;
+    private static final int K = 10;
+    private static final long ID_OFFSET = 1000;
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @EnumSource(value = SimilarityMetric.class, names = {"COSINE", "EUCLIDEAN"})
+    void recallMatchesBruteForce(SimilarityMetric metric) {
+        Random random = new Random(7);
+        float[][] vectors = randomVectors(random, SIZE);
+        HnswIndex index = new HnswIndex(DIMENSION, metric);
+
+        for (int i = 0; i < SIZE; i++) {
+            index.add(ID_OFFSET + i, vectors[i]);
+        }
+
+        assertTrue(recall(index, vectors, randomVectors(random, 100), metric) >= 0.9);
+    }
+
+    @Test
+    void concurrentInsertsKeepRecall() throws Exception {
+        Random random = new Random(11);
+        float[][] vectors = randomVectors(random, SIZE);
+        HnswIndex index = new HnswIndex(DIMENSION, SimilarityMetric.COSINE);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int thread = 0; thread < 4; thread++) {
+                int first = thread;
+                futures.add(executor.submit(() -> {
+                    for (int i = first; i < SIZE; i += 4) {
+                        index.add(ID_OFFSET + i, vectors[i]);
+                        index.search(vectors[i], K);
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(SIZE, index.size());
+        assertTrue(recall(index, vectors, randomVectors(random, 100), SimilarityMetric.COSINE) >= 0.9);
+    }
+
+    @Test
+    void saveAndLoadRoundTrip() {
+        Random random = new Random(3);
+        float[][] vectors = randomVectors(random, 1000);
+        HnswIndex index = new HnswIndex(DIMENSION, SimilarityMetric.EUCLIDEAN, 8, 100, 50);
+
+        for (int i = 0; i < vectors.length; i++) {
+            index.add(ID_OFFSET + i, vectors[i]);
+        }
+
+        Path file = directory.resolve("index.hnsw");
+        index.save(file);
+        HnswIndex loaded = HnswIndex.load(file);
+
+        assertEquals(index.size(), loaded.size());
+        assertTrue(loaded.contains(ID_OFFSET + 999));
+        assertFalse(loaded.contains(ID_OFFSET + 1000));
+
+        for (float[] query : randomVectors(random, 20)) {
+            List<IndexSearchResult> expected = index.search(query, K);
+            List<IndexSearchResult> actual = loaded.search(query, K);
+
+            assertEquals(expected.size(), actual.size());
+
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getId(), actual.get(i).getId());
+                assertEquals(expected.get(i).getScore(), actual.get(i).getScore());
+            }
+        }
+    }
+
+    @Test
+    void rejectsInvalidFile() throws Exception {
+        Path file = Files.write(directory.resolve("invalid.hnsw"), new byte[64]);
+
+        assertThrows(UncheckedIOException.class, () -> HnswIndex.load(file));
+    }
+
+    @Test
+    void rejectsDuplicateIdAndWrongDimension() {
+        HnswIndex index = new HnswIndex(3, SimilarityMetric.COSINE);
+        index.add(1, new float[]{1, 0, 0});
+
+        assertThrows(IllegalArgumentException.class, () -> index.add(1, new float[]{0, 1, 0}));
+        assertThrows(IllegalArgumentException.class, () -> index.add(2, new float[]{0, 1}));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void emptyIndexReturnsNoResults() {
+        assertTrue(new HnswIndex(3, SimilarityMetric.COSINE).search(new float[]{1, 0, 0}, K).isEmpty());
+    }
+
+    private static double recall(HnswIndex index, float[][] vectors, float[][] queries, SimilarityMetric metric) {
+        int found = 0;
+
+        for (float[] query : queries) {
+            Set<Long> exact = new HashSet<>();
+
+            for (SearchResult result : VectorMath.topK(query, vectors, K, metric)) {
+                exact.add(ID_OFFSET + result.getIndex());
+            }
+
+            for (IndexSearchResult result : index.search(query, K)) {
+                if (exact.contains(result.getId())) {
+                    found++;
+                }
+            }
+        }
+
+        return (double) found / (queries.length * K);
+    }
+
+    private static float[][] randomVectors(Random random, int count) {
+        float[][] vectors = new float[count][DIMENSION];
+
+        for (float[] vector : vectors) {
+            for (int i = 0; i < DIMENSION; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+        }
+
+        return vectors;
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.store;
+
+import nl.dannyj.mistral.models.embedding.EmbeddingResponse;
+import nl.dannyj.mistral.models.embedding.FloatEmbedding;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EmbeddingFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsRowsBeyondOneWriteBuffer() {
+        Path file = directory.resolve("embeddings.bin");
+        int rows = 100_000;
+
+        try (EmbeddingFileWriter writer = new EmbeddingFileWriter(file, "mistral-embed", 3)) {
+            for (int i = 0; i < rows; i++) {
+                assertEquals(i, writer.write(new float[]{i, -i, 0.5f}));
+            }
+
+            assertEquals(rows, writer.getRowCount());
+        }
+
+        try (EmbeddingFileReader reader = new EmbeddingFileReader(file)) {
+            assertEquals("mistral-embed", reader.getModel());
+            assertEquals(3, reader.getDimension());
+            assertEquals(rows, reader.getRowCount());
+
+            for (int i = 0; i < rows; i += 997) {
+                assertArrayEquals(new float[]{i, -i, 0.5f}, reader.get(i));
+            }
+
+            assertEquals(-(rows - 1), reader.get(rows - 1, 1));
+
+            FloatBuffer row = reader.row(5);
+            assertEquals(3, row.remaining());
+            assertEquals(0.5f, row.get(2));
+        }
+    }
+
+    @Test
+    void writesResponseInIndexOrder() {
+        Path file = directory.resolve("response.bin");
+        EmbeddingResponse response = new EmbeddingResponse("id", "list", List.of(
+                FloatEmbedding.wrap("embedding", new float[]{2, 2}, 1),
+                FloatEmbedding.wrap("embedding", new float[]{1, 1}, 0)), "mistral-embed", null);
+
+        try (EmbeddingFileWriter writer = new EmbeddingFileWriter(file, "mistral-embed", 2)) {
+            writer.write(new float[]{0, 0});
+            assertEquals(1, writer.write(response));
+        }
+
+        try (EmbeddingFileReader reader = new EmbeddingFileReader(file)) {
+            assertEquals(3, reader.getRowCount());
+            assertArrayEquals(new float[]{1, 1}, reader.get(1));
+            assertArrayEquals(new float[]{2, 2}, reader.get(2));
+        }
+    }
+
+    @Test
+    void rejectsEmbeddingWithOtherDimension() {
+        try (EmbeddingFileWriter writer = new EmbeddingFileWriter(directory.resolve("dimension.bin"), "mistral-embed", 3)) {
+            assertThrows(IllegalArgumentException.class, () -> writer.write(new float[2]));
+            assertEquals(0, writer.getRowCount());
+        }
+    }
+
+    @Test
+    void rejectsRowOutOfBounds() {
+        Path file = directory.resolve("bounds.bin");
+
+        try (EmbeddingFileWriter writer = new EmbeddingFileWriter(file, "mistral-embed", 2)) {
+            writer.write(new float[]{1, 2});
+        }
+
+        try (EmbeddingFileReader reader = new EmbeddingFileReader(file)) {
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.get(1));
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.get(-1));
+        }
+    }
+
+    @Test
+    void rejectsInvalidFile() throws Exception {
+        Path file = Files.write(directory.resolve("invalid.bin"), new byte[64]);
+
+        assertThrows(UncheckedIOException.class, () -> new EmbeddingFileReader(file));
+    }
+
+    @Test
+    void rejectsCorruptHeader() throws Exception {
+        // dimension, header size, model length
+        int[][] corruptHeaders = {
+                {Integer.MAX_VALUE, 64, 0},
+                {3, 64, -1},
+                {3, 64, 100},
+                {3, 16, 0},
+                {3, 4096, 0},
+                {3, -64, 0},
+        };
+
+        for (int[] header : corruptHeaders) {
+            Path file = directory.resolve("corrupt.bin");
+            Files.write(file, header(header[0], header[1], header[2]));
+
+            assertThrows(UncheckedIOException.class, () -> new EmbeddingFileReader(file));
+        }
+
+        assertThrows(UncheckedIOException.class, () -> new EmbeddingFileReader(Files.write(directory.resolve("truncated.bin"), new byte[8])));
+    }
+
+    @Test
+    void keepsRowsAlignedAfterShortWrite() throws Exception {
+        Path file = directory.resolve("short.bin");
+        FaultyFileChannel channel = new FaultyFileChannel(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE));
+
+        try (EmbeddingFileWriter writer = new EmbeddingFileWriter(channel, file, "mistral-embed", 3)) {
+            for (int i = 0; i < 3; i++) {
+                writer.write(new float[]{i, -i, 0.5f});
+            }
+
+            // Writes a number of bytes that is not a multiple of a float, then fails
+            channel.failAfter(5);
+            assertThrows(UncheckedIOException.class, writer::flush);
+
+            for (int i = 3; i < 5; i++) {
+                writer.write(new float[]{i, -i, 0.5f});
+            }
+        }
+
+        try (EmbeddingFileReader reader = new EmbeddingFileReader(file)) {
+            assertEquals(5, reader.getRowCount());
+
+            for (int i = 0; i < 5; i++) {
+                assertArrayEquals(new float[]{i, -i, 0.5f}, reader.get(i));
+            }
+        }
+    }
+
+    @Test
+    void closesChannelWhenHeaderCantBeWritten() throws Exception {
+        Path file = directory.resolve("header.bin");
+        FaultyFileChannel channel = new FaultyFileChannel(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE));
+        channel.failAfter(0);
+
+        assertThrows(UncheckedIOException.class, () -> new EmbeddingFileWriter(channel, file, "mistral-embed", 3));
+        assertFalse(channel.isOpen());
+    }
+
+    private static byte[] header(int dimension, int headerSize, int modelLength) {
+        ByteBuffer header = ByteBuffer.allocate(EmbeddingFileFormat.HEADER_ALIGNMENT).order(ByteOrder.LITTLE_ENDIAN);
+
+        header.putInt(EmbeddingFileFormat.MAGIC)
+                .putInt(EmbeddingFileFormat.VERSION)
+                .putInt(dimension)
+                .putInt(headerSize)
+                .putInt(modelLength);
+
+        return header.array();
+    }
+
+    /**
+     * A file channel that can be told to write only part of a buffer and then fail the next write.
+     */
+    private static final class FaultyFileChannel extends FileChannel {
+
+        private final FileChannel delegate;
+        private int shortWriteBytes = -1;
+        private boolean failNextWrite;
+
+        private FaultyFileChannel(FileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        private void failAfter(int bytes) {
+            this.shortWriteBytes = bytes;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (failNextWrite) {
+                failNextWrite = false;
+                throw new IOException("No space left on device");
+            }
+
+            if (shortWriteBytes < 0) {
+                return delegate.write(src);
+            }
+
+            ByteBuffer part = src.duplicate();
+            part.limit(part.position() + Math.min(shortWriteBytes, part.remaining()));
+            shortWriteBytes = -1;
+            failNextWrite = true;
+
+            int written = delegate.write(part);
+            src.position(src.position() + written);
+
+            if (written == 0) {
+                return write(src);
+            }
+
+            return written;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.vector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantizedVectorsTest {
+
+    private static final int DIMENSION = 128;
+
+    @Test
+    void float16RoundTripsWithinHalfUlp() {
+        Random random = new Random(1);
+
+        for (int i = 0; i < 100_000; i++) {
+            float value = (float) random.nextGaussian() * 10;
+            // 10 mantissa bits, so rounding to nearest is off by at most 2^-11 relative
+            assertEquals(value, Float16.toFloat(Float16.fromFloat(value)), Math.abs(value) * 0x1p-11f);
+        }
+    }
+
+    @Test
+    void float16HandlesSpecialValues() {
+        assertEquals(1.0f, Float16.toFloat(Float16.fromFloat(1.0f)));
+        assertEquals(65504f, Float16.toFloat(Float16.fromFloat(65504f)));
+        assertEquals(Float.POSITIVE_INFINITY, Float16.toFloat(Float16.fromFloat(70000f)));
+        assertEquals(Float.NEGATIVE_INFINITY, Float16.toFloat(Float16.fromFloat(-70000f)));
+        assertTrue(Float.isNaN(Float16.toFloat(Float16.fromFloat(Float.NaN))));
+        assertEquals(0x1p-24f, Float16.toFloat(Float16.fromFloat(0x1p-24f)));
+        assertEquals(0f, Float16.toFloat(Float16.fromFloat(0x1p-26f)));
+    }
+
+    @Test
+    void float16VectorsDecodeWithinHalfUlp() {
+        float[][] vectors = randomVectors(new Random(2), 100);
+        Float16Vectors encoded = Float16Vectors.encode(vectors);
+
+        assertEquals(100L * DIMENSION * Short.BYTES, encoded.sizeInBytes());
+
+        for (int row = 0; row < vectors.length; row++) {
+            float[] decoded = encoded.decode(row);
+
+            for (int i = 0; i < DIMENSION; i++) {
+                assertEquals(vectors[row][i], decoded[i], Math.abs(vectors[row][i]) * 0x1p-11f + 0x1p-25f);
+            }
+        }
+    }
+
+    @Test
+    void int8VectorsDecodeWithinHalfStep() {
+        float[][] vectors = randomVectors(new Random(3), 100);
+        Int8Vectors encoded = Int8Vectors.encode(vectors);
+
+        for (int row = 0; row < vectors.length; row++) {
+            float maxAbs = 0;
+
+            for (float value : vectors[row]) {
+                maxAbs = Math.max(maxAbs, Math.abs(value));
+            }
+
+            // Every vector is scaled to [-127, 127], so rounding is off by at most half a step of maxAbs / 127
+            assertArrayEquals(vectors[row], encoded.decode(row), maxAbs / 254 * 1.0001f);
+        }
+    }
+
+    @Test
+    void int8ScoreApproximatesDotProduct() {
+        Random random = new Random(4);
+        float[][] vectors = randomVectors(random, 100);
+        float[] query = randomVectors(random, 1)[0];
+        Int8Vectors encoded = Int8Vectors.encode(vectors);
+
+        for (int row = 0; row < vectors.length; row++) {
+            assertEquals(VectorMath.dot(query, vectors[row]), encoded.score(query, row), 0.02f);
+        }
+    }
+
+    @Test
+    void binaryVectorsKeepSigns() {
+        float[] vector = {0.5f, -0.25f, 0f, 1f};
+        BinaryVectors encoded = BinaryVectors.encode(new float[][]{vector});
+
+        assertArrayEquals(new float[]{1, -1, -1, 1}, encoded.decode(0));
+        assertEquals(0, encoded.hammingDistance(BinaryVectors.encode(vector), 0));
+        assertEquals(4, encoded.hammingDistance(BinaryVectors.encode(new float[]{-1, 1, 1, -1}), 0));
+        assertEquals(4 - 2 * 2, encoded.score(new float[]{1, 1, 1, 1}, 0));
+    }
+
+    @Test
+    void binaryVectorsSpanMultipleWords() {
+        float[] vector = new float[130];
+        vector[0] = 1;
+        vector[64] = 1;
+        vector[129] = 1;
+
+        long[] words = BinaryVectors.encode(vector);
+
+        assertEquals(3, words.length);
+        assertEquals(3, BinaryVectors.hammingDistance(words, new long[3]));
+        assertArrayEquals(words, BinaryVectors.encode(BinaryVectors.encode(new float[][]{vector}).decode(0)));
+    }
+
+    @Test
+    void rescoringRestoresRecall() {
+        Random random = new Random(5);
+        float[][] corpus = randomVectors(random, 2000);
+        float[][] queries = randomVectors(random, 50);
+
+        assertTrue(recall(corpus, queries, Float16Vectors::encode, 1) >= 0.99);
+        assertTrue(recall(corpus, queries, Int8Vectors::encode, 1) >= 0.9);
+        assertTrue(recall(corpus, queries, Int8Vectors::encode, 4) >= 0.99);
+
+        // The signs alone rank poorly, rescoring a large candidate set recovers most of the exact results
+        double binaryRecall = recall(corpus, queries, BinaryVectors::encode, 1);
+        double rescoredBinaryRecall = recall(corpus, queries, BinaryVectors::encode, 50);
+        assertTrue(rescoredBinaryRecall >= 0.9);
+        assertTrue(rescoredBinaryRecall > binaryRecall);
+    }
+
+    @Test
+    void rejectsVectorsWithDifferentDimensions() {
+        float[][] vectors = {new float[3], new float[4]};
+
+        assertThrows(IllegalArgumentException.class, () -> Float16Vectors.encode(vectors));
+        assertThrows(IllegalArgumentException.class, () -> Int8Vectors.encode(vectors));
+        assertThrows(IllegalArgumentException.class, () -> BinaryVectors.encode(vectors));
+    }
+
+    @Test
+    void emptyVectorsReturnNoResults() {
+        assertTrue(Float16Vectors.encode(new float[0][]).topK(new float[3], 2).isEmpty());
+        assertTrue(Int8Vectors.encode(new float[0][]).topK(new float[3], 2).isEmpty());
+    }
+
+    @Test
+    void rowChunksKeepRowsInOneChunk() {
+        RowChunks layout = new RowChunks(10, 3, 7);
+
+        assertEquals(5, layout.chunkCount());
+        assertEquals(6, layout.chunkLength(0));
+        assertEquals(6, layout.chunkLength(4));
+        assertEquals(4, layout.chunk(9));
+        assertEquals(3, layout.offset(9));
+        assertEquals(30L, layout.elementCount());
+    }
+
+    @Test
+    void rowChunksCountElementsBeyondIntRange() {
+        RowChunks layout = new RowChunks(3_000_000, 1024);
+
+        assertEquals(3_000_000L * 1024, layout.elementCount());
+        assertEquals(3, layout.chunkCount());
+        assertEquals(RowChunks.MAX_CHUNK_ELEMENTS, layout.chunkLength(0));
+        assertEquals(2, layout.chunk(2_999_999));
+        assertEquals((2_999_999 % (RowChunks.MAX_CHUNK_ELEMENTS / 1024)) * 1024, layout.offset(2_999_999));
+    }
+
+    private static double recall(float[][] corpus, float[][] queries, Function<float[][], QuantizedVectors> encoder, int oversampling) {
+        QuantizedVectors encoded = encoder.apply(corpus);
+        int found = 0;
+
+        for (float[] query : queries) {
+            Set<Integer> exact = new HashSet<>();
+            VectorMath.topK(query, corpus, 10, SimilarityMetric.DOT_PRODUCT).forEach(result -> exact.add(result.getIndex()));
+
+            List<SearchResult> approximate = Rescorer.search(encoded, query, 10, oversampling, row -> corpus[row], SimilarityMetric.DOT_PRODUCT);
+            found += (int) approximate.stream().filter(result -> exact.contains(result.getIndex())).count();
+        }
+
+        return (double) found / (queries.length * 10);
+    }
+
+    private static float[][] randomVectors(Random random, int count) {
+        float[][] vectors = new float[count][DIMENSION];
+
+        for (float[] vector : vectors) {
+            double norm = 0;
+
+            for (int i = 0; i < DIMENSION; i++) {
+                vector[i] = (float) random.nextGaussian();
+                norm += vector[i] * vector[i];
+            }
+
+            for (int i = 0; i < DIMENSION; i++) {
+                vector[i] /= (float) Math.sqrt(norm);
+            }
+        }
+
+        return vectors;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.interceptors;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AdaptiveConcurrencyInterceptorTest {
+
+    private MockWebServer server;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        executor.shutdownNow();
+        server.shutdown();
+    }
+
+    @Test
+    void growsWhenLimitIsUsed() throws IOException {
+        AdaptiveConcurrencyInterceptor limiter = AdaptiveConcurrencyInterceptor.builder()
+                .initialLimit(2)
+                .maxLimit(4)
+                .build();
+        OkHttpClient client = client(limiter);
+
+        // Every request uses half of the limit of 2, so the limit grows by 1/limit: 2.5, 2.9, 3.24
+        respond(200, 200, 200);
+        for (int i = 0; i < 3; i++) {
+            call(client);
+        }
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    void doesNotGrowAboveMaxLimit() throws IOException {
+        AdaptiveConcurrencyInterceptor limiter = AdaptiveConcurrencyInterceptor.builder()
+                .initialLimit(2)
+                .maxLimit(2)
+                .build();
+        OkHttpClient client = client(limiter);
+
+        respond(200, 200, 200);
+        for (int i = 0; i < 3; i++) {
+            call(client);
+        }
+
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void doesNotGrowWhenLimitIsNotUsed() throws IOException {
+        AdaptiveConcurrencyInterceptor limiter = AdaptiveConcurrencyInterceptor.builder()
+                .initialLimit(8)
+                .build();
+        OkHttpClient client = client(limiter);
+
+        respond(200, 200, 200, 200, 200);
+        for (int i = 0; i < 5; i++) {
+            call(client);
+        }
+
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    void backsOffOncePerSmoothedLatency() throws IOException {
+        AdaptiveConcurrencyInterceptor limiter = AdaptiveConcurrencyInterceptor.builder()
+                .initialLimit(10)
+                .backoffRatio(0.5)
+                .build();
+        OkHttpClient client = client(limiter);
+        server.enqueue(new MockResponse().setHeadersDelay(1, TimeUnit.SECONDS));
+        call(client);
+
+        // Both failures arrive within one smoothed latency, so they are a single congestion signal
+        respond(503, 429);
+        assertEquals(503, call(client));
+        assertEquals(5, limiter.getLimit());
+        assertEquals(429, call(client));
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    void backsOffNoFurtherThanMinLimit() throws IOException {
+        AdaptiveConcurrencyInterceptor limiter = AdaptiveConcurrencyInterceptor.builder()
+                .initialLimit(4)
+                .minLimit(2)
+                .backoffRatio(0.1)
+                .build();
+        OkHttpClient client = client(limiter);
+
+        respond(500);
+        call(client);
+
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void ioErrorCountsAsCongestion() {
+        AdaptiveConcurrencyInterceptor limiter = AdaptiveConcurrencyInterceptor.builder()
+                .initialLimit(10)
+                .backoffRatio(0.5)
+                .build();
+        OkHttpClient client = client(limiter);
+
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        assertThrows(IOException.class, () -> call(client));
+
+        assertEquals(5, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void slowRequestCountsAsCongestionWithLatencyTolerance() throws IOException {
+        AdaptiveConcurrencyInterceptor limiter = AdaptiveConcurrencyInterceptor.builder()
+                .initialLimit(10)
+                .backoffRatio(0.5)
+                .latencyTolerance(2)
+                .build();
+        OkHttpClient client = client(limiter);
+
+        respond(200);
+        call(client);
+        assertEquals(10, limiter.getLimit());
+
+        server.enqueue(new MockResponse().setHeadersDelay(500, TimeUnit.MILLISECONDS));
+        assertEquals(200, call(client));
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    void holdsPermitUntilBodyIsClosed() throws IOException {
+        AdaptiveConcurrencyInterceptor limiter = AdaptiveConcurrencyInterceptor.builder().build();
+        OkHttpClient client = client(limiter);
+        server.enqueue(new MockResponse().setBody("body"));
+
+        Response response = client.newCall(request()).execute();
+        assertEquals(1, limiter.getInFlight());
+
+        response.close();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void requestAboveLimitWaitsAndFailsWhenCancelled() throws Exception {
+        AdaptiveConcurrencyInterceptor limiter = AdaptiveConcurrencyInterceptor.builder()
+                .initialLimit(1)
+                .maxLimit(1)
+                .build();
+        OkHttpClient client = client(limiter);
+        respond(200, 200);
+
+        Response first = client.newCall(request()).execute();
+        Call waiting = client.newCall(request());
+        Future<Response> second = executor.submit(waiting::execute);
+
+        Thread.sleep(200);
+        assertFalse(second.isDone());
+        assertEquals(1, server.getRequestCount());
+
+        waiting.cancel();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+
+        first.close();
+        assertEquals(200, call(client));
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    private OkHttpClient client(AdaptiveConcurrencyInterceptor limiter) {
+        return new OkHttpClient.Builder()
+                .addInterceptor(limiter)
+                .retryOnConnectionFailure(false)
+                .build();
+    }
+
+    private void respond(int... codes) {
+        for (int code : codes) {
+            server.enqueue(new MockResponse().setResponseCode(code));
+        }
+    }
+
+    private Request request() {
+        return new Request.Builder()
+                .url(server.url("/v1/chat/completions"))
+                .post(RequestBody.create("{}", MediaType.get("application/json")))
+                .build();
+    }
+
+    private int call(OkHttpClient client) throws IOException {
+        try (Response response = client.newCall(request()).execute()) {
+            return response.code();
+        }
+    }
+}
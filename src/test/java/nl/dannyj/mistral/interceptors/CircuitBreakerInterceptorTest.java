@@ -0,0 +1,181 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.interceptors;
+
+import nl.dannyj.mistral.exceptions.CircuitBreakerOpenException;
+import nl.dannyj.mistral.interceptors.CircuitBreakerInterceptor.State;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CircuitBreakerInterceptorTest {
+
+    private static final String CHAT = "/chat/completions";
+    private static final Duration OPEN_DURATION = Duration.ofMillis(200);
+
+    private MockWebServer server;
+    private CircuitBreakerInterceptor breaker;
+    private OkHttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        breaker = CircuitBreakerInterceptor.builder()
+                .slidingWindowSize(4)
+                .minimumNumberOfCalls(4)
+                .openDuration(OPEN_DURATION)
+                .permittedCallsInHalfOpenState(2)
+                .build();
+        client = new OkHttpClient.Builder()
+                .addInterceptor(breaker)
+                .retryOnConnectionFailure(false)
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void opensWhenFailureRateIsReached() throws Exception {
+        respond(500, 200, 502);
+
+        assertEquals(500, call(CHAT));
+        assertEquals(200, call(CHAT));
+        assertEquals(502, call(CHAT));
+        assertEquals(State.CLOSED, breaker.getState(CHAT));
+
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        assertThrows(IOException.class, () -> call(CHAT));
+        assertEquals(State.OPEN, breaker.getState(CHAT));
+    }
+
+    @Test
+    void rejectsCallsWhileOpen() throws Exception {
+        open();
+
+        assertThrows(CircuitBreakerOpenException.class, () -> call(CHAT));
+        assertThrows(CircuitBreakerOpenException.class, () -> call(CHAT));
+        assertEquals(4, server.getRequestCount());
+        assertEquals(2, breaker.getRejectedCalls());
+    }
+
+    @Test
+    void closesWhenTrialCallsSucceed() throws Exception {
+        open();
+        Thread.sleep(OPEN_DURATION.toMillis() + 50);
+        assertEquals(State.HALF_OPEN, breaker.getState(CHAT));
+
+        respond(200, 200);
+        assertEquals(200, call(CHAT));
+        assertEquals(State.HALF_OPEN, breaker.getState(CHAT));
+        assertEquals(200, call(CHAT));
+        assertEquals(State.CLOSED, breaker.getState(CHAT));
+    }
+
+    @Test
+    void reopensWhenTrialCallFails() throws Exception {
+        open();
+        Thread.sleep(OPEN_DURATION.toMillis() + 50);
+
+        respond(503);
+        assertEquals(503, call(CHAT));
+        assertEquals(State.OPEN, breaker.getState(CHAT));
+        assertThrows(CircuitBreakerOpenException.class, () -> call(CHAT));
+    }
+
+    @Test
+    void ignoresClientErrors() throws Exception {
+        respond(429, 400, 429, 404);
+
+        for (int i = 0; i < 4; i++) {
+            call(CHAT);
+        }
+
+        assertEquals(State.CLOSED, breaker.getState(CHAT));
+    }
+
+    @Test
+    void opensOnSlowCalls() throws Exception {
+        breaker = CircuitBreakerInterceptor.builder()
+                .slidingWindowSize(2)
+                .minimumNumberOfCalls(2)
+                .slowCallDuration(Duration.ofMillis(100))
+                .build();
+        client = new OkHttpClient.Builder().addInterceptor(breaker).build();
+
+        for (int i = 0; i < 2; i++) {
+            server.enqueue(new MockResponse().setHeadersDelay(200, TimeUnit.MILLISECONDS));
+            assertEquals(200, call(CHAT));
+        }
+
+        assertEquals(State.OPEN, breaker.getState(CHAT));
+    }
+
+    @Test
+    void keepsEndpointsIndependent() throws Exception {
+        open();
+
+        respond(200);
+        assertEquals(State.CLOSED, breaker.getState("/embeddings"));
+        assertEquals(200, call("/embeddings"));
+    }
+
+    private void open() throws IOException {
+        respond(500, 500, 500, 500);
+
+        for (int i = 0; i < 4; i++) {
+            call(CHAT);
+        }
+
+        assertEquals(State.OPEN, breaker.getState(CHAT));
+    }
+
+    private void respond(int... codes) {
+        for (int code : codes) {
+            server.enqueue(new MockResponse().setResponseCode(code));
+        }
+    }
+
+    private int call(String endpoint) throws IOException {
+        Request request = new Request.Builder()
+                .url(server.url("/v1" + endpoint))
+                .post(RequestBody.create("{}", MediaType.get("application/json")))
+                .build();
+
+        try (Response response = client.newCall(request).execute()) {
+            return response.code();
+        }
+    }
+}
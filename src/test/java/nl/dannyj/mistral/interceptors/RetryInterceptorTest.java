@@ -0,0 +1,210 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.interceptors;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryInterceptorTest {
+
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    private MockWebServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void waitsForRetryAfterSeconds() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+        server.enqueue(new MockResponse().setBody("ok"));
+        RetryInterceptor interceptor = new RetryInterceptor(RetryPolicy.builder().initialBackoff(Duration.ofMillis(1)).build());
+
+        long start = System.nanoTime();
+        assertEquals(200, execute(interceptor, post()));
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(950));
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, interceptor.getRetries());
+    }
+
+    @Test
+    void waitsForRetryAfterDate() throws IOException {
+        String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(2));
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", date));
+        server.enqueue(new MockResponse().setBody("ok"));
+        RetryInterceptor interceptor = new RetryInterceptor(RetryPolicy.defaults());
+
+        long start = System.nanoTime();
+        assertEquals(200, execute(interceptor, post()));
+
+        // The date has a resolution of a second, so the wait is between 1 and 2 seconds
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(800));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    void returnsResponseWhenRetryAfterExceedsMaximum() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "3600"));
+        RetryInterceptor interceptor = new RetryInterceptor(RetryPolicy.defaults());
+
+        assertEquals(429, execute(interceptor, post()));
+        assertEquals(1, server.getRequestCount());
+        assertEquals(0, interceptor.getRetries());
+    }
+
+    @Test
+    void retriesPostOnlyForUnprocessedStatusCodes() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("ok"));
+        RetryInterceptor interceptor = new RetryInterceptor(RetryPolicy.builder().initialBackoff(Duration.ofMillis(1)).build());
+
+        assertEquals(500, execute(interceptor, post()));
+        assertEquals(200, execute(interceptor, post()));
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    void retriesIdempotentRequests() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setBody("ok"));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setBody("ok"));
+        RetryInterceptor interceptor = new RetryInterceptor(RetryPolicy.builder().initialBackoff(Duration.ofMillis(1)).build());
+
+        assertEquals(200, execute(interceptor, new Request.Builder().url(server.url("/v1/models")).build()));
+        assertEquals(200, execute(interceptor, post().newBuilder().header("Idempotency-Key", "key").build()));
+        assertEquals(4, server.getRequestCount());
+    }
+
+    @Test
+    void stopsRetryingWhenBudgetIsExhausted() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setResponseCode(429));
+        }
+
+        RetryInterceptor interceptor = new RetryInterceptor(RetryPolicy.builder()
+                .initialBackoff(Duration.ofMillis(1))
+                .maxAttempts(5)
+                .retryBudgetCapacity(2)
+                .retryBudgetRatio(0)
+                .build());
+
+        assertEquals(429, execute(interceptor, post()));
+        assertEquals(3, server.getRequestCount());
+        assertEquals(2, interceptor.getRetries());
+        assertEquals(1, interceptor.getExhaustedRetries());
+    }
+
+    @Test
+    void refillsBudgetWithRequests() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(429));
+        server.enqueue(new MockResponse().setBody("ok"));
+        server.enqueue(new MockResponse().setResponseCode(429));
+        server.enqueue(new MockResponse().setResponseCode(429));
+        server.enqueue(new MockResponse().setBody("ok"));
+        RetryInterceptor interceptor = new RetryInterceptor(RetryPolicy.builder()
+                .initialBackoff(Duration.ofMillis(1))
+                .retryBudgetCapacity(1)
+                .retryBudgetRatio(0.5)
+                .build());
+
+        assertEquals(200, execute(interceptor, post()));
+        // Half a retry was deposited since the last retry, so this request is not retried
+        assertEquals(429, execute(interceptor, post()));
+        assertEquals(200, execute(interceptor, post()));
+        assertEquals(2, interceptor.getRetries());
+        assertEquals(1, interceptor.getExhaustedRetries());
+    }
+
+    @Test
+    void failsWhenCancelledDuringBackoff() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "30"));
+        RetryInterceptor interceptor = new RetryInterceptor(RetryPolicy.defaults());
+        Call call = client(interceptor).newCall(post());
+        CompletableFuture<Object> result = new CompletableFuture<>();
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                result.complete(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+                result.complete(response.code());
+            }
+        });
+
+        server.takeRequest(5, TimeUnit.SECONDS);
+        call.cancel();
+
+        assertInstanceOf(IOException.class, result.get(2, TimeUnit.SECONDS));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    private Request post() {
+        return new Request.Builder()
+                .url(server.url("/v1/chat/completions"))
+                .post(RequestBody.create("{}", JSON))
+                .build();
+    }
+
+    private static OkHttpClient client(RetryInterceptor interceptor) {
+        return new OkHttpClient.Builder()
+                .addInterceptor(interceptor)
+                .build();
+    }
+
+    private static int execute(RetryInterceptor interceptor, Request request) throws IOException {
+        try (Response response = client(interceptor).newCall(request).execute()) {
+            return response.code();
+        }
+    }
+}
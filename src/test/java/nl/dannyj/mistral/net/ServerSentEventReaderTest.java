@@ -0,0 +1,103 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.net;
+
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServerSentEventReaderTest {
+
+    @Test
+    void readsEventsSeparatedByLf() throws IOException {
+        assertEquals(List.of("null|null|a", "null|null|b"), read("data: a\n\ndata: b\n\n"));
+    }
+
+    @Test
+    void readsEventsSeparatedByCrlf() throws IOException {
+        assertEquals(List.of("7|delta|a", "7|null|b"), read("id: 7\r\nevent: delta\r\ndata: a\r\n\r\ndata: b\r\n\r\n"));
+    }
+
+    @Test
+    void joinsMultiLineDataWithLf() throws IOException {
+        assertEquals(List.of("null|null|a\nb\n"), read("data: a\ndata:b\ndata\n\n"));
+    }
+
+    @Test
+    void dispatchesPendingEventWithoutTrailingNewline() throws IOException {
+        assertEquals(List.of("null|null|first", "null|null|last"), read("data: first\n\ndata: last"));
+        assertEquals(List.of("null|null|last"), read("data: last\n"));
+    }
+
+    @Test
+    void ignoresCommentsUnknownFieldsAndEmptyEvents() throws IOException {
+        assertEquals(List.of("null|null|x"), read(": keep-alive\n\nretry: 10\ndatax: y\n\ndata: x\n\n"));
+    }
+
+    @Test
+    void stopsWhenListenerReturnsFalse() throws IOException {
+        List<String> events = new ArrayList<>();
+        Buffer source = new Buffer().writeUtf8("data: [DONE]\n\ndata: more\n\n");
+
+        boolean stopped = new ServerSentEventReader(source).read((id, type, data, length) -> {
+            events.add(new String(data, 0, length, StandardCharsets.UTF_8));
+            return false;
+        });
+
+        assertTrue(stopped);
+        assertEquals(List.of("[DONE]"), events);
+    }
+
+    @Test
+    void returnsFalseAtEndOfSource() throws IOException {
+        Buffer source = new Buffer().writeUtf8("data: a\n\n");
+
+        assertFalse(new ServerSentEventReader(source).read((id, type, data, length) -> true));
+    }
+
+    @Test
+    void readsDataLargerThanInitialBuffer() throws IOException {
+        String large = "z".repeat(20_000);
+
+        assertEquals(List.of("null|null|" + large), read("data: " + large + "\n\n"));
+    }
+
+    @Test
+    void decodesMultiByteCharactersSplitOverLines() throws IOException {
+        assertEquals(List.of("null|null|h\u00e9llo\n\u4e16\u754c"), read("data: h\u00e9llo\r\ndata: \u4e16\u754c\r\n\r\n"));
+    }
+
+    private static List<String> read(String stream) throws IOException {
+        List<String> events = new ArrayList<>();
+        Buffer source = new Buffer().writeUtf8(stream);
+
+        new ServerSentEventReader(source).read((id, type, data, length) -> {
+            events.add(id + "|" + type + "|" + new String(data, 0, length, StandardCharsets.UTF_8));
+            return true;
+        });
+
+        return events;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.ratelimit;
+
+import nl.dannyj.mistral.exceptions.RateLimitExceededException;
+import nl.dannyj.mistral.models.usage.Usage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    private static final long TOLERANCE_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    @Test
+    void delayedRequestsGoIntoDebtInArrivalOrder() {
+        RateLimiter limiter = RateLimiter.builder().requestsPerSecond(1).build();
+
+        assertEquals(0, limiter.reserve(0));
+        assertWait(TimeUnit.SECONDS.toNanos(1), limiter.reserve(0));
+        assertWait(TimeUnit.SECONDS.toNanos(2), limiter.reserve(0));
+
+        RateLimiter.Headroom headroom = limiter.getHeadroom();
+        assertEquals(-2, headroom.getAvailableRequests(), 0.2);
+        assertEquals(2, headroom.getDelayedRequests());
+        assertEquals(0, headroom.getRejectedRequests());
+    }
+
+    @Test
+    void requestLargerThanBucketWaitsForFullBucketAndLeavesDebt() {
+        RateLimiter limiter = RateLimiter.builder().tokensPerMinute(60).build();
+
+        assertEquals(0, limiter.reserve(100));
+        assertEquals(-40, limiter.getHeadroom().getAvailableTokens(), 1);
+
+        // One token per second: the next request waits until the debt and its own tokens are paid off
+        assertWait(TimeUnit.SECONDS.toNanos(50), limiter.reserve(10));
+    }
+
+    @Test
+    void correctReturnsUnusedTokensAndTakesAdditionalTokens() {
+        RateLimiter limiter = RateLimiter.builder().tokensPerMinute(6000).build();
+
+        limiter.reserve(1000);
+        assertEquals(5000, limiter.getHeadroom().getAvailableTokens(), 5);
+
+        limiter.correct(1000, new Usage(100, 300, 200));
+        assertEquals(5700, limiter.getHeadroom().getAvailableTokens(), 5);
+
+        limiter.reserve(100);
+        limiter.correct(100, new Usage(400, 600, 200));
+        assertEquals(5100, limiter.getHeadroom().getAvailableTokens(), 5);
+
+        limiter.reserve(100);
+        limiter.correct(100, null);
+        assertEquals(5000, limiter.getHeadroom().getAvailableTokens(), 5);
+    }
+
+    @Test
+    void refundReturnsTokensButKeepsTheRequest() {
+        RateLimiter limiter = RateLimiter.builder().requestsPerSecond(1).tokensPerMinute(6000).build();
+
+        limiter.reserve(1000);
+        limiter.refund(1000);
+
+        RateLimiter.Headroom headroom = limiter.getHeadroom();
+        assertEquals(6000, headroom.getAvailableTokens());
+        assertEquals(0, headroom.getAvailableRequests(), 0.1);
+    }
+
+    @Test
+    void releaseReturnsTokensAndTheRequest() {
+        RateLimiter limiter = RateLimiter.builder().requestsPerSecond(1).tokensPerMinute(6000).build();
+
+        limiter.reserve(1000);
+        limiter.release(1000);
+
+        RateLimiter.Headroom headroom = limiter.getHeadroom();
+        assertEquals(6000, headroom.getAvailableTokens());
+        assertEquals(1, headroom.getAvailableRequests());
+        assertEquals(0, limiter.reserve(1000));
+    }
+
+    @Test
+    void rejectPolicyRejectsInsteadOfDelaying() {
+        RateLimiter limiter = RateLimiter.builder()
+                .requestsPerSecond(1)
+                .policy(RateLimitPolicy.REJECT)
+                .build();
+
+        assertEquals(0, limiter.reserve(0));
+        assertThrows(RateLimitExceededException.class, () -> limiter.reserve(0));
+
+        // A rejected request does not take budget
+        RateLimiter.Headroom headroom = limiter.getHeadroom();
+        assertEquals(0, headroom.getAvailableRequests(), 0.1);
+        assertEquals(1, headroom.getRejectedRequests());
+        assertEquals(0, headroom.getDelayedRequests());
+    }
+
+    @Test
+    void queuePolicyRejectsRequestsAboveMaxQueueTime() {
+        RateLimiter limiter = RateLimiter.builder()
+                .requestsPerSecond(1)
+                .maxQueueTime(Duration.ofMillis(500))
+                .build();
+
+        limiter.reserve(0);
+        assertThrows(RateLimitExceededException.class, () -> limiter.reserve(0));
+        assertEquals(1, limiter.getHeadroom().getRejectedRequests());
+    }
+
+    @Test
+    void requestThatWouldWaitPastMaxWaitIsRejected() {
+        RateLimiter limiter = RateLimiter.builder().requestsPerSecond(1).build();
+
+        limiter.reserve(0);
+        RateLimitExceededException e = assertThrows(RateLimitExceededException.class,
+                () -> limiter.reserve(0, TimeUnit.MILLISECONDS.toNanos(100)));
+        assertTrue(e.getMessage().contains("past the deadline"), e.getMessage());
+
+        // The rejected request did not queue, so the next one only waits for its own budget
+        assertWait(TimeUnit.SECONDS.toNanos(1), limiter.reserve(0, TimeUnit.SECONDS.toNanos(5)));
+    }
+
+    @Test
+    void acquireBlocksUntilBudgetIsAvailable() {
+        RateLimiter limiter = RateLimiter.builder().requestsPerSecond(4).build();
+
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire(0);
+        }
+
+        long start = System.nanoTime();
+        limiter.acquire(0);
+        assertWait(TimeUnit.MILLISECONDS.toNanos(250), System.nanoTime() - start);
+    }
+
+    @Test
+    void acquireAsyncCompletesWhenBudgetIsAvailable() throws Exception {
+        RateLimiter limiter = RateLimiter.builder().requestsPerSecond(4).build();
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.acquireAsync(0).isDone());
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<Void> delayed = limiter.acquireAsync(0);
+        assertFalse(delayed.isDone());
+
+        delayed.get(5, TimeUnit.SECONDS);
+        assertWait(TimeUnit.MILLISECONDS.toNanos(250), System.nanoTime() - start);
+    }
+
+    @Test
+    void acquireAsyncFailsWhenRejected() {
+        RateLimiter limiter = RateLimiter.builder()
+                .requestsPerSecond(1)
+                .policy(RateLimitPolicy.REJECT)
+                .build();
+
+        limiter.acquireAsync(0);
+        CompletableFuture<Void> rejected = limiter.acquireAsync(0);
+
+        ExecutionException e = assertThrows(ExecutionException.class, rejected::get);
+        assertInstanceOf(RateLimitExceededException.class, e.getCause());
+    }
+
+    @Test
+    void tryReserveOnlyReservesAvailableBudget() {
+        RateLimiter limiter = RateLimiter.builder().requestsPerSecond(1).build();
+
+        assertTrue(limiter.tryReserve(0));
+        assertFalse(limiter.tryReserve(0));
+        assertEquals(0, limiter.getHeadroom().getRejectedRequests());
+    }
+
+    private static void assertWait(long expectedNanos, long actualNanos) {
+        assertTrue(Math.abs(expectedNanos - actualNanos) <= TOLERANCE_NANOS,
+                "expected a wait of about " + expectedNanos + " ns, but was " + actualNanos + " ns");
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.services;
+
+import nl.dannyj.mistral.exceptions.MistralAPIException;
+import nl.dannyj.mistral.net.RequestOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestCoalescerTest {
+
+    private static final String KEY = "key";
+
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void sharesResultOfCallInFlight() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Future<String> leader = lead(noDeadline(), release, calls);
+        awaitCalls(calls, 1);
+
+        Future<String> waiter = executor.submit(() -> coalescer.execute(KEY, noDeadline(), () -> "own call"));
+        awaitCoalesced(1);
+        release.countDown();
+
+        assertEquals("shared", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("shared", waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void waiterRethrowsExceptionOfCall() throws Exception {
+        IllegalStateException failure = new IllegalStateException("failed");
+        CompletableFuture<String> flight = new CompletableFuture<>();
+        coalescer.executeAsync(KEY, noDeadline(), () -> flight);
+
+        Future<String> waiter = executor.submit(() -> coalescer.execute(KEY, noDeadline(), () -> "own call"));
+        awaitCoalesced(1);
+        flight.completeExceptionally(failure);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+        assertSame(failure, e.getCause());
+    }
+
+    @Test
+    void waiterWithShortDeadlineTimesOutWhileLeaderContinues() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Future<String> leader = lead(noDeadline(), release, calls);
+        awaitCalls(calls, 1);
+
+        long start = System.nanoTime();
+        MistralAPIException e = assertThrows(MistralAPIException.class,
+                () -> coalescer.execute(KEY, deadline(Duration.ofMillis(100)), () -> "own call"));
+        long waited = System.nanoTime() - start;
+
+        assertTimeout(e);
+        assertTrue(waited < TimeUnit.SECONDS.toNanos(2), "waited " + waited + "ns");
+        assertEquals(1, coalescer.getCoalescedCalls());
+        assertFalse(leader.isDone());
+
+        release.countDown();
+        assertEquals("shared", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void asyncWaiterWithShortDeadlineTimesOutWhileLeaderContinues() throws Exception {
+        CompletableFuture<String> flight = new CompletableFuture<>();
+        CompletableFuture<String> leader = coalescer.executeAsync(KEY, noDeadline(), () -> flight);
+
+        CompletableFuture<String> waiter = coalescer.executeAsync(KEY, deadline(Duration.ofMillis(100)), () -> CompletableFuture.completedFuture("own call"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(MistralAPIException.class, e.getCause());
+        assertTimeout((MistralAPIException) e.getCause());
+        assertFalse(leader.isDone());
+
+        flight.complete("shared");
+        assertEquals("shared", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void waiterWithLongerDeadlineDoesNotJoinLeaderWithShortDeadline() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Future<String> leader = lead(deadline(Duration.ofMillis(100)), release, calls);
+        awaitCalls(calls, 1);
+
+        // The leader may fail at its deadline, so a caller with more time makes its own call, which later callers join
+        CompletableFuture<String> ownFlight = new CompletableFuture<>();
+        CompletableFuture<String> waiter = coalescer.executeAsync(KEY, noDeadline(), () -> ownFlight);
+        CompletableFuture<String> laterWaiter = coalescer.executeAsync(KEY, deadline(Duration.ofSeconds(30)), () -> CompletableFuture.completedFuture("third call"));
+        assertEquals(1, coalescer.getCoalescedCalls());
+
+        release.countDown();
+        assertEquals("shared", leader.get(5, TimeUnit.SECONDS));
+        assertFalse(waiter.isDone());
+
+        ownFlight.complete("own call");
+        assertEquals("own call", waiter.get(5, TimeUnit.SECONDS));
+        assertEquals("own call", laterWaiter.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void waiterWithShorterDeadlineJoinsLeaderWithLongerDeadline() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Future<String> leader = lead(deadline(Duration.ofSeconds(30)), release, calls);
+        awaitCalls(calls, 1);
+
+        Future<String> waiter = executor.submit(() -> coalescer.execute(KEY, deadline(Duration.ofSeconds(20)), () -> "own call"));
+        awaitCoalesced(1);
+        release.countDown();
+
+        assertEquals("shared", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("shared", waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+    }
+
+    private Future<String> lead(CallContext context, CountDownLatch release, AtomicInteger calls) {
+        return executor.submit(() -> coalescer.execute(KEY, context, () -> {
+            calls.incrementAndGet();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return "shared";
+        }));
+    }
+
+    private void awaitCalls(AtomicInteger calls, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while (calls.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(expected, calls.get());
+    }
+
+    private void awaitCoalesced(long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while (coalescer.getCoalescedCalls() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(expected, coalescer.getCoalescedCalls());
+    }
+
+    private static void assertTimeout(MistralAPIException e) {
+        assertInstanceOf(InterruptedIOException.class, e.getCause());
+        assertEquals("timeout", e.getCause().getMessage());
+    }
+
+    private static CallContext noDeadline() {
+        return new CallContext(RequestOptions.defaults());
+    }
+
+    private static CallContext deadline(Duration timeout) {
+        return new CallContext(RequestOptions.builder().timeout(timeout).build());
+    }
+}
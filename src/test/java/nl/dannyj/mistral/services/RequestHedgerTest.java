@@ -0,0 +1,260 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.services;
+
+import nl.dannyj.mistral.MistralClient;
+import nl.dannyj.mistral.interceptors.MistralHeaderInterceptor;
+import nl.dannyj.mistral.models.completion.ChatCompletionRequest;
+import nl.dannyj.mistral.models.completion.message.UserMessage;
+import nl.dannyj.mistral.net.RequestOptions;
+import nl.dannyj.mistral.ratelimit.RateLimiter;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestHedgerTest {
+
+    private static final String CHAT_PATH = "/v1/chat/completions";
+    private static final String CHAT = "{\"id\":\"chat\",\"object\":\"chat.completion\",\"created\":1,\"model\":\"model\","
+            + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"hi\"},\"finish_reason\":\"stop\"}],"
+            + "\"usage\":{\"prompt_tokens\":3,\"total_tokens\":5,\"completion_tokens\":2}}";
+
+    private MockWebServer server;
+    private AtomicInteger cancelledCalls;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        cancelledCalls = new AtomicInteger();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void budgetHedgesAtMostMaxHedgeRateOfRequests() {
+        RequestHedger hedger = RequestHedger.builder().maxHedgeRate(0.25).build();
+
+        assertFalse(hedger.tryHedge());
+
+        for (int i = 0; i < 3; i++) {
+            hedger.onRequest();
+        }
+        assertFalse(hedger.tryHedge());
+
+        hedger.onRequest();
+        assertTrue(hedger.tryHedge());
+        assertFalse(hedger.tryHedge());
+        assertEquals(1, hedger.getHedgedRequests());
+        assertEquals(4, hedger.getRequests());
+    }
+
+    @Test
+    void budgetCapsBurstsOfHedges() {
+        RequestHedger hedger = RequestHedger.builder().maxHedgeRate(1.0).build();
+
+        for (int i = 0; i < 1000; i++) {
+            hedger.onRequest();
+        }
+
+        int hedges = 0;
+        while (hedger.tryHedge()) {
+            hedges++;
+        }
+
+        assertEquals(10, hedges);
+    }
+
+    @Test
+    void delayIsPercentileOfRecentLatencies() {
+        RequestHedger hedger = RequestHedger.builder()
+                .percentile(0.9)
+                .minDelay(Duration.ZERO)
+                .windowSize(100)
+                .minSamples(100)
+                .build();
+
+        for (int i = 1; i < 100; i++) {
+            hedger.recordLatency(CHAT_PATH, TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertNull(hedger.getDelay(CHAT_PATH));
+
+        hedger.recordLatency(CHAT_PATH, TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(Duration.ofMillis(90), hedger.getDelay(CHAT_PATH));
+        assertNull(hedger.getDelay("/v1/embeddings"));
+    }
+
+    @Test
+    void delayIsAtLeastMinDelay() {
+        RequestHedger hedger = RequestHedger.builder()
+                .minDelay(Duration.ofMillis(50))
+                .minSamples(1)
+                .build();
+
+        hedger.recordLatency(CHAT_PATH, TimeUnit.MILLISECONDS.toNanos(1));
+
+        assertEquals(Duration.ofMillis(50), hedger.getDelay(CHAT_PATH));
+    }
+
+    @Test
+    void hedgeWinsAndLoserIsCancelled() throws InterruptedException {
+        RequestHedger hedger = warmHedger();
+        MistralClient client = client(hedger, null);
+        // Warm up the client, so the primary reaches the server before the hedge
+        server.enqueue(new MockResponse().setBody(CHAT));
+        client.createChatCompletion(request());
+        server.enqueue(new MockResponse().setBody(CHAT).setHeadersDelay(5, TimeUnit.SECONDS));
+        server.enqueue(new MockResponse().setBody(CHAT));
+
+        long start = System.nanoTime();
+        assertEquals("chat", client.createChatCompletion(request()).getId());
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2), "the hedge should answer before the slow primary");
+        assertEquals(1, hedger.getHedgedRequests());
+        assertEquals(3, server.getRequestCount());
+        // The result is handed to the caller before the win is counted and the loser is cancelled
+        awaitCount(hedger::getHedgeWins, 1);
+        awaitCount(cancelledCalls::get, 1);
+        client.close();
+    }
+
+    @Test
+    void hedgeIsOnlySentWithRateLimiterHeadroom() {
+        RequestHedger hedger = warmHedger();
+        RateLimiter limiter = RateLimiter.builder().requestsPerSecond(0.1).build();
+        MistralClient client = client(hedger, limiter);
+        server.enqueue(new MockResponse().setBody(CHAT).setHeadersDelay(500, TimeUnit.MILLISECONDS));
+
+        assertEquals("chat", client.createChatCompletion(request()).getId());
+
+        assertEquals(0, hedger.getHedgedRequests());
+        assertEquals(1, server.getRequestCount());
+        assertEquals(0, limiter.getHeadroom().getRejectedRequests());
+        client.close();
+    }
+
+    @Test
+    void hedgeIsSentWithRateLimiterHeadroom() throws InterruptedException {
+        RequestHedger hedger = warmHedger();
+        RateLimiter limiter = RateLimiter.builder().requestsPerSecond(2).build();
+        MistralClient client = client(hedger, limiter);
+        server.enqueue(new MockResponse().setBody(CHAT).setHeadersDelay(5, TimeUnit.SECONDS));
+        server.enqueue(new MockResponse().setBody(CHAT));
+
+        assertEquals("chat", client.createChatCompletion(request()).getId());
+
+        assertEquals(1, hedger.getHedgedRequests());
+        assertEquals(2, server.getRequestCount());
+        client.close();
+    }
+
+    @Test
+    void hedgeReservationIsReturned() {
+        RateLimiter limiter = RateLimiter.builder().requestsPerSecond(2).build();
+        CallContext context = new CallContext(RequestOptions.defaults());
+        limiter.acquire(0);
+        context.rateLimitedBy(limiter, 0);
+
+        assertTrue(context.reserveHedge());
+        assertFalse(context.reserveHedge());
+        assertEquals(0, limiter.getHeadroom().getRejectedRequests());
+
+        context.releaseHedge();
+        double available = limiter.getHeadroom().getAvailableRequests();
+        assertTrue(available >= 1 && available < 1.1, "only the request itself should use budget, available " + available);
+    }
+
+    private RequestHedger warmHedger() {
+        RequestHedger hedger = RequestHedger.builder()
+                .maxHedgeRate(1.0)
+                .minDelay(Duration.ofMillis(200))
+                .minSamples(1)
+                .build();
+
+        hedger.recordLatency(CHAT_PATH, TimeUnit.MILLISECONDS.toNanos(200));
+        for (int i = 0; i < 10; i++) {
+            hedger.onRequest();
+        }
+
+        return hedger;
+    }
+
+    private MistralClient client(RequestHedger hedger, RateLimiter limiter) {
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+                .addInterceptor(new MistralHeaderInterceptor("key"))
+                .addInterceptor(chain -> {
+                    try {
+                        return chain.proceed(chain.request().newBuilder()
+                                .url(server.url(chain.request().url().encodedPath()))
+                                .build());
+                    } catch (IOException e) {
+                        if (chain.call().isCanceled()) {
+                            cancelledCalls.incrementAndGet();
+                        }
+
+                        throw e;
+                    }
+                })
+                .build();
+
+        MistralClient.Builder builder = MistralClient.builder()
+                .apiKey("key")
+                .httpClient(httpClient)
+                .hedging(hedger);
+
+        if (limiter != null) {
+            builder.rateLimiter(limiter);
+        }
+
+        return builder.build();
+    }
+
+    private static void awaitCount(LongSupplier count, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while (count.getAsLong() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(expected, count.getAsLong());
+    }
+
+    private static ChatCompletionRequest request() {
+        return ChatCompletionRequest.builder()
+                .model("model")
+                .messages(List.of(new UserMessage("hello")))
+                .build();
+    }
+}
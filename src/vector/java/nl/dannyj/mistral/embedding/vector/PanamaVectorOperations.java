@@ -0,0 +1,101 @@
+/*
+ * Copyright 2024-2025 Danny Jelsma
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.dannyj.mistral.embedding.vector;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD implementation of the vector operations using the incubating Vector API ({@code jdk.incubator.vector}).
+ * This class is only loaded when the module is available at runtime (started with {@code --add-modules jdk.incubator.vector}).
+ */
+class PanamaVectorOperations implements VectorOperations {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(a.length);
+
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, i);
+            sum = va.fma(vb, sum);
+        }
+
+        float result = sum.reduceLanes(VectorOperators.ADD);
+
+        for (; i < a.length; i++) {
+            result += a[i] * b[i];
+        }
+
+        return result;
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b) {
+        FloatVector dotSum = FloatVector.zero(SPECIES);
+        FloatVector normASum = FloatVector.zero(SPECIES);
+        FloatVector normBSum = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(a.length);
+
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, i);
+            dotSum = va.fma(vb, dotSum);
+            normASum = va.fma(va, normASum);
+            normBSum = vb.fma(vb, normBSum);
+        }
+
+        float dot = dotSum.reduceLanes(VectorOperators.ADD);
+        float normA = normASum.reduceLanes(VectorOperators.ADD);
+        float normB = normBSum.reduceLanes(VectorOperators.ADD);
+
+        for (; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+
+        return VectorMath.cosine(dot, normA, normB);
+    }
+
+    @Override
+    public float squaredEuclidean(float[] a, float[] b) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(a.length);
+
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector diff = FloatVector.fromArray(SPECIES, a, i).sub(FloatVector.fromArray(SPECIES, b, i));
+            sum = diff.fma(diff, sum);
+        }
+
+        float result = sum.reduceLanes(VectorOperators.ADD);
+
+        for (; i < a.length; i++) {
+            float diff = a[i] - b[i];
+            result += diff * diff;
+        }
+
+        return result;
+    }
+}